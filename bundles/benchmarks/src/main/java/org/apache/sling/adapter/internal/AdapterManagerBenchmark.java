@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.adapter.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.adapter.SlingAdaptable;
+import org.apache.sling.api.adapter.AdapterFactory;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures adapting objects from concurrent threads through the
+ * {@link AdapterManagerImpl}, as is done for each <code>adaptTo</code> call
+ * of resources and requests. The lookups are compared to the same lookups
+ * done under a single shared lock, as the manager used to take on its
+ * adapter factory cache. The adaptable classes inherit their adapter
+ * factories from a super class and an interface, such that a cache miss
+ * would have to walk the class hierarchy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class AdapterManagerBenchmark {
+
+    private final Object lock = new Object();
+
+    private AdapterManagerImpl manager;
+
+    private Object adaptable;
+
+    @Setup
+    public void setUp() {
+        final AdapterFactory factory = new AdapterFactory() {
+            public <AdapterType> AdapterType getAdapter(Object adaptable,
+                    Class<AdapterType> type) {
+                return type.cast(adaptable);
+            }
+        };
+
+        manager = new AdapterManagerImpl();
+        manager.activate((ComponentContext) proxy(ComponentContext.class,
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    return "locateService".equals(method.getName())
+                            ? factory
+                            : null;
+                }
+            }));
+        manager.bindAdapterFactory(createReference(1,
+            TestAdaptable.class.getName(), Runnable.class.getName()));
+        manager.bindAdapterFactory(createReference(2,
+            Comparable.class.getName(), Comparable.class.getName()));
+
+        adaptable = new ExtendedAdaptable();
+    }
+
+    @Benchmark
+    public Object getAdapter() {
+        return manager.getAdapter(adaptable, Runnable.class);
+    }
+
+    @Benchmark
+    public Object getAdapterMissing() {
+        return manager.getAdapter(adaptable, Thread.class);
+    }
+
+    @Benchmark
+    public Object synchronizedGetAdapter() {
+        synchronized (lock) {
+            return manager.getAdapter(adaptable, Runnable.class);
+        }
+    }
+
+    private static ServiceReference createReference(final long serviceId,
+            final String adaptable, final String adapter) {
+        final Bundle bundle = (Bundle) proxy(Bundle.class,
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    return "getBundleId".equals(method.getName())
+                            ? Long.valueOf(1)
+                            : null;
+                }
+            });
+
+        return (ServiceReference) proxy(ServiceReference.class,
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    String name = method.getName();
+                    if ("getBundle".equals(name)) {
+                        return bundle;
+                    } else if ("getProperty".equals(name)) {
+                        if (Constants.SERVICE_ID.equals(args[0])) {
+                            return serviceId;
+                        } else if (AdapterFactory.ADAPTABLE_CLASSES.equals(args[0])) {
+                            return new String[] { adaptable };
+                        } else if (AdapterFactory.ADAPTER_CLASSES.equals(args[0])) {
+                            return new String[] { adapter };
+                        }
+                    } else if ("hashCode".equals(name)) {
+                        return (int) serviceId;
+                    } else if ("equals".equals(name)) {
+                        return proxy == args[0];
+                    }
+                    return null;
+                }
+            });
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(
+            AdapterManagerBenchmark.class.getClassLoader(),
+            new Class<?>[] { type }, handler);
+    }
+
+    public static class TestAdaptable extends SlingAdaptable implements
+            Runnable {
+        public void run() {
+        }
+    }
+
+    public static class ExtendedAdaptable extends TestAdaptable implements
+            Comparable<Object> {
+        public int compareTo(Object o) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.benchmarks;
+
+import org.apache.sling.commons.testing.jcr.RepositoryUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>BenchmarkRepository</code> provides the Jackrabbit repository
+ * of the testing utilities to benchmarks. The repository is started on
+ * first use and stopped when the JVM exits, since it cannot be restarted
+ * in the same JVM.
+ */
+public final class BenchmarkRepository {
+
+    private static SlingRepository repository;
+
+    private BenchmarkRepository() {
+    }
+
+    public static synchronized SlingRepository getRepository()
+            throws Exception {
+        if (repository == null) {
+            RepositoryUtil.startRepository();
+            repository = RepositoryUtil.getRepository();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        RepositoryUtil.stopRepository();
+                    } catch (Exception e) {
+                        LoggerFactory.getLogger(BenchmarkRepository.class).error(
+                            "Cannot stop repository", e);
+                    }
+                }
+            });
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletInputStream;
+
+import org.apache.sling.commons.testing.sling.MockSlingHttpServletRequest;
+
+/**
+ * The <code>BenchmarkRequest</code> extends the
+ * <code>MockSlingHttpServletRequest</code> with the state a servlet
+ * container request has: attributes, headers, container parameters and the
+ * request URI. It may therefore be handed to the Sling engine as the
+ * container request.
+ * <p>
+ * Instances are reused across benchmark invocations. {@link #reset()} must
+ * be called before each invocation to drop attributes set while handling
+ * the previous one.
+ */
+public class BenchmarkRequest extends MockSlingHttpServletRequest {
+
+    private final String pathInfo;
+
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+    private final Map<String, String> headers = new HashMap<String, String>();
+
+    private final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+
+    private String characterEncoding;
+
+    private String contentType;
+
+    private byte[] content;
+
+    public BenchmarkRequest(String method, String pathInfo, String queryString) {
+        super(pathInfo, null, null, null, queryString);
+        this.pathInfo = pathInfo;
+        setMethod(method);
+
+        if (queryString != null) {
+            for (String pair : queryString.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    addParameter(pair.substring(0, eq), pair.substring(eq + 1));
+                } else {
+                    addParameter(pair, "");
+                }
+            }
+        }
+    }
+
+    public void addParameter(String name, String value) {
+        String[] values = parameters.get(name);
+        if (values == null) {
+            values = new String[] { value };
+        } else {
+            String[] newValues = new String[values.length + 1];
+            System.arraycopy(values, 0, newValues, 0, values.length);
+            newValues[values.length] = value;
+            values = newValues;
+        }
+        parameters.put(name, values);
+    }
+
+    /**
+     * Sets the request body returned by {@link #getInputStream()}.
+     */
+    public void setContent(String contentType, byte[] content) {
+        this.contentType = contentType;
+        this.content = content;
+        setHeader("Content-Type", contentType);
+    }
+
+    public void setHeader(String name, String value) {
+        headers.put(name.toLowerCase(), value);
+    }
+
+    /**
+     * Removes all attributes and resets the character encoding.
+     */
+    public void reset() {
+        attributes.clear();
+        characterEncoding = null;
+    }
+
+    // ---------- container request
+
+    @Override
+    public String getPathInfo() {
+        return pathInfo;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return pathInfo;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        return new StringBuffer("http://localhost").append(pathInfo);
+    }
+
+    @Override
+    public String getServletPath() {
+        return "";
+    }
+
+    @Override
+    public String getContextPath() {
+        return "";
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public String getScheme() {
+        return "http";
+    }
+
+    @Override
+    public String getServerName() {
+        return "localhost";
+    }
+
+    @Override
+    public int getServerPort() {
+        return 80;
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return "localhost";
+    }
+
+    @Override
+    public String getLocalAddr() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public int getLocalPort() {
+        return 80;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    @Override
+    public Enumeration<?> getHeaderNames() {
+        return Collections.enumeration(headers.keySet());
+    }
+
+    @Override
+    public Enumeration<?> getHeaders(String name) {
+        String value = getHeader(name);
+        return Collections.enumeration((value == null)
+                ? Collections.<String> emptyList()
+                : Collections.singletonList(value));
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+        return -1;
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        return -1;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<?> getAttributeNames() {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object o) {
+        if (o == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, o);
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    @Override
+    public void setCharacterEncoding(String env) {
+        this.characterEncoding = env;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public int getContentLength() {
+        return (content == null) ? -1 : content.length;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        final ByteArrayInputStream in = new ByteArrayInputStream(
+            (content == null) ? new byte[0] : content);
+        return new ServletInputStream() {
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return in.read(b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = parameters.get(name);
+        return (values == null) ? null : values[0];
+    }
+
+    @Override
+    public Map<?, ?> getParameterMap() {
+        return parameters;
+    }
+
+    @Override
+    public Enumeration<?> getParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        return parameters.get(name);
+    }
+}
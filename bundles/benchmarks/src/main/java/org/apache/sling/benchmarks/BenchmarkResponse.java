@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The <code>BenchmarkResponse</code> is a servlet container response which
+ * discards the response body and only counts the bytes written. Like the
+ * {@link BenchmarkRequest} it is reused across benchmark invocations and
+ * must be {@link #reset() reset} before each invocation.
+ */
+public class BenchmarkResponse implements HttpServletResponse {
+
+    private final Map<String, String> headers = new HashMap<String, String>();
+
+    private final CountingOutputStream out = new CountingOutputStream();
+
+    private PrintWriter writer;
+
+    private String contentType;
+
+    private String characterEncoding = "ISO-8859-1";
+
+    private int status = SC_OK;
+
+    private Locale locale = Locale.getDefault();
+
+    /**
+     * Returns the number of bytes written to the response body so far. Text
+     * written through the writer is counted after it has been flushed.
+     */
+    public long getByteCount() {
+        return out.count;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    public void reset() {
+        headers.clear();
+        out.count = 0;
+        writer = null;
+        contentType = null;
+        status = SC_OK;
+    }
+
+    // ---------- ServletResponse
+
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    public void setCharacterEncoding(String charset) {
+        this.characterEncoding = charset;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String type) {
+        this.contentType = type;
+    }
+
+    public void setContentLength(int len) {
+        setIntHeader("Content-Length", len);
+    }
+
+    public ServletOutputStream getOutputStream() {
+        return out;
+    }
+
+    public PrintWriter getWriter() throws UnsupportedEncodingException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(out,
+                characterEncoding));
+        }
+        return writer;
+    }
+
+    public int getBufferSize() {
+        return 0;
+    }
+
+    public void setBufferSize(int size) {
+    }
+
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    public void resetBuffer() {
+    }
+
+    public boolean isCommitted() {
+        return false;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public void setLocale(Locale loc) {
+        this.locale = loc;
+    }
+
+    // ---------- HttpServletResponse
+
+    public void addCookie(Cookie cookie) {
+    }
+
+    public boolean containsHeader(String name) {
+        return headers.containsKey(name.toLowerCase());
+    }
+
+    public String encodeURL(String url) {
+        return url;
+    }
+
+    public String encodeRedirectURL(String url) {
+        return url;
+    }
+
+    public String encodeUrl(String url) {
+        return url;
+    }
+
+    public String encodeRedirectUrl(String url) {
+        return url;
+    }
+
+    public void sendError(int sc) {
+        this.status = sc;
+    }
+
+    public void sendError(int sc, String msg) {
+        this.status = sc;
+    }
+
+    public void sendRedirect(String location) {
+        this.status = SC_FOUND;
+        setHeader("Location", location);
+    }
+
+    public void setStatus(int sc) {
+        this.status = sc;
+    }
+
+    public void setStatus(int sc, String sm) {
+        this.status = sc;
+    }
+
+    public void setHeader(String name, String value) {
+        headers.put(name.toLowerCase(), value);
+    }
+
+    public void addHeader(String name, String value) {
+        String old = headers.get(name.toLowerCase());
+        setHeader(name, (old == null) ? value : old + ", " + value);
+    }
+
+    public void setIntHeader(String name, int value) {
+        setHeader(name, String.valueOf(value));
+    }
+
+    public void addIntHeader(String name, int value) {
+        addHeader(name, String.valueOf(value));
+    }
+
+    public void setDateHeader(String name, long date) {
+        setHeader(name, String.valueOf(date));
+    }
+
+    public void addDateHeader(String name, long date) {
+        addHeader(name, String.valueOf(date));
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.jcr.Session;
+
+/**
+ * The <code>BenchmarkSession</code> class creates stand-in JCR sessions for
+ * code which only passes a session around without reading content from it.
+ * The sessions return their user ID, report being live until logged out and
+ * return <code>null</code>, <code>false</code> or zero for all other
+ * methods.
+ */
+public final class BenchmarkSession {
+
+    private BenchmarkSession() {
+    }
+
+    public static Session create(final String userId) {
+        InvocationHandler handler = new InvocationHandler() {
+
+            private boolean live = true;
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("getUserID".equals(name)) {
+                    return userId;
+                } else if ("isLive".equals(name)) {
+                    return live;
+                } else if ("logout".equals(name)) {
+                    live = false;
+                    return null;
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if ("toString".equals(name)) {
+                    return "BenchmarkSession[" + userId + "]";
+                }
+
+                Class<?> type = method.getReturnType();
+                if (type == boolean.class) {
+                    return false;
+                } else if (type == long.class) {
+                    return 0L;
+                } else if (type == int.class) {
+                    return 0;
+                }
+                return null;
+            }
+        };
+
+        return (Session) Proxy.newProxyInstance(
+            BenchmarkSession.class.getClassLoader(),
+            new Class<?>[] { Session.class }, handler);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.benchmarks;
+
+import java.lang.reflect.Field;
+
+/**
+ * The <code>BenchmarkUtil</code> class provides helpers to set up the
+ * components under test outside of an OSGi framework.
+ */
+public final class BenchmarkUtil {
+
+    private BenchmarkUtil() {
+    }
+
+    /**
+     * Sets the field <code>name</code> declared by the class of the
+     * <code>target</code> object or one of its super classes. This is used to
+     * bind the service references which are otherwise bound by the
+     * Declarative Services runtime.
+     *
+     * @throws IllegalArgumentException if no such field exists
+     */
+    public static void setField(Object target, String name, Object value)
+            throws IllegalAccessException {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException nsfe) {
+                // check the super class
+            }
+        }
+        throw new IllegalArgumentException("No field " + name + " in "
+            + target.getClass().getName());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.commons.json.util;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures formatting date property values from concurrent threads with the
+ * shared {@link EcmaDateFormat} compared to a <code>SimpleDateFormat</code>
+ * shared under a lock, as the JSON writers used to do. Each thread formats
+ * dates of consecutive seconds, or always the same date if
+ * <code>sameSecond</code> is set, as for the dates of content created
+ * together.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class EcmaDateFormatBenchmark {
+
+    private static final DateFormat SYNCHRONIZED_FORMAT = new SimpleDateFormat(
+        EcmaDateFormat.PATTERN, EcmaDateFormat.LOCALE);
+
+    @Param( { "false", "true" })
+    public boolean sameSecond;
+
+    private Calendar date;
+
+    private long step;
+
+    @Setup
+    public void setUp() {
+        date = Calendar.getInstance();
+        date.setTimeInMillis(1224000000000L);
+        step = sameSecond ? 0 : 1000;
+    }
+
+    @Benchmark
+    public String synchronizedSimpleDateFormat() {
+        date.setTimeInMillis(date.getTimeInMillis() + step);
+        synchronized (SYNCHRONIZED_FORMAT) {
+            return SYNCHRONIZED_FORMAT.format(date.getTime());
+        }
+    }
+
+    @Benchmark
+    public String ecmaDateFormat() {
+        date.setTimeInMillis(date.getTimeInMillis() + step);
+        return EcmaDateFormat.getInstance().format(date);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Session;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.NonExistingResource;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.servlets.ServletResolver;
+import org.apache.sling.benchmarks.BenchmarkRequest;
+import org.apache.sling.benchmarks.BenchmarkResponse;
+import org.apache.sling.benchmarks.BenchmarkSession;
+import org.apache.sling.benchmarks.BenchmarkUtil;
+import org.apache.sling.commons.mime.MimeTypeService;
+import org.apache.sling.commons.testing.sling.MockResource;
+import org.apache.sling.commons.testing.sling.MockResourceResolver;
+import org.apache.sling.engine.EngineConstants;
+import org.apache.sling.jcr.resource.JcrResourceResolverFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a complete pass of a GET request through
+ * {@link SlingMainServlet#service(javax.servlet.ServletRequest, javax.servlet.ServletResponse)}:
+ * creating the request data, resolving the resource and the servlet,
+ * calling the servlet through the buffered response and disposing of the
+ * request. Resource resolution and servlet resolution are stand-ins, such
+ * that the result reflects the overhead of the engine itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlingMainServletBenchmark {
+
+    private static final String CONTENT_PATH = "/content/page";
+
+    /** The number of characters written by the servlet */
+    @Param( { "100", "10000" })
+    public int responseSize;
+
+    private SlingMainServlet slingMainServlet;
+
+    private BenchmarkRequest request;
+
+    private BenchmarkResponse response;
+
+    @Setup
+    public void setUp() throws Exception {
+        final ResourceResolver resolver = new BenchmarkResourceResolver();
+        final Servlet servlet = new ContentServlet(responseSize);
+
+        slingMainServlet = new SlingMainServlet();
+        BenchmarkUtil.setField(slingMainServlet, "resourceResolverFactory",
+            new JcrResourceResolverFactory() {
+                public ResourceResolver getResourceResolver(Session session) {
+                    return resolver;
+                }
+            });
+        BenchmarkUtil.setField(slingMainServlet, "servletResolver",
+            new ServletResolver() {
+                public Servlet resolveServlet(SlingHttpServletRequest request) {
+                    return servlet;
+                }
+            });
+        BenchmarkUtil.setField(slingMainServlet, "mimeTypeService",
+            new BenchmarkMimeTypeService());
+
+        request = new BenchmarkRequest("GET", CONTENT_PATH + ".print.html",
+            "a=1&b=2");
+        request.setHeader("User-Agent", "SlingBenchmark/1.0");
+        response = new BenchmarkResponse();
+
+        // fail early if the request does not get to the servlet
+        service();
+        if (response.getStatus() != HttpServletResponse.SC_OK
+            || response.getByteCount() < responseSize) {
+            throw new IllegalStateException("Request not handled: status="
+                + response.getStatus() + ", bytes=" + response.getByteCount());
+        }
+    }
+
+    @Benchmark
+    public long service() throws ServletException {
+        request.reset();
+        request.setAttribute(EngineConstants.SESSION,
+            BenchmarkSession.create("anonymous"));
+        response.reset();
+
+        slingMainServlet.service((ServletRequest) request,
+            (ServletResponse) response);
+        response.flushBuffer();
+        return response.getByteCount();
+    }
+
+    /**
+     * Resolves the request path to a resource of the content tree by
+     * splitting the path at the first dot after the last slash.
+     */
+    private static class BenchmarkResourceResolver extends MockResourceResolver {
+
+        BenchmarkResourceResolver() {
+            setSearchPath("/apps/", "/libs/");
+            addResource(new MockResource(this, CONTENT_PATH, "sample/page"));
+        }
+
+        @Override
+        public Resource resolve(HttpServletRequest request, String absPath) {
+            int dot = absPath.indexOf('.', absPath.lastIndexOf('/'));
+            String path = (dot < 0) ? absPath : absPath.substring(0, dot);
+
+            Resource resource = getResource(path);
+            if (resource == null) {
+                return new NonExistingResource(this, absPath);
+            }
+
+            // a fresh resource per request, since the metadata is modified
+            Resource result = new MockResource(this, path,
+                resource.getResourceType());
+            result.getResourceMetadata().setResolutionPath(path);
+            result.getResourceMetadata().setResolutionPathInfo(
+                (dot < 0) ? null : absPath.substring(dot));
+            return result;
+        }
+    }
+
+    private static class ContentServlet extends HttpServlet {
+
+        private final char[] content;
+
+        ContentServlet(int size) {
+            content = new char[size];
+            for (int i = 0; i < size; i++) {
+                content[i] = (char) ('a' + (i % 26));
+            }
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request,
+                HttpServletResponse response) throws IOException {
+            response.setContentType("text/html");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(content);
+        }
+    }
+
+    private static class BenchmarkMimeTypeService implements MimeTypeService {
+
+        public String getMimeType(String name) {
+            return name.endsWith(".html") ? "text/html" : null;
+        }
+
+        public String getExtension(String mimeType) {
+            return "text/html".equals(mimeType) ? "html" : null;
+        }
+
+        public void registerMimeType(String mimeType, String... extensions) {
+        }
+
+        public void registerMimeType(InputStream mimeTabStream) {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.benchmarks.BenchmarkRequest;
+import org.apache.sling.benchmarks.BenchmarkResponse;
+import org.apache.sling.engine.impl.SlingHttpServletResponseImpl;
+import org.apache.sling.engine.impl.SlingMainServlet;
+import org.apache.sling.engine.impl.request.RequestData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures formatting a log line with the {@link CustomLogFormat} for the
+ * formats used by default for the request log entry and exit lines and the
+ * access log.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomLogFormatBenchmark {
+
+    /** The name of the log format, see {@link #getPattern(String)} */
+    @Param( { "entry", "exit", "access" })
+    public String format;
+
+    private CustomLogFormat logFormat;
+
+    private SlingHttpServletRequest request;
+
+    private SlingHttpServletResponseImpl response;
+
+    @Setup
+    public void setUp() throws Exception {
+        logFormat = new CustomLogFormat(getPattern(format));
+
+        BenchmarkRequest servletRequest = new BenchmarkRequest("GET",
+            "/content/page.print.html", "a=1&b=2");
+        servletRequest.setHeader("Referer", "http://localhost/content.html");
+        servletRequest.setHeader("User-Agent",
+            "Mozilla/5.0 (X11; U; Linux i686; en-US) Gecko/2008072820 Firefox/3.0.1");
+        BenchmarkResponse servletResponse = new BenchmarkResponse();
+
+        RequestData requestData = new RequestData(new SlingMainServlet(),
+            servletRequest, servletResponse);
+        request = requestData.getSlingRequest();
+        response = (SlingHttpServletResponseImpl) requestData.getSlingResponse();
+        response.setContentType("text/html");
+        response.setStatus(200);
+    }
+
+    @Benchmark
+    public String formatLine() {
+        return logFormat.format(request, response);
+    }
+
+    private static String getPattern(String name) {
+        if ("entry".equals(name)) {
+            return "%t [%R] -> %m %U%q %H";
+        } else if ("exit".equals(name)) {
+            return "%{end}t [%R] <- %s %{Content-Type}o %Dms";
+        } else if ("access".equals(name)) {
+            return "%a %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\"";
+        }
+        throw new IllegalArgumentException("Unknown log format " + name);
+    }
+}
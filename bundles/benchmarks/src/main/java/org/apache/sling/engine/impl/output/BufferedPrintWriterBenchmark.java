@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.output;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.benchmarks.CountingWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing a page of markup through the {@link BufferedPrintWriter}
+ * the way scripts write their output: many short strings, single characters
+ * and a few larger character blocks, followed by flushing the buffer to the
+ * servlet container writer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferedPrintWriterBenchmark {
+
+    private static final String[] MARKUP = { "<div class=\"item\">", "<a href=\"",
+        "/content/page/item.html", "\">", "Item title", "</a>", "</div>", "\n" };
+
+    @Param( { "1024", "8192" })
+    public int bufferSize;
+
+    /** The number of items written per page */
+    @Param( { "100", "1000" })
+    public int items;
+
+    private CountingWriter servletWriter;
+
+    private BufferedPrintWriter writer;
+
+    private char[] block;
+
+    @Setup
+    public void setUp() {
+        servletWriter = new CountingWriter();
+        writer = new BufferedPrintWriter(new PrintWriter(servletWriter),
+            bufferSize);
+
+        block = new char[2048];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (char) ('a' + (i % 26));
+        }
+    }
+
+    @Benchmark
+    public long writePage() {
+        servletWriter.reset();
+        for (int i = 0; i < items; i++) {
+            for (String s : MARKUP) {
+                writer.print(s);
+            }
+            writer.write(' ');
+            if (i % 50 == 0) {
+                writer.write(block, 0, block.length);
+            }
+        }
+        writer.flush();
+        return servletWriter.getCount();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.benchmarks.BenchmarkRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building the request parameter map by the
+ * {@link ParameterSupport} from the container parameters of a GET request
+ * and from the body of a <code>multipart/form-data</code> POST request.
+ * Both requests carry a <code>_charset_</code> parameter, such that the
+ * values are re-encoded from ISO-8859-1 to UTF-8.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterSupportBenchmark {
+
+    private static final String BOUNDARY = "----SlingBenchmarkBoundary";
+
+    @Param( { "10", "100" })
+    public int parameterCount;
+
+    private BenchmarkRequest getRequest;
+
+    private BenchmarkRequest postRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        // UTF-8 encoded values decoded as ISO-8859-1 by the container
+        String value = new String("gr\u00fcezi".getBytes("UTF-8"), "ISO-8859-1");
+
+        StringBuilder query = new StringBuilder("_charset_=UTF-8");
+        for (int i = 0; i < parameterCount; i++) {
+            query.append("&p").append(i).append('=').append(value).append(i);
+        }
+        getRequest = new BenchmarkRequest("GET", "/content/page.html",
+            query.toString());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writePart(body, "_charset_", "UTF-8");
+        for (int i = 0; i < parameterCount; i++) {
+            writePart(body, "p" + i, "gr\u00fcezi" + i);
+        }
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes("ISO-8859-1"));
+
+        postRequest = new BenchmarkRequest("POST", "/content/page", null);
+        postRequest.setContent("multipart/form-data; boundary=" + BOUNDARY,
+            body.toByteArray());
+
+        // fail early if the parameters are not parsed
+        if (queryParameters().size() != parameterCount + 1
+            || multipartParameters().size() != parameterCount + 1) {
+            throw new IllegalStateException("Parameters not parsed");
+        }
+    }
+
+    @Benchmark
+    public Map<String, String[]> queryParameters() {
+        getRequest.reset();
+        return ParameterSupport.getInstance(getRequest).getParameterMap();
+    }
+
+    @Benchmark
+    public Map<String, String[]> multipartParameters() {
+        postRequest.reset();
+        return ParameterSupport.getInstance(postRequest).getParameterMap();
+    }
+
+    private static void writePart(ByteArrayOutputStream out, String name,
+            String value) throws Exception {
+        out.write(("--" + BOUNDARY + "\r\n").getBytes("ISO-8859-1"));
+        out.write(("Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n").getBytes("ISO-8859-1"));
+        out.write(value.getBytes("UTF-8"));
+        out.write("\r\n".getBytes("ISO-8859-1"));
+    }
+}
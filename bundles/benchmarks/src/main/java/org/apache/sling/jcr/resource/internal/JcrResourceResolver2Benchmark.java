@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.benchmarks.BenchmarkRepository;
+import org.apache.sling.benchmarks.BenchmarkRequest;
+import org.apache.sling.benchmarks.BenchmarkUtil;
+import org.apache.sling.commons.testing.jcr.RepositoryUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.apache.sling.jcr.resource.internal.helper.MapEntries;
+import org.apache.sling.jcr.resource.internal.helper.Mapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures resolving request paths with the {@link JcrResourceResolver2}
+ * when the {@link MapEntries} contain the given number of vanity paths in
+ * addition to a few <code>/etc/map</code> entries. Requests are resolved
+ * for a vanity path, a regular content path and a path which does not
+ * exist.
+ * <p>
+ * The content lives in the Jackrabbit repository of the testing utilities,
+ * which is created below <code>target/repository</code> in the working
+ * directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JcrResourceResolver2Benchmark {
+
+    private static final String[] NODE_TYPES = { "folder.cnd",
+        "resource.cnd", "vanitypath.cnd", "mapping.cnd" };
+
+    /** The number of vanity paths */
+    @Param( { "100", "10000" })
+    public int vanityPaths;
+
+    private Session session;
+
+    private Node contentRoot;
+
+    private Node mapRoot;
+
+    private MapEntries mapEntries;
+
+    private ResourceResolver resolver;
+
+    private BenchmarkRequest vanityRequest;
+
+    private BenchmarkRequest contentRequest;
+
+    private BenchmarkRequest missingRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        SlingRepository repository = BenchmarkRepository.getRepository();
+        session = repository.loginAdministrative(null);
+
+        for (String nodeType : NODE_TYPES) {
+            RepositoryUtil.registerNodeType(session,
+                getClass().getResourceAsStream("/SLING-INF/nodetypes/" + nodeType));
+        }
+
+        // a few host mappings
+        if (session.itemExists("/etc")) {
+            session.getItem("/etc").remove();
+        }
+        mapRoot = session.getRootNode().addNode("etc", "nt:folder");
+        Node map = mapRoot.addNode("map", "sling:Mapping");
+        Node http = map.addNode("http", "sling:Mapping");
+        http.addNode("localhost.80", "sling:Mapping");
+        for (int i = 0; i < 10; i++) {
+            Node host = http.addNode("host" + i + ".example.com.80",
+                "sling:Mapping");
+            host.setProperty(JcrResourceResolver2.PROP_REDIRECT_INTERNAL,
+                "/site" + i);
+        }
+
+        // content pages, each with a vanity path
+        contentRoot = session.getRootNode().addNode(
+            "content" + System.currentTimeMillis(), "nt:unstructured");
+        String contentPath = contentRoot.getPath();
+        for (int i = 0; i < vanityPaths; i++) {
+            Node page = contentRoot.addNode("page" + i, "nt:unstructured");
+            page.addMixin("sling:VanityPath");
+            page.setProperty("sling:vanityPath", new String[] { "/vanity" + i });
+            if (i % 1000 == 999) {
+                session.save();
+            }
+        }
+        session.save();
+
+        JcrResourceResolverFactoryImpl factory = new JcrResourceResolverFactoryImpl();
+        BenchmarkUtil.setField(factory, "repository", repository);
+        BenchmarkUtil.setField(factory, "mappings",
+            new Mapping[] { new Mapping("/-/") });
+        mapEntries = new MapEntries(factory, repository);
+        BenchmarkUtil.setField(factory, "mapEntries", mapEntries);
+
+        resolver = factory.getResourceResolver(session);
+
+        int page = vanityPaths / 2;
+        vanityRequest = new BenchmarkRequest("GET", "/vanity" + page + ".html",
+            null);
+        contentRequest = new BenchmarkRequest("GET", contentPath + "/page"
+            + page + ".html", null);
+        missingRequest = new BenchmarkRequest("GET", contentPath
+            + "/missing.html", null);
+
+        // fail early if the vanity path is not resolved
+        String path = resolveVanityPath().getPath();
+        if (!path.equals(contentPath + "/page" + page)) {
+            throw new IllegalStateException("Vanity path resolved to " + path);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (mapEntries != null) {
+            mapEntries.dispose();
+        }
+        if (session != null) {
+            contentRoot.remove();
+            mapRoot.remove();
+            session.save();
+            session.logout();
+        }
+    }
+
+    @Benchmark
+    public Resource resolveVanityPath() {
+        return resolver.resolve(vanityRequest, vanityRequest.getPathInfo());
+    }
+
+    @Benchmark
+    public Resource resolveContentPath() {
+        return resolver.resolve(contentRequest, contentRequest.getPathInfo());
+    }
+
+    @Benchmark
+    public Resource resolveMissingPath() {
+        return resolver.resolve(missingRequest, missingRequest.getPathInfo());
+    }
+}
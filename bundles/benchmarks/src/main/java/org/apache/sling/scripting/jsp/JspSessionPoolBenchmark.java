@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.jsp;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Credentials;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.benchmarks.BenchmarkRepository;
+import org.apache.sling.commons.testing.jcr.RepositoryUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.apache.sling.jcr.base.internal.SessionPool;
+import org.apache.sling.jcr.base.internal.SessionPoolFactory;
+import org.apache.sling.jcr.base.internal.SessionPoolManager;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Counts the session pool operations of the {@link SlingIOProvider} for a
+ * request evaluating a JSP which includes the given number of other JSPs.
+ * Each JSP causes the JSP compiler to use the private session, here by
+ * checking for a stale class file. The administrative sessions are taken
+ * from a {@link SessionPool} over the Jackrabbit repository of the testing
+ * utilities.
+ * <p>
+ * Besides the time per request, the {@link PoolCounters} report the number
+ * of requests and the number of sessions acquired from the pool. Dividing
+ * the latter by the former yields the pool operations per request, which
+ * must not grow with the number of includes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JspSessionPoolBenchmark {
+
+    @Param( { "0", "10" })
+    public int includes;
+
+    private SessionPoolManager poolManager;
+
+    private SessionPool pool;
+
+    private SlingIOProvider ioProvider;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class PoolCounters {
+
+        public long requests;
+
+        public long poolAcquisitions;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        final SlingRepository repository = BenchmarkRepository.getRepository();
+
+        poolManager = new SessionPoolManager(repository, null,
+            new SessionPoolFactory() {
+                public SessionPool createPool(SessionPoolManager mgr,
+                        SimpleCredentials credentials) {
+                    pool = new SessionPool(mgr, credentials);
+                    return pool;
+                }
+            });
+
+        ioProvider = new SlingIOProvider(new PooledRepository(repository,
+            poolManager), null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (poolManager != null) {
+            poolManager.dispose();
+        }
+    }
+
+    @Benchmark
+    public int request(PoolCounters counters) {
+        long before = getAcquisitions();
+
+        int found = evaluate("/apps/sample/page/html.jsp", includes);
+
+        counters.requests++;
+        counters.poolAcquisitions += getAcquisitions() - before;
+        return found;
+    }
+
+    /**
+     * Simulates the evaluation of a JSP by the JSP script engine, which sets
+     * and resets the request resource resolver around the evaluation, and
+     * of the included JSPs.
+     */
+    private int evaluate(String jsp, int includeCount) {
+        ResourceResolver previous = ioProvider.setRequestResourceResolver(null);
+        try {
+            // the compiler removes outdated class files
+            int found = ioProvider.delete("/var/classes" + jsp + ".class")
+                    ? 1
+                    : 0;
+            for (int i = 0; i < includeCount; i++) {
+                found += evaluate("/apps/sample/include" + i + ".jsp", 0);
+            }
+            return found;
+        } finally {
+            ioProvider.resetRequestResourceResolver(previous);
+        }
+    }
+
+    private long getAcquisitions() {
+        SessionPool p = pool;
+        return (p == null)
+                ? 0
+                : p.getPoolHitCounter() + p.getPoolMissCounter();
+    }
+
+    /**
+     * A <code>SlingRepository</code> handing out administrative sessions
+     * from the session pool like the Jackrabbit server bundle does.
+     */
+    private static class PooledRepository implements SlingRepository {
+
+        private final SlingRepository delegatee;
+
+        private final SessionPoolManager poolManager;
+
+        PooledRepository(SlingRepository delegatee,
+                SessionPoolManager poolManager) {
+            this.delegatee = delegatee;
+            this.poolManager = poolManager;
+        }
+
+        public String getDefaultWorkspace() {
+            return delegatee.getDefaultWorkspace();
+        }
+
+        public Session loginAdministrative(String workspace)
+                throws RepositoryException {
+            return login(new SimpleCredentials(RepositoryUtil.ADMIN_NAME,
+                RepositoryUtil.ADMIN_PASSWORD.toCharArray()), workspace);
+        }
+
+        public Session login() throws RepositoryException {
+            return login(null, null);
+        }
+
+        public Session login(Credentials credentials) throws RepositoryException {
+            return login(credentials, null);
+        }
+
+        public Session login(String workspace) throws RepositoryException {
+            return login(null, workspace);
+        }
+
+        public Session login(Credentials credentials, String workspace)
+                throws RepositoryException {
+            return poolManager.login(credentials, workspace);
+        }
+
+        public String getDescriptor(String key) {
+            return delegatee.getDescriptor(key);
+        }
+
+        public String[] getDescriptorKeys() {
+            return delegatee.getDescriptorKeys();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.benchmarks.CountingWriter;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares writing the JSON rendering of a node with child nodes through
+ * the {@link JsonStreamWriter} used by the JSON renderer with writing the
+ * same output through the <code>JSONWriter</code> of the JSON library.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonWriterBenchmark {
+
+    @Param( { "10", "1000" })
+    public int children;
+
+    @Param( { "false", "true" })
+    public boolean tidy;
+
+    private CountingWriter out;
+
+    @Setup
+    public void setUp() {
+        out = new CountingWriter();
+    }
+
+    @Benchmark
+    public long jsonWriter() throws JSONException {
+        out.reset();
+        JSONWriter w = new JSONWriter(out);
+        w.setTidy(tidy);
+        w.object();
+        w.key("jcr:primaryType").value("nt:unstructured");
+        w.key("sling:resourceType").value("sample/list");
+        for (int i = 0; i < children; i++) {
+            w.key("item" + i).object();
+            w.key("jcr:primaryType").value("nt:unstructured");
+            w.key("title").value("Item \"number\" " + i);
+            w.key("text").value("Lorem ipsum dolor sit amet,\nconsectetur adipiscing elit.");
+            w.key("count").value(i);
+            w.key("rating").value(i / 7.0);
+            w.key("visible").value(i % 2 == 0);
+            w.key("tags").array().value("a").value("b").value("c").endArray();
+            w.endObject();
+        }
+        w.endObject();
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long jsonStreamWriter() throws JSONException, IOException {
+        out.reset();
+        JsonStreamWriter w = new JsonStreamWriter(out);
+        w.setTidy(tidy);
+        w.object();
+        w.key("jcr:primaryType").value("nt:unstructured");
+        w.key("sling:resourceType").value("sample/list");
+        for (int i = 0; i < children; i++) {
+            w.key("item" + i).object();
+            w.key("jcr:primaryType").value("nt:unstructured");
+            w.key("title").value("Item \"number\" " + i);
+            w.key("text").value("Lorem ipsum dolor sit amet,\nconsectetur adipiscing elit.");
+            w.key("count").value(i);
+            w.key("rating").value(i / 7.0);
+            w.key("visible").value(i % 2 == 0);
+            w.key("tags").array().value("a").value("b").value("c").endArray();
+            w.endObject();
+        }
+        w.endObject();
+        w.flush();
+        return out.getCount();
+    }
+}
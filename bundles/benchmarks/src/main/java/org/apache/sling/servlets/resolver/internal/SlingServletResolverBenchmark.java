@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Session;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServlet;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.benchmarks.BenchmarkUtil;
+import org.apache.sling.commons.testing.osgi.MockBundle;
+import org.apache.sling.commons.testing.osgi.MockComponentContext;
+import org.apache.sling.commons.testing.sling.MockResource;
+import org.apache.sling.commons.testing.sling.MockResourceResolver;
+import org.apache.sling.commons.testing.sling.MockSlingHttpServletRequest;
+import org.apache.sling.jcr.resource.JcrResourceResolverFactory;
+import org.apache.sling.servlets.resolver.internal.helper.ResolutionCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the script lookup of the {@link SlingServletResolver} for a
+ * <code>GET</code> request with a selector and an extension. The resource
+ * type of the requested resource has a super type, whose script is the one
+ * selected. Each location searched contains the given number of other
+ * scripts, which have to be checked and rejected.
+ * <p>
+ * The lookup is measured with and without the resolution cache. Since the
+ * cache is invalidated through JCR observation, which is not available
+ * here, the cache is installed directly for the cached case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlingServletResolverBenchmark {
+
+    private static final String[] SEARCH_PATH = { "/apps/", "/libs/" };
+
+    /** The number of non-matching scripts per location */
+    @Param( { "10", "100" })
+    public int scripts;
+
+    @Param( { "false", "true" })
+    public boolean cached;
+
+    private SlingServletResolver servletResolver;
+
+    private MockSlingHttpServletRequest request;
+
+    private Servlet script;
+
+    @Setup
+    public void setUp() throws Exception {
+        final MockResourceResolver resolver = new MockResourceResolver();
+        resolver.setSearchPath(SEARCH_PATH);
+
+        script = new HttpServlet() {
+        };
+        for (String root : SEARCH_PATH) {
+            addScripts(resolver, root + "sample/page", null);
+            addScripts(resolver, root + "sample/base", root.equals("/libs/")
+                    ? "html.esp"
+                    : null);
+        }
+
+        MockResource resource = new MockResource(resolver, "/content/page",
+            "sample/page");
+        resource.setResourceSuperType("sample/base");
+        resolver.addResource(resource);
+
+        request = new MockSlingHttpServletRequest("/content/page", "print",
+            "html", null, null);
+        request.setResourceResolver(resolver);
+        request.setResource(resource);
+
+        servletResolver = new SlingServletResolver();
+        servletResolver.bindResourceResolverFactory(new JcrResourceResolverFactory() {
+            public ResourceResolver getResourceResolver(Session session) {
+                return resolver;
+            }
+        });
+        servletResolver.activate(new MockComponentContext(new MockBundle(1L),
+            script));
+
+        if (cached) {
+            BenchmarkUtil.setField(servletResolver, "resolutionCache",
+                new ResolutionCache(200));
+        }
+
+        // fail early if the script is not found
+        if (resolveServlet() != script) {
+            throw new IllegalStateException("Script not resolved");
+        }
+    }
+
+    @Benchmark
+    public Servlet resolveServlet() {
+        return servletResolver.resolveServlet(request);
+    }
+
+    /**
+     * Adds a location folder with the given number of non-matching scripts
+     * and, if <code>match</code> is not <code>null</code>, the script
+     * resolved for the request.
+     */
+    private void addScripts(MockResourceResolver resolver, String location,
+            String match) {
+        MockResource folder = new MockResource(resolver, location, "nt:folder");
+        resolver.addResource(folder);
+
+        List<Resource> children = new ArrayList<Resource>();
+        for (int i = 0; i < scripts; i++) {
+            children.add(new ScriptResource(resolver, location + "/other" + i
+                + ".esp", null));
+        }
+        if (match != null) {
+            children.add(new ScriptResource(resolver, location + "/" + match,
+                script));
+        }
+        for (Resource child : children) {
+            resolver.addResource(child);
+        }
+        resolver.addChildren(folder, children);
+    }
+
+    /**
+     * A script resource adapting to a servlet like the resources of the
+     * script resource provider do.
+     */
+    private static class ScriptResource extends MockResource {
+
+        private final Servlet servlet;
+
+        ScriptResource(ResourceResolver resolver, String path, Servlet servlet) {
+            super(resolver, path, "nt:file");
+            this.servlet = servlet;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+            if (type == Servlet.class) {
+                return (AdapterType) servlet;
+            }
+            return super.adaptTo(type);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.apache.sling.commons.json;
 
+import java.io.IOException;
+import java.io.Reader;
+
 /*
 Copyright (c) 2002 JSON.org
 
@@ -25,24 +28,87 @@ SOFTWARE.
 */
 
 /**
- * A JSONTokener takes a source string and extracts characters and tokens from
- * it. It is used by the JSONObject and JSONArray constructors to parse
- * JSON source strings.
+ * A JSONTokener takes a source string or reader and extracts characters and
+ * tokens from it. It is used by the JSONObject and JSONArray constructors to
+ * parse JSON source strings.
+ * <p>
+ * A JSONTokener created for a <code>Reader</code> reads the source in chunks
+ * and only keeps the current chunk in memory, so large documents can be
+ * parsed without reading them into a string first. Such a tokener supports
+ * backing up a single character. If reading from the reader fails, the
+ * tokener behaves as if the end of the source was reached and the
+ * <code>IOException</code> is set as the cause of any subsequent syntax
+ * error.
  * @author JSON.org
  * @version 2
  */
 public class JSONTokener {
 
+    /**
+     * The number of characters read from a reader at once.
+     */
+    private static final int BUFFER_SIZE = 2048;
+
+
+    /**
+     * The reader providing the source, or null if the source is a string.
+     */
+    private final Reader myReader;
+
+
+    /**
+     * The source string being tokenized, or null if the source is a reader.
+     */
+    private final String mySource;
+
+
+    /**
+     * The characters of the source, or the current chunk of the reader.
+     */
+    private char[] myBuffer;
+
+
+    /**
+     * The position of the next character in the buffer.
+     */
+    private int myPosition;
+
+
+    /**
+     * The number of valid characters in the buffer.
+     */
+    private int myLength;
+
+
+    /**
+     * The buffer position from which characters must be kept when the
+     * buffer is refilled, or -1 if only the last character is kept.
+     */
+    private int myMark = -1;
+
+
+    /**
+     * Whether the last call to next() hit the end of the source.
+     */
+    private boolean myEnd;
+
+
     /**
      * The index of the next character.
      */
-    private int myIndex;
+    private long myIndex;
 
 
     /**
-     * The source string being tokenized.
+     * The line of the next character.
      */
-    private String mySource;
+    private long myLine = 1;
+
+
+    /**
+     * The error reading from the reader, if any.
+     */
+    private IOException myReadError;
 
 
     /**
@@ -51,23 +117,93 @@ public class JSONTokener {
      * @param s     A source string.
      */
     public JSONTokener(String s) {
-        this.myIndex = 0;
+        this.myReader = null;
         this.mySource = s;
+        this.myBuffer = s.toCharArray();
+        this.myLength = this.myBuffer.length;
+    }
+
+
+    /**
+     * Construct a JSONTokener from a reader. The reader is not closed by
+     * the tokener.
+     *
+     * @param reader A reader providing the source.
+     */
+    public JSONTokener(Reader reader) {
+        this.myReader = reader;
+        this.mySource = null;
+        this.myBuffer = new char[BUFFER_SIZE];
+        this.myLength = 0;
     }
 
 
     /**
      * Back up one character. This provides a sort of lookahead capability,
      * so that you can test for a digit or letter before attempting to parse
-     * the next number or identifier.
+     * the next number or identifier. Backing up after next() returned 0 at
+     * the end of the source has no effect.
      */
     public void back() {
-        if (this.myIndex > 0) {
+        if (this.myEnd) {
+            this.myEnd = false;
+        } else if (this.myPosition > 0) {
+            this.myPosition -= 1;
             this.myIndex -= 1;
+            if (this.myBuffer[this.myPosition] == '\n') {
+                this.myLine -= 1;
+            }
         }
     }
 
 
+    /**
+     * Read the next chunk from the reader into the buffer. The last
+     * character, or all characters from the mark on, are kept so that
+     * back() and skipTo() keep working.
+     * @return true if characters have been read.
+     */
+    private boolean fill() {
+        if (this.myReader == null || this.myReadError != null) {
+            return false;
+        }
+
+        int keepFrom;
+        if (this.myMark >= 0) {
+            keepFrom = this.myMark;
+            this.myMark = 0;
+        } else {
+            keepFrom = (this.myLength > 0) ? this.myLength - 1 : 0;
+        }
+        int keep = this.myLength - keepFrom;
+        if (keep + BUFFER_SIZE > this.myBuffer.length) {
+            char[] buffer = new char[Math.max(keep + BUFFER_SIZE,
+                this.myBuffer.length * 2)];
+            System.arraycopy(this.myBuffer, keepFrom, buffer, 0, keep);
+            this.myBuffer = buffer;
+        } else if (keepFrom > 0) {
+            System.arraycopy(this.myBuffer, keepFrom, this.myBuffer, 0, keep);
+        }
+        this.myPosition -= keepFrom;
+        this.myLength = keep;
+
+        try {
+            int n;
+            do {
+                n = this.myReader.read(this.myBuffer, this.myLength,
+                    this.myBuffer.length - this.myLength);
+            } while (n == 0);
+            if (n < 0) {
+                return false;
+            }
+            this.myLength += n;
+            return true;
+        } catch (IOException ioe) {
+            this.myReadError = ioe;
+            return false;
+        }
+    }
+
 
     /**
      * Get the hex value of a character (base16).
@@ -90,26 +226,32 @@ public class JSONTokener {
 
 
     /**
-     * Determine if the source string still contains characters that next()
+     * Determine if the source still contains characters that next()
      * can consume.
      * @return true if not yet at the end of the source.
      */
     public boolean more() {
-        return this.myIndex < this.mySource.length();
+        return this.myPosition < this.myLength || fill();
     }
 
 
     /**
-     * Get the next character in the source string.
+     * Get the next character in the source.
      *
      * @return The next character, or 0 if past the end of the source string.
      */
     public char next() {
-        if (more()) {
-            char c = this.mySource.charAt(this.myIndex);
+        if (this.myPosition < this.myLength || fill()) {
+            char c = this.myBuffer[this.myPosition];
+            this.myPosition += 1;
             this.myIndex += 1;
+            if (c == '\n') {
+                this.myLine += 1;
+            }
+            this.myEnd = false;
             return c;
         }
+        this.myEnd = true;
         return 0;
     }
 
@@ -138,16 +280,17 @@ public class JSONTokener {
      * @return      A string of n characters.
      * @throws JSONException
      *   Substring bounds error if there are not
-     *   n characters remaining in the source string.
+     *   n characters remaining in the source.
      */
      public String next(int n) throws JSONException {
-         int i = this.myIndex;
-         int j = i + n;
-         if (j >= this.mySource.length()) {
-            throw syntaxError("Substring bounds error");
+         char[] chars = new char[n];
+         for (int i = 0; i < n; i++) {
+             chars[i] = next();
+             if (this.myEnd) {
+                 throw syntaxError("Substring bounds error");
+             }
          }
-         this.myIndex += n;
-         return this.mySource.substring(i, j);
+         return new String(chars);
      }
 
 
@@ -410,14 +553,21 @@ public class JSONTokener {
      */
     public char skipTo(char to) {
         char c;
-        int index = this.myIndex;
+        long index = this.myIndex;
+        long line = this.myLine;
+        this.myMark = this.myPosition;
         do {
             c = next();
-            if (c == 0) {
+            if (c == 0 && this.myEnd) {
+                this.myPosition = this.myMark;
+                this.myMark = -1;
                 this.myIndex = index;
+                this.myLine = line;
+                this.myEnd = false;
                 return c;
             }
         } while (c != to);
+        this.myMark = -1;
         back();
         return c;
     }
@@ -429,11 +579,30 @@ public class JSONTokener {
      * @param to A string to skip past.
      */
     public void skipPast(String to) {
-        this.myIndex = this.mySource.indexOf(to, this.myIndex);
-        if (this.myIndex < 0) {
-            this.myIndex = this.mySource.length();
-        } else {
-            this.myIndex += to.length();
+        int n = to.length();
+        if (n == 0) {
+            return;
+        }
+
+        // compare the last n characters read, kept in a ring buffer
+        char[] last = new char[n];
+        int count = 0;
+        for (;;) {
+            char c = next();
+            if (c == 0 && this.myEnd) {
+                return;
+            }
+            last[count % n] = c;
+            count++;
+            if (count >= n && c == to.charAt(n - 1)) {
+                int i = 0;
+                while (i < n && last[(count + i) % n] == to.charAt(i)) {
+                    i++;
+                }
+                if (i == n) {
+                    return;
+                }
+            }
         }
     }
 
@@ -445,16 +614,21 @@ public class JSONTokener {
      * @return  A JSONException object, suitable for throwing
      */
     public JSONException syntaxError(String message) {
-        return new JSONException(message + toString());
+        return new JSONException(message + toString(), this.myReadError);
     }
 
 
     /**
      * Make a printable string of this JSONTokener.
      *
-     * @return " at character [this.myIndex] of [this.mySource]"
+     * @return " at character [this.myIndex] of [this.mySource]" for a
+     *      string source or " at character [this.myIndex] line [line]" for
+     *      a reader source
      */
     public String toString() {
-        return " at character " + this.myIndex + " of " + this.mySource;
+        if (this.mySource != null) {
+            return " at character " + this.myIndex + " of " + this.mySource;
+        }
+        return " at character " + this.myIndex + " line " + this.myLine;
     }
 }
\ No newline at end of file
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.json.io;
+
+import java.io.Reader;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONTokener;
+
+/**
+ * The <code>JSONParser</code> is a pull parser reporting a JSON text as a
+ * sequence of {@link Event events}, in the same way as the
+ * {@link JSONWriter} produces it. Unlike the <code>JSONObject</code> and
+ * <code>JSONArray</code> constructors the parser does not build the parsed
+ * structure in memory, so together with a reader based
+ * {@link JSONTokener} arbitrarily large texts can be processed in constant
+ * memory. For example <pre>
+ * JSONParser parser = new JSONParser(reader);
+ * while (parser.hasNext()) {
+ *     switch (parser.next()) {
+ *         case KEY:
+ *             String name = parser.getKey();
+ *             ...
+ *         case VALUE:
+ *             Object value = parser.getValue();
+ *             ...
+ *     }
+ * }</pre>
+ * <p>
+ * The parser accepts the same syntax as the <code>JSONObject</code> and
+ * <code>JSONArray</code> constructors, except for empty array elements. A
+ * text may consist of a sequence of values, for example one object per
+ * line; {@link #hasNext()} returns <code>false</code> once the last value
+ * has been completely read.
+ * <p>
+ * Instances of this class are not thread safe.
+ */
+public class JSONParser {
+
+    /**
+     * The events reported by the {@link JSONParser}.
+     */
+    public static enum Event {
+        /** The start of an object, that is a <code>{</code> */
+        START_OBJECT,
+        /** The end of an object, that is a <code>}</code> */
+        END_OBJECT,
+        /** The start of an array, that is a <code>[</code> */
+        START_ARRAY,
+        /** The end of an array, that is a <code>]</code> */
+        END_ARRAY,
+        /** The name of an object member, see {@link JSONParser#getKey()} */
+        KEY,
+        /** A simple value, see {@link JSONParser#getValue()} */
+        VALUE
+    }
+
+    /** The initial capacity of the nesting stack */
+    private static final int INITIAL_DEPTH = 16;
+
+    /** The current object or array is empty so far */
+    private static final byte FIRST = 0;
+
+    /** An element has been read, a separator or the end is expected */
+    private static final byte NEXT = 1;
+
+    /** A separator has been read, an element or the end is expected */
+    private static final byte SEPARATOR = 2;
+
+    private final JSONTokener x;
+
+    /** Whether the nested structure at each level is an object */
+    private boolean[] objects = new boolean[INITIAL_DEPTH];
+
+    /** The state of the nested structure at each level */
+    private byte[] states = new byte[INITIAL_DEPTH];
+
+    private int depth;
+
+    /** Whether a key has been read and its value is expected next */
+    private boolean afterKey;
+
+    private Event event;
+
+    private String key;
+
+    private Object value;
+
+    /**
+     * Creates a parser reading the JSON text from the given reader. The
+     * reader is not closed by the parser.
+     */
+    public JSONParser(Reader reader) {
+        this(new JSONTokener(reader));
+    }
+
+    /**
+     * Creates a parser reading the JSON text from the given tokener.
+     */
+    public JSONParser(JSONTokener x) {
+        this.x = x;
+    }
+
+    /**
+     * Returns <code>true</code> if there are more events, that is if the
+     * current value is not complete yet or another value follows.
+     * @throws JSONException If reading the source fails.
+     */
+    public boolean hasNext() throws JSONException {
+        if (depth > 0 || afterKey) {
+            return true;
+        }
+        if (x.nextClean() == 0) {
+            return false;
+        }
+        x.back();
+        return true;
+    }
+
+    /**
+     * Reads the next event.
+     * @return The event
+     * @throws JSONException If there is a syntax error or there are no
+     *      more events.
+     */
+    public Event next() throws JSONException {
+        value = null;
+        for (;;) {
+            char c = x.nextClean();
+            if (depth == 0 || afterKey) {
+                if (c == 0) {
+                    throw x.syntaxError(depth == 0
+                            ? "No more events"
+                            : "Missing value");
+                }
+                afterKey = false;
+                return startValue(c);
+            }
+
+            int level = depth - 1;
+            boolean isObject = objects[level];
+            if (c == (isObject ? '}' : ']')) {
+                depth--;
+                if (depth > 0) {
+                    states[depth - 1] = NEXT;
+                }
+                return event = (isObject ? Event.END_OBJECT : Event.END_ARRAY);
+            }
+            if (c == 0) {
+                throw x.syntaxError(isObject
+                        ? "A JSONObject text must end with '}'"
+                        : "A JSONArray text must end with ']'");
+            }
+
+            if (states[level] == NEXT) {
+                // elements are separated by ','; we also tolerate ';'
+                if (c != ',' && c != ';') {
+                    throw x.syntaxError(isObject
+                            ? "Expected a ',' or '}'"
+                            : "Expected a ',' or ']'");
+                }
+                states[level] = SEPARATOR;
+                continue;
+            }
+
+            if (isObject) {
+                return readKey(c);
+            }
+            return startValue(c);
+        }
+    }
+
+    /**
+     * Returns the current event or <code>null</code> if {@link #next()}
+     * has not been called yet.
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Returns the name of the object member reported by the last
+     * {@link Event#KEY} event. The name remains available while the value
+     * of the member is read, but is replaced by the names of any members of
+     * a nested object.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the value of the current {@link Event#VALUE} event. This is a
+     * <code>Boolean</code>, <code>Double</code>, <code>Integer</code>,
+     * <code>Long</code>, <code>String</code> or the
+     * <code>JSONObject.NULL</code> object, or <code>null</code> for any
+     * other event.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the value of the current {@link Event#VALUE} event as a
+     * string, or <code>null</code> for any other event.
+     */
+    public String getString() {
+        return (value == null) ? null : value.toString();
+    }
+
+    /**
+     * Returns the nesting level of the current event, which is zero for the
+     * start and end of the outermost object or array and for a simple value
+     * outside of any object or array.
+     */
+    public int getDepth() {
+        if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+            return depth - 1;
+        }
+        return depth;
+    }
+
+    /**
+     * Skips the children of the object or array just started. After this
+     * method returns the current event is the matching
+     * {@link Event#END_OBJECT} or {@link Event#END_ARRAY} event. If the
+     * current event is a {@link Event#KEY} event, the value of the member is
+     * skipped. Otherwise this method does nothing.
+     * @throws JSONException If there is a syntax error.
+     */
+    public void skipChildren() throws JSONException {
+        if (event == Event.KEY) {
+            if (next() == Event.VALUE) {
+                return;
+            }
+        } else if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+            return;
+        }
+
+        int level = depth;
+        while (depth >= level) {
+            next();
+        }
+    }
+
+    private Event readKey(char c) throws JSONException {
+        switch (c) {
+            case '"':
+            case '\'':
+                key = x.nextString(c);
+                break;
+            case '{':
+            case '[':
+                throw x.syntaxError("Expected a key");
+            default:
+                x.back();
+                key = x.nextValue().toString();
+        }
+
+        // the key is followed by ':'; we also tolerate '=' or '=>'
+        c = x.nextClean();
+        if (c == '=') {
+            if (x.next() != '>') {
+                x.back();
+            }
+        } else if (c != ':') {
+            throw x.syntaxError("Expected a ':' after a key");
+        }
+
+        afterKey = true;
+        return event = Event.KEY;
+    }
+
+    private Event startValue(char c) throws JSONException {
+        if (c == '{' || c == '[') {
+            if (depth == objects.length) {
+                boolean[] newObjects = new boolean[depth * 2];
+                System.arraycopy(objects, 0, newObjects, 0, depth);
+                objects = newObjects;
+                byte[] newStates = new byte[depth * 2];
+                System.arraycopy(states, 0, newStates, 0, depth);
+                states = newStates;
+            }
+            objects[depth] = (c == '{');
+            states[depth] = FIRST;
+            depth++;
+            return event = (c == '{') ? Event.START_OBJECT : Event.START_ARRAY;
+        }
+
+        if (c == ',' || c == ';' || c == ':' || c == '}' || c == ']') {
+            throw x.syntaxError("Missing value");
+        }
+        x.back();
+        value = x.nextValue();
+        if (depth > 0) {
+            states[depth - 1] = NEXT;
+        }
+        return event = Event.VALUE;
+    }
+}
@@ -17,8 +17,6 @@
 package org.apache.sling.commons.json.jcr;
 
 import java.io.Writer;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Locale;
 import java.util.Set;
@@ -34,21 +32,20 @@ import javax.jcr.ValueFormatException;
 
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.commons.json.util.EcmaDateFormat;
 
 /**
  * Dumps JCR Items as JSON data. The dump methods are threadsafe.
  */
 public class JsonItemWriter {
 
-    private static DateFormat calendarFormat;
-
     private final Set<String> propertyNamesToIgnore;
     
     /** Used to format date values */
-    public static final String ECMA_DATE_FORMAT = "EEE MMM dd yyyy HH:mm:ss 'GMT'Z";
+    public static final String ECMA_DATE_FORMAT = EcmaDateFormat.PATTERN;
     
     /** Used to format date values */
-    public static final Locale DATE_FORMAT_LOCALE = Locale.US;
+    public static final Locale DATE_FORMAT_LOCALE = EcmaDateFormat.LOCALE;
 
 
     /**
@@ -256,10 +253,11 @@ public class JsonItemWriter {
         }
     }
 
-    public static synchronized String format(Calendar date) {
-        if (calendarFormat == null) {
-            calendarFormat = new SimpleDateFormat(ECMA_DATE_FORMAT, DATE_FORMAT_LOCALE);
-        }
-        return calendarFormat.format(date.getTime());
+    /**
+     * Formats the date in the {@link #ECMA_DATE_FORMAT} format using the
+     * shared {@link EcmaDateFormat}, which requires no synchronization.
+     */
+    public static String format(Calendar date) {
+        return EcmaDateFormat.getInstance().format(date);
     }
 }
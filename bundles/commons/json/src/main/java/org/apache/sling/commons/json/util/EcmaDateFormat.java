@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.json.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The <code>EcmaDateFormat</code> formats dates in the format used for
+ * date values in JSON renderings, for example
+ * <code>Tue Oct 14 2008 10:23:45 GMT+0200</code>. This is the format
+ * produced by a <code>SimpleDateFormat</code> with the {@link #PATTERN}
+ * pattern and the {@link #LOCALE} locale, which can be parsed by the
+ * ECMAScript <code>Date</code> constructor.
+ * <p>
+ * Unlike a <code>SimpleDateFormat</code> instances of this class are thread
+ * safe and may be shared without synchronization. The date fields are
+ * computed directly from the time value and the text of the last formatted
+ * second is cached, so formatting the same second again, as happens for
+ * the creation and modification dates of content created together, just
+ * returns the cached text.
+ */
+public class EcmaDateFormat {
+
+    /** The pattern of the format for <code>SimpleDateFormat</code> */
+    public static final String PATTERN = "EEE MMM dd yyyy HH:mm:ss 'GMT'Z";
+
+    /** The locale of the format for <code>SimpleDateFormat</code> */
+    public static final Locale LOCALE = Locale.US;
+
+    private static final String[] DAYS = { "Sun", "Mon", "Tue", "Wed", "Thu",
+        "Fri", "Sat" };
+
+    private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr",
+        "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * The first and last time values formatted directly, that is UTC
+     * 1583-01-01 to 9999-12-30, leaving a day for the time zone offset.
+     * Before 1583 <code>SimpleDateFormat</code> uses the Julian calendar
+     * and after 9999 the year has more than four digits.
+     */
+    private static final long MIN_TIME = -12212553600000L;
+
+    private static final long MAX_TIME = 253402214399999L;
+
+    private static final EcmaDateFormat INSTANCE = new EcmaDateFormat(
+        TimeZone.getDefault());
+
+    private final TimeZone timeZone;
+
+    /** The last formatted second, replaced as a whole */
+    private volatile CachedSecond lastSecond;
+
+    /**
+     * Returns the shared instance formatting dates in the default time zone
+     * of the virtual machine at the time this class has been loaded.
+     */
+    public static EcmaDateFormat getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Creates a format for the given time zone.
+     */
+    public EcmaDateFormat(TimeZone timeZone) {
+        this.timeZone = (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * Formats the time of the given calendar in the time zone of this
+     * format.
+     */
+    public String format(Calendar date) {
+        return format(date.getTimeInMillis());
+    }
+
+    /**
+     * Formats the given date in the time zone of this format.
+     */
+    public String format(Date date) {
+        return format(date.getTime());
+    }
+
+    /**
+     * Formats the given time value in the time zone of this format.
+     */
+    public String format(long time) {
+        long second = floorDiv(time, 1000);
+        CachedSecond cached = lastSecond;
+        if (cached != null && cached.second == second) {
+            return cached.text;
+        }
+
+        String text;
+        if (time < MIN_TIME || time > MAX_TIME) {
+            SimpleDateFormat format = new SimpleDateFormat(PATTERN, LOCALE);
+            format.setTimeZone(timeZone);
+            text = format.format(new Date(time));
+        } else {
+            text = formatDirect(time);
+        }
+
+        lastSecond = new CachedSecond(second, text);
+        return text;
+    }
+
+    private String formatDirect(long time) {
+        int offset = timeZone.getOffset(time);
+        long local = time + offset;
+        long days = floorDiv(local, MILLIS_PER_DAY);
+        int secondOfDay = (int) ((local - days * MILLIS_PER_DAY) / 1000);
+
+        // the civil date of the day, 1970-01-01 being a Thursday
+        int dayOfWeek = (int) floorMod(days + 4, 7);
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+            - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra
+            - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = (mp < 10) ? mp + 3 : mp - 9;
+        int year = (int) (yearOfEra + era * 400) + ((month <= 2) ? 1 : 0);
+
+        char[] buf = new char[33];
+        append(buf, 0, DAYS[dayOfWeek]);
+        buf[3] = ' ';
+        append(buf, 4, MONTHS[month - 1]);
+        buf[7] = ' ';
+        append2(buf, 8, day);
+        buf[10] = ' ';
+        append2(buf, 11, year / 100);
+        append2(buf, 13, year % 100);
+        buf[15] = ' ';
+        append2(buf, 16, secondOfDay / 3600);
+        buf[18] = ':';
+        append2(buf, 19, (secondOfDay / 60) % 60);
+        buf[21] = ':';
+        append2(buf, 22, secondOfDay % 60);
+        append(buf, 24, " GMT");
+
+        // the offset in hours and minutes as with SimpleDateFormat
+        int offsetMinutes = offset / 60000;
+        if (offsetMinutes < 0) {
+            buf[28] = '-';
+            offsetMinutes = -offsetMinutes;
+        } else {
+            buf[28] = '+';
+        }
+        append2(buf, 29, offsetMinutes / 60);
+        append2(buf, 31, offsetMinutes % 60);
+
+        return new String(buf);
+    }
+
+    private static void append(char[] buf, int pos, String s) {
+        s.getChars(0, s.length(), buf, pos);
+    }
+
+    private static void append2(char[] buf, int pos, int value) {
+        buf[pos] = (char) ('0' + value / 10);
+        buf[pos + 1] = (char) ('0' + value % 10);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y) != 0 && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    private static final class CachedSecond {
+
+        final long second;
+
+        final String text;
+
+        CachedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.json;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+public class JSONTokenerTest extends TestCase {
+
+    private static final String JSON = "{\"a\":\"x\\u0041\", // comment\n"
+        + " \"b\": [1, 2.5, true, null], /* c */ \"c\": {\"d\": -3}}";
+
+    public void testReaderSameAsString() throws Exception {
+        JSONObject expected = new JSONObject(JSON);
+        JSONObject actual = new JSONObject(new JSONTokener(
+            new OneCharReader(JSON)));
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals("xA", actual.getString("a"));
+        assertEquals(4, actual.getJSONArray("b").length());
+        assertEquals(-3, actual.getJSONObject("c").getInt("d"));
+    }
+
+    public void testLargeDocument() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i > 0 ? "," : "").append("\"value").append(i).append('"');
+        }
+        json.append(']');
+        JSONArray array = new JSONArray(new JSONTokener(new StringReader(
+            json.toString())));
+        assertEquals(5000, array.length());
+        assertEquals("value4999", array.getString(4999));
+    }
+
+    public void testBackAtEnd() throws Exception {
+        JSONTokener x = new JSONTokener(new StringReader("ab"));
+        assertEquals('a', x.next());
+        assertEquals('b', x.next());
+        assertEquals(0, x.next());
+        x.back();
+        assertEquals(0, x.next());
+        assertFalse(x.more());
+    }
+
+    public void testSkipTo() throws Exception {
+        JSONTokener x = new JSONTokener(new OneCharReader("abcdef"));
+        assertEquals('a', x.next());
+        assertEquals(0, x.skipTo('z'));
+        assertEquals('b', x.next());
+        assertEquals('e', x.skipTo('e'));
+        assertEquals('e', x.next());
+    }
+
+    public void testSkipPast() throws Exception {
+        JSONTokener x = new JSONTokener(new OneCharReader("a--->b"));
+        x.skipPast("-->");
+        assertEquals('b', x.next());
+        x.skipPast("x");
+        assertFalse(x.more());
+    }
+
+    public void testNext() throws Exception {
+        JSONTokener x = new JSONTokener(new OneCharReader("abcd"));
+        assertEquals("abcd", x.next(4));
+        assertFalse(x.more());
+        try {
+            new JSONTokener(new StringReader("abc")).next(4);
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            // expected
+        }
+    }
+
+    public void testSyntaxErrorLine() throws Exception {
+        try {
+            new JSONObject(new JSONTokener(new StringReader("{\"a\":1,\n\"b\"}")));
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            assertTrue(je.getMessage(), je.getMessage().endsWith("line 2"));
+        }
+    }
+
+    public void testReadError() throws Exception {
+        Reader reader = new FilterReader(new StringReader("{\"a\":")) {
+            private boolean failed;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (failed) {
+                    return super.read(cbuf, off, len);
+                }
+                failed = true;
+                throw new IOException("broken");
+            }
+        };
+        try {
+            new JSONObject(new JSONTokener(reader));
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            assertTrue(je.getCause() instanceof IOException);
+        }
+    }
+
+    /**
+     * A reader returning a single character per read call to exercise the
+     * buffer handling of the tokener.
+     */
+    static class OneCharReader extends StringReader {
+
+        OneCharReader(String s) {
+            super(s);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+}
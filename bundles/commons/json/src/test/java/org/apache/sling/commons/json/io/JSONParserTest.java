@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.json.io;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.io.JSONParser.Event;
+
+public class JSONParserTest extends TestCase {
+
+    public void testEvents() throws Exception {
+        JSONParser p = parser("{\"a\": 1, \"b\": [true, null, \"s\"], \"c\": {}}");
+        assertEquals(Event.START_OBJECT, p.next());
+        assertEquals(0, p.getDepth());
+        assertEquals(Event.KEY, p.next());
+        assertEquals("a", p.getKey());
+        assertEquals(Event.VALUE, p.next());
+        assertEquals(new Integer(1), p.getValue());
+        assertEquals(1, p.getDepth());
+        assertEquals(Event.KEY, p.next());
+        assertEquals("b", p.getKey());
+        assertEquals(Event.START_ARRAY, p.next());
+        assertEquals(1, p.getDepth());
+        assertEquals(Event.VALUE, p.next());
+        assertEquals(Boolean.TRUE, p.getValue());
+        assertEquals(Event.VALUE, p.next());
+        assertEquals(JSONObject.NULL, p.getValue());
+        assertEquals(Event.VALUE, p.next());
+        assertEquals("s", p.getString());
+        assertEquals(Event.END_ARRAY, p.next());
+        assertEquals(Event.KEY, p.next());
+        assertEquals("c", p.getKey());
+        assertEquals(Event.START_OBJECT, p.next());
+        assertEquals(Event.END_OBJECT, p.next());
+        assertNull(p.getValue());
+        assertEquals(Event.END_OBJECT, p.next());
+        assertEquals(0, p.getDepth());
+        assertFalse(p.hasNext());
+    }
+
+    public void testValueSequence() throws Exception {
+        JSONParser p = parser("{\"a\":1}\n{\"a\":2}\n\n42\n");
+        int objects = 0;
+        int values = 0;
+        while (p.hasNext()) {
+            Event e = p.next();
+            if (e == Event.START_OBJECT) {
+                objects++;
+            } else if (e == Event.VALUE) {
+                values++;
+            }
+        }
+        assertEquals(2, objects);
+        assertEquals(3, values);
+        assertEquals(new Integer(42), p.getValue());
+    }
+
+    public void testSkipChildren() throws Exception {
+        JSONParser p = parser("{\"a\": {\"b\": [1, {\"c\": 2}]}, \"d\": [3], \"e\": 4}");
+        assertEquals(Event.START_OBJECT, p.next());
+        assertEquals(Event.KEY, p.next());
+        assertEquals(Event.START_OBJECT, p.next());
+        p.skipChildren();
+        assertEquals(Event.END_OBJECT, p.getEvent());
+        assertEquals(Event.KEY, p.next());
+        assertEquals("d", p.getKey());
+        p.skipChildren();
+        assertEquals(Event.END_ARRAY, p.getEvent());
+        assertEquals(Event.KEY, p.next());
+        assertEquals("e", p.getKey());
+        assertEquals(Event.VALUE, p.next());
+        assertEquals(Event.END_OBJECT, p.next());
+        assertFalse(p.hasNext());
+    }
+
+    public void testDeepNesting() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            json.append('[');
+        }
+        for (int i = 0; i < 100; i++) {
+            json.append(']');
+        }
+        JSONParser p = parser(json.toString());
+        int events = 0;
+        while (p.hasNext()) {
+            p.next();
+            events++;
+        }
+        assertEquals(200, events);
+    }
+
+    public void testSyntaxErrors() throws Exception {
+        assertSyntaxError("{\"a\" 1}");
+        assertSyntaxError("{\"a\":1 \"b\":2}");
+        assertSyntaxError("[1,2");
+        assertSyntaxError("{\"a\":}");
+        assertSyntaxError("{{}:1}");
+    }
+
+    private void assertSyntaxError(String json) {
+        JSONParser p = parser(json);
+        try {
+            while (p.hasNext()) {
+                p.next();
+            }
+            fail("Expected JSONException for " + json);
+        } catch (JSONException je) {
+            // expected
+        }
+    }
+
+    private JSONParser parser(String json) {
+        return new JSONParser(new StringReader(json));
+    }
+}
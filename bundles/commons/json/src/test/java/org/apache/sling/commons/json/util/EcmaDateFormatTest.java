@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.json.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+public class EcmaDateFormatTest extends TestCase {
+
+    private static final String[] ZONES = { "UTC", "Europe/Zurich",
+        "America/Los_Angeles", "Asia/Kolkata", "Australia/Lord_Howe",
+        "Pacific/Kiritimati", "Pacific/Pago_Pago" };
+
+    public void testSameAsSimpleDateFormat() {
+        Random random = new Random(42);
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            EcmaDateFormat format = new EcmaDateFormat(zone);
+            SimpleDateFormat expected = new SimpleDateFormat(
+                EcmaDateFormat.PATTERN, EcmaDateFormat.LOCALE);
+            expected.setTimeZone(zone);
+            for (int i = 0; i < 20000; i++) {
+                // times from the 16th to the 22nd century
+                long time = (long) ((random.nextDouble() - 0.5) * 2.0E13);
+                assertEquals(id + " " + time,
+                    expected.format(new Date(time)), format.format(time));
+            }
+        }
+    }
+
+    public void testBoundaries() {
+        TimeZone zone = TimeZone.getTimeZone("Europe/Zurich");
+        EcmaDateFormat format = new EcmaDateFormat(zone);
+        SimpleDateFormat expected = new SimpleDateFormat(
+            EcmaDateFormat.PATTERN, EcmaDateFormat.LOCALE);
+        expected.setTimeZone(zone);
+        long[] times = { 0, -1, 999, 1000, -12219292800000L,
+            -12212553600001L, -12212553600000L, 253402214399999L,
+            253402214400000L, 253402300799999L };
+        for (long time : times) {
+            assertEquals(String.valueOf(time), expected.format(new Date(time)),
+                format.format(time));
+        }
+    }
+
+    public void testCachedSecond() {
+        EcmaDateFormat format = new EcmaDateFormat(TimeZone.getTimeZone("UTC"));
+        String text = format.format(1224000000000L);
+        assertEquals("Tue Oct 14 2008 16:00:00 GMT+0000", text);
+        assertSame(text, format.format(1224000000999L));
+        assertEquals("Tue Oct 14 2008 16:00:01 GMT+0000",
+            format.format(1224000001000L));
+    }
+
+    public void testCalendar() {
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT+02:00"));
+        cal.setTimeInMillis(1224000000000L);
+        assertEquals("Tue Oct 14 2008 16:00:00 GMT+0000", new EcmaDateFormat(
+            TimeZone.getTimeZone("UTC")).format(cal));
+    }
+
+    public void testConcurrentUse() throws Exception {
+        final EcmaDateFormat format = EcmaDateFormat.getInstance();
+        final String[] failure = new String[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long base = 1224000000000L + t * 86400000L;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    SimpleDateFormat expected = new SimpleDateFormat(
+                        EcmaDateFormat.PATTERN, EcmaDateFormat.LOCALE);
+                    for (int i = 0; i < 10000; i++) {
+                        long time = base + i * 500L;
+                        String text = format.format(time);
+                        if (!text.equals(expected.format(new Date(time)))) {
+                            failure[0] = text;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure[0]);
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.sling.commons.log.internal;
 import java.util.Dictionary;
 import java.util.Hashtable;
 
+import org.apache.sling.commons.log.internal.slf4j.LogWriterConsolePlugin;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -60,9 +61,22 @@ public class Activator implements BundleActivator {
             "Apache Sling LogReaderService implementation");
         props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
         context.registerService(LogReaderService.class.getName(), lrsf, props);
+
+        // the web console is optional
+        try {
+            LogWriterConsolePlugin.initPlugin(context);
+        } catch (Throwable t) {
+            // web console or servlet API not available
+        }
     }
 
     public void stop(BundleContext context) throws Exception {
+        try {
+            LogWriterConsolePlugin.destroyPlugin();
+        } catch (Throwable t) {
+            // web console or servlet API not available
+        }
+
         if (logSupport != null) {
             logSupport.shutdown();
             logSupport = null;
@@ -43,6 +43,10 @@ public class LogManager {
 
     public static final String LOG_FILE_SIZE = "org.apache.sling.commons.log.file.size";
 
+    public static final String LOG_FILE_ASYNC = "org.apache.sling.commons.log.file.async";
+
+    public static final String LOG_FILE_ASYNC_QUEUE_SIZE = "org.apache.sling.commons.log.file.async.queuesize";
+
     public static final String LOG_PATTERN = "org.apache.sling.commons.log.pattern";
 
     public static final String LOG_PATTERN_DEFAULT = "{0,date,dd.MM.yyyy HH:mm:ss.SSS} *{4}* [{2}] {3} {5}";
@@ -55,6 +59,8 @@ public class LogManager {
 
     public static final String LOG_FILE_SIZE_DEFAULT = "10M";
 
+    public static final int LOG_FILE_ASYNC_QUEUE_SIZE_DEFAULT = 8192;
+
     public static final String PID = "org.apache.sling.commons.log.LogManager";
 
     public static final String FACTORY_PID_WRITERS = PID + ".factory.writer";
@@ -144,7 +150,8 @@ public class LogManager {
         Dictionary<String, String> config = new Hashtable<String, String>();
 
         final String[] props = { LOG_LEVEL, LOG_LEVEL, LOG_FILE,
-            LOG_FILE_NUMBER, LOG_FILE_SIZE, LOG_PATTERN };
+            LOG_FILE_NUMBER, LOG_FILE_SIZE, LOG_FILE_ASYNC,
+            LOG_FILE_ASYNC_QUEUE_SIZE, LOG_PATTERN };
         for (String prop : props) {
             String value = bundleContext.getProperty(prop);
             if (value != null) {
@@ -21,6 +21,7 @@ package org.apache.sling.commons.log.internal.slf4j;
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Dictionary;
 import java.util.HashMap;
@@ -143,6 +144,17 @@ public class LogConfigManager implements ILoggerFactory {
      * After this methods is called, this instance should not be used again.
      */
     public void close() {
+        // close the configured writers, writing any queued messages
+        for (SlingLoggerWriter writer : writerByPid.values()) {
+            if (writer != defaultWriter) {
+                try {
+                    writer.close();
+                } catch (IOException ignore) {
+                    // don't care for this
+                }
+            }
+        }
+
         writerByPid.clear();
         writerByFileName.clear();
         configByPid.clear();
@@ -162,6 +174,13 @@ public class LogConfigManager implements ILoggerFactory {
         }
     }
 
+    /**
+     * Returns a copy of the currently configured log writers.
+     */
+    Collection<SlingLoggerWriter> getLogWriters() {
+        return new ArrayList<SlingLoggerWriter>(writerByPid.values());
+    }
+
     // ---------- ILoggerFactory -----------------------------------------------
 
     /**
@@ -213,6 +232,16 @@ public class LogConfigManager implements ILoggerFactory {
      * cannot be converted to a number, the default value
      * {@link LogManager#LOG_FILE_NUMBER_DEFAULT} is assumed. If the writer
      * writes standard output this property is ignored.</dd>
+     * <dt>{@link LogManager#LOG_FILE_ASYNC}</dt>
+     * <dd>Whether log messages are queued and written to the file by a
+     * dedicated thread instead of the logging thread. If this property is
+     * missing, messages are written synchronously.</dd>
+     * <dt>{@link LogManager#LOG_FILE_ASYNC_QUEUE_SIZE}</dt>
+     * <dd>The maximum number of messages queued for asynchronous writing.
+     * Further messages are dropped until the queue has been drained. If this
+     * property is missing or cannot be converted to a positive number, the
+     * default value {@link LogManager#LOG_FILE_ASYNC_QUEUE_SIZE_DEFAULT} is
+     * assumed.</dd>
      * </dl>
      * 
      * @param pid The identifier of the log writer to update or remove
@@ -280,17 +309,40 @@ public class LogConfigManager implements ILoggerFactory {
                 fileSize = LogManager.LOG_FILE_SIZE_DEFAULT;
             }
 
+            // get the asynchronous writing settings
+            Object asyncProp = configuration.get(LogManager.LOG_FILE_ASYNC);
+            boolean async = (asyncProp instanceof Boolean)
+                    ? ((Boolean) asyncProp).booleanValue()
+                    : Boolean.valueOf(String.valueOf(asyncProp)).booleanValue();
+
+            Object queueSizeProp = configuration.get(LogManager.LOG_FILE_ASYNC_QUEUE_SIZE);
+            int queueSize = -1;
+            if (queueSizeProp instanceof Number) {
+                queueSize = ((Number) queueSizeProp).intValue();
+            } else if (queueSizeProp != null) {
+                try {
+                    queueSize = Integer.parseInt(queueSizeProp.toString());
+                } catch (NumberFormatException nfe) {
+                    // don't care
+                }
+            }
+            if (queueSize <= 0) {
+                queueSize = LogManager.LOG_FILE_ASYNC_QUEUE_SIZE_DEFAULT;
+            }
+
             try {
                 if (slw == null) {
                     slw = new SlingLoggerWriter(pid);
-                    slw.configure(logFileName, fileNum, fileSize);
+                    slw.configure(logFileName, fileNum, fileSize, async,
+                        queueSize);
                     writerByPid.put(pid, slw);
 
                     if (logFileName != null) {
                         writerByFileName.put(logFileName, slw);
                     }
                 } else {
-                    slw.configure(logFileName, fileNum, fileSize);
+                    slw.configure(logFileName, fileNum, fileSize, async,
+                        queueSize);
                 }
             } catch (IOException ioe) {
                 internalFailure("Cannot create log file " + logFileName, ioe);
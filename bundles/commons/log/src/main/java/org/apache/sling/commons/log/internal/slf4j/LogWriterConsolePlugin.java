@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.commons.log.internal.slf4j;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.webconsole.AbstractWebConsolePlugin;
+import org.apache.felix.webconsole.WebConsoleConstants;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * The <code>LogWriterConsolePlugin</code> is a Felix Web Console plugin
+ * listing the configured log writers together with the queue depth and the
+ * numbers of written and dropped messages of asynchronous writers.
+ * <p>
+ * The web console is an optional dependency of this bundle. If its classes
+ * are not available, the {@link #initPlugin(BundleContext)} method fails with
+ * a <code>NoClassDefFoundError</code>, which the caller is expected to
+ * ignore.
+ */
+@SuppressWarnings("serial")
+public class LogWriterConsolePlugin extends AbstractWebConsolePlugin {
+
+    public static final String LABEL = "logwriters";
+
+    private static LogWriterConsolePlugin instance;
+
+    private ServiceRegistration serviceRegistration;
+
+    private LogWriterConsolePlugin() {
+    }
+
+    public static void initPlugin(BundleContext context) {
+        if (instance == null) {
+            LogWriterConsolePlugin tmp = new LogWriterConsolePlugin();
+            tmp.activate(context);
+            instance = tmp;
+        }
+    }
+
+    public static void destroyPlugin() {
+        if (instance != null) {
+            try {
+                instance.deactivate();
+            } finally {
+                instance = null;
+            }
+        }
+    }
+
+    public void activate(BundleContext context) {
+        super.activate(context);
+
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_DESCRIPTION,
+            "Web Console Plugin to display the Sling log writers");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        props.put(Constants.SERVICE_PID, getClass().getName());
+        props.put(WebConsoleConstants.PLUGIN_LABEL, LABEL);
+
+        serviceRegistration = context.registerService(
+            WebConsoleConstants.SERVICE_NAME, this, props);
+    }
+
+    public void deactivate() {
+        if (serviceRegistration != null) {
+            serviceRegistration.unregister();
+            serviceRegistration = null;
+        }
+        super.deactivate();
+    }
+
+    @Override
+    public String getLabel() {
+        return LABEL;
+    }
+
+    @Override
+    public String getTitle() {
+        return "Log Writers";
+    }
+
+    @Override
+    protected void renderContent(HttpServletRequest req,
+            HttpServletResponse res) throws ServletException, IOException {
+        final PrintWriter pw = res.getWriter();
+
+        pw.println("<table class='content' cellpadding='0' cellspacing='0' width='100%'>");
+        pw.println("<tr class='content'>");
+        pw.println("<th colspan='8' class='content container'>Log Writers</th>");
+        pw.println("</tr>");
+        pw.println("<tr class='content'>");
+        pw.println("<th class='content'>Configuration</th>");
+        pw.println("<th class='content'>File</th>");
+        pw.println("<th class='content'>Mode</th>");
+        pw.println("<th class='content'>Queue Depth</th>");
+        pw.println("<th class='content'>Queue Capacity</th>");
+        pw.println("<th class='content'>Written</th>");
+        pw.println("<th class='content'>Dropped</th>");
+        pw.println("<th class='content'>Batches</th>");
+        pw.println("</tr>");
+
+        LogConfigManager logConfigManager = LogConfigManager.getInstance();
+        for (SlingLoggerWriter writer : logConfigManager.getLogWriters()) {
+            boolean async = writer.isAsync();
+            String path = writer.getPath();
+            pw.println("<tr class='content'>");
+            printCell(pw, escape(writer.getConfigurationPID()));
+            printCell(pw, (path == null) ? "(console)" : escape(path));
+            printCell(pw, async ? "asynchronous" : "synchronous");
+            printCell(pw, async ? String.valueOf(writer.getQueueDepth()) : "-");
+            printCell(pw, async
+                    ? String.valueOf(writer.getQueueCapacity())
+                    : "-");
+            printCell(pw, String.valueOf(writer.getWrittenCount()));
+            printCell(pw, String.valueOf(writer.getDroppedCount()));
+            printCell(pw, String.valueOf(writer.getBatchCount()));
+            pw.println("</tr>");
+        }
+
+        pw.println("</table>");
+    }
+
+    private void printCell(PrintWriter pw, String value) {
+        pw.print("<td class='content'>");
+        pw.print(value);
+        pw.println("</td>");
+    }
+
+    private String escape(String value) {
+        StringBuilder buf = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                    buf.append("&lt;");
+                    break;
+                case '>':
+                    buf.append("&gt;");
+                    break;
+                case '&':
+                    buf.append("&amp;");
+                    break;
+                default:
+                    buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -106,21 +106,11 @@ class SlingLoggerConfig {
         // use a local copy because the field may be exchanged while we are
         // trying to use it
         SlingLoggerWriter myOutput = writer;
-        synchronized (myOutput) {
-            try {
-                myOutput.write(message);
-
-                // write line termination or flush, whatever is needed
-                if (needsEOL) {
-                    myOutput.writeln();
-                } else {
-                    myOutput.flush();
-                }
-
-            } catch (IOException ioe) {
-                LogConfigManager.internalFailure("Failed logging message: "
-                    + message, ioe);
-            }
+        try {
+            myOutput.writeMessage(message, needsEOL);
+        } catch (IOException ioe) {
+            LogConfigManager.internalFailure("Failed logging message: "
+                + message, ioe);
         }
     }
 
@@ -23,12 +23,25 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The <code>SlingLoggerWriter</code> abstract the output writing functionality
  * for the Sling Logging implementation. This class is able to write to log
  * files and manage log file rotation for these files. Alternatively this class
  * supports writing to the standard output if no log file name is configured.
+ * <p>
+ * In asynchronous mode the messages written with
+ * {@link #writeMessage(String, boolean)} are not written by the logging
+ * thread but added to a queue without blocking. A dedicated thread drains the
+ * queue, writes the messages in batches and flushes the output and checks for
+ * log file rotation once per batch. If the queue is full, messages are
+ * dropped and counted. The number of dropped messages is reported as an
+ * internal failure at most once per minute.
  */
 class SlingLoggerWriter extends Writer {
 
@@ -38,6 +51,15 @@ class SlingLoggerWriter extends Writer {
 
     private static final long FACTOR_GB = 1024 * FACTOR_MB;
 
+    /** The maximum number of messages written before flushing the output */
+    private static final int MAX_BATCH_SIZE = 512;
+
+    /** The nanoseconds the idle drain thread waits for new messages */
+    private static final long IDLE_WAIT = 1000L * 1000 * 1000;
+
+    /** The minimum milliseconds between reports of dropped messages */
+    private static final long DROP_REPORT_INTERVAL = 60 * 1000L;
+
     /**
      * The string to place at the end of a line. This is a platform specific
      * string set from the <code>line.separator</code> system property.
@@ -86,15 +108,59 @@ class SlingLoggerWriter extends Writer {
      */
     private int maxNum;
 
+    /**
+     * The messages queued in asynchronous mode, each including the line
+     * separator if required.
+     */
+    private final Queue<String> queue = new ConcurrentLinkedQueue<String>();
+
+    /** The number of messages in the {@link #queue} */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /** The maximum number of queued messages in asynchronous mode */
+    private volatile int queueCapacity;
+
+    /**
+     * The thread draining the {@link #queue} or <code>null</code> if this
+     * instance writes synchronously.
+     */
+    private volatile Thread drainer;
+
+    /** Whether the drain thread waits for messages and must be woken up */
+    private volatile boolean drainerIdle;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /** The number of dropped messages last reported as internal failure */
+    private long reportedDropped;
+
+    /** The time dropped messages have last been reported */
+    private long lastDropReport;
+
     /**
      * Creates a new instance of this class to be configured from the given
      * <code>configurationPID</code>. This new instance is not ready until
-     * the {@link #configure(String, int, String)} method is being called.
+     * the {@link #configure(String, int, String, boolean, int)} method is
+     * being called.
      */
     SlingLoggerWriter(String configurationPID) {
         this.configurationPID = configurationPID;
     }
 
+    /**
+     * (Re)configures this instance to synchronously log to the given file.
+     *
+     * @see #configure(String, int, String, boolean, int)
+     */
+    void configure(String logFileName, int fileNum, String fileSize)
+            throws IOException {
+        configure(logFileName, fileNum, fileSize, false, 0);
+    }
+
     /**
      * (Re)configures this instance to log to the given file.
      * 
@@ -104,11 +170,15 @@ class SlingLoggerWriter extends Writer {
      *            ignored if <code>logFileName</code> is <code>null</code>.
      * @param fileSize The maximum size of the log file before rotating it. This
      *            is ignored if <code>logFileName</code> is <code>null</code>.
+     * @param async Whether messages are queued and written by a dedicated
+     *            thread.
+     * @param queueSize The maximum number of queued messages. This is
+     *            ignored unless <code>async</code> is <code>true</code>.
      * @throws IOException May be thrown if the file indicated by
      *             <code>logFileName</code> cannot be opened for writing.
      */
-    void configure(String logFileName, int fileNum, String fileSize)
-            throws IOException {
+    void configure(String logFileName, int fileNum, String fileSize,
+            boolean async, int queueSize) throws IOException {
 
         // lock this instance while reconfiguring it
         synchronized (lock) {
@@ -152,6 +222,14 @@ class SlingLoggerWriter extends Writer {
 
             // check whether the new values cause different rotation
             checkRotate();
+
+            // start or stop writing asynchronously
+            this.queueCapacity = Math.max(queueSize, 1);
+            if (async) {
+                startDrainer();
+            } else {
+                stopDrainer();
+            }
         }
     }
 
@@ -171,11 +249,86 @@ class SlingLoggerWriter extends Writer {
         return maxNum;
     }
 
+    boolean isAsync() {
+        return drainer != null;
+    }
+
+    int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    int getQueueCapacity() {
+        return isAsync() ? queueCapacity : 0;
+    }
+
+    long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Writes a complete log message. In synchronous mode the message is
+     * written and the output is flushed before this method returns. In
+     * asynchronous mode the message is queued for the drain thread or
+     * dropped if the queue is full.
+     *
+     * @param message The formatted message
+     * @param needsEOL Whether the line separator has to be written after the
+     *            message.
+     * @throws IOException If writing the message synchronously fails.
+     */
+    void writeMessage(String message, boolean needsEOL) throws IOException {
+        Thread myDrainer = drainer;
+        if (myDrainer == null) {
+            synchronized (lock) {
+                write(message);
+                writtenCount.incrementAndGet();
+
+                // write line termination or flush, whatever is needed
+                if (needsEOL) {
+                    writeln();
+                } else {
+                    flush();
+                }
+            }
+            return;
+        }
+
+        if (queueDepth.incrementAndGet() > queueCapacity) {
+            queueDepth.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        queue.offer(needsEOL ? message.concat(LINE_SEPARATOR) : message);
+        if (drainerIdle) {
+            LockSupport.unpark(myDrainer);
+        }
+
+        // the drain thread may have been stopped while queueing the message
+        if (drainer == null) {
+            synchronized (lock) {
+                while (drainBatch() > 0) {
+                    // write all
+                }
+            }
+        }
+    }
+
     // ---------- Writer Overwrite ---------------------------------------------
 
     @Override
     public void close() throws IOException {
         synchronized (lock) {
+            stopDrainer();
+
             if (delegatee != null) {
                 flush();
 
@@ -301,6 +454,106 @@ class SlingLoggerWriter extends Writer {
         }
     }
 
+    /**
+     * Starts the drain thread unless it is already running. Must be called
+     * while the lock is held !!
+     */
+    private void startDrainer() {
+        if (drainer == null) {
+            Thread thread = new Thread("Sling Log Writer " + configurationPID) {
+                @Override
+                public void run() {
+                    drain(this);
+                }
+            };
+            thread.setDaemon(true);
+            drainer = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the drain thread and writes the messages still queued. Must be
+     * called while the lock is held !!
+     */
+    private void stopDrainer() throws IOException {
+        Thread myDrainer = drainer;
+        if (myDrainer != null) {
+            drainer = null;
+            LockSupport.unpark(myDrainer);
+            while (drainBatch() > 0) {
+                // write all
+            }
+        }
+    }
+
+    /**
+     * The main loop of the drain thread, running until the thread is not the
+     * {@link #drainer} any more.
+     */
+    private void drain(Thread self) {
+        while (drainer == self) {
+            if (queue.isEmpty()) {
+                // announce waiting before checking again, such that a message
+                // queued in the meantime either is seen or wakes us up
+                drainerIdle = true;
+                if (queue.isEmpty() && drainer == self) {
+                    LockSupport.parkNanos(IDLE_WAIT);
+                }
+                drainerIdle = false;
+                continue;
+            }
+
+            try {
+                synchronized (lock) {
+                    drainBatch();
+                }
+            } catch (IOException ioe) {
+                LogConfigManager.internalFailure("Failed writing log messages",
+                    ioe);
+            }
+
+            long dropped = droppedCount.get();
+            if (dropped != reportedDropped) {
+                long now = System.currentTimeMillis();
+                if (now - lastDropReport >= DROP_REPORT_INTERVAL) {
+                    LogConfigManager.internalFailure((dropped - reportedDropped)
+                        + " log messages dropped (" + dropped
+                        + " in total), the queue of log writer "
+                        + configurationPID + " is full", null);
+                    reportedDropped = dropped;
+                    lastDropReport = now;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes up to {@link #MAX_BATCH_SIZE} queued messages and flushes the
+     * output, which also checks for log file rotation, once after writing
+     * them. Must be called while the lock is held !!
+     *
+     * @return The number of messages taken from the queue
+     */
+    private int drainBatch() throws IOException {
+        int count = 0;
+        String message;
+        while (count < MAX_BATCH_SIZE && (message = queue.poll()) != null) {
+            queueDepth.decrementAndGet();
+            count++;
+            if (delegatee != null) {
+                delegatee.write(message);
+            }
+        }
+
+        if (count > 0) {
+            writtenCount.addAndGet(count);
+            batchCount.incrementAndGet();
+            flush();
+        }
+        return count;
+    }
+
     /**
      * Must be called while the lock is held !!
      */
@@ -19,7 +19,9 @@
 package org.apache.sling.commons.log.internal.slf4j;
 
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 
 import junit.framework.TestCase;
 
@@ -152,6 +154,81 @@ public class SlingLogWriterTest extends TestCase {
         assertFalse(testn1.exists());
     }
 
+    public void testAsyncWrite() throws IOException {
+        final String base = getBase();
+        SlingLoggerWriter slfw = new SlingLoggerWriter(getClass().getName());
+        slfw.configure(base, 1, "1M", true, 100);
+        assertTrue(slfw.isAsync());
+        assertEquals(100, slfw.getQueueCapacity());
+
+        for (int i = 0; i < 50; i++) {
+            slfw.writeMessage("message " + i, true);
+        }
+        slfw.close();
+        assertFalse(slfw.isAsync());
+
+        assertEquals(50, slfw.getWrittenCount());
+        assertEquals(0, slfw.getDroppedCount());
+        assertEquals(0, slfw.getQueueDepth());
+        assertTrue(slfw.getBatchCount() >= 1);
+
+        String content = read(new File(base));
+        assertTrue(content.startsWith("message 0"));
+        assertTrue(content.trim().endsWith("message 49"));
+    }
+
+    public void testAsyncRotate() throws IOException {
+        final String base = getBase();
+        SlingLoggerWriter slfw = new SlingLoggerWriter(getClass().getName());
+        slfw.configure(base, 1, "10", true, 100);
+
+        slfw.writeMessage("012345", true);
+        slfw.writeMessage("012345", true);
+        slfw.close();
+
+        File test = new File(base);
+        assertTrue(test.exists());
+        assertEquals(0, test.length());
+        assertTrue(new File(base + ".0").exists());
+    }
+
+    public void testAsyncDrop() throws IOException {
+        final String base = getBase();
+        SlingLoggerWriter slfw = new SlingLoggerWriter(getClass().getName());
+        slfw.configure(base, 1, "1M", true, 1);
+
+        // the drain thread cannot write while the lock is held
+        synchronized (slfw.lock) {
+            slfw.writeMessage("first", true);
+            slfw.writeMessage("second", true);
+            slfw.writeMessage("third", true);
+            assertEquals(1, slfw.getQueueDepth());
+            assertEquals(2, slfw.getDroppedCount());
+        }
+        slfw.close();
+
+        assertEquals(1, slfw.getWrittenCount());
+        assertEquals("first", read(new File(base)).trim());
+    }
+
+    public void testSwitchToSync() throws IOException {
+        final String base = getBase();
+        SlingLoggerWriter slfw = new SlingLoggerWriter(getClass().getName());
+        slfw.configure(base, 1, "1M", true, 100);
+        slfw.writeMessage("async", true);
+
+        slfw.configure(base, 1, "1M", false, 100);
+        assertFalse(slfw.isAsync());
+        assertEquals(0, slfw.getQueueCapacity());
+
+        // the queued message is written before the synchronous one
+        slfw.writeMessage("sync", true);
+        String content = read(new File(base));
+        assertTrue(content.startsWith("async"));
+        assertTrue(content.trim().endsWith("sync"));
+        slfw.close();
+    }
+
     public void testMaxSizeConversion() {
         assertEquals(1, SlingLoggerWriter.convertMaxSizeSpec("1"));
 
@@ -178,6 +255,21 @@ public class SlingLogWriterTest extends TestCase {
             SlingLoggerWriter.convertMaxSizeSpec("1gb"));
     }
 
+    private String read(File file) throws IOException {
+        Reader reader = new FileReader(file);
+        try {
+            StringBuilder buf = new StringBuilder();
+            char[] cbuf = new char[1024];
+            int rd;
+            while ((rd = reader.read(cbuf)) >= 0) {
+                buf.append(cbuf, 0, rd);
+            }
+            return buf.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
     private SlingLoggerWriter createLogWriter(String file, int numFiles, long size)
             throws IOException {
         SlingLoggerWriter slw = new SlingLoggerWriter(getClass().getName());
@@ -36,6 +36,29 @@ import javax.servlet.http.HttpServletResponse;
  */
 public interface Authenticator {
 
+    /**
+     * The topic of the OSGi event to post when the credentials of a user have
+     * changed, for example when the password of the user has been changed
+     * (value is "org/apache/sling/engine/auth/CREDENTIALS_CHANGED"). The
+     * authenticator will then not accept the old credentials from any cache
+     * anymore.
+     * <p>
+     * The event should have a {@link #PROPERTY_USER_ID} property. If the
+     * property is missing, the old credentials of all users are dropped.
+     *
+     * @since 2.0.5
+     */
+    String TOPIC_CREDENTIALS_CHANGED = "org/apache/sling/engine/auth/CREDENTIALS_CHANGED";
+
+    /**
+     * The name of the property of the {@link #TOPIC_CREDENTIALS_CHANGED}
+     * event containing the ID of the user whose credentials have changed
+     * (value is "userid").
+     *
+     * @since 2.0.5
+     */
+    String PROPERTY_USER_ID = "userid";
+
     /**
      * Finds an {@link AuthenticationHandler} for the given request and call its
      * {@link AuthenticationHandler#requestAuthentication(HttpServletRequest, HttpServletResponse)}
@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.auth;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.jcr.Credentials;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>AuthenticationCache</code> keeps a session for recently
+ * authenticated credentials for a limited time. Further logins with the same
+ * credentials get a copy of that session, created by impersonating the user
+ * of the session, instead of logging in to the repository again, which would
+ * verify the password.
+ * <p>
+ * Only <code>SimpleCredentials</code> without attributes are cached. The
+ * entries are keyed by a salted digest of the user id, password and workspace
+ * name, such that the cache does not keep any passwords. If the repository
+ * does not allow a user to impersonate itself, the credentials are just
+ * logged in to the repository until the entry expires.
+ * <p>
+ * Since a cached entry still accepts the old password after the password of
+ * a user has been changed, entries must be {@link #invalidate(String)
+ * invalidated} on password changes. Otherwise the old password is accepted
+ * until the entry expires.
+ */
+class AuthenticationCache {
+
+    /** default log */
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationCache.class);
+
+    /** The algorithm of the digest of the credentials */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The time in milliseconds after which an entry expires */
+    private final long timeToLive;
+
+    /** The maximum number of entries */
+    private final int maxSize;
+
+    /** The random salt of the credentials digest of this instance */
+    private final byte[] salt;
+
+    /**
+     * The cache entries in the order of their creation, which is also the
+     * order of expiry.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * Creates a cache keeping at most <code>maxSize</code> entries, each for
+     * <code>timeToLive</code> milliseconds.
+     */
+    AuthenticationCache(long timeToLive, int maxSize) {
+        this.timeToLive = timeToLive;
+        this.maxSize = maxSize;
+        this.salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Returns a session for the given credentials, copied from the cached
+     * session if the same credentials have been logged in recently.
+     * Otherwise the credentials are logged in to the repository and, if the
+     * login succeeds, cached.
+     *
+     * @throws RepositoryException If the login to the repository fails.
+     */
+    Session login(Repository repository, Credentials credentials,
+            String workspace) throws RepositoryException {
+
+        String key = getKey(credentials, workspace);
+        if (key == null) {
+            return repository.login(credentials, workspace);
+        }
+
+        Entry entry = get(key);
+        if (entry != null) {
+            if (!entry.isCopyable()) {
+                return repository.login(credentials, workspace);
+            }
+
+            Session session = entry.copy();
+            if (session != null) {
+                log.debug("login: Using cached session of {}", entry.userId);
+                return session;
+            }
+
+            // the cached session is not usable any more
+            remove(key, entry);
+        }
+
+        Session session = repository.login(credentials, workspace);
+        put(key, new Entry(session, System.currentTimeMillis() + timeToLive));
+        return session;
+    }
+
+    /**
+     * Removes all entries of the given user, for example because the
+     * password of the user has changed.
+     */
+    void invalidate(String userId) {
+        List<Entry> removed = new ArrayList<Entry>();
+        synchronized (entries) {
+            for (Iterator<Entry> ei = entries.values().iterator(); ei.hasNext();) {
+                Entry entry = ei.next();
+                if (userId.equals(entry.userId)) {
+                    ei.remove();
+                    removed.add(entry);
+                }
+            }
+        }
+        dispose(removed);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void invalidateAll() {
+        List<Entry> removed;
+        synchronized (entries) {
+            removed = new ArrayList<Entry>(entries.values());
+            entries.clear();
+        }
+        dispose(removed);
+    }
+
+    /**
+     * Returns the number of entries in the cache, including expired entries
+     * not removed yet.
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // ---------- internal ----------------------------------------------------
+
+    /**
+     * Returns the key of the given credentials or <code>null</code> if the
+     * credentials cannot be cached.
+     */
+    private String getKey(Credentials credentials, String workspace) {
+        if (!(credentials instanceof SimpleCredentials)) {
+            return null;
+        }
+
+        SimpleCredentials simple = (SimpleCredentials) credentials;
+        if (simple.getUserID() == null
+            || simple.getAttributeNames().length > 0) {
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            digest.update(salt);
+            digest.update(simple.getUserID().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(new String(simple.getPassword()).getBytes("UTF-8"));
+            digest.update((byte) 0);
+            if (workspace != null) {
+                digest.update(workspace.getBytes("UTF-8"));
+            }
+
+            byte[] hash = digest.digest();
+            char[] key = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                key[2 * i] = HEX[(hash[i] >> 4) & 0x0f];
+                key[2 * i + 1] = HEX[hash[i] & 0x0f];
+            }
+            return new String(key);
+
+        } catch (NoSuchAlgorithmException nsae) {
+            log.warn("getKey: Digest algorithm {} not available, not caching",
+                DIGEST_ALGORITHM);
+        } catch (UnsupportedEncodingException uee) {
+            // not expected, UTF-8 is always supported
+        }
+        return null;
+    }
+
+    private Entry get(String key) {
+        Entry expired = null;
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expires <= System.currentTimeMillis()) {
+                entries.remove(key);
+                expired = entry;
+                entry = null;
+            }
+        }
+
+        if (expired != null) {
+            expired.dispose();
+        }
+        return entry;
+    }
+
+    private void put(String key, Entry entry) {
+        List<Entry> removed = new ArrayList<Entry>();
+        synchronized (entries) {
+            // another thread may have logged in the same credentials
+            Entry old = entries.remove(key);
+            if (old != null) {
+                removed.add(old);
+            }
+
+            // remove expired entries and the oldest entries above the size
+            long now = System.currentTimeMillis();
+            for (Iterator<Entry> ei = entries.values().iterator(); ei.hasNext();) {
+                Entry oldest = ei.next();
+                if (oldest.expires > now && entries.size() < maxSize) {
+                    break;
+                }
+                ei.remove();
+                removed.add(oldest);
+            }
+
+            entries.put(key, entry);
+        }
+        dispose(removed);
+    }
+
+    private void remove(String key, Entry entry) {
+        synchronized (entries) {
+            if (entries.get(key) == entry) {
+                entries.remove(key);
+            }
+        }
+        entry.dispose();
+    }
+
+    private void dispose(List<Entry> removed) {
+        for (Entry entry : removed) {
+            entry.dispose();
+        }
+    }
+
+    /**
+     * A cache entry holding a copy of an authenticated session. The session
+     * is not used directly, but copied for each login.
+     */
+    private static class Entry {
+
+        final String userId;
+
+        final long expires;
+
+        /**
+         * The cached session or <code>null</code> if the session cannot be
+         * copied or the entry has been disposed off.
+         */
+        private Session session;
+
+        private final boolean copyable;
+
+        Entry(Session loggedIn, long expires) {
+            this.userId = loggedIn.getUserID();
+            this.expires = expires;
+
+            Session copy;
+            try {
+                copy = impersonate(loggedIn);
+            } catch (RepositoryException re) {
+                log.debug("Entry: Cannot copy session of {}, not caching: {}",
+                    userId, re.toString());
+                copy = null;
+            }
+            this.session = copy;
+            this.copyable = (copy != null);
+        }
+
+        boolean isCopyable() {
+            return copyable;
+        }
+
+        /**
+         * Returns a copy of the cached session or <code>null</code> if the
+         * session is not usable any more.
+         */
+        synchronized Session copy() {
+            if (session == null || !session.isLive()) {
+                return null;
+            }
+
+            try {
+                return impersonate(session);
+            } catch (RepositoryException re) {
+                log.debug("copy: Cannot copy session of {}: {}", userId,
+                    re.toString());
+                return null;
+            }
+        }
+
+        synchronized void dispose() {
+            if (session != null) {
+                session.logout();
+                session = null;
+            }
+        }
+
+        private static Session impersonate(Session session)
+                throws RepositoryException {
+            return session.impersonate(new SimpleCredentials(
+                session.getUserID(), new char[0]));
+        }
+    }
+}
@@ -51,6 +51,9 @@ import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.ManagedService;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.http.HttpContext;
 import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.Logger;
@@ -74,12 +77,20 @@ import org.slf4j.LoggerFactory;
  * created for this user information. If no user information is contained in the
  * request (according to the handler), the anonymous info is used.
  * <p>
+ * Credentials successfully logged in are cached for a configurable time,
+ * such that further requests with the same credentials get a copy of the
+ * cached session instead of logging in to the repository again. The cached
+ * credentials of a user are dropped when an
+ * {@link Authenticator#TOPIC_CREDENTIALS_CHANGED} event for the user is
+ * received.
+ * <p>
  *
  * @scr.component label="%auth.name" description="%auth.description" ds="false"
  * @scr.property name="service.description" value="Sling Authenticator"
  * @scr.property name="service.vendor" value="The Apache Software Foundation"
  */
-public class SlingAuthenticator implements ManagedService, Authenticator {
+public class SlingAuthenticator implements ManagedService, Authenticator,
+        EventHandler {
 
     /**
      * The name of the request attribute containing the AuthenticationHandler
@@ -107,6 +118,19 @@ public class SlingAuthenticator implements ManagedService, Authenticator {
      */
     public static final String PAR_ANONYMOUS_ALLOWED = "auth.annonymous";
 
+    /**
+     * The number of seconds an authenticated session is cached. If this is
+     * zero, sessions are not cached.
+     *
+     * @scr.property valueRef="DEFAULT_CACHE_TTL" type="Integer"
+     */
+    public static final String PAR_CACHE_TTL = "auth.cache.ttl";
+
+    /**
+     * @scr.property valueRef="DEFAULT_CACHE_SIZE" type="Integer"
+     */
+    public static final String PAR_CACHE_SIZE = "auth.cache.size";
+
     /** The default impersonation parameter name */
     private static final String DEFAULT_IMPERSONATION_PARAMETER = "sudo";
 
@@ -116,6 +140,12 @@ public class SlingAuthenticator implements ManagedService, Authenticator {
     /** The default value for allowing anonymous access */
     private static final boolean DEFAULT_ANONYMOUS_ALLOWED = true;
 
+    /** The default number of seconds an authenticated session is cached */
+    private static final int DEFAULT_CACHE_TTL = 60;
+
+    /** The default maximum number of cached authenticated sessions */
+    private static final int DEFAULT_CACHE_SIZE = 100;
+
     private final ServiceTracker repositoryTracker;
 
     private final ServiceTracker authHandlerTracker;
@@ -136,6 +166,18 @@ public class SlingAuthenticator implements ManagedService, Authenticator {
     /** Whether access without credentials is allowed */
     boolean anonymousAllowed;
 
+    /**
+     * The cache of authenticated sessions or <code>null</code> if caching is
+     * disabled.
+     */
+    private volatile AuthenticationCache authenticationCache;
+
+    /** The number of seconds an authenticated session is cached */
+    private int cacheTimeToLive;
+
+    /** The maximum number of cached authenticated sessions */
+    private int cacheSize;
+
     private ServiceRegistration registration;
 
     public SlingAuthenticator(BundleContext bundleContext) {
@@ -153,14 +195,16 @@ public class SlingAuthenticator implements ManagedService, Authenticator {
         props.put(Constants.SERVICE_PID, getClass().getName());
         props.put(Constants.SERVICE_DESCRIPTION, "Sling Request Authenticator");
         props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        props.put(EventConstants.EVENT_TOPIC, TOPIC_CREDENTIALS_CHANGED);
 
         registration = bundleContext.registerService(new String[] {
-            ManagedService.class.getName(), Authenticator.class.getName() },
-            this, props);
+            ManagedService.class.getName(), Authenticator.class.getName(),
+            EventHandler.class.getName() }, this, props);
     }
 
     public void dispose() {
         registration.unregister();
+        setAuthenticationCache(null);
         authHandlerTracker.close();
         repositoryTracker.close();
     }
@@ -212,8 +256,8 @@ public class SlingAuthenticator implements ManagedService, Authenticator {
             // try to connect
             try {
                 log.debug("authenticate: credentials, trying to get a session");
-                Session session = getRepository().login(
-                    authInfo.getCredentials(), authInfo.getWorkspaceName());
+                Session session = login(authInfo.getCredentials(),
+                    authInfo.getWorkspaceName());
 
                 // handle impersonation
                 session = handleImpersonation(req, res, session);
@@ -322,6 +366,47 @@ public class SlingAuthenticator implements ManagedService, Authenticator {
         } else {
             this.anonymousAllowed = DEFAULT_ANONYMOUS_ALLOWED;
         }
+
+        // replace the session cache if its configuration changes
+        int newTimeToLive = OsgiUtil.toInteger(
+            properties.get(PAR_CACHE_TTL), DEFAULT_CACHE_TTL);
+        int newCacheSize = OsgiUtil.toInteger(properties.get(PAR_CACHE_SIZE),
+            DEFAULT_CACHE_SIZE);
+        if (newTimeToLive != this.cacheTimeToLive
+            || newCacheSize != this.cacheSize
+            || (newTimeToLive > 0 && this.authenticationCache == null)) {
+            log.info(
+                "Caching authenticated sessions for {} seconds (at most {})",
+                newTimeToLive, newCacheSize);
+            this.cacheTimeToLive = newTimeToLive;
+            this.cacheSize = newCacheSize;
+            if (newTimeToLive > 0 && newCacheSize > 0) {
+                setAuthenticationCache(new AuthenticationCache(
+                    newTimeToLive * 1000L, newCacheSize));
+            } else {
+                setAuthenticationCache(null);
+            }
+        }
+    }
+
+    // ----------- EventHandler interface -------------------------------------
+
+    /**
+     * Drops the cached sessions of the user whose credentials have changed
+     * or of all users if the event does not name a user.
+     */
+    public void handleEvent(Event event) {
+        AuthenticationCache cache = authenticationCache;
+        if (cache != null) {
+            Object userId = event.getProperty(PROPERTY_USER_ID);
+            if (userId != null) {
+                log.debug("handleEvent: Credentials of {} changed", userId);
+                cache.invalidate(userId.toString());
+            } else {
+                log.debug("handleEvent: Credentials changed");
+                cache.invalidateAll();
+            }
+        }
     }
 
     // ---------- internal ----------------------------------------------------
@@ -335,6 +420,27 @@ public class SlingAuthenticator implements ManagedService, Authenticator {
         return repo;
     }
 
+    /**
+     * Logs in to the repository with the given credentials, using the cache
+     * of authenticated sessions if enabled.
+     */
+    private Session login(Credentials credentials, String workspace)
+            throws MissingRepositoryException, RepositoryException {
+        AuthenticationCache cache = authenticationCache;
+        if (cache != null) {
+            return cache.login(getRepository(), credentials, workspace);
+        }
+        return getRepository().login(credentials, workspace);
+    }
+
+    private void setAuthenticationCache(AuthenticationCache cache) {
+        AuthenticationCache oldCache = authenticationCache;
+        authenticationCache = cache;
+        if (oldCache != null) {
+            oldCache.invalidateAll();
+        }
+    }
+
     private static Map<String,Map<String, AuthenticationHandlerInfo[]>> EMPTY_PROTOCOL_MAP = new HashMap<String, Map<String,AuthenticationHandlerInfo[]>>();
     private static AuthenticationHandlerInfo[] EMPTY_INFO = new AuthenticationHandlerInfo[0];
 
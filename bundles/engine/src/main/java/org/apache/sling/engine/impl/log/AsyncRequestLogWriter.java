@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.engine.impl.SlingHttpServletResponseImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>AsyncRequestLogWriter</code> writes request log messages in a
+ * background thread. The request thread just captures the values of the log
+ * message with {@link RequestLoggerService#capture} and hands them to the
+ * bounded queue of this writer. The background thread takes the entries
+ * from the queue in batches, formats and writes them and flushes the log
+ * files once per batch. Thus the request processing does not wait for the
+ * log files to be written.
+ * <p>
+ * If the queue is full, the configured overflow policy applies:
+ * <dl>
+ * <dt>{@link #OVERFLOW_DROP drop}</dt>
+ * <dd>The entry is dropped and counted. The number of dropped entries is
+ * logged as a warning by the background thread at most once per minute.</dd>
+ * <dt>{@link #OVERFLOW_BLOCK block}</dt>
+ * <dd>The request thread waits for space in the queue.</dd>
+ * <dt>{@link #OVERFLOW_SYNC sync}</dt>
+ * <dd>The entry is written by the request thread itself. Such entries may
+ * be written out of order with respect to the queued entries.</dd>
+ * </dl>
+ */
+class AsyncRequestLogWriter implements Runnable {
+
+    /** Overflow policy dropping entries if the queue is full */
+    static final String OVERFLOW_DROP = "drop";
+
+    /** Overflow policy waiting for space if the queue is full */
+    static final String OVERFLOW_BLOCK = "block";
+
+    /** Overflow policy writing entries on the request thread */
+    static final String OVERFLOW_SYNC = "sync";
+
+    /** The maximum number of entries written before flushing */
+    private static final int MAX_BATCH_SIZE = 512;
+
+    /** The minimum time in milliseconds between warnings of dropped entries */
+    private static final long DROP_WARNING_INTERVAL = 60 * 1000L;
+
+    /** The time in milliseconds to wait for the background thread to stop */
+    private static final long STOP_TIMEOUT = 5000;
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final BlockingQueue<Entry> queue;
+
+    private final String overflowPolicy;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong synchronousCount = new AtomicLong();
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    /**
+     * Creates a writer with a queue of the given size. If the overflow policy
+     * is not one of the known policies, {@link #OVERFLOW_DROP} is used.
+     */
+    AsyncRequestLogWriter(int queueSize, String overflowPolicy) {
+        this.queue = new ArrayBlockingQueue<Entry>(Math.max(queueSize, 1));
+        if (OVERFLOW_BLOCK.equals(overflowPolicy)) {
+            this.overflowPolicy = OVERFLOW_BLOCK;
+        } else if (OVERFLOW_SYNC.equals(overflowPolicy)) {
+            this.overflowPolicy = OVERFLOW_SYNC;
+        } else {
+            this.overflowPolicy = OVERFLOW_DROP;
+        }
+    }
+
+    /**
+     * Starts the background thread.
+     */
+    synchronized void start() {
+        if (this.thread == null) {
+            this.running = true;
+            this.thread = new Thread(this, "Sling Request Log Writer");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+    }
+
+    /**
+     * Stops the background thread after it has written the entries still in
+     * the queue. Entries logged after this method has been called are
+     * written by the request thread.
+     */
+    synchronized void stop() {
+        if (this.thread != null) {
+            this.running = false;
+            try {
+                this.thread.join(STOP_TIMEOUT);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            if (this.thread.isAlive()) {
+                log.warn("stop: Request log writer did not terminate, {} entries not written",
+                    this.queue.size());
+            }
+            this.thread = null;
+
+            // write entries queued while stopping
+            this.drain();
+
+            log.info("stop: Wrote {} request log entries, dropped {}, wrote {} synchronously",
+                new Object[] { this.writtenCount.get(),
+                    this.droppedCount.get(), this.synchronousCount.get() });
+        }
+    }
+
+    /**
+     * Captures the log message for the logger and queues it for writing.
+     */
+    void log(RequestLoggerService logger, SlingHttpServletRequest request,
+            SlingHttpServletResponseImpl response) {
+        Object[] values = logger.capture(request, response);
+        if (values == null) {
+            return;
+        }
+
+        if (!this.running) {
+            logger.write(values, true);
+            return;
+        }
+
+        Entry entry = new Entry(logger, values);
+        if (this.queue.offer(entry)) {
+            // the background thread may have terminated in the meantime
+            if (!this.running) {
+                this.drain();
+            }
+            return;
+        }
+
+        if (this.overflowPolicy == OVERFLOW_BLOCK) {
+            try {
+                this.queue.put(entry);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                this.droppedCount.incrementAndGet();
+            }
+        } else if (this.overflowPolicy == OVERFLOW_SYNC) {
+            this.synchronousCount.incrementAndGet();
+            logger.write(values, true);
+        } else {
+            this.droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the entries in the queue on the calling thread.
+     */
+    private void drain() {
+        Entry entry;
+        while ((entry = this.queue.poll()) != null) {
+            entry.logger.write(entry.values, true);
+        }
+    }
+
+    /** Returns the number of entries written by the background thread */
+    long getWrittenCount() {
+        return this.writtenCount.get();
+    }
+
+    /** Returns the number of entries dropped because the queue was full */
+    long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * Returns the number of entries written by the request thread because
+     * the queue was full.
+     */
+    long getSynchronousCount() {
+        return this.synchronousCount.get();
+    }
+
+    /** Returns the number of entries waiting to be written */
+    int getQueueSize() {
+        return this.queue.size();
+    }
+
+    public void run() {
+        List<Entry> batch = new ArrayList<Entry>(MAX_BATCH_SIZE);
+        List<RequestLoggerService> toFlush = new ArrayList<RequestLoggerService>();
+        long reportedDrops = 0;
+        long lastDropWarning = 0;
+
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                Entry first = this.queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                this.queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                for (Entry entry : batch) {
+                    try {
+                        entry.logger.write(entry.values, false);
+                        if (!toFlush.contains(entry.logger)) {
+                            toFlush.add(entry.logger);
+                        }
+                    } catch (Throwable t) {
+                        log.error("run: Failed writing request log entry", t);
+                    }
+                }
+                for (RequestLoggerService logger : toFlush) {
+                    logger.flush();
+                }
+                this.writtenCount.addAndGet(batch.size());
+
+            } catch (InterruptedException ie) {
+                // check whether to continue
+            } finally {
+                batch.clear();
+                toFlush.clear();
+            }
+
+            long drops = this.droppedCount.get();
+            if (drops != reportedDrops) {
+                long now = System.currentTimeMillis();
+                if (now - lastDropWarning >= DROP_WARNING_INTERVAL) {
+                    log.warn("run: Request log queue full, dropped {} entries ({} in total)",
+                        drops - reportedDrops, drops);
+                    reportedDrops = drops;
+                    lastDropWarning = now;
+                }
+            }
+        }
+    }
+
+    /**
+     * The captured values of a log message together with the logger to
+     * write the message.
+     */
+    private static final class Entry {
+
+        final RequestLoggerService logger;
+
+        final Object[] values;
+
+        Entry(RequestLoggerService logger, Object[] values) {
+            this.logger = logger;
+            this.values = values;
+        }
+    }
+}
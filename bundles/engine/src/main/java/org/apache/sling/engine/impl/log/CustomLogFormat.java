@@ -23,7 +23,6 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.text.StringCharacterIterator;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
@@ -38,6 +37,12 @@ import org.apache.sling.engine.impl.SlingHttpServletResponseImpl;
 /**
  * The <code>CustomLogFormat</code> class implements the support for log format
  * strings similar to the Apache httpd CustomLog configuration.
+ * <p>
+ * The format pattern is compiled into a flat sequence of parameters, each of
+ * which appends its part of the log message directly to a
+ * <code>StringBuilder</code> reused by the formatting thread. Time stamps
+ * are formatted at most once per second. Thus formatting a log message
+ * usually creates no other objects than the message string itself.
  */
 class CustomLogFormat {
 
@@ -47,6 +52,27 @@ class CustomLogFormat {
      */
     Parameter[] logParameters;
 
+    /**
+     * The initial capacity of the per-thread buffer used to build messages.
+     */
+    private static final int BUFFER_SIZE = 256;
+
+    /**
+     * The maximum capacity of the per-thread buffer kept for the next
+     * message. A larger buffer, grown for an extraordinarily long message,
+     * is dropped to not keep it for the lifetime of the thread.
+     */
+    private static final int MAX_BUFFER_SIZE = 8192;
+
+    /**
+     * The buffer reused by each thread to build log messages.
+     */
+    private static final ThreadLocal<StringBuilder> buffer = new ThreadLocal<StringBuilder>() {
+        protected StringBuilder initialValue() {
+            return new StringBuilder(BUFFER_SIZE);
+        }
+    };
+
     /**
      * Creates a new instance from of this class parsing the log format pattern.
      *
@@ -75,16 +101,77 @@ class CustomLogFormat {
      */
     String format(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
         if (this.logParameters != null) {
-            StringBuffer buf = new StringBuffer();
+            StringBuilder buf = getBuffer();
             for (int i=0; i < this.logParameters.length; i++) {
                 this.logParameters[i].print(buf, request, response);
             }
-            return buf.toString();
+            return toMessage(buf);
+        }
+
+        return null;
+    }
+
+    /**
+     * Captures the values for a log message from the given
+     * <code>request</code> and <code>response</code> objects to be formatted
+     * later with the {@link #format(Object[])} method. This allows writing
+     * the log message after the request and response objects have been
+     * recycled.
+     *
+     * @param request The request used to extract values for the log message.
+     * @param response The {@link SlingHttpServletResponseImpl} used to
+     *            extract values for the log message.
+     * @return The captured values or <code>null</code> if this log formatter
+     *         has not been initialized with a valid log format pattern.
+     */
+    Object[] capture(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+        if (this.logParameters != null) {
+            Object[] values = new Object[this.logParameters.length];
+            for (int i=0; i < this.logParameters.length; i++) {
+                values[i] = this.logParameters[i].capture(request, response);
+            }
+            return values;
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a log message from values captured by the
+     * {@link #capture(SlingHttpServletRequest, SlingHttpServletResponseImpl)}
+     * method.
+     *
+     * @param values The captured values
+     * @return The formatted log message or <code>null</code> if this log
+     *         formatter has not been initialized with a valid log format
+     *         pattern.
+     */
+    String format(Object[] values) {
+        if (this.logParameters != null && values != null) {
+            StringBuilder buf = getBuffer();
+            for (int i=0; i < this.logParameters.length; i++) {
+                this.logParameters[i].print(buf, values[i]);
+            }
+            return toMessage(buf);
         }
 
         return null;
     }
 
+    private static StringBuilder getBuffer() {
+        StringBuilder buf = buffer.get();
+        buf.setLength(0);
+        return buf;
+    }
+
+    private static String toMessage(StringBuilder buf) {
+        String message = buf.toString();
+        if (buf.capacity() > MAX_BUFFER_SIZE) {
+            buffer.remove();
+        }
+        return message;
+    }
+
     /**
      * Returns a string representation of this log format instance. The returned
      * String is actually rebuilt from the parsed format string and may be used
@@ -342,7 +429,16 @@ class CustomLogFormat {
     //---------- Parameter support --------------------------------------------
 
     static interface Parameter {
-        void print(StringBuffer dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response);
+        void print(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response);
+
+        /**
+         * Returns the value to print later with
+         * {@link #print(StringBuilder, Object)}. The value is
+         * <code>null</code> if nothing is to be printed.
+         */
+        Object capture(SlingHttpServletRequest request, SlingHttpServletResponseImpl response);
+
+        void print(StringBuilder dest, Object value);
     }
 
     static class PlainTextParameter implements Parameter {
@@ -350,8 +446,15 @@ class CustomLogFormat {
         PlainTextParameter(String value) {
             this.value = value;
         }
-        public void print(StringBuffer dest, SlingHttpServletRequest request,
+        public void print(StringBuilder dest, SlingHttpServletRequest request,
+                SlingHttpServletResponseImpl response) {
+            dest.append(this.value);
+        }
+        public Object capture(SlingHttpServletRequest request,
                 SlingHttpServletResponseImpl response) {
+            return null;
+        }
+        public void print(StringBuilder dest, Object value) {
             dest.append(this.value);
         }
         public String toString() {
@@ -360,6 +463,9 @@ class CustomLogFormat {
     }
 
     abstract static class BaseParameter implements Parameter {
+        /** The captured value printed for missing values */
+        private static final String NULL_VALUE = "-";
+
         private int[] statusLimits;
         private boolean required;
         private final char parName;
@@ -392,10 +498,70 @@ class CustomLogFormat {
         protected abstract String getValue(SlingHttpServletRequest request);
         protected abstract String getValue(SlingHttpServletResponseImpl response);
 
-        public final void print(StringBuffer dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+        public final void print(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            if (this.printOk(response.getStatus())) {
+                if (!this.appendValue(dest, request, response)) {
+                    dest.append(NULL_VALUE);
+                }
+            }
+        }
+
+        /**
+         * Appends the value of this parameter to the message. This default
+         * implementation appends the string value. Parameters should
+         * overwrite this method to append their value without creating
+         * intermediate objects.
+         *
+         * @return <code>false</code> if there is no value, in which case
+         *         nothing has been appended.
+         */
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            String value = this.isRequest ? this.getValue(request) : this.getValue(response);
+            if (value == null) {
+                return false;
+            }
+            dest.append(value);
+            return true;
+        }
+
+        public final Object capture(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
             if (this.printOk(response.getStatus())) {
-                String value = this.isRequest ? this.getValue(request) : this.getValue(response);
-                dest.append((value == null) ? "-" : value);
+                Object value = this.captureValue(request, response);
+                return (value == null) ? NULL_VALUE : value;
+            }
+            return null;
+        }
+
+        public final void print(StringBuilder dest, Object value) {
+            if (value == NULL_VALUE) {
+                dest.append(NULL_VALUE);
+            } else if (value != null) {
+                this.appendCaptured(dest, value);
+            }
+        }
+
+        /**
+         * Returns the value to be appended by
+         * {@link #appendCaptured(StringBuilder, Object)} when writing the log
+         * message. This default implementation returns the string value.
+         * Parameters should overwrite this method to capture their value
+         * unformatted, such that formatting happens when writing.
+         */
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            return this.isRequest ? this.getValue(request) : this.getValue(response);
+        }
+
+        /**
+         * Appends a value returned by
+         * {@link #captureValue(SlingHttpServletRequest, SlingHttpServletResponseImpl)}
+         * to the message. This default implementation appends numbers and
+         * strings without creating intermediate objects.
+         */
+        protected void appendCaptured(StringBuilder dest, Object value) {
+            if (value instanceof Number) {
+                dest.append(((Number) value).longValue());
+            } else {
+                dest.append((String) value);
             }
         }
 
@@ -417,6 +583,10 @@ class CustomLogFormat {
             return this.parName;
         }
 
+        protected boolean isRequest() {
+            return this.isRequest;
+        }
+
         public String toString() {
             StringBuffer result = new StringBuffer("%");
 
@@ -463,10 +633,18 @@ class CustomLogFormat {
                 return value;
             }
 
-            // otherwise copy the printable first part in a string buffer
-            // and start encoding
-            StringBuffer buf = new StringBuffer(value.substring(0, i));
-            while (i < value.length()) {
+            // otherwise encode the value in a buffer
+            StringBuilder buf = new StringBuilder(value.length() + 16);
+            escape(value, buf);
+            return buf.toString();
+        }
+
+        /**
+         * Appends the value to the buffer encoding non-printable
+         * characters.
+         */
+        static void escape(String value, StringBuilder buf) {
+            for (int i=0; i < value.length(); i++) {
                 char c = value.charAt(i);
                 if (isPrint(c)) {
                     buf.append(c);
@@ -497,11 +675,7 @@ class CustomLogFormat {
                     }
                     buf.append(Integer.toHexString(c));
                 }
-                i++;
             }
-
-            // return the encoded string value
-            return buf.toString();
         }
 
     }
@@ -547,6 +721,15 @@ class CustomLogFormat {
         protected String getValue(SlingHttpServletResponseImpl response) {
             return String.valueOf(response.getRequestId());
         }
+
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            dest.append(response.getRequestId());
+            return true;
+        }
+
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            return Integer.valueOf(response.getRequestId());
+        }
     }
 
     static class ByteCountParameter extends BaseParameter {
@@ -566,6 +749,27 @@ class CustomLogFormat {
 
             return String.valueOf(count);
         }
+
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            this.appendCount(dest, response.getCount());
+            return true;
+        }
+
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            return Integer.valueOf(response.getCount());
+        }
+
+        protected void appendCaptured(StringBuilder dest, Object value) {
+            this.appendCount(dest, ((Integer) value).intValue());
+        }
+
+        private void appendCount(StringBuilder dest, int count) {
+            if (count == 0) {
+                dest.append((this.getParName() == 'b') ? '-' : '0');
+            } else {
+                dest.append(count);
+            }
+        }
     }
 
     static class TimeParameter extends BaseParameter {
@@ -577,18 +781,8 @@ class CustomLogFormat {
         /** time format for GMT offset - see access logging in service() */
         private static final DecimalFormat dfmt = new DecimalFormat("+0000;-0000");
 
-        /** the timezone for the timezone offset calculation */
-        private static final Calendar calendar = Calendar.getInstance();
-
-        /** last zone offset (cached by hours) */
-        private static String lastZoneOffset = "";
-
-        private static long lastZoneOffsetHour = -1;
-
-        /** last formatted time (cached in seconds) */
-        private static String lastTimeFormatted = "";
-
-        private static long lastTimeFormattedSeconds = -1;
+        /** last formatted time (cached in seconds), replaced as a whole */
+        private static volatile FormattedTime lastTimeFormatted;
 
         private final boolean requestStart;
 
@@ -607,27 +801,48 @@ class CustomLogFormat {
             return timeFormatted(time);
         }
 
+        // capture the time only and format it when writing the message
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            return new Long(this.requestStart ? response.getRequestStart() : response.getRequestEnd());
+        }
+
+        protected void appendCaptured(StringBuilder dest, Object value) {
+            dest.append(timeFormatted(((Long) value).longValue()));
+        }
+
         // ---------- internal -----------------------------------------------------
 
         static String timeFormatted(long time) {
-            if (time / 1000 != lastTimeFormattedSeconds) {
-                lastTimeFormattedSeconds = time / 1000;
-                Date date = new Date(time);
-                StringBuffer buf = new StringBuffer(accessLogFmt.format(date));
-                if (time / 3600000 != lastZoneOffsetHour) {
-                    lastZoneOffsetHour = time / 3600000;
-                    calendar.setTime(date);
-                    int tzOffset = calendar.get(Calendar.ZONE_OFFSET)
-                        + calendar.get(Calendar.DST_OFFSET);
-                    tzOffset /= (60 * 1000);
-                    tzOffset = ((tzOffset / 60) * 100) + (tzOffset % 60);
-
-                    lastZoneOffset = dfmt.format(tzOffset);
-                }
-                buf.append(lastZoneOffset);
-                lastTimeFormatted = buf.toString();
+            long seconds = time / 1000;
+            FormattedTime last = lastTimeFormatted;
+            if (last != null && last.seconds == seconds) {
+                return last.text;
+            }
+
+            String text;
+            synchronized (accessLogFmt) {
+                StringBuffer buf = new StringBuffer(32);
+                buf.append(accessLogFmt.format(new Date(time)));
+
+                int tzOffset = accessLogFmt.getTimeZone().getOffset(time);
+                tzOffset /= (60 * 1000);
+                tzOffset = ((tzOffset / 60) * 100) + (tzOffset % 60);
+                buf.append(dfmt.format(tzOffset));
+
+                text = buf.toString();
+            }
+
+            lastTimeFormatted = new FormattedTime(seconds, text);
+            return text;
+        }
+
+        private static final class FormattedTime {
+            final long seconds;
+            final String text;
+            FormattedTime(long seconds, String text) {
+                this.seconds = seconds;
+                this.text = text;
             }
-            return lastTimeFormatted;
         }
     }
 
@@ -649,6 +864,17 @@ class CustomLogFormat {
             }
             return String.valueOf(time);
         }
+
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            long time = response.getRequestDuration();
+            dest.append(this.seconds ? time / 1000 : time);
+            return true;
+        }
+
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            long time = response.getRequestDuration();
+            return Long.valueOf(this.seconds ? time / 1000 : time);
+        }
     }
 
     static class RemoteIPParameter extends BaseParameter {
@@ -702,6 +928,15 @@ class CustomLogFormat {
             return String.valueOf(request.getServerPort());
         }
 
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            dest.append(request.getServerPort());
+            return true;
+        }
+
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            return Integer.valueOf(request.getServerPort());
+        }
+
         protected String getValue(SlingHttpServletResponseImpl response) {
             return null;
         }
@@ -749,6 +984,16 @@ class CustomLogFormat {
                 + " " + request.getProtocol();
         }
 
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            dest.append(request.getMethod()).append(' ').append(request.getRequestURI());
+            String query = request.getQueryString();
+            if (query != null && query.length() > 0) {
+                dest.append('?').append(query);
+            }
+            dest.append(' ').append(request.getProtocol());
+            return true;
+        }
+
         protected String getValue(SlingHttpServletResponseImpl response) {
             return null;
         }
@@ -809,6 +1054,14 @@ class CustomLogFormat {
         protected String getValue(SlingHttpServletResponseImpl response) {
             return null;
         }
+
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            String query = request.getQueryString();
+            if (query != null && query.length() > 0) {
+                dest.append('?').append(query);
+            }
+            return true;
+        }
     }
 
     static class UserParameter extends BaseParameter {
@@ -837,6 +1090,15 @@ class CustomLogFormat {
         protected String getValue(SlingHttpServletResponseImpl response) {
             return String.valueOf(response.getStatus());
         }
+
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            dest.append(response.getStatus());
+            return true;
+        }
+
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            return Integer.valueOf(response.getStatus());
+        }
     }
 
     static class CookieParameter extends BaseParameter {
@@ -856,13 +1118,26 @@ class CustomLogFormat {
             return (cookie == null) ? null : escape(cookie.toString());
         }
 
+        // capture the cookie unescaped and escape it when writing
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            Cookie cookie = this.isRequest()
+                    ? request.getCookie(this.cookieName)
+                    : response.getCookie(this.cookieName);
+            return (cookie == null) ? null : cookie.toString();
+        }
+
+        protected void appendCaptured(StringBuilder dest, Object value) {
+            escape((String) value, dest);
+        }
+
     }
 
     static class HeaderParameter extends BaseParameter {
         private String headerName;
         HeaderParameter(String headerName, boolean isRequest) {
             super((isRequest ? 'i' : 'o'), headerName, isRequest);
-            this.headerName = headerName;
+            // response headers are looked up by lower case name
+            this.headerName = isRequest ? headerName : headerName.toLowerCase();
         }
 
         protected String getValue(SlingHttpServletRequest request) {
@@ -881,5 +1156,54 @@ class CustomLogFormat {
         protected String getValue(SlingHttpServletResponseImpl response) {
             return escape(response.getHeaders(this.headerName));
         }
+
+        protected boolean appendValue(StringBuilder dest, SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            if (!this.isRequest()) {
+                String value = response.getHeaders(this.headerName);
+                if (value == null) {
+                    return false;
+                }
+                escape(value, dest);
+                return true;
+            }
+
+            Enumeration<?> values = request.getHeaders(this.headerName);
+            if (values == null || !values.hasMoreElements()) {
+                return false;
+            }
+
+            escape((String) values.nextElement(), dest);
+            while (values.hasMoreElements()) {
+                dest.append(',');
+                escape((String) values.nextElement(), dest);
+            }
+            return true;
+        }
+
+        // capture the header unescaped and escape it when writing
+        protected Object captureValue(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+            if (!this.isRequest()) {
+                return response.getHeaders(this.headerName);
+            }
+
+            Enumeration<?> values = request.getHeaders(this.headerName);
+            if (values == null || !values.hasMoreElements()) {
+                return null;
+            }
+
+            String value = (String) values.nextElement();
+            if (!values.hasMoreElements()) {
+                return value;
+            }
+            StringBuilder buf = new StringBuilder(value);
+            while (values.hasMoreElements()) {
+                buf.append(',').append(values.nextElement());
+            }
+            return buf.toString();
+        }
+
+        protected void appendCaptured(StringBuilder dest, Object value) {
+            escape((String) value, dest);
+        }
     }
 }
@@ -53,9 +53,10 @@ import org.apache.sling.engine.RequestLog;
  * files open for some time.
  * <p>
  * Note: Currently, the <code>PrintWriter</code> used to log the message is
- * flushed after each log message written. Future development should probably
- * implement better buffering in conjunction with the temporary open/close
- * cycles of the files.
+ * flushed after each log message written, unless the messages are written
+ * in batches by the {@link AsyncRequestLogWriter}, which flushes once per
+ * batch. Future development should probably implement better buffering in
+ * conjunction with the temporary open/close cycles of the files.
  */
 class FileRequestLog implements RequestLog {
 
@@ -113,6 +114,18 @@ class FileRequestLog implements RequestLog {
      * @see org.apache.sling.engine.RequestLog#write(java.lang.String)
      */
     public void write(String message) {
+        this.write(message, true);
+    }
+
+    /**
+     * Writes the message and optionally flushes the file. This allows the
+     * asynchronous request log writer to flush once for a batch of
+     * messages.
+     *
+     * @param message The message to write
+     * @param flush Whether to flush the file after writing the message
+     */
+    void write(String message, boolean flush) {
         // use a local copy of the reference to not encounter NPE when this
         // log happens to be closed asynchronously while at the same time not
         // requiring synchronization
@@ -120,6 +133,17 @@ class FileRequestLog implements RequestLog {
         if (writer != null) {
             synchronized (writer) {
                 writer.println(message);
+                if (flush) {
+                    writer.flush();
+                }
+            }
+        }
+    }
+
+    void flush() {
+        PrintWriter writer = this.output;
+        if (writer != null) {
+            synchronized (writer) {
                 writer.flush();
             }
         }
@@ -23,6 +23,7 @@ import java.util.Hashtable;
 
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.commons.osgi.OsgiUtil;
 import org.apache.sling.engine.impl.SlingHttpServletResponseImpl;
 import org.osgi.framework.BundleContext;
 
@@ -76,6 +77,25 @@ public class RequestLogger {
      */
     public static final String PROP_ACCESS_LOG_ENABLED = "access.log.enabled";
 
+    /**
+     * @scr.property value="false" type="Boolean"
+     */
+    public static final String PROP_ASYNC_ENABLED = "request.log.async";
+
+    /**
+     * @scr.property value="8192" type="Integer"
+     */
+    public static final String PROP_ASYNC_QUEUE_SIZE = "request.log.async.queuesize";
+
+    /**
+     * @scr.property value="drop" options drop="Drop Entry" block="Wait for
+     *               Space" sync="Write on Request Thread"
+     */
+    public static final String PROP_ASYNC_OVERFLOW = "request.log.async.overflow";
+
+    /** The default size of the queue of the asynchronous writer */
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 8192;
+
     /**
      * The log format string for the request log entry message (value is "%t
      * [%R] -> %m %U%q %H").
@@ -130,13 +150,20 @@ public class RequestLogger {
      */
     private RequestLoggerService accessLog;
 
+    /**
+     * The writer writing the log messages in the background if asynchronous
+     * logging is enabled. If this is <code>null</code> the messages are
+     * written by the request thread.
+     */
+    private AsyncRequestLogWriter asyncWriter;
+
     public void logRequestEntry(SlingHttpServletRequest request, SlingHttpServletResponse response) {
 
         if (response instanceof SlingHttpServletResponseImpl) {
             // log the request start
             if (this.requestEntry != null) {
                 for (int i = 0; i < this.requestEntry.length; i++) {
-                    this.requestEntry[i].log(request,
+                    this.log(this.requestEntry[i], request,
                         (SlingHttpServletResponseImpl) response);
                 }
             }
@@ -152,12 +179,23 @@ public class RequestLogger {
             // log the request end
             if (this.requestExit != null) {
                 for (int i = 0; i < this.requestExit.length; i++) {
-                    this.requestExit[i].log(request, loggerResponse);
+                    this.log(this.requestExit[i], request, loggerResponse);
                 }
             }
         }
     }
 
+    private void log(RequestLoggerService logger,
+            SlingHttpServletRequest request,
+            SlingHttpServletResponseImpl response) {
+        AsyncRequestLogWriter writer = this.asyncWriter;
+        if (writer != null) {
+            writer.log(logger, request, response);
+        } else {
+            logger.log(request, response);
+        }
+    }
+
     // ---------- SCR Integration ----------------------------------------------
 
     /**
@@ -210,9 +248,26 @@ public class RequestLogger {
         }
 
         // finally have the loggers added to the respective lists for later use
-        this.bindRequestLoggerService(this.requestLogEntry);
-        this.bindRequestLoggerService(this.requestLogExit);
-        this.bindRequestLoggerService(this.accessLog);
+        if (this.requestLogEntry != null) {
+            this.bindRequestLoggerService(this.requestLogEntry);
+        }
+        if (this.requestLogExit != null) {
+            this.bindRequestLoggerService(this.requestLogExit);
+        }
+        if (this.accessLog != null) {
+            this.bindRequestLoggerService(this.accessLog);
+        }
+
+        // write the messages in the background if configured
+        if (OsgiUtil.toBoolean(props.get(PROP_ASYNC_ENABLED), false)) {
+            AsyncRequestLogWriter writer = new AsyncRequestLogWriter(
+                OsgiUtil.toInteger(props.get(PROP_ASYNC_QUEUE_SIZE),
+                    DEFAULT_ASYNC_QUEUE_SIZE),
+                OsgiUtil.toString(props.get(PROP_ASYNC_OVERFLOW),
+                    AsyncRequestLogWriter.OVERFLOW_DROP));
+            writer.start();
+            this.asyncWriter = writer;
+        }
     }
 
     /**
@@ -227,6 +282,13 @@ public class RequestLogger {
     protected void deactivate(
             org.osgi.service.component.ComponentContext osgiContext) {
 
+        // write pending messages before shutting down the loggers
+        if (this.asyncWriter != null) {
+            AsyncRequestLogWriter writer = this.asyncWriter;
+            this.asyncWriter = null;
+            writer.stop();
+        }
+
         // remove the loggers if they have been set up
         if (this.requestLogEntry != null) {
             this.unbindRequestLoggerService(this.requestLogEntry);
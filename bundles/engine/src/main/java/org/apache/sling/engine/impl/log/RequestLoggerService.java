@@ -117,6 +117,56 @@ public class RequestLoggerService {
         }
     }
 
+    /**
+     * Captures the values for a log message to be written later by the
+     * {@link #write(Object[], boolean)} method.
+     *
+     * @return The captured values or <code>null</code> if this logger does
+     *         not write messages.
+     */
+    Object[] capture(SlingHttpServletRequest request, SlingHttpServletResponseImpl response) {
+        CustomLogFormat logFormat = this.logFormat;
+        if (this.log != null && logFormat != null) {
+            return logFormat.capture(request, response);
+        }
+        return null;
+    }
+
+    /**
+     * Writes the log message for values captured by the
+     * {@link #capture(SlingHttpServletRequest, SlingHttpServletResponseImpl)}
+     * method. Messages are silently dropped if this logger has been shut
+     * down in the meantime.
+     *
+     * @param values The captured values
+     * @param flush Whether to flush a log file after writing the message.
+     *            If <code>false</code> the {@link #flush()} method must be
+     *            called later.
+     */
+    void write(Object[] values, boolean flush) {
+        // local copies as this logger may be shut down concurrently
+        RequestLog log = this.log;
+        CustomLogFormat logFormat = this.logFormat;
+        if (log != null && logFormat != null) {
+            String message = logFormat.format(values);
+            if (log instanceof FileRequestLog) {
+                ((FileRequestLog) log).write(message, flush);
+            } else {
+                log.write(message);
+            }
+        }
+    }
+
+    /**
+     * Flushes the log file written by this logger, if any.
+     */
+    void flush() {
+        RequestLog log = this.log;
+        if (log instanceof FileRequestLog) {
+            ((FileRequestLog) log).flush();
+        }
+    }
+
     boolean isOnEntry() {
         return this.onEntry;
     }
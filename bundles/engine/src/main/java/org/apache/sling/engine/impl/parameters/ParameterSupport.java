@@ -48,6 +48,24 @@ public class ParameterSupport {
      */
     private static final String ATTR_JETTY_QUERY_ENCODING = "org.mortbay.jetty.Request.queryEncoding";
 
+    /**
+     * The name of the request parameter indicating how the parts of a
+     * multipart POST request are to be processed (value is ":uploadmode").
+     * This parameter is only considered if it is part of the request query.
+     */
+    public static final String PARAMETER_UPLOAD_MODE = ":uploadmode";
+
+    /**
+     * The value of the {@link #PARAMETER_UPLOAD_MODE} parameter requesting
+     * the parts of a multipart POST request to not be parsed into request
+     * parameters (value is "stream"). The request body is left to be read by
+     * the servlet handling the request, for example to stream uploaded files
+     * into the repository without storing them in temporary files first. In
+     * this mode only the query parameters are available as request
+     * parameters.
+     */
+    public static final String UPLOAD_MODE_STREAM = "stream";
+
     private final HttpServletRequest servletRequest;
 
     private ParameterMap postParameterMap;
@@ -123,7 +141,8 @@ public class ParameterSupport {
             // by the servlet container
             if ("POST".equals(this.getServletRequest().getMethod())) {
                 if (ServletFileUpload.isMultipartContent(new ServletRequestContext(
-                    this.getServletRequest()))) {
+                    this.getServletRequest()))
+                    && !isStreamedUpload(parameters)) {
                     this.parseMultiPartPost(parameters);
                     this.requestDataUsed = true;
                 }
@@ -165,6 +184,17 @@ public class ParameterSupport {
         }
     }
 
+    /**
+     * Returns <code>true</code> if the request query asks for the multipart
+     * request body to be left unparsed.
+     *
+     * @see #UPLOAD_MODE_STREAM
+     */
+    private boolean isStreamedUpload(ParameterMap parameters) {
+        RequestParameter mode = parameters.getValue(PARAMETER_UPLOAD_MODE);
+        return mode != null && UPLOAD_MODE_STREAM.equals(mode.getString());
+    }
+
     private void parseMultiPartPost(ParameterMap parameters) {
         // parameters not read yet, read now
         // Create a factory for disk-based file items
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.sling.engine.impl.auth;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.jcr.Credentials;
+import javax.jcr.LoginException;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import junit.framework.TestCase;
+
+public class AuthenticationCacheTest extends TestCase {
+
+    private TestRepository repository;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        repository = new TestRepository();
+    }
+
+    public void testCopyCachedSession() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 10);
+
+        Session first = cache.login(repository.proxy, creds("user", "pw"), null);
+        assertEquals(1, repository.logins);
+        assertEquals("user", first.getUserID());
+
+        Session second = cache.login(repository.proxy, creds("user", "pw"), null);
+        assertEquals(1, repository.logins);
+        assertEquals("user", second.getUserID());
+        assertNotSame(first, second);
+        assertEquals(1, cache.size());
+
+        // another workspace is another entry
+        cache.login(repository.proxy, creds("user", "pw"), "other");
+        assertEquals(2, repository.logins);
+        assertEquals(2, cache.size());
+    }
+
+    public void testWrongPassword() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 10);
+        cache.login(repository.proxy, creds("user", "pw"), null);
+        try {
+            cache.login(repository.proxy, creds("user", "wrong"), null);
+            fail("Expected LoginException");
+        } catch (LoginException le) {
+            // expected
+        }
+        assertEquals(2, repository.logins);
+        assertEquals(1, cache.size());
+    }
+
+    public void testExpiry() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(0, 10);
+        cache.login(repository.proxy, creds("user", "pw"), null);
+        cache.login(repository.proxy, creds("user", "pw"), null);
+        assertEquals(2, repository.logins);
+
+        // the expired cached session has been logged out
+        assertEquals(1, repository.loggedOut);
+    }
+
+    public void testMaxSize() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 2);
+        cache.login(repository.proxy, creds("a", "pw"), null);
+        cache.login(repository.proxy, creds("b", "pw"), null);
+        cache.login(repository.proxy, creds("c", "pw"), null);
+        assertEquals(2, cache.size());
+
+        // the oldest entry has been dropped
+        cache.login(repository.proxy, creds("a", "pw"), null);
+        assertEquals(4, repository.logins);
+        cache.login(repository.proxy, creds("c", "pw"), null);
+        assertEquals(4, repository.logins);
+    }
+
+    public void testInvalidate() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 10);
+        cache.login(repository.proxy, creds("a", "pw"), null);
+        cache.login(repository.proxy, creds("b", "pw"), null);
+
+        cache.invalidate("a");
+        assertEquals(1, cache.size());
+        cache.login(repository.proxy, creds("a", "pw"), null);
+        assertEquals(3, repository.logins);
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(3, repository.liveSessions());
+    }
+
+    public void testImpersonationNotAllowed() throws Exception {
+        repository.impersonationAllowed = false;
+        AuthenticationCache cache = new AuthenticationCache(60000, 10);
+        cache.login(repository.proxy, creds("user", "pw"), null);
+        cache.login(repository.proxy, creds("user", "pw"), null);
+        assertEquals(2, repository.logins);
+    }
+
+    public void testNotCached() throws Exception {
+        AuthenticationCache cache = new AuthenticationCache(60000, 10);
+        SimpleCredentials creds = creds("user", "pw");
+        creds.setAttribute("token", "value");
+        cache.login(repository.proxy, creds, null);
+        cache.login(repository.proxy, creds, null);
+        assertEquals(2, repository.logins);
+        assertEquals(0, cache.size());
+    }
+
+    private SimpleCredentials creds(String userId, String password) {
+        return new SimpleCredentials(userId, password.toCharArray());
+    }
+
+    private static class TestRepository implements InvocationHandler {
+
+        final Repository proxy = (Repository) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class[] { Repository.class }, this);
+
+        int logins;
+
+        int sessions;
+
+        int loggedOut;
+
+        boolean impersonationAllowed = true;
+
+        int liveSessions() {
+            return sessions - loggedOut;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            if ("login".equals(method.getName())) {
+                logins++;
+                SimpleCredentials creds = (SimpleCredentials) args[0];
+                if (!"pw".equals(new String(creds.getPassword()))) {
+                    throw new LoginException("Wrong password");
+                }
+                return newSession(creds.getUserID());
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        Session newSession(final String userId) {
+            sessions++;
+            return (Session) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] { Session.class },
+                new InvocationHandler() {
+                    boolean live = true;
+
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if ("getUserID".equals(name)) {
+                            return userId;
+                        } else if ("isLive".equals(name)) {
+                            return live;
+                        } else if ("logout".equals(name)) {
+                            if (live) {
+                                live = false;
+                                loggedOut++;
+                            }
+                            return null;
+                        } else if ("impersonate".equals(name)) {
+                            return impersonate(userId, (Credentials) args[0]);
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+        }
+
+        Session impersonate(String userId, Credentials credentials)
+                throws RepositoryException {
+            String target = ((SimpleCredentials) credentials).getUserID();
+            if (!impersonationAllowed || !userId.equals(target)) {
+                throw new LoginException("Impersonation not allowed");
+            }
+            return newSession(target);
+        }
+    }
+}
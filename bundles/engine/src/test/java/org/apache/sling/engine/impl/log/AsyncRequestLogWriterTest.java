@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.engine.impl.SlingHttpServletResponseImpl;
+
+public class AsyncRequestLogWriterTest extends TestCase {
+
+    public void testWritesInOrder() throws Exception {
+        TestLogger logger = new TestLogger();
+        AsyncRequestLogWriter writer = new AsyncRequestLogWriter(100,
+            AsyncRequestLogWriter.OVERFLOW_BLOCK);
+        writer.start();
+        for (int i = 0; i < 1000; i++) {
+            logger.next = String.valueOf(i);
+            writer.log(logger, null, null);
+        }
+        writer.stop();
+
+        assertEquals(1000, logger.messages.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(String.valueOf(i), logger.messages.get(i));
+        }
+        assertEquals(1000, writer.getWrittenCount());
+        assertEquals(0, writer.getDroppedCount());
+        assertTrue(logger.flushes > 0);
+    }
+
+    public void testDropOnOverflow() throws Exception {
+        TestLogger logger = new TestLogger();
+        logger.blocked = new CountDownLatch(1);
+        AsyncRequestLogWriter writer = new AsyncRequestLogWriter(2,
+            AsyncRequestLogWriter.OVERFLOW_DROP);
+        writer.start();
+
+        // the first entry blocks the writer, two more fill the queue
+        for (int i = 0; i < 10; i++) {
+            logger.next = String.valueOf(i);
+            writer.log(logger, null, null);
+            if (i == 0) {
+                logger.writing.await();
+            }
+        }
+        assertEquals(7, writer.getDroppedCount());
+
+        logger.blocked.countDown();
+        writer.stop();
+        assertEquals(3, logger.messages.size());
+        assertEquals(3, writer.getWrittenCount());
+    }
+
+    public void testSyncOnOverflow() throws Exception {
+        TestLogger logger = new TestLogger();
+        logger.blocked = new CountDownLatch(1);
+        AsyncRequestLogWriter writer = new AsyncRequestLogWriter(1,
+            AsyncRequestLogWriter.OVERFLOW_SYNC);
+        writer.start();
+
+        logger.next = "queued";
+        writer.log(logger, null, null);
+        logger.writing.await();
+        logger.next = "queued too";
+        writer.log(logger, null, null);
+        logger.next = "sync";
+        writer.log(logger, null, null);
+        assertEquals(1, writer.getSynchronousCount());
+        assertEquals("sync", logger.messages.get(0));
+
+        logger.blocked.countDown();
+        writer.stop();
+        assertEquals(3, logger.messages.size());
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    public void testWriteAfterStop() {
+        TestLogger logger = new TestLogger();
+        AsyncRequestLogWriter writer = new AsyncRequestLogWriter(10, null);
+        writer.start();
+        writer.stop();
+        logger.next = "late";
+        writer.log(logger, null, null);
+        assertEquals(Collections.singletonList("late"), logger.messages);
+    }
+
+    /**
+     * A request logger recording the messages instead of writing them. The
+     * message of an entry is taken from the next field when the entry is
+     * captured. If the blocked latch is set, writing on the background
+     * thread waits for the latch.
+     */
+    private static class TestLogger extends RequestLoggerService {
+
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+        final CountDownLatch writing = new CountDownLatch(1);
+
+        volatile CountDownLatch blocked;
+
+        volatile String next;
+
+        int flushes;
+
+        @Override
+        Object[] capture(SlingHttpServletRequest request,
+                SlingHttpServletResponseImpl response) {
+            return new Object[] { next };
+        }
+
+        @Override
+        void write(Object[] values, boolean flush) {
+            if (blocked != null && Thread.currentThread().getName().equals(
+                "Sling Request Log Writer")) {
+                writing.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            messages.add((String) values[0]);
+        }
+
+        @Override
+        void flush() {
+            flushes++;
+        }
+    }
+}
@@ -16,6 +16,10 @@
  */
 package org.apache.sling.engine.impl.log;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
 import org.apache.sling.engine.impl.log.CustomLogFormat;
 
 import junit.framework.TestCase;
@@ -43,6 +47,40 @@ public class CustomLogFormatTest extends TestCase {
         assertEquals(format, format2);
     }
 
+    public void testTimeFormatted() {
+        long time = 1224000000000L;
+        SimpleDateFormat fmt = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z",
+            Locale.US);
+        String formatted = CustomLogFormat.TimeParameter.timeFormatted(time);
+        assertEquals(fmt.format(new Date(time)), formatted);
+
+        // the same second is not formatted again
+        assertSame(formatted,
+            CustomLogFormat.TimeParameter.timeFormatted(time + 999));
+        assertEquals(fmt.format(new Date(time + 1000)),
+            CustomLogFormat.TimeParameter.timeFormatted(time + 1000));
+    }
+
+    public void testHeaderEscapeAppend() {
+        StringBuilder buf = new StringBuilder("x=");
+        CustomLogFormat.HeaderParameter.escape("a\tb\u1234", buf);
+        assertEquals("x=a\\tb\\u1234", buf.toString());
+    }
+
+    public void testPrintCaptured() {
+        StringBuilder buf = new StringBuilder();
+        new CustomLogFormat.ByteCountParameter('b').print(buf, Integer.valueOf(0));
+        buf.append(' ');
+        new CustomLogFormat.ByteCountParameter('B').print(buf, Integer.valueOf(0));
+        buf.append(' ');
+        new CustomLogFormat.StatusParameter().print(buf, Integer.valueOf(404));
+        buf.append(' ');
+        new CustomLogFormat.DurationParameter(false).print(buf, Long.valueOf(1234));
+        buf.append(' ');
+        new CustomLogFormat.HeaderParameter("User-Agent", true).print(buf, "a\tb");
+        assertEquals("- 0 404 1234 a\\tb", buf.toString());
+    }
+
     public void testHeaderEscape() {
 
         // single whitespace character
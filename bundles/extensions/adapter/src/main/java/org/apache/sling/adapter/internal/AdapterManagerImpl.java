@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.sling.api.adapter.AdapterFactory;
 import org.apache.sling.api.adapter.AdapterManager;
@@ -87,10 +88,15 @@ public class AdapterManagerImpl implements AdapterManager {
      * indexed by the fully qualified class names listed in the
      * {@link AdapterFactory#ADAPTABLE_CLASSES} property of the
      * {@link AdapterFactory} services.
+     * <p>
+     * This map and the descriptor maps it contains are never modified once
+     * set. Registering or unregistering an adapter factory replaces the map
+     * with an updated copy, such that the adapter factory maps may be built
+     * from this field without synchronization.
      *
      * @see AdapterFactoryDescriptorMap
      */
-    private Map<String, AdapterFactoryDescriptorMap> factories = new HashMap<String, AdapterFactoryDescriptorMap>();
+    private volatile Map<String, AdapterFactoryDescriptorMap> factories = new HashMap<String, AdapterFactoryDescriptorMap>();
 
     /**
      * Matrix of {@link AdapterFactory} instances primarily indexed by the fully
@@ -100,8 +106,14 @@ public class AdapterManagerImpl implements AdapterManager {
      * This cache is built on demand by calling the
      * {@link #getAdapterFactories(Class)} class. It is removed altogether
      * whenever an adapter factory is registered on unregistered.
+     * <p>
+     * The cache is a <code>ConcurrentHashMap</code> such that looking up the
+     * adapter factories of an already known class, as is done for each call
+     * to {@link #getAdapter(Object, Class)}, does not need any lock. The
+     * adapter factory maps contained in the cache are not modified after
+     * being added.
      */
-    private Map<String, Map<String, AdapterFactory>> factoryCache;
+    private volatile Map<String, Map<String, AdapterFactory>> factoryCache;
 
     // ---------- AdapterManager interface -------------------------------------
 
@@ -247,18 +259,24 @@ public class AdapterManagerImpl implements AdapterManager {
         AdapterFactoryDescriptor factoryDesc = new AdapterFactoryDescriptor(
             factory, adapters);
 
-        synchronized (factories) {
-            for (String adaptable : adaptables) {
-                AdapterFactoryDescriptorMap adfMap = factories.get(adaptable);
-                if (adfMap == null) {
-                    adfMap = new AdapterFactoryDescriptorMap();
-                    factories.put(adaptable, adfMap);
-                }
-                adfMap.put(factoryKey, factoryDesc);
+        // modify a copy of the factories and replace the field afterwards,
+        // the callers are synchronized, so there are no concurrent updates
+        Map<String, AdapterFactoryDescriptorMap> newFactories = new HashMap<String, AdapterFactoryDescriptorMap>(
+            factories);
+        for (String adaptable : adaptables) {
+            AdapterFactoryDescriptorMap adfMap = new AdapterFactoryDescriptorMap();
+            AdapterFactoryDescriptorMap oldMap = newFactories.get(adaptable);
+            if (oldMap != null) {
+                adfMap.putAll(oldMap);
             }
+            adfMap.put(factoryKey, factoryDesc);
+            newFactories.put(adaptable, adfMap);
         }
+        factories = newFactories;
 
-        // clear the factory cache to force rebuild on next access
+        // clear the factory cache to force rebuild on next access, this
+        // must be done after setting the factories to not have the cache
+        // rebuilt from the old factories
         factoryCache = null;
     }
 
@@ -278,22 +296,29 @@ public class AdapterManagerImpl implements AdapterManager {
         AdapterFactoryDescriptorKey factoryKey = new AdapterFactoryDescriptorKey(
             reference);
 
+        // modify a copy of the factories as in registerAdapterFactory
+        Map<String, AdapterFactoryDescriptorMap> newFactories = new HashMap<String, AdapterFactoryDescriptorMap>(
+            factories);
         boolean factoriesModified = false;
-        synchronized (factories) {
-            for (String adaptable : adaptables) {
-                AdapterFactoryDescriptorMap adfMap = factories.get(adaptable);
-                if (adfMap != null) {
-                    factoriesModified |= (adfMap.remove(factoryKey) != null);
-                    if (adfMap.isEmpty()) {
-                        factories.remove(adaptable);
-                    }
+        for (String adaptable : adaptables) {
+            AdapterFactoryDescriptorMap oldMap = newFactories.get(adaptable);
+            if (oldMap != null && oldMap.containsKey(factoryKey)) {
+                AdapterFactoryDescriptorMap adfMap = new AdapterFactoryDescriptorMap();
+                adfMap.putAll(oldMap);
+                adfMap.remove(factoryKey);
+                if (adfMap.isEmpty()) {
+                    newFactories.remove(adaptable);
+                } else {
+                    newFactories.put(adaptable, adfMap);
                 }
+                factoriesModified = true;
             }
         }
 
-        // only remove cache if some adapter factories have actually been
-        // removed
+        // only replace the factories and remove the cache if some adapter
+        // factories have actually been removed
         if (factoriesModified) {
+            factories = newFactories;
             factoryCache = null;
         }
     }
@@ -311,13 +336,13 @@ public class AdapterManagerImpl implements AdapterManager {
     private Map<String, AdapterFactory> getAdapterFactories(Class<?> clazz) {
         Map<String, Map<String, AdapterFactory>> cache = factoryCache;
         if (cache == null) {
-            cache = new HashMap<String, Map<String, AdapterFactory>>();
+            // concurrently created caches just replace each other, which
+            // only costs rebuilding some entries
+            cache = new ConcurrentHashMap<String, Map<String, AdapterFactory>>();
             factoryCache = cache;
         }
 
-        synchronized (cache) {
-            return getAdapterFactories(clazz, cache);
-        }
+        return getAdapterFactories(clazz, cache);
     }
 
     /**
@@ -338,7 +363,8 @@ public class AdapterManagerImpl implements AdapterManager {
         String className = clazz.getName();
         Map<String, AdapterFactory> entry = cache.get(className);
         if (entry == null) {
-            // create entry
+            // create entry, concurrently created entries are equal, so we
+            // do not care which one remains in the cache
             entry = createAdapterFactoryMap(clazz, cache);
             cache.put(className, entry);
         }
@@ -365,10 +391,7 @@ public class AdapterManagerImpl implements AdapterManager {
         Map<String, AdapterFactory> afm = new HashMap<String, AdapterFactory>();
 
         // AdapterFactories for this class
-        AdapterFactoryDescriptorMap afdMap;
-        synchronized (factories) {
-            afdMap = factories.get(clazz.getName());
-        }
+        AdapterFactoryDescriptorMap afdMap = factories.get(clazz.getName());
         if (afdMap != null) {
             for (AdapterFactoryDescriptor afd : afdMap.values()) {
                 String[] adapters = afd.getAdapters();
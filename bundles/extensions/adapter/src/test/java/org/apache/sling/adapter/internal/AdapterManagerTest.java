@@ -248,6 +248,30 @@ public class AdapterManagerTest {
         assertTrue(adapter instanceof TestAdapter);
     }
 
+    @org.junit.Test public void testUnbind() {
+        am.activate(this.createComponentContext());
+
+        final ServiceReference ref = createServiceReference();
+        am.bindAdapterFactory(ref);
+        final ServiceReference ref2 = createServiceReference2();
+        am.bindAdapterFactory(ref2);
+
+        TestSlingAdaptable2 data = new TestSlingAdaptable2();
+        assertNotNull(am.getAdapter(data, ITestAdapter.class));
+        assertNotNull("AdapterFactory cache must be built", am.getFactoryCache());
+
+        Map<String, AdapterFactoryDescriptorMap> f = am.getFactories();
+        am.unbindAdapterFactory(ref);
+
+        // the factories are replaced and the cache is dropped
+        assertEquals("Previous factories must not be modified", 2, f.size());
+        assertEquals(1, am.getFactories().size());
+        assertNull("AdapterFactory cache must be null", am.getFactoryCache());
+
+        assertNull(am.getAdapter(data, ITestAdapter.class));
+        assertNotNull(am.getAdapter(data, TestAdapter.class));
+    }
+
     //---------- Test Adaptable and Adapter Classes ---------------------------
 
     public static class TestSlingAdaptable extends SlingAdaptable {
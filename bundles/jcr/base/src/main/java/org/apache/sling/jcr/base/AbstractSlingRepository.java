@@ -32,6 +32,7 @@ import javax.jcr.Workspace;
 import org.apache.jackrabbit.api.JackrabbitWorkspace;
 import org.apache.sling.jcr.api.SlingRepository;
 import org.apache.sling.jcr.base.internal.SessionPool;
+import org.apache.sling.jcr.base.internal.SessionPoolConfigurationPrinter;
 import org.apache.sling.jcr.base.internal.SessionPoolFactory;
 import org.apache.sling.jcr.base.internal.SessionPoolManager;
 import org.apache.sling.jcr.base.internal.loader.Loader;
@@ -148,6 +149,8 @@ public abstract class AbstractSlingRepository implements SlingRepository,
 
     private SessionPoolManager poolManager;
 
+    private SessionPoolConfigurationPrinter poolPrinter;
+
     private Loader loader;
 
     // the poll interval used while the repository is not active
@@ -306,6 +309,18 @@ public abstract class AbstractSlingRepository implements SlingRepository,
         if (this.poolManager == null) {
             this.poolManager = new SessionPoolManager(this.getRepository(),
                 this.loader, this.getSessionPoolFactory());
+
+            // publish the pool statistics in the web console, if available
+            ComponentContext ctx = this.getComponentContext();
+            if (ctx != null) {
+                try {
+                    this.poolPrinter = new SessionPoolConfigurationPrinter(
+                        ctx.getBundleContext(), this.poolManager);
+                } catch (Throwable t) {
+                    log(LogService.LOG_DEBUG,
+                        "getPoolManager: Web Console not available, not publishing session pool statistics");
+                }
+            }
         }
 
         return this.poolManager;
@@ -537,6 +552,11 @@ public abstract class AbstractSlingRepository implements SlingRepository,
      */
     protected void tearDown(Repository repository) {
 
+        if (this.poolPrinter != null) {
+            this.poolPrinter.dispose();
+            this.poolPrinter = null;
+        }
+
         if (this.poolManager != null) {
             this.poolManager.dispose();
             this.poolManager = null;
@@ -18,9 +18,14 @@
  */
 package org.apache.sling.jcr.base.internal;
 
-import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.Credentials;
 import javax.jcr.LoginException;
@@ -49,7 +54,12 @@ import org.slf4j.LoggerFactory;
  * implementins pooling and reusing sessions with the defined limits.
  * See {@link #acquireSession(SimpleCredentials, String)}
  * and {@link #acquireSession(Session, Credentials)} for details.
- *
+ * <p>
+ * Acquiring and releasing sessions does not lock: idle sessions are kept in a
+ * non-blocking queue and the number of active sessions is limited by a fair
+ * semaphore, such that threads waiting for a session to become available are
+ * served in arrival order. The time spent waiting is recorded in a
+ * {@link WaitTimeHistogram}.
  */
 public class SessionPool {
 
@@ -93,26 +103,38 @@ public class SessionPool {
     private int[] passData;
 
     /**
-     * The session pool. Access to this object must be synchronized to prevent
-     * corruption of the data structures.
+     * The session pool.
      */
-    private final LinkedList<Session> idleSessions;
+    private final Queue<Session> idleSessions;
+
+    /**
+     * The number of sessions in the {@link #idleSessions} queue. This is
+     * maintained separately because the size of the queue is not a constant
+     * time operation.
+     */
+    private final AtomicInteger numIdleSessions;
 
     /**
      * Active sessions issued by this session pool.
      */
-    protected final IdentityHashMap<PooledSession, Session> activeSessions;
+    protected final ConcurrentMap<PooledSession, Session> activeSessions;
 
     /**
      * The maximum number of active sessions for this mapping.
      */
-    private int maxActiveSessions;
+    private volatile int maxActiveSessions;
 
     /** The maximum number of idle sessions stored in the idleSessions */
-    private int maxIdleSessions;
+    private volatile int maxIdleSessions;
+
+    /**
+     * The permits for active sessions. One permit is taken for each active
+     * session and returned when the session is released.
+     */
+    private final ActiveSessionPermits activeSessionPermits;
 
-    /** The singal object used for maxActiveSession wait/notify */
-    private final Object activeSessionLock;
+    /** The times spent waiting for the active session permits */
+    private final WaitTimeHistogram waitTimes;
 
     /**
      * The number of milliseconds to wait for the number of currently active
@@ -125,32 +147,39 @@ public class SessionPool {
      * @see #setMaxActiveSessionsWait(long)
      * @see #checkActiveSessions()
      */
-    private long maxActiveWait;
+    private volatile long maxActiveWait;
 
     /**
      * The counter for the number of sessions which could be served from the
      * pool.
      */
-    private int poolHitCounter;
+    private final AtomicInteger poolHitCounter = new AtomicInteger();
 
     /**
      * The counter for the number of sessions which have to be acquired through
      * repository login (login or impersonation).
      */
-    private int poolMissCounter;
+    private final AtomicInteger poolMissCounter = new AtomicInteger();
 
     /**
      * The counter for the number of sessions which cannot be returned to the
      * pool. See the {@link #getPoolDropCounter()} method for reasons why
      * sessions might be dropped.
      */
-    private int poolDropCounter;
+    private final AtomicInteger poolDropCounter = new AtomicInteger();
+
+    /**
+     * The counter for the number of session acquisitions which failed because
+     * no session was released while waiting for the number of active sessions
+     * to drop below the maximum.
+     */
+    private final AtomicInteger poolTimeoutCounter = new AtomicInteger();
 
     /**
      * Flag indicating whether this pool has already been disposed off. If this
      * is <code>true</code>, no sessions will be provided by this pool anymore.
      */
-    private boolean disposed;
+    private volatile boolean disposed;
 
     /**
      * Creates a new instance of this class presetting internal counters
@@ -161,9 +190,12 @@ public class SessionPool {
         this.poolManager = poolManager;
         this.userName = credentials.getUserID();
         this.passData = this.getPassData(credentials);
-        this.idleSessions = new LinkedList<Session>();
-        this.activeSessions = new IdentityHashMap<PooledSession, Session>();
-        this.activeSessionLock = new Object();
+        this.idleSessions = new ConcurrentLinkedQueue<Session>();
+        this.numIdleSessions = new AtomicInteger();
+        this.activeSessions = new ConcurrentHashMap<PooledSession, Session>();
+        this.maxActiveSessions = DEFAULT_MAX_ACTIVE_SESSIONS;
+        this.activeSessionPermits = new ActiveSessionPermits(DEFAULT_MAX_ACTIVE_SESSIONS);
+        this.waitTimes = new WaitTimeHistogram();
         this.clearCounters();
 
         // explicitly set the default value here, as the setConfig
@@ -180,17 +212,15 @@ public class SessionPool {
         // stop providing sessions and force logging out released sessions
         this.disposed = true;
 
-        synchronized (this.idleSessions) {
-            // logout all sessions in the pool
-            this.logoutSessions(this.idleSessions.iterator());
-            this.idleSessions.clear();
+        // logout all sessions in the pool
+        for (Session session = this.idleSessions.poll(); session != null; session = this.idleSessions.poll()) {
+            this.numIdleSessions.decrementAndGet();
+            this.logoutSession(session);
         }
 
-        synchronized (this.activeSessions) {
-            // logout all sessions in the pool
-            this.logoutSessions(this.activeSessions.values().iterator());
-            this.activeSessions.clear();
-        }
+        // logout all active sessions
+        this.logoutSessions(this.activeSessions.values().iterator());
+        this.activeSessions.clear();
     }
 
     /**
@@ -258,17 +288,27 @@ public class SessionPool {
 
         this.checkActiveSessions();
 
-        // only try to get from the pool, if the password matches
-        if (this.passDataMatch(credentials, this.passData)) {
-            Session session = this.getFromPool(workSpace);
-            if (session != null) {
-                return session;
+        boolean acquired = false;
+        try {
+            // only try to get from the pool, if the password matches
+            Session session = null;
+            if (this.passDataMatch(credentials, this.passData)) {
+                session = this.getFromPool(workSpace);
             }
-        }
 
-        // login new session (fails if password has changed but is not valid)
-        Session session = this.poolManager.getRepository().login(credentials, workSpace);
-        return this.createPooledSession(session);
+            // login new session (fails if password has changed but is not valid)
+            if (session == null) {
+                session = this.createPooledSession(
+                    this.poolManager.getRepository().login(credentials, workSpace));
+            }
+
+            acquired = true;
+            return session;
+        } finally {
+            if (!acquired) {
+                this.activeSessionPermits.release();
+            }
+        }
     }
 
     /**
@@ -324,13 +364,20 @@ public class SessionPool {
 
         this.checkActiveSessions();
 
-        Session session = this.getFromPool(baseSession.getWorkspace().getName());
-        if (session != null) {
+        boolean acquired = false;
+        try {
+            Session session = this.getFromPool(baseSession.getWorkspace().getName());
+            if (session == null) {
+                session = this.createPooledSession(baseSession.impersonate(credentials));
+            }
+
+            acquired = true;
             return session;
+        } finally {
+            if (!acquired) {
+                this.activeSessionPermits.release();
+            }
         }
-
-        session = baseSession.impersonate(credentials);
-        return this.createPooledSession(session);
     }
 
     //---------- JMX ----------------------------------------------------------
@@ -369,10 +416,12 @@ public class SessionPool {
      * @see #DEFAULT_MAX_ACTIVE_SESSIONS
      * @see #getMaxActiveSessions()
      */
-    public void setMaxActiveSessions(int maxActiveSessions) {
-        this.maxActiveSessions = (maxActiveSessions <= 0)
+    public synchronized void setMaxActiveSessions(int maxActiveSessions) {
+        int newMax = (maxActiveSessions <= 0)
                 ? DEFAULT_MAX_ACTIVE_SESSIONS
                 : maxActiveSessions;
+        this.activeSessionPermits.adjust(newMax - this.maxActiveSessions);
+        this.maxActiveSessions = newMax;
     }
 
     /**
@@ -442,9 +491,7 @@ public class SessionPool {
      * solely for the purposes of JMX support.
      */
     public int getNumActiveSessions() {
-        synchronized (this.activeSessions) {
-            return this.activeSessions.size();
-        }
+        return this.activeSessions.size();
     }
 
     /**
@@ -454,7 +501,7 @@ public class SessionPool {
      * solely for the purposes of JMX support.
      */
     public int getIdleSessions() {
-        return this.idleSessions.size();
+        return this.numIdleSessions.get();
     }
 
     /**
@@ -464,7 +511,7 @@ public class SessionPool {
      * solely for the purposes of JMX support.
      */
     public int getPoolHitCounter() {
-        return this.poolHitCounter;
+        return this.poolHitCounter.get();
     }
 
     /**
@@ -474,7 +521,7 @@ public class SessionPool {
      * solely for the purposes of JMX support.
      */
     public int getPoolMissCounter() {
-        return this.poolMissCounter;
+        return this.poolMissCounter.get();
     }
 
     /**
@@ -492,7 +539,30 @@ public class SessionPool {
      * solely for the purposes of JMX support.
      */
     public int getPoolDropCounter() {
-        return this.poolDropCounter;
+        return this.poolDropCounter.get();
+    }
+
+    /**
+     * Returns the number of session acquisitions which failed because the
+     * maximum number of active sessions had been reached and no session was
+     * released while waiting.
+     * <p>
+     * This method is not part of the public API of this class and is present
+     * solely for the purposes of JMX support.
+     */
+    public int getPoolTimeoutCounter() {
+        return this.poolTimeoutCounter.get();
+    }
+
+    /**
+     * Returns the histogram of the times spent waiting for the number of
+     * active sessions to drop below the maximum.
+     * <p>
+     * This method is not part of the public API of this class and is present
+     * solely for the purposes of JMX support.
+     */
+    public WaitTimeHistogram getWaitTimeHistogram() {
+        return this.waitTimes;
     }
 
     /**
@@ -502,9 +572,11 @@ public class SessionPool {
      * solely for the purposes of JMX support.
      */
     public void clearCounters() {
-        this.poolHitCounter = 0;
-        this.poolMissCounter = 0;
-        this.poolDropCounter = 0;
+        this.poolHitCounter.set(0);
+        this.poolMissCounter.set(0);
+        this.poolDropCounter.set(0);
+        this.poolTimeoutCounter.set(0);
+        this.waitTimes.clear();
     }
 
     //---------- Support for PooledSession
@@ -527,13 +599,11 @@ public class SessionPool {
         // map, it has been removed by one of the acquireSession methods
         // due to changed passwords. In this case, the delegate session
         // is not idled but immediately logged out
-        boolean forcedLogout;
-        synchronized (this.activeSessions) {
-            forcedLogout = this.activeSessions.remove(pooledSession) == null;
-        }
+        boolean forcedLogout = this.activeSessions.remove(pooledSession) == null;
 
-        synchronized (this.activeSessionLock) {
-            this.activeSessionLock.notifyAll();
+        // let the next thread waiting for a session continue
+        if (!forcedLogout) {
+            this.activeSessionPermits.release();
         }
 
         // unwrap the repository session
@@ -559,10 +629,10 @@ public class SessionPool {
 
         // if the pool is full or the session is already dead, logout and return
         // this results in the session not being added to the pool
-        if (this.idleSessions.size() >= this.getMaxIdleSessions() || !session.isLive()) {
+        if (this.numIdleSessions.get() >= this.getMaxIdleSessions() || !session.isLive()) {
             log.debug("Logging out session {}; pool is full or session is not alive",
                 userId);
-            this.poolDropCounter++;
+            this.poolDropCounter.incrementAndGet();
             session.logout();
             return;
         }
@@ -618,7 +688,7 @@ public class SessionPool {
                 } else {
                     log.info("Cannot cleanup lockes of session {}, logging out", userId);
                 }
-                this.poolDropCounter++;
+                this.poolDropCounter.incrementAndGet();
                 session.logout();
                 return;
             }
@@ -642,7 +712,7 @@ public class SessionPool {
             } catch (RepositoryException re) {
                 log.info("Cannot check or unregister event listeners of session " +
                     "{}, logging out", userId);
-                this.poolDropCounter++;
+                this.poolDropCounter.incrementAndGet();
                 session.logout();
                 return;
             }
@@ -658,19 +728,30 @@ public class SessionPool {
         } catch (RepositoryException re) {
             log.info("Cannot check or drop pending changes of session " +
                 "{}, logging out", userId);
-            this.poolDropCounter++;
+            this.poolDropCounter.incrementAndGet();
+            session.logout();
+            return;
+        }
+
+        // now the session is "clean" and may be added to the pool unless
+        // other threads have filled the pool in the meantime
+        int numIdle = this.numIdleSessions.incrementAndGet();
+        if (numIdle > this.getMaxIdleSessions()) {
+            this.numIdleSessions.decrementAndGet();
+            log.debug("Logging out session {}; pool is full", userId);
+            this.poolDropCounter.incrementAndGet();
             session.logout();
             return;
         }
 
-        // now the session is "clean" and may be added to the pool
         log.debug("Returning session {} to the pool, now with {} entries",
-            userId, new Integer(this.idleSessions.size()));
+            userId, new Integer(numIdle));
+        this.idleSessions.offer(session);
 
-        // add to the pool and notify waiting session acquiry
-        //    ==> checkActiveSessions()
-        synchronized (this.idleSessions) {
-            this.idleSessions.add(session);
+        // the pool may have been disposed off while adding the session
+        if (this.isDisposed() && this.idleSessions.remove(session)) {
+            this.numIdleSessions.decrementAndGet();
+            session.logout();
         }
     }
 
@@ -711,24 +792,25 @@ public class SessionPool {
         }
 
         // keep the pooled session
-        synchronized (this.activeSessions) {
-            this.activeSessions.put(pooledSession, delegatee);
-        }
+        this.activeSessions.put(pooledSession, delegatee);
 
         return pooledSession;
     }
 
     /**
-     * Checks the number of currently active sessions - sessions which have been
-     * acquired but not yet released - against the maximum number of session
-     * allowed as per the configuration. If the number is not reached yet, the
-     * method silently returns.
+     * Takes a permit for a new active session. If the number of currently
+     * active sessions - sessions which have been acquired but not yet released
+     * - is below the maximum number of session allowed as per the
+     * configuration, the method silently returns.
      * <p>
      * If the maximum number of active sessions has been reached, this method
-     * waits for at most 10 seconds for a session to be released. If after that
-     * time or after a notification or an interrupt the number of sessions is
-     * not below the maximum number of sessions, a
+     * waits for at most the configured time for a session to be released.
+     * Waiting threads are served in the order of their arrival. If after that
+     * time or after an interrupt no session has been released, a
      * <code>RepositoryException</code> is thrown.
+     * <p>
+     * The permit must be returned to {@link #activeSessionPermits} if no
+     * session is acquired after calling this method.
      *
      * @throws TooManySessionsException If the maximum number of active
      *             sessions has been reached and no session was released while
@@ -741,24 +823,32 @@ public class SessionPool {
             throw new IllegalStateException("Pool has already been disposed off");
         }
 
-        // check whether maxActiveSession is exhausted
-        int maxActiveSessions = this.getMaxActiveSessions();
-        if (this.getNumActiveSessions() < maxActiveSessions) {
-            return;
-        }
-
-        // sessions exhausted, wait for sessions to be released
+        boolean acquired = false;
         try {
-            synchronized (this.activeSessionLock) {
-                this.activeSessionLock.wait(this.maxActiveWait);
+            // check whether maxActiveSession is exhausted, not overtaking
+            // threads already waiting for a session
+            if (this.activeSessionPermits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                this.waitTimes.recordNoWait();
+                return;
+            }
+
+            // sessions exhausted, wait for sessions to be released
+            long start = System.currentTimeMillis();
+            try {
+                acquired = this.activeSessionPermits.tryAcquire(
+                    this.maxActiveWait, TimeUnit.MILLISECONDS);
+            } finally {
+                this.waitTimes.record(System.currentTimeMillis() - start);
             }
         } catch (InterruptedException ie) {
             log.debug("Interrupted while waiting for session to " +
                 "become available");
+            Thread.currentThread().interrupt();
         }
 
         // if the number of active sessions has still not dropped, fail
-        if (this.getNumActiveSessions() >= maxActiveSessions) {
+        if (!acquired) {
+            this.poolTimeoutCounter.incrementAndGet();
             throw new TooManySessionsException(this.getUserName());
         }
     }
@@ -790,29 +880,25 @@ public class SessionPool {
         // check with pool
         for (;;) {
 
-            // get a session from the, return if empty
-            Session session;
-            synchronized (this.idleSessions) {
-                if (this.idleSessions.isEmpty()) {
-                    log.debug("getFromPool: No idle session in pool");
-                    this.poolMissCounter++;
-                    return null;
-                }
-
-                // get the first entry from the pool
-                session = this.idleSessions.removeFirst();
+            // get the first entry from the pool, return if empty
+            Session session = this.idleSessions.poll();
+            if (session == null) {
+                log.debug("getFromPool: No idle session in pool");
+                this.poolMissCounter.incrementAndGet();
+                return null;
             }
+            this.numIdleSessions.decrementAndGet();
 
             // check the session and the session's workspace
             if (session.isLive()
                     && session.getWorkspace().getName().equals(workSpaceName)) {
-                this.poolHitCounter++;
+                this.poolHitCounter.incrementAndGet();
                 return this.createPooledSession(session);
             }
 
             // session is not alive anymore or has the wrong workspace name,
             // logout and try next from pool
-            this.poolDropCounter++;
+            this.poolDropCounter.incrementAndGet();
             session.logout();
         }
     }
@@ -822,14 +908,17 @@ public class SessionPool {
     private void logoutSessions(Iterator<Session> sessions) {
         // logout all sessions in the pool
         while (sessions.hasNext()) {
-            Session session = sessions.next();
-            try {
-                if (session.isLive()) {
-                    session.logout();
-                }
-            } catch (Exception e) {
-                log.info("Unexpected problem logging out session " + session, e);
+            this.logoutSession(sessions.next());
+        }
+    }
+
+    private void logoutSession(Session session) {
+        try {
+            if (session.isLive()) {
+                session.logout();
             }
+        } catch (Exception e) {
+            log.info("Unexpected problem logging out session " + session, e);
         }
     }
 
@@ -867,4 +956,31 @@ public class SessionPool {
 
         return true;
     }
+
+    /**
+     * The <code>ActiveSessionPermits</code> is a fair semaphore whose number
+     * of permits may be changed when the maximum number of active sessions is
+     * reconfigured.
+     */
+    private static class ActiveSessionPermits extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        ActiveSessionPermits(int permits) {
+            super(permits, true);
+        }
+
+        /**
+         * Adds (positive <code>delta</code>) or removes (negative
+         * <code>delta</code>) permits. Removing permits does not block, the
+         * number of available permits may temporarily become negative.
+         */
+        void adjust(int delta) {
+            if (delta > 0) {
+                this.release(delta);
+            } else if (delta < 0) {
+                this.reducePermits(-delta);
+            }
+        }
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.base.internal;
+
+import java.io.PrintWriter;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.felix.webconsole.ConfigurationPrinter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * The <code>SessionPoolConfigurationPrinter</code> adds the statistics of
+ * the session pools of a {@link SessionPoolManager}, including the
+ * histograms of the times spent waiting for sessions, to the configuration
+ * status of the Apache Felix Web Console.
+ */
+public class SessionPoolConfigurationPrinter implements ConfigurationPrinter {
+
+    private final SessionPoolManager poolManager;
+
+    private ServiceRegistration service;
+
+    public SessionPoolConfigurationPrinter(BundleContext context,
+            SessionPoolManager poolManager) {
+        this.poolManager = poolManager;
+
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_DESCRIPTION,
+            "JCR Session Pool Configuration Printer");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+
+        service = context.registerService(ConfigurationPrinter.class.getName(),
+            this, props);
+    }
+
+    public void dispose() {
+        if (service != null) {
+            service.unregister();
+            service = null;
+        }
+    }
+
+    public String getTitle() {
+        return "JCR Session Pools";
+    }
+
+    public void printConfiguration(PrintWriter pw) {
+        pw.println("*** JCR Session Pools:");
+        for (SessionPool pool : poolManager.getPools()) {
+            pw.println();
+            pw.println("User: " + pool.getUserName());
+            pw.println("  Active Sessions: " + pool.getNumActiveSessions()
+                + " (max " + pool.getMaxActiveSessions() + ")");
+            pw.println("  Idle Sessions: " + pool.getIdleSessions() + " (max "
+                + pool.getMaxIdleSessions() + ")");
+            pw.println("  Hits: " + pool.getPoolHitCounter());
+            pw.println("  Misses: " + pool.getPoolMissCounter());
+            pw.println("  Drops: " + pool.getPoolDropCounter());
+            pw.println("  Timeouts: " + pool.getPoolTimeoutCounter());
+            pw.println("  Wait Times: " + pool.getWaitTimeHistogram());
+        }
+    }
+}
@@ -18,9 +18,11 @@
  */
 package org.apache.sling.jcr.base.internal;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.jcr.Credentials;
 import javax.jcr.LoginException;
@@ -46,7 +48,7 @@ public class SessionPoolManager {
 
     private final Repository repository;
 
-    private final Map<String, SessionPool> sessionPools;
+    private final ConcurrentMap<String, SessionPool> sessionPools;
 
     private final NamespaceMapper namespaceMapper;
 
@@ -57,7 +59,7 @@ public class SessionPoolManager {
             SessionPoolFactory factory) {
 
         this.repository = repository;
-        this.sessionPools = new HashMap<String, SessionPool>();
+        this.sessionPools = new ConcurrentHashMap<String, SessionPool>();
         this.sessionPoolFactory = factory;
 
         this.namespaceMapper = mapper;
@@ -77,6 +79,14 @@ public class SessionPoolManager {
         return this.repository;
     }
 
+    /**
+     * Returns the session pools currently managed, for example to report
+     * their statistics and wait time histograms.
+     */
+    public Collection<SessionPool> getPools() {
+        return Collections.unmodifiableCollection(this.sessionPools.values());
+    }
+
     /**
      * @param credentials
      * @param workspace
@@ -146,7 +156,13 @@ public class SessionPoolManager {
         SessionPool pool = this.sessionPools.get(userName);
         if (pool == null) {
             pool = this.sessionPoolFactory.createPool(this, credentials);
-            this.sessionPools.put(userName, pool);
+
+            // another thread may have created the pool concurrently
+            SessionPool existing = this.sessionPools.putIfAbsent(userName, pool);
+            if (existing != null) {
+                pool.dispose();
+                pool = existing;
+            }
         }
 
         return pool;
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.base.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <code>WaitTimeHistogram</code> counts the times threads had to wait
+ * for a session of a {@link SessionPool} in buckets of exponentially growing
+ * durations. The first bucket counts acquisitions which did not have to wait
+ * at all. Recording is lock-free.
+ */
+public class WaitTimeHistogram {
+
+    /**
+     * The upper limits in milliseconds (exclusive) of the buckets after the
+     * first bucket. The last bucket has no upper limit.
+     */
+    private static final long[] LIMITS = { 1, 10, 100, 1000, 10000 };
+
+    private final AtomicLongArray counts = new AtomicLongArray(
+        LIMITS.length + 2);
+
+    /**
+     * Records an acquisition which did not have to wait.
+     */
+    public void recordNoWait() {
+        counts.incrementAndGet(0);
+    }
+
+    /**
+     * Records an acquisition which waited the given number of milliseconds.
+     */
+    public void record(long waitMillis) {
+        int bucket = 1;
+        while (bucket <= LIMITS.length && waitMillis >= LIMITS[bucket - 1]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+    }
+
+    /**
+     * Returns a copy of the bucket counts. The first entry is the number of
+     * acquisitions without waiting, the others are the number of waits of
+     * less than 1, 10, 100, 1000 and 10000 milliseconds and the last entry
+     * is the number of longer waits.
+     */
+    public long[] getCounts() {
+        long[] result = new long[counts.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Resets all bucket counts to zero.
+     */
+    public void clear() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long[] values = getCounts();
+        StringBuilder buf = new StringBuilder();
+        buf.append("none=").append(values[0]);
+        for (int i = 0; i < LIMITS.length; i++) {
+            buf.append(", <").append(LIMITS[i]).append("ms=").append(
+                values[i + 1]);
+        }
+        buf.append(", >=").append(LIMITS[LIMITS.length - 1]).append("ms=").append(
+            values[values.length - 1]);
+        return buf.toString();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.base.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.jcr.Repository;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import javax.jcr.Workspace;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.jcr.api.TooManySessionsException;
+
+public class SessionPoolTest extends TestCase {
+
+    private static final String WORKSPACE = "default";
+
+    private SimpleCredentials credentials;
+
+    private SessionPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        credentials = new SimpleCredentials("user", "pass".toCharArray());
+        SessionPoolManager manager = new SessionPoolManager(
+            createRepository(), null, null);
+        pool = new SessionPool(manager, credentials);
+        pool.setMaxIdleSessions(SessionPool.DEFAULT_MAX_IDLE_SESSIONS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.dispose();
+        super.tearDown();
+    }
+
+    public void testAcquire() throws Exception {
+        Session session = pool.acquireSession(credentials, WORKSPACE);
+        assertTrue(session instanceof PooledSession);
+        assertEquals(1, pool.getNumActiveSessions());
+        assertEquals(0, pool.getPoolHitCounter());
+        assertEquals(1, pool.getPoolMissCounter());
+        assertEquals(1, pool.getWaitTimeHistogram().getCounts()[0]);
+    }
+
+    public void testRelease() throws Exception {
+        PooledSession session = (PooledSession) pool.acquireSession(
+            credentials, WORKSPACE);
+        Session delegatee = session.getSession();
+        session.logout();
+        assertEquals(0, pool.getNumActiveSessions());
+        assertEquals(1, pool.getIdleSessions());
+
+        // the released session is reused
+        PooledSession reused = (PooledSession) pool.acquireSession(
+            credentials, WORKSPACE);
+        assertSame(delegatee, reused.getSession());
+        assertEquals(1, pool.getPoolHitCounter());
+        assertEquals(0, pool.getIdleSessions());
+    }
+
+    public void testReleaseToFullPool() throws Exception {
+        pool.setMaxIdleSessions(0);
+
+        PooledSession session = (PooledSession) pool.acquireSession(
+            credentials, WORKSPACE);
+        session.logout();
+        assertEquals(0, pool.getIdleSessions());
+        assertEquals(1, pool.getPoolDropCounter());
+        assertFalse(session.getSession().isLive());
+    }
+
+    public void testTimeout() throws Exception {
+        pool.setMaxActiveSessions(1);
+        pool.setMaxActiveSessionsWait(1);
+
+        pool.acquireSession(credentials, WORKSPACE);
+        try {
+            pool.acquireSession(credentials, WORKSPACE);
+            fail("Expected TooManySessionsException");
+        } catch (TooManySessionsException tmse) {
+            // expected
+        }
+
+        assertEquals(1, pool.getPoolTimeoutCounter());
+        assertEquals(1, pool.getNumActiveSessions());
+
+        // one acquisition without waiting, one waiting about a second
+        long[] counts = pool.getWaitTimeHistogram().getCounts();
+        assertEquals(1, counts[0]);
+        assertEquals(1, counts[5]);
+    }
+
+    public void testReleaseWhileWaiting() throws Exception {
+        pool.setMaxActiveSessions(1);
+        pool.setMaxActiveSessionsWait(10);
+
+        final Session first = pool.acquireSession(credentials, WORKSPACE);
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    // release immediately
+                }
+                first.logout();
+            }
+        };
+        releaser.start();
+
+        Session second = pool.acquireSession(credentials, WORKSPACE);
+        releaser.join();
+
+        assertNotNull(second);
+        assertEquals(1, pool.getNumActiveSessions());
+        assertEquals(0, pool.getPoolTimeoutCounter());
+
+        // the second acquisition had to wait but not time out
+        long[] counts = pool.getWaitTimeHistogram().getCounts();
+        long waits = 0;
+        for (int i = 1; i < counts.length; i++) {
+            waits += counts[i];
+        }
+        assertEquals(1, counts[0]);
+        assertEquals(1, waits);
+    }
+
+    public void testDisposed() throws Exception {
+        pool.dispose();
+        try {
+            pool.acquireSession(credentials, WORKSPACE);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    // ---------- repository mock ----------------------------------------------
+
+    private static Repository createRepository() {
+        return (Repository) Proxy.newProxyInstance(
+            SessionPoolTest.class.getClassLoader(),
+            new Class[] { Repository.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("login".equals(method.getName())) {
+                        return createSession((Repository) proxy);
+                    }
+                    return handleObjectMethod(proxy, method, args);
+                }
+            });
+    }
+
+    private static Session createSession(final Repository repository) {
+        final Workspace workspace = (Workspace) Proxy.newProxyInstance(
+            SessionPoolTest.class.getClassLoader(),
+            new Class[] { Workspace.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getName".equals(method.getName())) {
+                        return WORKSPACE;
+                    }
+                    return handleObjectMethod(proxy, method, args);
+                }
+            });
+
+        return (Session) Proxy.newProxyInstance(
+            SessionPoolTest.class.getClassLoader(),
+            new Class[] { Session.class }, new InvocationHandler() {
+                private boolean live = true;
+
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if ("getUserID".equals(name)) {
+                        return "user";
+                    } else if ("getRepository".equals(name)) {
+                        return repository;
+                    } else if ("getWorkspace".equals(name)) {
+                        return workspace;
+                    } else if ("isLive".equals(name)) {
+                        return live;
+                    } else if ("hasPendingChanges".equals(name)) {
+                        return false;
+                    } else if ("logout".equals(name)) {
+                        live = false;
+                        return null;
+                    }
+                    return handleObjectMethod(proxy, method, args);
+                }
+            });
+    }
+
+    private static Object handleObjectMethod(Object proxy, Method method,
+            Object[] args) {
+        String name = method.getName();
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(name)) {
+            return "Mock " + method.getDeclaringClass().getSimpleName();
+        }
+        return null;
+    }
+}
@@ -22,16 +22,32 @@ import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.observation.EventIterator;
 
 import org.apache.jackrabbit.classloader.DynamicRepositoryClassLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * The <code>RepositoryClassLoaderFacade</code> TODO
+ * The <code>RepositoryClassLoaderFacade</code> is the class loader handed
+ * out to clients of the repository class loader provider. It delegates to a
+ * <code>DynamicRepositoryClassLoader</code> which is replaced by a new
+ * instance once it gets dirty, that is once classes or resources it loaded
+ * have been modified in the repository.
+ * <p>
+ * Class loading is not synchronized on the facade: Classes already loaded
+ * through the current delegate are returned from a map without locking and
+ * other classes are loaded holding one of a fixed number of locks selected
+ * by the class name. A dirty delegate is replaced atomically, threads still
+ * loading through the old delegate just complete with it. To not ask the
+ * repository class loader whether it is dirty for each class returned from
+ * the map, the delegate is marked dirty when its class loader is notified
+ * of changes.
  */
 class RepositoryClassLoaderFacade extends URLClassLoader {
 
@@ -40,12 +56,23 @@ class RepositoryClassLoaderFacade extends URLClassLoader {
 
     private static final URL[] NO_URLS = new URL[0];
 
+    /** The number of locks for loading classes, must be a power of two */
+    private static final int LOCK_STRIPES = 64;
+
     private RepositoryClassLoaderProviderImpl classLoaderProvider;
     private ClassLoader parent;
     private String sessionOwner;
     private Session session;
     private String[] classPath;
-    private DynamicRepositoryClassLoader delegate;
+
+    /**
+     * The current delegate with the classes loaded through it. This field
+     * is only set while holding the monitor of this instance.
+     */
+    private volatile Delegate delegate;
+
+    /** The locks for loading classes, selected by the class name */
+    private final Object[] classLoadingLocks = new Object[LOCK_STRIPES];
 
     /**
      * The reference counter. If not greater than zero, there are this
@@ -69,9 +96,13 @@ class RepositoryClassLoaderFacade extends URLClassLoader {
         this.parent = parent;
         this.classPath = classPath;
         this.sessionOwner = sessionOwner;
+
+        for (int i = 0; i < this.classLoadingLocks.length; i++) {
+            this.classLoadingLocks[i] = new Object();
+        }
     }
 
-    public void addPath(String path) {
+    public synchronized void addPath(String path) {
         // create new class path
         String[] newClassPath = new String[this.classPath.length+1];
         System.arraycopy(this.classPath, 0, newClassPath, 0, this.classPath.length);
@@ -80,9 +111,9 @@ class RepositoryClassLoaderFacade extends URLClassLoader {
 
         // destroy the delegate and have a new one created
         if (this.delegate != null) {
-            DynamicRepositoryClassLoader oldLoader = this.delegate;
+            Delegate oldDelegate = this.delegate;
             this.delegate = null;
-            oldLoader.destroy();
+            oldDelegate.loader.destroy();
         }
     }
 
@@ -93,25 +124,43 @@ class RepositoryClassLoaderFacade extends URLClassLoader {
     @Override
     public URL[] getURLs() {
         try {
-            return getDelegateClassLoader().getURLs();
+            return getDelegate().loader.getURLs();
         } catch (RepositoryException re) {
             log.error("Cannot get repository class loader to get URLs", re);
             return NO_URLS;
         }
     }
 
-    protected synchronized Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
-        try {
-            return this.getDelegateClassLoader().loadClass(name);
-        } catch (RepositoryException re) {
-            log.error("Cannot get repository class loader to load class " + name, re);
-            throw new ClassNotFoundException(name);
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        // fast path: the class has already been loaded by the delegate
+        Delegate current = this.delegate;
+        if (current != null && !current.loader.dirty) {
+            Class<?> clazz = current.classes.get(name);
+            if (clazz != null) {
+                return clazz;
+            }
+        }
+
+        synchronized (getLoadLock(name)) {
+            try {
+                current = this.getDelegate();
+            } catch (RepositoryException re) {
+                log.error("Cannot get repository class loader to load class " + name, re);
+                throw new ClassNotFoundException(name);
+            }
+
+            Class<?> clazz = current.classes.get(name);
+            if (clazz == null) {
+                clazz = current.loader.loadClass(name);
+                current.classes.put(name, clazz);
+            }
+            return clazz;
         }
     }
 
     public URL getResource(String name) {
         try {
-            return this.getDelegateClassLoader().getResource(name);
+            return this.getDelegate().loader.getResource(name);
         } catch (RepositoryException re) {
             log.error("Cannot get repository class loader to get resource " + name, re);
             return null;
@@ -120,7 +169,7 @@ class RepositoryClassLoaderFacade extends URLClassLoader {
 
     public Enumeration findResources(String name) throws IOException {
         try {
-            return this.getDelegateClassLoader().getResources(name);
+            return this.getDelegate().loader.getResources(name);
         } catch (RepositoryException re) {
             throw (IOException) new IOException("Cannot lookup " + name).initCause(re);
         }
@@ -128,9 +177,9 @@ class RepositoryClassLoaderFacade extends URLClassLoader {
 
     //---------- Reference counting support -----------------------------------
 
-    /* package */ void destroy() {
+    /* package */ synchronized void destroy() {
         if (this.delegate != null) {
-            this.delegate.destroy();
+            this.delegate.loader.destroy();
             this.delegate = null;
         }
 
@@ -172,7 +221,7 @@ class RepositoryClassLoaderFacade extends URLClassLoader {
 
             // drop delegate
             if (this.delegate != null) {
-                this.delegate.destroy();
+                this.delegate.loader.destroy();
                 this.delegate = null;
             }
 
@@ -186,15 +235,95 @@ class RepositoryClassLoaderFacade extends URLClassLoader {
         return this.session;
     }
 
-    private DynamicRepositoryClassLoader getDelegateClassLoader() throws RepositoryException {
-        if (this.delegate != null) {
-            if (this.delegate.isDirty()) {
-                this.delegate = this.delegate.reinstantiate(this.getSession(), this.parent);
+    /**
+     * Returns the lock object to hold while loading the class of the given
+     * name. Classes whose names hash to the same lock are loaded one after
+     * the other.
+     */
+    private Object getLoadLock(String name) {
+        int hash = name.hashCode();
+        hash ^= (hash >>> 16);
+        return classLoadingLocks[hash & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Returns the current delegate, which is created or replaced if it does
+     * not exist yet or is dirty. Only creating or replacing the delegate
+     * synchronizes on this instance.
+     */
+    private Delegate getDelegate() throws RepositoryException {
+        Delegate current = this.delegate;
+        if (current != null && !current.loader.isDirty()) {
+            return current;
+        }
+
+        synchronized (this) {
+            // get the session first, which drops the delegate if the
+            // session is not live any more
+            Session session = this.getSession();
+
+            current = this.delegate;
+            if (current == null || current.loader.isDirty()) {
+                if (current != null) {
+                    current.loader.destroy();
+                }
+                current = new Delegate(new DelegateClassLoader(session,
+                    this.classPath, this.parent));
+                this.delegate = current;
             }
-        } else {
-            this.delegate = new DynamicRepositoryClassLoader(this.getSession(), this.classPath, this.parent);
+
+            return current;
+        }
+    }
+
+    /**
+     * The <code>Delegate</code> holds a repository class loader together
+     * with the classes loaded through it, such that replacing the class
+     * loader also drops the classes.
+     */
+    private static final class Delegate {
+
+        final DelegateClassLoader loader;
+
+        final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+
+        Delegate(DelegateClassLoader loader) {
+            this.loader = loader;
         }
+    }
 
-        return this.delegate;
+    /**
+     * The <code>DelegateClassLoader</code> is the repository class loader of
+     * a {@link Delegate}. It sets its {@link #dirty} field once it is
+     * destroyed or gets dirty by changes in the repository, which is cheaper
+     * to check than asking whether it is dirty.
+     */
+    private static final class DelegateClassLoader extends
+            DynamicRepositoryClassLoader {
+
+        volatile boolean dirty;
+
+        DelegateClassLoader(Session session, String[] classPath,
+                ClassLoader parent) {
+            super(session, classPath, parent);
+        }
+
+        @Override
+        public void onEvent(EventIterator events) {
+            super.onEvent(events);
+            this.dirty |= this.isDirty();
+        }
+
+        @Override
+        public void pathChanged() {
+            super.pathChanged();
+            this.dirty |= this.isDirty();
+        }
+
+        @Override
+        public void destroy() {
+            this.dirty = true;
+            super.destroy();
+        }
     }
 }
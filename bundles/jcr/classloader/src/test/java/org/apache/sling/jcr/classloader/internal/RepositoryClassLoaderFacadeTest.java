@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.classloader.internal;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import javax.jcr.Node;
+
+import org.apache.sling.commons.testing.jcr.RepositoryTestBase;
+
+public class RepositoryClassLoaderFacadeTest extends RepositoryTestBase {
+
+    private static final String CLASS_NAME = Loaded.class.getName();
+
+    private Node classFile;
+
+    private RepositoryClassLoaderFacade facade;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // store the class file in the repository
+        Node folder = getTestRootNode().addNode("classes", "nt:folder");
+        String[] packageNames = CLASS_NAME.split("\\.");
+        for (int i = 0; i < packageNames.length - 1; i++) {
+            folder = folder.addNode(packageNames[i], "nt:folder");
+        }
+        classFile = folder.addNode(packageNames[packageNames.length - 1]
+            + ".class", "nt:file");
+        Node content = classFile.addNode("jcr:content", "nt:resource");
+        content.setProperty("jcr:mimeType", "application/octet-stream");
+        content.setProperty("jcr:lastModified", Calendar.getInstance());
+        InputStream data = getClass().getClassLoader().getResourceAsStream(
+            CLASS_NAME.replace('.', '/') + ".class");
+        try {
+            content.setProperty("jcr:data", data);
+        } finally {
+            data.close();
+        }
+        getSession().save();
+
+        RepositoryClassLoaderProviderImpl provider = new RepositoryClassLoaderProviderImpl();
+        Field repository = provider.getClass().getDeclaredField("repository");
+        repository.setAccessible(true);
+        repository.set(provider, getRepository());
+
+        // the parent does not know the class stored in the repository
+        ClassLoader parent = new ClassLoader(null) {
+        };
+        facade = new RepositoryClassLoaderFacade(provider, parent,
+            getSession().getUserID(), new String[] { getTestRootNode().getPath()
+                + "/classes" });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (facade != null) {
+            facade.destroy();
+        }
+        if (testRoot != null) {
+            testRoot.remove();
+            getSession().save();
+        }
+        super.tearDown();
+    }
+
+    public void testLoadClass() throws Exception {
+        Class<?> clazz = facade.loadClass(CLASS_NAME);
+        assertNotSame(Loaded.class, clazz);
+        assertEquals(CLASS_NAME, clazz.getName());
+        assertSame(clazz, facade.loadClass(CLASS_NAME));
+
+        try {
+            facade.loadClass(CLASS_NAME + "Missing");
+            fail("Expected ClassNotFoundException");
+        } catch (ClassNotFoundException cnfe) {
+            // expected
+        }
+    }
+
+    public void testConcurrentLoading() throws Exception {
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final List<Class<?>> loaded = new ArrayList<Class<?>>();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        Thread[] loaders = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            loaders[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        for (int j = 0; j < 100; j++) {
+                            Class<?> clazz = facade.loadClass(CLASS_NAME);
+                            synchronized (loaded) {
+                                loaded.add(clazz);
+                            }
+
+                            // missing classes are loaded with striped locks
+                            try {
+                                facade.loadClass(CLASS_NAME + id + "_" + j);
+                                fail("Expected ClassNotFoundException");
+                            } catch (ClassNotFoundException cnfe) {
+                                // expected
+                            }
+                        }
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            };
+            loaders[i].start();
+        }
+        for (Thread loader : loaders) {
+            loader.join();
+        }
+
+        assertEquals("Failures: " + failures, 0, failures.size());
+        assertEquals(threads * 100, loaded.size());
+        for (Class<?> clazz : loaded) {
+            assertSame(loaded.get(0), clazz);
+        }
+        assertNotSame(Loaded.class, loaded.get(0));
+    }
+
+    public void testReloadAfterChange() throws Exception {
+        Class<?> clazz = facade.loadClass(CLASS_NAME);
+
+        Node content = classFile.getNode("jcr:content");
+        content.setProperty("jcr:data", content.getProperty("jcr:data").getStream());
+        content.setProperty("jcr:lastModified", Calendar.getInstance());
+        getSession().save();
+
+        // observation events are delivered asynchronously
+        Class<?> reloaded = clazz;
+        for (int i = 0; i < 50 && reloaded == clazz; i++) {
+            Thread.sleep(100);
+            reloaded = facade.loadClass(CLASS_NAME);
+        }
+        assertNotSame(clazz, reloaded);
+        assertEquals(CLASS_NAME, reloaded.getName());
+    }
+
+    /**
+     * The class loaded from the repository, which only depends on classes
+     * loaded by the bootstrap class loader.
+     */
+    public static class Loaded {
+
+        @Override
+        public String toString() {
+            return "loaded from the repository";
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.Calendar;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 
@@ -44,12 +45,16 @@ import org.apache.sling.api.servlets.HtmlResponse;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.api.wrappers.SlingRequestPaths;
 import org.apache.sling.commons.osgi.OsgiUtil;
+import org.apache.sling.engine.auth.Authenticator;
 import org.apache.sling.jackrabbit.usermanager.impl.helper.DateParser;
 import org.apache.sling.jackrabbit.usermanager.impl.helper.RequestProperty;
 import org.apache.sling.jackrabbit.usermanager.impl.resource.AuthorizableResourceProvider;
 import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.ModificationType;
 import org.apache.sling.servlets.post.SlingPostConstants;
 import org.osgi.service.component.ComponentContext;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,6 +80,11 @@ public abstract class AbstractAuthorizablePostServlet extends
 
     private DateParser dateParser;
 
+    /**
+     * @scr.reference cardinality="0..1" policy="dynamic"
+     */
+    private EventAdmin eventAdmin;
+
     // ---------- SCR Integration ----------------------------------------------
 
     protected void activate(ComponentContext context) {
@@ -158,6 +168,8 @@ public abstract class AbstractAuthorizablePostServlet extends
             if (session.hasPendingChanges()) {
                 session.save();
             }
+
+            announceCredentialsChanges(changes);
         } catch (ResourceNotFoundException rnfe) {
             htmlResponse.setStatus(HttpServletResponse.SC_NOT_FOUND,
                 rnfe.getMessage());
@@ -190,6 +202,49 @@ public abstract class AbstractAuthorizablePostServlet extends
         htmlResponse.send(httpResponse, isSetStatus(request));
     }
 
+    /**
+     * Sends {@link Authenticator#TOPIC_CREDENTIALS_CHANGED} events for the
+     * saved changes affecting the credentials of users, such that the
+     * authenticator drops any cached sessions of these users before the
+     * response is sent. Changing the password or deleting a user drops the
+     * sessions of that user. Deleting a group or changing the members of a
+     * group may change the principals of any user and thus drops all cached
+     * sessions.
+     */
+    private void announceCredentialsChanges(List<Modification> changes) {
+        EventAdmin localEventAdmin = eventAdmin;
+        if (localEventAdmin == null) {
+            return;
+        }
+
+        for (Modification change : changes) {
+            String path = change.getSource();
+            if (path.startsWith(AuthorizableResourceProvider.SYSTEM_USER_MANAGER_USER_PREFIX)) {
+                String userId = path.substring(AuthorizableResourceProvider.SYSTEM_USER_MANAGER_USER_PREFIX.length());
+                if (change.getType() == ModificationType.MODIFY
+                    && userId.endsWith("/rep:password")) {
+                    userId = userId.substring(0, userId.length()
+                        - "/rep:password".length());
+                } else if (change.getType() != ModificationType.DELETE
+                    || userId.indexOf('/') >= 0) {
+                    continue;
+                }
+
+                Dictionary<String, Object> props = new Hashtable<String, Object>();
+                props.put(Authenticator.PROPERTY_USER_ID, userId);
+                localEventAdmin.sendEvent(new Event(
+                    Authenticator.TOPIC_CREDENTIALS_CHANGED, props));
+
+            } else if (path.startsWith(AuthorizableResourceProvider.SYSTEM_USER_MANAGER_GROUP_PREFIX)
+                && (change.getType() == ModificationType.DELETE || path.endsWith("/members"))) {
+                localEventAdmin.sendEvent(new Event(
+                    Authenticator.TOPIC_CREDENTIALS_CHANGED,
+                    (Dictionary<String, Object>) null));
+                return;
+            }
+        }
+    }
+
     /**
      * Extending Servlet should implement this operation to do the work
      * 
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.ocm.impl;
+
+import java.io.PrintWriter;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.felix.webconsole.ConfigurationPrinter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * The <code>ObjectCacheConfigurationPrinter</code> adds the statistics of
+ * the object caches of the object content managers to the configuration
+ * status of the Apache Felix Web Console.
+ */
+public class ObjectCacheConfigurationPrinter implements ConfigurationPrinter {
+
+    private final ObjectCacheStatistics statistics;
+
+    private final int maxSize;
+
+    private ServiceRegistration service;
+
+    public ObjectCacheConfigurationPrinter(BundleContext context,
+            ObjectCacheStatistics statistics, int maxSize) {
+        this.statistics = statistics;
+        this.maxSize = maxSize;
+
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_DESCRIPTION,
+            "JCR OCM Object Cache Configuration Printer");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+
+        service = context.registerService(ConfigurationPrinter.class.getName(),
+            this, props);
+    }
+
+    public void dispose() {
+        if (service != null) {
+            service.unregister();
+            service = null;
+        }
+    }
+
+    public String getTitle() {
+        return "JCR OCM Object Caches";
+    }
+
+    public void printConfiguration(PrintWriter pw) {
+        long hits = statistics.getHits();
+        long total = hits + statistics.getMisses();
+        long rate = (total == 0) ? 0 : (hits * 100 / total);
+
+        pw.println("*** JCR OCM Object Caches:");
+        pw.println("  Max Size: " + maxSize + " objects per session");
+        pw.println("  Caches: " + statistics.getCaches());
+        pw.println("  Hits: " + hits);
+        pw.println("  Misses: " + statistics.getMisses());
+        pw.println("  Hit Rate: " + rate + "%");
+        pw.println("  Evictions: " + statistics.getEvictions());
+    }
+}
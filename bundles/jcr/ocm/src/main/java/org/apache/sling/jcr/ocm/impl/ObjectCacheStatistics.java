@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.ocm.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <code>ObjectCacheStatistics</code> sums up the statistics of all
+ * {@link ObservingObjectCache} instances created by the object content
+ * manager factory. As a cache lives only as long as its session, the
+ * statistics of the single caches would otherwise be lost.
+ */
+public class ObjectCacheStatistics {
+
+    private final AtomicLong caches = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    void cacheCreated() {
+        caches.incrementAndGet();
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void evicted(int count) {
+        evictions.addAndGet(count);
+    }
+
+    /** Returns the number of caches created */
+    public long getCaches() {
+        return caches.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        long rate = (total == 0) ? 0 : (hits * 100 / total);
+        return "caches=" + getCaches() + ", hits=" + hits + ", misses="
+            + getMisses() + ", evictions=" + getEvictions() + ", hitRate="
+            + rate + "%";
+    }
+}
@@ -76,6 +76,15 @@ public class ObjectContentManagerFactoryImpl implements ObjectContentManagerFact
     /** default log */
     private static final Logger log = LoggerFactory.getLogger(ObjectContentManagerFactoryImpl.class);
 
+    /**
+     * The maximum number of objects cached by each object content manager.
+     * A value of zero or less disables caching across requests to the
+     * manager.
+     *
+     * @scr.property value="1000" type="Integer"
+     */
+    private static final String PROP_CACHE_SIZE = "ocm.cache.size";
+
     /** scr.reference cardinality="0..1" policy="dynamic" */
     private EventAdmin eventAdmin;
 
@@ -98,6 +107,12 @@ public class ObjectContentManagerFactoryImpl implements ObjectContentManagerFact
 
     private OcmFactoryAdapterFactory factoryAdapterFactory;
 
+    private int cacheSize = ObservingObjectCache.DEFAULT_MAX_SIZE;
+
+    private final ObjectCacheStatistics cacheStatistics = new ObjectCacheStatistics();
+
+    private ObjectCacheConfigurationPrinter cachePrinter;
+
     public ObjectContentManagerFactoryImpl() {
 
         // prepare the data converters and query manager
@@ -119,7 +134,8 @@ public class ObjectContentManagerFactoryImpl implements ObjectContentManagerFact
             valueFactory = ValueFactoryImpl.getInstance();
         }
 
-        ObjectCache objectCache = new ObservingObjectCache(session);
+        ObjectCache objectCache = new ObservingObjectCache(session, cacheSize,
+            cacheStatistics);
 
         QueryManager queryManager = new QueryManagerImpl(mapper,
             converterProvider.getAtomicTypeConverters(), valueFactory);
@@ -325,6 +341,10 @@ public class ObjectContentManagerFactoryImpl implements ObjectContentManagerFact
     /** Activates this component, called by SCR before registering as a service */
     protected void activate(ComponentContext componentContext) {
 
+        cacheSize = OsgiUtil.toInteger(
+            componentContext.getProperties().get(PROP_CACHE_SIZE),
+            ObservingObjectCache.DEFAULT_MAX_SIZE);
+
         componentContext.getBundleContext().addBundleListener(this);
 
         try {
@@ -347,10 +367,21 @@ public class ObjectContentManagerFactoryImpl implements ObjectContentManagerFact
         adapterFactory = new OcmAdapterFactory(this,
             componentContext.getBundleContext(), mappedClasses);
         factoryAdapterFactory = new OcmFactoryAdapterFactory(this, componentContext.getBundleContext());
+
+        try {
+            cachePrinter = new ObjectCacheConfigurationPrinter(
+                componentContext.getBundleContext(), cacheStatistics, cacheSize);
+        } catch (Throwable t) {
+            log.debug("activate: Web Console not available, not publishing object cache statistics");
+        }
     }
 
     /** Deativates this component, called by SCR to take out of service */
     protected void deactivate(ComponentContext componentContext) {
+        if (cachePrinter != null) {
+            cachePrinter.dispose();
+            cachePrinter = null;
+        }
         if (adapterFactory != null) {
             adapterFactory.dispose();
             adapterFactory = null;
@@ -18,43 +18,320 @@
  */
 package org.apache.sling.jcr.ocm.impl;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.observation.Event;
 import javax.jcr.observation.EventIterator;
 import javax.jcr.observation.EventListener;
 
-import org.apache.jackrabbit.ocm.manager.cache.impl.RequestObjectCacheImpl;
+import org.apache.jackrabbit.ocm.manager.cache.ObjectCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * The <code>ObservingObjectCache</code> TODO
+ * The <code>ObservingObjectCache</code> is the object cache of an object
+ * content manager which keeps mapped objects for the lifetime of the session
+ * instead of just for a single request to the manager. Objects are cached by
+ * the path of the node they have been mapped from.
+ * <p>
+ * Being registered as an observation listener, the cache evicts the objects
+ * affected by each batch of changes: objects mapped from a changed node or
+ * from an ancestor of a changed node, as a mapped object may contain the
+ * data of child nodes, and objects mapped from descendants of added or
+ * removed nodes. All other objects remain cached. If the cache cannot be
+ * registered as a listener or if the maximum size is zero or less, it is
+ * cleared at the end of each request to the manager like the default request
+ * cache.
+ * <p>
+ * The object converter caches an object before mapping its fields to resolve
+ * references back to the object, so objects cached during a request to the
+ * manager are never removed before the end of the request, which is signaled
+ * by {@link #clear()}. Only then they are kept for later requests, unless
+ * they have been changed in the meantime. The number of objects kept is
+ * limited; the least recently used objects are removed once the limit is
+ * reached. The number of hits, misses and
+ * evictions is counted by the cache and added to the
+ * {@link ObjectCacheStatistics} shared by all caches of the factory.
  */
-public class ObservingObjectCache extends RequestObjectCacheImpl implements
-        EventListener {
+public class ObservingObjectCache implements ObjectCache, EventListener {
+
+    /** The default maximum number of cached objects (value is 1000) */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** default log */
+    private static final Logger log = LoggerFactory.getLogger(ObservingObjectCache.class);
+
+    private final int maxSize;
+
+    private final ObjectCacheStatistics statistics;
+
+    /**
+     * The objects kept from previous requests by path in access order,
+     * guarded by this
+     */
+    private final LinkedHashMap<String, Object> objects;
+
+    /**
+     * The objects cached during the current request by path, which are
+     * not evicted before the end of the request, guarded by this
+     */
+    private final Map<String, Object> requestObjects = new HashMap<String, Object>();
+
+    /**
+     * The paths of the objects of the current request which have been
+     * changed and are not kept for later requests, guarded by this
+     */
+    private final Set<String> changedRequestPaths = new HashSet<String>();
+
+    /**
+     * The object last found by {@link #isCached(String)}, which is returned
+     * by {@link #getObject(String)} even if it has been evicted in the
+     * meantime, guarded by this
+     */
+    private String lastPath;
+
+    private Object lastObject;
+
+    /** Whether objects are only cached for a single request */
+    private final boolean requestOnly;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    ObservingObjectCache(Session session, int maxSize,
+            ObjectCacheStatistics statistics) {
+        this.maxSize = maxSize;
+        this.statistics = statistics;
+        this.objects = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                if (size() > ObservingObjectCache.this.maxSize) {
+                    ObservingObjectCache.this.evicted(1);
+                    return true;
+                }
+                return false;
+            }
+        };
+        statistics.cacheCreated();
+
+        this.requestOnly = maxSize <= 0 || !register(session);
+    }
+
+    // ---------- ObjectCache interface ----------------------------------------
+
+    public synchronized void cache(String path, Object object) {
+        requestObjects.put(path, object);
+        changedRequestPaths.remove(path);
+    }
+
+    /**
+     * Ends the current request: the objects cached during the request are
+     * kept for later requests, unless objects are only cached for a single
+     * request. This method is called by the object content manager at the
+     * end of each request.
+     */
+    public synchronized void clear() {
+        if (!requestOnly) {
+            for (Map.Entry<String, Object> entry : requestObjects.entrySet()) {
+                if (!changedRequestPaths.contains(entry.getKey())) {
+                    objects.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        requestObjects.clear();
+        changedRequestPaths.clear();
+        lastPath = null;
+        lastObject = null;
+    }
+
+    public synchronized boolean isCached(String path) {
+        Object object = requestObjects.get(path);
+        if (object == null) {
+            object = objects.get(path);
+        }
+        if (object != null) {
+            hits++;
+            statistics.hit();
+            lastPath = path;
+            lastObject = object;
+            return true;
+        }
+
+        misses++;
+        statistics.miss();
+        lastPath = null;
+        lastObject = null;
+        return false;
+    }
+
+    public synchronized Object getObject(String path) {
+        Object object = requestObjects.get(path);
+        if (object == null) {
+            object = objects.get(path);
+        }
+        if (object == null && path.equals(lastPath)) {
+            object = lastObject;
+        }
+        return object;
+    }
+
+    // ---------- EventListener interface --------------------------------------
+
+    public void onEvent(EventIterator events) {
+        // collect the paths of the changed nodes and of the nodes added
+        // or removed, the latter also affecting their descendants
+        Set<String> changed = new HashSet<String>();
+        Set<String> addedOrRemoved = new HashSet<String>();
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            try {
+                String path = event.getPath();
+                if (event.getType() == Event.NODE_ADDED
+                    || event.getType() == Event.NODE_REMOVED) {
+                    addedOrRemoved.add(path);
+                } else {
+                    path = getParent(path);
+                }
+                changed.add(path);
+            } catch (RepositoryException re) {
+                log.warn("onEvent: Cannot get event path, clearing cache", re);
+                evictAll();
+                return;
+            }
+        }
+
+        // the changed nodes and all their ancestors
+        Set<String> affected = new HashSet<String>();
+        for (String path : changed) {
+            for (String p = path; p != null && affected.add(p); p = getParent(p)) {
+                // nothing else to do
+            }
+        }
+
+        int evicted = 0;
+        synchronized (this) {
+            for (Iterator<String> pi = objects.keySet().iterator(); pi.hasNext();) {
+                String path = pi.next();
+                if (affected.contains(path) || isBelow(path, addedOrRemoved)) {
+                    pi.remove();
+                    evicted++;
+                }
+            }
+            evicted(evicted);
+
+            // changed objects of the current request remain cached until
+            // the end of the request but are not kept for later requests
+            for (String path : requestObjects.keySet()) {
+                if (affected.contains(path) || isBelow(path, addedOrRemoved)) {
+                    changedRequestPaths.add(path);
+                }
+            }
+        }
+
+        if (evicted > 0 && log.isDebugEnabled()) {
+            log.debug("onEvent: Evicted {} objects for {} changed nodes",
+                evicted, changed.size());
+        }
+    }
 
-    private boolean unregistered;
+    // ---------- statistics ---------------------------------------------------
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getSize() {
+        return objects.size() + requestObjects.size();
+    }
 
-    ObservingObjectCache(Session session) {
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        long rate = (total == 0) ? 0 : (hits * 100 / total);
+        return "size=" + getSize() + ", maxSize=" + maxSize + ", hits="
+            + hits + ", misses=" + misses + ", evictions=" + evictions
+            + ", hitRate=" + rate + "%";
+    }
+
+    // ---------- internal -----------------------------------------------------
+
+    /**
+     * Registers this cache for observation and returns <code>true</code>
+     * if registration succeeds.
+     */
+    private boolean register(Session session) {
         try {
             session.getWorkspace().getObservationManager().addEventListener(
                 this,
                 Event.NODE_ADDED | Event.NODE_REMOVED | Event.PROPERTY_ADDED
                     | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED, "/",
                 true, null, null, false);
-            this.unregistered = false;
+            return true;
         } catch (RepositoryException re) {
-            // TODO: log
-            this.unregistered = true;
+            log.warn("Cannot register the object cache for observation, "
+                + "objects are only cached for a single request", re);
+            return false;
         }
     }
 
-    public void onEvent(EventIterator eventiterator) {
-        super.clear();
+    private synchronized void evictAll() {
+        evicted(objects.size());
+        objects.clear();
+        changedRequestPaths.addAll(requestObjects.keySet());
+    }
+
+    /** Counts evicted objects, called while holding the lock of this cache */
+    private void evicted(int count) {
+        evictions += count;
+        statistics.evicted(count);
+    }
+
+    /**
+     * Returns <code>true</code> if the path is below any of the given paths,
+     * that is if any of its ancestors is contained in the set.
+     */
+    private boolean isBelow(String path, Set<String> paths) {
+        if (paths.isEmpty()) {
+            return false;
+        }
+        for (String p = getParent(path); p != null; p = getParent(p)) {
+            if (paths.contains(p)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    public void clear() {
-        if (this.unregistered) {
-            super.clear();
+    /**
+     * Returns the parent path of the given absolute path or
+     * <code>null</code> for the root path.
+     */
+    private static String getParent(String path) {
+        int lastSlash = path.lastIndexOf('/');
+        if (lastSlash < 0 || path.length() == 1) {
+            return null;
         }
+        return (lastSlash == 0) ? "/" : path.substring(0, lastSlash);
     }
 }
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.ocm.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.ObservationManager;
+
+import junit.framework.TestCase;
+
+public class ObservingObjectCacheTest extends TestCase {
+
+    private ObjectCacheStatistics statistics;
+
+    private ObservingObjectCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        statistics = new ObjectCacheStatistics();
+        cache = new ObservingObjectCache(createSession(), 10, statistics);
+        cache.cache("/a", "a");
+        cache.cache("/a/b", "b");
+        cache.cache("/a/b/c", "c");
+        cache.cache("/a/d", "d");
+        cache.cache("/e", "e");
+
+        // end of the request, keep the objects
+        cache.clear();
+    }
+
+    public void testHitsAndMisses() {
+        assertTrue(cache.isCached("/a/b"));
+        assertEquals("b", cache.getObject("/a/b"));
+        assertFalse(cache.isCached("/x"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, statistics.getCaches());
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+    }
+
+    public void testEvictChangedNodeAndAncestors() {
+        cache.onEvent(events(new TestEvent(Event.PROPERTY_CHANGED,
+            "/a/b/prop")));
+
+        assertFalse(cache.isCached("/a"));
+        assertFalse(cache.isCached("/a/b"));
+        assertTrue(cache.isCached("/a/b/c"));
+        assertTrue(cache.isCached("/a/d"));
+        assertTrue(cache.isCached("/e"));
+        assertEquals(2, cache.getEvictions());
+        assertEquals(2, statistics.getEvictions());
+    }
+
+    public void testEvictRemovedNodeAndDescendants() {
+        cache.onEvent(events(new TestEvent(Event.NODE_REMOVED, "/a/b")));
+
+        assertFalse(cache.isCached("/a"));
+        assertFalse(cache.isCached("/a/b"));
+        assertFalse(cache.isCached("/a/b/c"));
+        assertTrue(cache.isCached("/a/d"));
+        assertTrue(cache.isCached("/e"));
+        assertEquals(3, cache.getEvictions());
+    }
+
+    public void testEvictedObjectFoundBefore() {
+        assertTrue(cache.isCached("/e"));
+        cache.onEvent(events(new TestEvent(Event.PROPERTY_ADDED, "/e/prop")));
+
+        // the object found by isCached is still returned
+        assertEquals("e", cache.getObject("/e"));
+        assertNull(cache.getObject("/a/x"));
+    }
+
+    public void testMaxSize() throws Exception {
+        cache = new ObservingObjectCache(createSession(), 2, statistics);
+        cache.cache("/1", "1");
+        cache.cache("/2", "2");
+        cache.clear();
+        cache.isCached("/1");
+        cache.cache("/3", "3");
+        cache.clear();
+
+        assertEquals(2, cache.getSize());
+        assertFalse(cache.isCached("/2"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, statistics.getCaches());
+    }
+
+    public void testNoEvictionDuringRequest() throws Exception {
+        cache = new ObservingObjectCache(createSession(), 2, statistics);
+        cache.cache("/1", "1");
+        cache.cache("/2", "2");
+        cache.cache("/3", "3");
+
+        // all objects of the request remain available, for example for
+        // references back to an object still being mapped
+        assertTrue(cache.isCached("/1"));
+        assertEquals("1", cache.getObject("/1"));
+        assertEquals(3, cache.getSize());
+        assertEquals(0, cache.getEvictions());
+
+        cache.clear();
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    public void testZeroMaxSize() throws Exception {
+        cache = new ObservingObjectCache(createSession(), 0, statistics);
+        cache.cache("/1", "1");
+        assertTrue(cache.isCached("/1"));
+        assertEquals("1", cache.getObject("/1"));
+
+        // not kept after the end of the request
+        cache.clear();
+        assertFalse(cache.isCached("/1"));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testChangedDuringRequest() {
+        cache.cache("/f", "f");
+        cache.onEvent(events(new TestEvent(Event.PROPERTY_CHANGED, "/f/prop")));
+
+        // still available during the request but not kept
+        assertEquals("f", cache.getObject("/f"));
+        cache.clear();
+        assertFalse(cache.isCached("/f"));
+        assertTrue(cache.isCached("/e"));
+    }
+
+    // ---------- observation mocks --------------------------------------------
+
+    private static EventIterator events(Event... events) {
+        final Iterator<Event> delegatee = Arrays.asList(events).iterator();
+        return new EventIterator() {
+            private long position;
+
+            public Event nextEvent() {
+                position++;
+                return delegatee.next();
+            }
+
+            public Object next() {
+                return nextEvent();
+            }
+
+            public boolean hasNext() {
+                return delegatee.hasNext();
+            }
+
+            public void skip(long skipNum) {
+                while (skipNum-- > 0) {
+                    nextEvent();
+                }
+            }
+
+            public long getSize() {
+                return -1;
+            }
+
+            public long getPosition() {
+                return position;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static class TestEvent implements Event {
+
+        private final int type;
+
+        private final String path;
+
+        TestEvent(int type, String path) {
+            this.type = type;
+            this.path = path;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getUserID() {
+            return "admin";
+        }
+    }
+
+    private static Session createSession() {
+        final ObservationManager observationManager = (ObservationManager) createMock(
+            ObservationManager.class, null, null);
+        final Workspace workspace = (Workspace) createMock(Workspace.class,
+            "getObservationManager", observationManager);
+        return (Session) createMock(Session.class, "getWorkspace", workspace);
+    }
+
+    /**
+     * Creates a mock of the interface returning the result for the named
+     * method and <code>null</code> for all other methods.
+     */
+    private static Object createMock(Class<?> type, final String methodName,
+            final Object result) {
+        return Proxy.newProxyInstance(
+            ObservingObjectCacheTest.class.getClassLoader(),
+            new Class[] { type }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if (name.equals(methodName)) {
+                        return result;
+                    } else if ("equals".equals(name)) {
+                        return proxy == args[0];
+                    } else if ("hashCode".equals(name)) {
+                        return System.identityHashCode(proxy);
+                    }
+                    return null;
+                }
+            });
+    }
+}
@@ -35,7 +35,9 @@ import javax.jcr.query.QueryResult;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.jcr.resource.internal.JcrResourceResolver2;
 import org.apache.sling.jcr.resource.internal.helper.LazyInputStream;
+import org.apache.sling.jcr.resource.internal.helper.ResourceSuperTypeCache;
 
 /**
  * The <code>JcrResourceUtil</code> class provides helper methods used
@@ -178,6 +180,11 @@ public class JcrResourceUtil {
      * <code>Resource</code> addressed by the <code>resourceType</code> to a
      * string. If no such child resource exists or if the resource does not
      * adapt to a string, this method returns <code>null</code>.
+     * <p>
+     * For resource resolvers of the Sling resource resolver factory the super
+     * types are cached, such that looking up the super type chain of a
+     * resource type does not access the repository again until the resource
+     * super type definitions change.
      *
      * @param resourceResolver The <code>ResourceResolver</code> used to
      *            access the resource whose path (relative or absolute) is given
@@ -194,6 +201,14 @@ public class JcrResourceUtil {
      */
     public static String getResourceSuperType(
             ResourceResolver resourceResolver, String resourceType) {
+        // use the shared cache if available
+        if (resourceResolver instanceof JcrResourceResolver2) {
+            ResourceSuperTypeCache cache = ((JcrResourceResolver2) resourceResolver).getResourceSuperTypeCache();
+            if (cache != null) {
+                return cache.getResourceSuperType(resourceType);
+            }
+        }
+
         // normalize resource type to a path string
         String rtPath = resourceTypeToPath(resourceType);
 
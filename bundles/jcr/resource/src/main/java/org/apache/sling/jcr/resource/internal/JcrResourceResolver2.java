@@ -51,6 +51,7 @@ import org.apache.sling.jcr.resource.internal.helper.MapEntries;
 import org.apache.sling.jcr.resource.internal.helper.MapEntry;
 import org.apache.sling.jcr.resource.internal.helper.RedirectResource;
 import org.apache.sling.jcr.resource.internal.helper.ResourcePathIterator;
+import org.apache.sling.jcr.resource.internal.helper.ResourceSuperTypeCache;
 import org.apache.sling.jcr.resource.internal.helper.jcr.JcrNodeResourceIterator;
 import org.apache.sling.jcr.resource.internal.helper.jcr.JcrResourceProviderEntry;
 import org.apache.sling.jcr.resource.internal.helper.starresource.StarResource;
@@ -140,7 +141,7 @@ public class JcrResourceResolver2 extends SlingAdaptable implements
         for (int i = 0; i < 100; i++) {
 
             String[] mappedPath = null;
-            for (MapEntry mapEntry : resourceMapper.getResolveMaps()) {
+            for (MapEntry mapEntry : resourceMapper.getResolveMaps(requestPath)) {
                 mappedPath = mapEntry.replace(requestPath);
                 if (mappedPath != null) {
                     log.debug(
@@ -430,6 +431,14 @@ public class JcrResourceResolver2 extends SlingAdaptable implements
         return factory.getSearchPath().clone();
     }
 
+    /**
+     * Returns the resource super type cache shared by the resource resolvers
+     * of the factory or <code>null</code> if super types are not cached.
+     */
+    public ResourceSuperTypeCache getResourceSuperTypeCache() {
+        return factory.getResourceSuperTypeCache();
+    }
+
     // ---------- direct resource access without resolution
 
     public Resource getResource(String path) {
@@ -41,6 +41,7 @@ import org.apache.sling.jcr.resource.internal.helper.MapEntries;
 import org.apache.sling.jcr.resource.internal.helper.Mapping;
 import org.apache.sling.jcr.resource.internal.helper.ResourceProviderEntry;
 import org.apache.sling.jcr.resource.internal.helper.ResourceProviderEntryException;
+import org.apache.sling.jcr.resource.internal.helper.ResourceSuperTypeCache;
 import org.apache.sling.jcr.resource.internal.helper.jcr.JcrResourceProviderEntry;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
@@ -138,6 +139,20 @@ public class JcrResourceResolverFactoryImpl implements
      */
     private static final String PROP_MAPPING = "resource.resolver.mapping";
 
+    /**
+     * The default maximum number of resource types whose super type is
+     * cached (value is 1000).
+     */
+    private static final int DEFAULT_SUPER_TYPE_CACHE_SIZE = 1000;
+
+    /**
+     * The maximum number of resource types whose super type is cached. A
+     * value of zero or less disables the cache.
+     *
+     * @scr.property valueRef="DEFAULT_SUPER_TYPE_CACHE_SIZE"
+     */
+    private static final String PROP_SUPER_TYPE_CACHE_SIZE = "resource.resolver.supertype.cachesize";
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -170,6 +185,9 @@ public class JcrResourceResolverFactoryImpl implements
     // helper for the new JcrResourceResolver2
     private MapEntries mapEntries = MapEntries.EMPTY;
 
+    // cache of resource super types, null if disabled or not active
+    private volatile ResourceSuperTypeCache resourceSuperTypeCache;
+
     /** all mappings */
     private Mapping[] mappings;
 
@@ -259,6 +277,10 @@ public class JcrResourceResolverFactoryImpl implements
         return mapEntries;
     }
 
+    ResourceSuperTypeCache getResourceSuperTypeCache() {
+        return resourceSuperTypeCache;
+    }
+
     /**
      * Getter for rootProviderEntry, making it easier to extend
      * JcrResourceResolverFactoryImpl. See <a
@@ -343,6 +365,21 @@ public class JcrResourceResolverFactoryImpl implements
                 "activate: Cannot access repository, failed setting up Mapping Support",
                 e);
         }
+
+        // set up the resource super type cache
+        int superTypeCacheSize = OsgiUtil.toInteger(
+            properties.get(PROP_SUPER_TYPE_CACHE_SIZE),
+            DEFAULT_SUPER_TYPE_CACHE_SIZE);
+        if (superTypeCacheSize > 0) {
+            try {
+                resourceSuperTypeCache = new ResourceSuperTypeCache(this,
+                    getRepository(), superTypeCacheSize);
+            } catch (Exception e) {
+                log.error(
+                    "activate: Cannot access repository, resource super types are not cached",
+                    e);
+            }
+        }
     }
 
     private JcrResourceResolverWebConsolePlugin plugin;
@@ -359,6 +396,12 @@ public class JcrResourceResolverFactoryImpl implements
             mapEntries = MapEntries.EMPTY;
         }
 
+        ResourceSuperTypeCache cache = resourceSuperTypeCache;
+        resourceSuperTypeCache = null;
+        if (cache != null) {
+            cache.dispose();
+        }
+
         this.componentContext = null;
     }
 
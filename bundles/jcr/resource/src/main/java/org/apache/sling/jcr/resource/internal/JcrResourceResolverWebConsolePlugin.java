@@ -38,6 +38,7 @@ import org.apache.felix.webconsole.WebConsoleConstants;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.jcr.resource.internal.helper.MapEntries;
 import org.apache.sling.jcr.resource.internal.helper.MapEntry;
+import org.apache.sling.jcr.resource.internal.helper.ResourceSuperTypeCache;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceRegistration;
@@ -146,6 +147,19 @@ public class JcrResourceResolverWebConsolePlugin extends AbstractWebConsolePlugi
             "Lists the entries used by the ResourceResolver.map methods to map Resource Paths to URLs",
             mapEntries.getMapMaps());
 
+        ResourceSuperTypeCache superTypeCache = resolverFactory.getResourceSuperTypeCache();
+        if (superTypeCache != null) {
+            separator(pw);
+
+            title(pw, "Resource Super Type Cache",
+                "Statistics of the cache of resource super types used to resolve servlets and scripts");
+
+            pw.println("<tr class='content'>");
+            pw.println("<td class='content' colspan='3'>" + superTypeCache
+                + "</td>");
+            pw.println("</tr>");
+        }
+
         pw.println("</table>");
 
     }
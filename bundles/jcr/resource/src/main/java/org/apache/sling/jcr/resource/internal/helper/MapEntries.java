@@ -22,14 +22,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Map.Entry;
 
+import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.observation.Event;
@@ -47,7 +50,22 @@ import org.apache.sling.jcr.resource.internal.JcrResourceResolverFactoryImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class MapEntries implements EventListener {
+/**
+ * The <code>MapEntries</code> class maintains the resolution and mapping
+ * tables built from the <code>/etc/map</code> tree, the
+ * <code>sling:vanityPath</code> properties and the resource resolver
+ * configuration.
+ * <p>
+ * The tables are loaded completely when this instance is created. Later
+ * changes reported by observation events are collected and applied
+ * incrementally by a background thread: Changes below <code>/etc/map</code>
+ * cause that (small) tree to be reloaded, while changes to vanity path
+ * properties only cause the affected nodes to be read again. Bursts of events
+ * are coalesced into a single update. New tables are built completely before
+ * being swapped in, so readers never block and never see partially built
+ * tables.
+ */
+public class MapEntries implements EventListener, Runnable {
 
     public static MapEntries EMPTY = new MapEntries();
 
@@ -57,6 +75,20 @@ public class MapEntries implements EventListener {
 
     private static final String MAP_ROOT_PREFIX = MAP_ROOT + "/";
 
+    private static final String PROP_VANITY_PATH = "sling:vanityPath";
+
+    private static final String PROP_VANITY_ORDER = "sling:vanityOrder";
+
+    private static final String PROP_REDIRECT = "sling:redirect";
+
+    private static final String MIXIN_VANITY_PATH = "sling:VanityPath";
+
+    /**
+     * The time in milliseconds to wait for more events after the first one
+     * before applying the changes (value is 100).
+     */
+    private static final long UPDATE_DELAY = 100L;
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -66,18 +98,36 @@ public class MapEntries implements EventListener {
 
     private Session session;
 
-    private List<MapEntry> resolveMaps;
+    private volatile MapEntryIndex resolveMaps;
 
-    private Collection<MapEntry> mapMaps;
+    private volatile Collection<MapEntry> mapMaps;
 
     private boolean initializing = false;
 
+    /** resolution entries loaded from /etc/map */
+    private List<MapEntry> mapRootResolveEntries;
+
+    /** map entries loaded from /etc/map indexed by pattern */
+    private SortedMap<String, MapEntry> mapRootMapEntries;
+
+    /** vanity path definitions indexed by the path of the defining node */
+    private SortedMap<String, VanityPath> vanityPaths;
+
+    /** whether /etc/map has to be reloaded, guarded by this */
+    private boolean pendingMapRootChange;
+
+    /** paths of nodes whose vanity paths must be read again, guarded by this */
+    private Set<String> pendingVanityPaths;
+
+    /** paths of removed nodes, guarded by this */
+    private Set<String> pendingRemovals;
+
     private MapEntries() {
         session = null; // not needed
         factory = null;
         resolver = null;
 
-        resolveMaps = Collections.<MapEntry> emptyList();
+        resolveMaps = MapEntryIndex.EMPTY;
         mapMaps = Collections.<MapEntry> emptyList();
     }
 
@@ -87,8 +137,15 @@ public class MapEntries implements EventListener {
         this.session = repository.loginAdministrative(null);
         this.resolver = (JcrResourceResolver2) factory.getResourceResolver(session);
 
+        this.pendingVanityPaths = new HashSet<String>();
+        this.pendingRemovals = new HashSet<String>();
+
         init();
 
+        Thread updater = new Thread(this, "MapEntries Updater");
+        updater.setDaemon(true);
+        updater.start();
+
         try {
             session.getWorkspace().getObservationManager().addEventListener(
                 this, 255, "/", true, null, null, false);
@@ -112,21 +169,15 @@ public class MapEntries implements EventListener {
 
         try {
 
-            List<MapEntry> newResolveMaps = new ArrayList<MapEntry>();
-            SortedMap<String, MapEntry> newMapMaps = new TreeMap<String, MapEntry>();
-
-            // load the /etc/map entries into the maps
-            loadResolverMap(resolver, newResolveMaps, newMapMaps);
+            // load the /etc/map entries
+            loadMapRoot();
 
-            // load the configuration into the resolver map
-            loadVanityPaths(resolver, newResolveMaps);
-            loadConfiguration(factory, newResolveMaps);
+            // load all vanity paths
+            vanityPaths = new TreeMap<String, VanityPath>();
+            loadVanityPaths(resolver, vanityPaths);
 
-            // load the configuration into the mapper map
-            loadMapConfiguration(factory, newMapMaps);
-
-            this.resolveMaps = newResolveMaps;
-            this.mapMaps = new TreeSet<MapEntry>(newMapMaps.values());
+            // build the tables
+            updateTables();
 
         } finally {
 
@@ -144,19 +195,23 @@ public class MapEntries implements EventListener {
 
         // wait at most 10 seconds for a notifcation during initialization
         synchronized (this) {
-            if (initializing) {
+            long end = System.currentTimeMillis() + 10L * 1000L;
+            long remaining = end - System.currentTimeMillis();
+            while (initializing && remaining > 0) {
                 try {
-                    wait(10L * 1000L);
+                    wait(remaining);
                 } catch (InterruptedException ie) {
                     // ignore
                 }
+                remaining = end - System.currentTimeMillis();
             }
 
             // immediately set the session field to null to indicate
             // that we have been disposed (this also signals to the
-            // event handler to stop working
+            // event handler and the updater to stop working
             oldSession = session;
             session = null;
+            notifyAll();
         }
 
         if (oldSession != null) {
@@ -181,7 +236,16 @@ public class MapEntries implements EventListener {
     }
 
     public List<MapEntry> getResolveMaps() {
-        return resolveMaps;
+        return resolveMaps.getEntries();
+    }
+
+    /**
+     * Returns the resolution entries which may match the given request path
+     * in the order in which they have to be applied. This is a subset of the
+     * {@link #getResolveMaps()} list selected by the {@link MapEntryIndex}.
+     */
+    public List<MapEntry> getResolveMaps(String requestPath) {
+        return resolveMaps.getCandidates(requestPath);
     }
 
     public Collection<MapEntry> getMapMaps() {
@@ -195,38 +259,197 @@ public class MapEntries implements EventListener {
     // ---------- EventListener interface
 
     public void onEvent(EventIterator events) {
-        boolean handleEvent = false;
-        while (!handleEvent && session != null && events.hasNext()) {
+        boolean mapRootChange = false;
+        Set<String> vanityChanges = new HashSet<String>();
+        Set<String> removals = new HashSet<String>();
+        while (session != null && events.hasNext()) {
             Event event = events.nextEvent();
             try {
                 String path = event.getPath();
-                handleEvent = MAP_ROOT.equals(path)
-                    || path.startsWith(MAP_ROOT_PREFIX)
-                    || path.endsWith("/sling:vanityPath")
-                    || path.endsWith("/sling:vanityOrder")
-                    || path.endsWith("/sling:redirect");
+                if (MAP_ROOT.equals(path) || path.startsWith(MAP_ROOT_PREFIX)) {
+                    mapRootChange = true;
+                } else if (event.getType() == Event.NODE_REMOVED) {
+                    removals.add(path);
+                } else if (path.endsWith("/" + PROP_VANITY_PATH)
+                    || path.endsWith("/" + PROP_VANITY_ORDER)
+                    || path.endsWith("/" + PROP_REDIRECT)) {
+                    vanityChanges.add(ResourceUtil.getParent(path));
+                }
             } catch (Throwable t) {
                 log.warn("onEvent: Cannot complete event handling", t);
             }
         }
 
-        if (handleEvent) {
-            if (session != null) {
-                try {
-                    init();
-                } catch (Throwable t) {
-                    log.warn("onEvent: Failed initializing after changes", t);
+        if (mapRootChange || !vanityChanges.isEmpty() || !removals.isEmpty()) {
+            synchronized (this) {
+                if (session != null) {
+                    pendingMapRootChange |= mapRootChange;
+                    pendingVanityPaths.addAll(vanityChanges);
+                    pendingRemovals.addAll(removals);
+                    notifyAll();
+                } else {
+                    log.info("onEvent: Already disposed, not updating");
                 }
-            } else {
-                log.info("onEvent: Already disposed, not reinitializing");
             }
         } else if (log.isDebugEnabled()) {
             log.debug("onEvent: Ignoring irrelevant events");
         }
     }
 
+    // ---------- Runnable interface
+
+    /**
+     * Waits for changes reported by {@link #onEvent(EventIterator)} and
+     * applies them to the tables. After the first change has been reported,
+     * the updater waits a short time for more changes to apply them together.
+     * This method terminates when this instance is disposed.
+     */
+    public void run() {
+        while (true) {
+            boolean mapRootChange;
+            Set<String> vanityChanges;
+            Set<String> removals;
+
+            synchronized (this) {
+                try {
+                    while (session != null && !hasPendingChanges()) {
+                        wait();
+                    }
+
+                    // coalesce events arriving in short succession; new
+                    // events notify this thread, so wait up to a fixed
+                    // deadline instead of waiting once
+                    long end = System.currentTimeMillis() + UPDATE_DELAY;
+                    long remaining = UPDATE_DELAY;
+                    while (session != null && remaining > 0) {
+                        wait(remaining);
+                        remaining = end - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException ie) {
+                    // ignore, check for session below
+                }
+
+                if (session == null) {
+                    log.debug("run: Disposed, terminating updater");
+                    return;
+                }
+
+                mapRootChange = pendingMapRootChange;
+                vanityChanges = pendingVanityPaths;
+                removals = pendingRemovals;
+
+                pendingMapRootChange = false;
+                pendingVanityPaths = new HashSet<String>();
+                pendingRemovals = new HashSet<String>();
+
+                initializing = true;
+            }
+
+            try {
+                applyChanges(mapRootChange, vanityChanges, removals);
+            } catch (Throwable t) {
+                log.warn("run: Failed applying changes", t);
+            } finally {
+                synchronized (this) {
+                    initializing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
     // ---------- internal
 
+    private boolean hasPendingChanges() {
+        return pendingMapRootChange || !pendingVanityPaths.isEmpty()
+            || !pendingRemovals.isEmpty();
+    }
+
+    /**
+     * Applies the collected changes to the in-memory state and builds and
+     * swaps in new tables if anything actually changed.
+     */
+    private void applyChanges(boolean mapRootChange, Set<String> vanityChanges,
+            Set<String> removals) {
+        boolean changed = mapRootChange;
+
+        if (mapRootChange) {
+            log.debug("applyChanges: Reloading {}", MAP_ROOT);
+            loadMapRoot();
+        }
+
+        // drop vanity paths of removed nodes and their descendants
+        for (String removed : removals) {
+            SortedMap<String, VanityPath> subTree = vanityPaths.subMap(
+                removed, removed + "0"); // '0' follows '/'
+            for (Iterator<String> pi = subTree.keySet().iterator(); pi.hasNext();) {
+                String path = pi.next();
+                if (path.equals(removed) || path.startsWith(removed + "/")) {
+                    log.debug("applyChanges: Removing vanity paths of {}", path);
+                    pi.remove();
+                    changed = true;
+                }
+            }
+        }
+
+        // reread vanity paths of modified nodes
+        for (String path : vanityChanges) {
+            VanityPath oldVanityPath = vanityPaths.remove(path);
+            Resource resource = resolver.getResource(path);
+            VanityPath newVanityPath = (resource != null)
+                    ? createVanityPath(resource)
+                    : null;
+            if (newVanityPath != null) {
+                log.debug("applyChanges: Updating vanity paths of {}", path);
+                vanityPaths.put(path, newVanityPath);
+            }
+            changed |= (oldVanityPath != null || newVanityPath != null);
+        }
+
+        if (changed) {
+            updateTables();
+        } else {
+            log.debug("applyChanges: No relevant changes");
+        }
+    }
+
+    /**
+     * Builds new resolution and mapping tables from the /etc/map entries, the
+     * vanity paths and the configuration and swaps them in.
+     */
+    private void updateTables() {
+        List<MapEntry> newResolveMaps = new ArrayList<MapEntry>(
+            mapRootResolveEntries);
+        SortedMap<String, MapEntry> newMapMaps = new TreeMap<String, MapEntry>(
+            mapRootMapEntries);
+
+        // add vanity paths in order of descending sling:vanityOrder
+        List<VanityPath> vanities = new ArrayList<VanityPath>(
+            vanityPaths.values());
+        Collections.sort(vanities);
+        for (VanityPath vanity : vanities) {
+            newResolveMaps.addAll(vanity.getEntries());
+        }
+
+        // load the configuration into the resolver map
+        loadConfiguration(factory, newResolveMaps);
+
+        // load the configuration into the mapper map
+        loadMapConfiguration(factory, newMapMaps);
+
+        this.resolveMaps = new MapEntryIndex(newResolveMaps);
+        this.mapMaps = new TreeSet<MapEntry>(newMapMaps.values());
+    }
+
+    private void loadMapRoot() {
+        List<MapEntry> newResolveEntries = new ArrayList<MapEntry>();
+        SortedMap<String, MapEntry> newMapEntries = new TreeMap<String, MapEntry>();
+        loadResolverMap(resolver, newResolveEntries, newMapEntries);
+
+        mapRootResolveEntries = newResolveEntries;
+        mapRootMapEntries = newMapEntries;
+    }
+
     private void loadResolverMap(JcrResourceResolver2 resolver,
             Collection<MapEntry> resolveEntries,
             Map<String, MapEntry> mapEntries) {
@@ -288,7 +511,7 @@ public class MapEntries implements EventListener {
     }
 
     private void loadVanityPaths(JcrResourceResolver2 resolver,
-            List<MapEntry> entries) {
+            Map<String, VanityPath> vanityPaths) {
         // sling:VanityPath (uppercase V) is the mixin name
         // sling:vanityPath (lowercase) is the property name
         final String queryString = "SELECT sling:vanityPath, sling:redirect FROM sling:VanityPath WHERE sling:vanityPath IS NOT NULL ORDER BY sling:vanityOrder DESC";
@@ -296,40 +519,73 @@ public class MapEntries implements EventListener {
             queryString, Query.SQL);
         while (i.hasNext()) {
             Resource resource = i.next();
-            ValueMap row = resource.adaptTo(ValueMap.class);
-            if (row == null) {
-                continue;
+            VanityPath vanityPath = createVanityPath(resource);
+            if (vanityPath != null) {
+                vanityPaths.put(resource.getPath(), vanityPath);
             }
+        }
+    }
 
-            // url is ignoring scheme and host.port and the path is
-            // what is stored in the sling:vanityPath property
-            String[] pVanityPaths = row.get("sling:vanityPath", new String[0]);
-            for (String pVanityPath : pVanityPaths) {
-                String url = "^" + ANY_SCHEME_HOST
-                    + String.valueOf(pVanityPath);
-
-                // redirect target is the node providing the sling:vanityPath
-                // property (or its parent if the node is called jcr:content)
-                String redirect = resource.getPath();
-                if (ResourceUtil.getName(redirect).equals("jcr:content")) {
-                    redirect = ResourceUtil.getParent(redirect);
+    /**
+     * Returns the vanity path definition of the given resource or
+     * <code>null</code> if the resource is not of type
+     * <code>sling:VanityPath</code> or has no <code>sling:vanityPath</code>
+     * property.
+     */
+    private VanityPath createVanityPath(Resource resource) {
+        Node node = resource.adaptTo(Node.class);
+        if (node != null) {
+            try {
+                if (!node.isNodeType(MIXIN_VANITY_PATH)) {
+                    return null;
                 }
+            } catch (RepositoryException re) {
+                log.warn("createVanityPath: Cannot check node type of "
+                    + resource.getPath(), re);
+                return null;
+            }
+        }
 
-                // whether the target is attained by a 302/FOUND or by an
-                // internal redirect is defined by the sling:redirect property
-                int status = row.get("sling:redirect", false)
-                        ? HttpServletResponse.SC_FOUND
-                        : -1;
+        ValueMap row = resource.adaptTo(ValueMap.class);
+        if (row == null) {
+            return null;
+        }
 
-                // 1. entry with exact match
-                entries.add(new MapEntry(url + "$", status, false, redirect
-                    + ".html"));
+        // url is ignoring scheme and host.port and the path is
+        // what is stored in the sling:vanityPath property
+        String[] pVanityPaths = row.get(PROP_VANITY_PATH, new String[0]);
+        if (pVanityPaths.length == 0) {
+            return null;
+        }
 
-                // 2. entry with match supporting selectors and extension
-                entries.add(new MapEntry(url + "(\\..*)", status, false,
-                    redirect + "$1"));
-            }
+        // redirect target is the node providing the sling:vanityPath
+        // property (or its parent if the node is called jcr:content)
+        String redirect = resource.getPath();
+        if (ResourceUtil.getName(redirect).equals("jcr:content")) {
+            redirect = ResourceUtil.getParent(redirect);
         }
+
+        // whether the target is attained by a 302/FOUND or by an
+        // internal redirect is defined by the sling:redirect property
+        int status = row.get(PROP_REDIRECT, false)
+                ? HttpServletResponse.SC_FOUND
+                : -1;
+
+        List<MapEntry> entries = new ArrayList<MapEntry>();
+        for (String pVanityPath : pVanityPaths) {
+            String url = "^" + ANY_SCHEME_HOST + String.valueOf(pVanityPath);
+
+            // 1. entry with exact match
+            entries.add(new MapEntry(url + "$", status, false, redirect
+                + ".html"));
+
+            // 2. entry with match supporting selectors and extension
+            entries.add(new MapEntry(url + "(\\..*)", status, false,
+                redirect + "$1"));
+        }
+
+        long order = row.get(PROP_VANITY_ORDER, 0L);
+        return new VanityPath(resource.getPath(), order, entries);
     }
 
     private void loadConfiguration(JcrResourceResolverFactoryImpl factory,
@@ -422,4 +678,38 @@ public class MapEntries implements EventListener {
         }
         entries.put(path, entry);
     }
+
+    /**
+     * The <code>VanityPath</code> class holds the resolution entries created
+     * for the <code>sling:vanityPath</code> property of a single node. Its
+     * natural order is by descending <code>sling:vanityOrder</code> and by
+     * node path for equal order.
+     */
+    private static class VanityPath implements Comparable<VanityPath> {
+
+        private final String path;
+
+        private final long order;
+
+        private final List<MapEntry> entries;
+
+        VanityPath(String path, long order, List<MapEntry> entries) {
+            this.path = path;
+            this.order = order;
+            this.entries = entries;
+        }
+
+        List<MapEntry> getEntries() {
+            return entries;
+        }
+
+        public int compareTo(VanityPath other) {
+            if (order > other.order) {
+                return -1;
+            } else if (order < other.order) {
+                return 1;
+            }
+            return path.compareTo(other.path);
+        }
+    }
 }
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The <code>MapEntryIndex</code> class is an immutable index over the ordered
+ * list of resolution {@link MapEntry} instances. Instead of evaluating the
+ * regular expression of each entry for each request, the index selects the
+ * (usually very small) set of entries which may possibly match a request path
+ * and returns these in their original order. The regular expression of each
+ * candidate is still evaluated, so resolution results do not change.
+ * <p>
+ * Entries are indexed as follows:
+ * <ul>
+ * <li>Entries matching any scheme and host followed by a literal path and
+ * either the end of the string or an extension (these are the entries created
+ * for <code>sling:vanityPath</code> properties and virtual URLs) are kept in a
+ * hash map indexed by the literal path.</li>
+ * <li>All other entries are kept in a character trie indexed by the literal
+ * prefix of the regular expression, which is usually the scheme and host part
+ * of an <code>/etc/map</code> entry. Entries without literal prefix are
+ * attached to the root of the trie and are thus always candidates.</li>
+ * </ul>
+ */
+public class MapEntryIndex {
+
+    /** The empty index */
+    public static final MapEntryIndex EMPTY = new MapEntryIndex(
+        Collections.<MapEntry> emptyList());
+
+    /** Prefix of patterns matching any scheme and host.port */
+    private static final String ANY_SCHEME_HOST_PATTERN = "^[^/]+/[^/]+";
+
+    /** Suffix of patterns matching selectors and extension */
+    private static final String EXTENSION_PATTERN = "(\\..*)";
+
+    /** Characters with special meaning in regular expressions */
+    private static final String REGEXP_SPECIAL = "\\^$.|?*+()[]{}";
+
+    /** Characters which make the preceding character optional */
+    private static final String REGEXP_QUANTIFIER = "?*{";
+
+    private final List<MapEntry> entries;
+
+    private final Map<String, int[]> pathIndex;
+
+    private final TrieNode prefixIndex;
+
+    public MapEntryIndex(List<MapEntry> entries) {
+        this.entries = Collections.unmodifiableList(new ArrayList<MapEntry>(
+            entries));
+        this.pathIndex = new HashMap<String, int[]>();
+        this.prefixIndex = new TrieNode();
+
+        for (int i = 0; i < this.entries.size(); i++) {
+            String pattern = this.entries.get(i).getPattern();
+            String path = getIndexPath(pattern);
+            if (path != null) {
+                int[] indices = pathIndex.get(path);
+                pathIndex.put(path, append(indices, i));
+            } else {
+                prefixIndex.add(getLiteralPrefix(pattern), 0, i);
+            }
+        }
+    }
+
+    /**
+     * Returns all entries of this index in their original order.
+     */
+    public List<MapEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the entries which may possibly match the given request path in
+     * their original order. The request path is expected in the form
+     * returned by <code>JcrResourceResolver2.getMapPath</code>, that is
+     * <code>{scheme}/{host}.{port}{path}</code>.
+     */
+    public List<MapEntry> getCandidates(String requestPath) {
+        int[] found = new int[8];
+        int count = 0;
+
+        // all entries whose literal prefix is a prefix of the request path
+        TrieNode node = prefixIndex;
+        for (int i = 0; node != null; i++) {
+            for (int idx : node.entries) {
+                found = ensureCapacity(found, count);
+                found[count++] = idx;
+            }
+            node = (i < requestPath.length())
+                    ? node.getChild(requestPath.charAt(i))
+                    : null;
+        }
+
+        // entries indexed by the path (after scheme and host.port)
+        if (!pathIndex.isEmpty()) {
+            int pathStart = requestPath.indexOf('/');
+            pathStart = (pathStart < 0) ? -1 : requestPath.indexOf('/',
+                pathStart + 1);
+            if (pathStart >= 0) {
+                String path = requestPath.substring(pathStart);
+                int[] exact = pathIndex.get(path);
+                if (exact != null) {
+                    for (int idx : exact) {
+                        found = ensureCapacity(found, count);
+                        found[count++] = idx;
+                    }
+                }
+
+                // path up to each dot for selectors and extensions
+                for (int dot = path.indexOf('.'); dot > 0; dot = path.indexOf(
+                    '.', dot + 1)) {
+                    int[] ext = pathIndex.get(path.substring(0, dot));
+                    if (ext != null) {
+                        for (int idx : ext) {
+                            found = ensureCapacity(found, count);
+                            found[count++] = idx;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (count == 0) {
+            return Collections.<MapEntry> emptyList();
+        }
+
+        // restore original entry order, dropping duplicates
+        Arrays.sort(found, 0, count);
+        List<MapEntry> result = new ArrayList<MapEntry>(count);
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || found[i] != found[i - 1]) {
+                result.add(entries.get(found[i]));
+            }
+        }
+        return result;
+    }
+
+    // ---------- internal
+
+    /**
+     * Returns the literal path of a pattern consisting of the any scheme and
+     * host prefix followed by a literal absolute path and either the end of
+     * string anchor or the selector and extension group. Otherwise
+     * <code>null</code> is returned.
+     */
+    static String getIndexPath(String pattern) {
+        if (!pattern.startsWith(ANY_SCHEME_HOST_PATTERN)) {
+            return null;
+        }
+
+        String path;
+        if (pattern.endsWith(EXTENSION_PATTERN)) {
+            path = pattern.substring(ANY_SCHEME_HOST_PATTERN.length(),
+                pattern.length() - EXTENSION_PATTERN.length());
+        } else if (pattern.endsWith("$")) {
+            path = pattern.substring(ANY_SCHEME_HOST_PATTERN.length(),
+                pattern.length() - 1);
+        } else {
+            return null;
+        }
+
+        if (!path.startsWith("/")) {
+            return null;
+        }
+
+        for (int i = 0; i < path.length(); i++) {
+            if (REGEXP_SPECIAL.indexOf(path.charAt(i)) >= 0) {
+                return null;
+            }
+        }
+
+        return path;
+    }
+
+    /**
+     * Returns the literal prefix of the pattern, that is the characters after
+     * the start anchor up to the first character with special meaning. If the
+     * pattern contains an alternation, the empty string is returned since the
+     * alternatives need not share any prefix.
+     */
+    static String getLiteralPrefix(String pattern) {
+        if (pattern.indexOf('|') >= 0) {
+            return "";
+        }
+
+        int start = pattern.startsWith("^") ? 1 : 0;
+        int end = start;
+        while (end < pattern.length()
+            && REGEXP_SPECIAL.indexOf(pattern.charAt(end)) < 0) {
+            end++;
+        }
+
+        // a quantifier may make the last literal character optional
+        if (end > start && end < pattern.length()
+            && REGEXP_QUANTIFIER.indexOf(pattern.charAt(end)) >= 0) {
+            end--;
+        }
+
+        return pattern.substring(start, end);
+    }
+
+    private static int[] append(int[] indices, int index) {
+        if (indices == null) {
+            return new int[] { index };
+        }
+
+        int[] newIndices = new int[indices.length + 1];
+        System.arraycopy(indices, 0, newIndices, 0, indices.length);
+        newIndices[indices.length] = index;
+        return newIndices;
+    }
+
+    private static int[] ensureCapacity(int[] found, int count) {
+        if (count < found.length) {
+            return found;
+        }
+
+        int[] newFound = new int[found.length * 2];
+        System.arraycopy(found, 0, newFound, 0, found.length);
+        return newFound;
+    }
+
+    private static class TrieNode {
+
+        private Map<Character, TrieNode> children;
+
+        private int[] entries = new int[0];
+
+        void add(String prefix, int pos, int index) {
+            if (pos == prefix.length()) {
+                entries = append(entries, index);
+                return;
+            }
+
+            if (children == null) {
+                children = new HashMap<Character, TrieNode>();
+            }
+
+            Character c = prefix.charAt(pos);
+            TrieNode child = children.get(c);
+            if (child == null) {
+                child = new TrieNode();
+                children.put(c, child);
+            }
+
+            child.add(prefix, pos + 1, index);
+        }
+
+        TrieNode getChild(char c) {
+            return (children == null) ? null : children.get(c);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.apache.sling.jcr.resource.JcrResourceConstants;
+import org.apache.sling.jcr.resource.JcrResourceUtil;
+import org.apache.sling.jcr.resource.internal.JcrResourceResolverFactoryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>ResourceSuperTypeCache</code> remembers the resource super type
+ * of resource types, as read from the
+ * {@link JcrResourceConstants#SLING_RESOURCE_SUPER_TYPE_PROPERTY} property of
+ * the resource type node found in the search path. Walking the super type
+ * chain of a resource type, as done for each servlet resolution, thus does
+ * not access the repository once the chain has been cached. Lookups do not
+ * lock.
+ * <p>
+ * Missing entries are read with an administrative session, such that the
+ * cached super types do not depend on the access rights of the session which
+ * happens to look them up first. This is the same for all resource resolvers
+ * of the factory as they share the search path.
+ * <p>
+ * The cache is cleared completely whenever observation reports a change to
+ * a resource super type property, a node being added or removed in the
+ * search path or a node being added or removed at or above the path of a
+ * cached absolute resource type. To check the latter without scanning the
+ * cache, the paths of cached absolute resource types and their ancestors are
+ * counted in a separate map. As with the servlet resolution cache, entries
+ * read before a clear are not stored after it and the least recently used
+ * entry is removed when the cache grows beyond its maximum size.
+ */
+public class ResourceSuperTypeCache implements EventListener {
+
+    /**
+     * The value cached for resource types without a super type, an empty
+     * super type property is treated the same as a missing one
+     */
+    private static final String NO_SUPER_TYPE = "";
+
+    private static final String SUPER_TYPE_SUFFIX = "/"
+        + JcrResourceConstants.SLING_RESOURCE_SUPER_TYPE_PROPERTY;
+
+    private static final int PROPERTY_EVENTS = Event.PROPERTY_ADDED
+        | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    private static final int NODE_EVENTS = Event.NODE_ADDED
+        | Event.NODE_REMOVED;
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, Entry> superTypes;
+
+    /**
+     * The number of cached absolute resource types at or below each path,
+     * only modified while holding the lock of this cache. Paths may remain
+     * after their resource types have been removed by a concurrent clear,
+     * which only causes an unnecessary clear.
+     */
+    private final ConcurrentMap<String, Integer> absoluteTypePaths;
+
+    /** The clock providing the last use stamps of the entries */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final String[] searchPath;
+
+    /** The administrative session, guarded by this */
+    private Session session;
+
+    /** The resolver on the administrative session, guarded by this */
+    private ResourceResolver resolver;
+
+    public ResourceSuperTypeCache(JcrResourceResolverFactoryImpl factory,
+            SlingRepository repository, int maxSize)
+            throws RepositoryException {
+        this.maxSize = maxSize;
+        this.superTypes = new ConcurrentHashMap<String, Entry>();
+        this.absoluteTypePaths = new ConcurrentHashMap<String, Integer>();
+        this.session = repository.loginAdministrative(null);
+        this.resolver = factory.getResourceResolver(session);
+        this.searchPath = resolver.getSearchPath();
+
+        try {
+            session.getWorkspace().getObservationManager().addEventListener(
+                this, PROPERTY_EVENTS | NODE_EVENTS, "/", true, null, null,
+                false);
+        } catch (RepositoryException re) {
+            session.logout();
+            throw re;
+        }
+    }
+
+    public void dispose() {
+        Session oldSession;
+        synchronized (this) {
+            oldSession = session;
+            session = null;
+            resolver = null;
+        }
+
+        if (oldSession != null) {
+            try {
+                oldSession.getWorkspace().getObservationManager().removeEventListener(
+                    this);
+            } catch (RepositoryException re) {
+                log.error(
+                    "dispose: Failed unregistering as observation listener", re);
+            }
+
+            try {
+                oldSession.logout();
+            } catch (Exception e) {
+                log.error("dispose: Unexpected problem logging out", e);
+            }
+        }
+
+        log.debug("dispose: Resource super type cache statistics: {}", this);
+        clear();
+    }
+
+    /**
+     * Returns the resource super type of the given resource type or
+     * <code>null</code> if the resource type has no super type.
+     *
+     * @see JcrResourceUtil#getResourceSuperType(ResourceResolver, String)
+     */
+    public String getResourceSuperType(String resourceType) {
+        String typePath = JcrResourceUtil.resourceTypeToPath(resourceType);
+
+        String superType;
+        Entry entry = superTypes.get(typePath);
+        if (entry != null) {
+            hits.incrementAndGet();
+            entry.lastUsed = clock.incrementAndGet();
+            superType = entry.superType;
+        } else {
+            misses.incrementAndGet();
+            superType = readResourceSuperType(typePath);
+        }
+
+        return (superType.length() == 0) ? null : superType;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        superTypes.clear();
+        absoluteTypePaths.clear();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSize() {
+        return superTypes.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        long rate = (total == 0) ? 0 : (hits * 100 / total);
+        return "size=" + getSize() + ", maxSize=" + getMaxSize() + ", hits="
+            + hits + ", misses=" + getMisses() + ", hitRate=" + rate + "%";
+    }
+
+    // ---------- EventListener interface --------------------------------------
+
+    public void onEvent(EventIterator events) {
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            try {
+                if (isRelevant(event.getType(), event.getPath())) {
+                    log.debug("onEvent: Clearing cache after change to {}",
+                        event.getPath());
+                    clear();
+                    return;
+                }
+            } catch (RepositoryException re) {
+                log.warn("onEvent: Cannot get event path, clearing cache", re);
+                clear();
+                return;
+            }
+        }
+    }
+
+    // ---------- internal -----------------------------------------------------
+
+    /**
+     * Reads the super type of the resource type with the administrative
+     * session and stores it unless the cache has been cleared in the
+     * meantime. The session is used by one thread at a time.
+     */
+    private synchronized String readResourceSuperType(String typePath) {
+        if (resolver == null) {
+            return NO_SUPER_TYPE;
+        }
+
+        int currentGeneration = generation.get();
+
+        String superType = null;
+        Resource rtResource = resolver.getResource(typePath
+            + SUPER_TYPE_SUFFIX);
+        if (rtResource != null) {
+            superType = rtResource.adaptTo(String.class);
+        }
+        if (superType == null) {
+            superType = NO_SUPER_TYPE;
+        }
+
+        if (maxSize > 0 && currentGeneration == generation.get()) {
+            if (superTypes.put(typePath, new Entry(superType,
+                clock.incrementAndGet())) == null) {
+                countAbsoluteTypePath(typePath, 1);
+            }
+            if (superTypes.size() > maxSize) {
+                removeLeastRecentlyUsed();
+            }
+
+            // the cache may have been cleared while storing the entry
+            if (currentGeneration != generation.get()) {
+                superTypes.remove(typePath);
+            }
+        }
+
+        return superType;
+    }
+
+    /**
+     * Removes the entry used least recently. The entry is only removed if it
+     * has not been replaced in the meantime.
+     */
+    private void removeLeastRecentlyUsed() {
+        String eldestKey = null;
+        Entry eldest = null;
+        for (Map.Entry<String, Entry> candidate : superTypes.entrySet()) {
+            Entry entry = candidate.getValue();
+            if (eldest == null || entry.lastUsed < eldest.lastUsed) {
+                eldestKey = candidate.getKey();
+                eldest = entry;
+            }
+        }
+        if (eldest != null && superTypes.remove(eldestKey, eldest)) {
+            countAbsoluteTypePath(eldestKey, -1);
+        }
+    }
+
+    /**
+     * Adds the delta to the counts of the absolute resource type path and
+     * all its ancestors. Relative resource types are not counted.
+     */
+    private void countAbsoluteTypePath(String typePath, int delta) {
+        if (!typePath.startsWith("/")) {
+            return;
+        }
+
+        for (String path = typePath; path.length() > 0; path = path.substring(
+            0, path.lastIndexOf('/'))) {
+            Integer count = absoluteTypePaths.get(path);
+            int newCount = ((count == null) ? 0 : count.intValue()) + delta;
+            if (newCount > 0) {
+                absoluteTypePaths.put(path, newCount);
+            } else {
+                absoluteTypePaths.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the change of the given type at the given
+     * path may change the super type of any resource type.
+     */
+    private boolean isRelevant(int type, String path) {
+        if ((type & PROPERTY_EVENTS) != 0) {
+            return path.endsWith(SUPER_TYPE_SUFFIX);
+        }
+
+        // nodes added, removed or moved in the search path may hide or
+        // reveal resource type nodes
+        for (String prefix : searchPath) {
+            if (path.startsWith(prefix) || prefix.startsWith(path + "/")) {
+                return true;
+            }
+        }
+
+        // absolute resource types are not resolved through the search path
+        return absoluteTypePaths.containsKey(path);
+    }
+
+    /**
+     * The cached super type of a resource type together with the stamp of
+     * its last use.
+     */
+    private static class Entry {
+
+        final String superType;
+
+        volatile long lastUsed;
+
+        Entry(String superType, long lastUsed) {
+            this.superType = superType;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -277,6 +277,35 @@ public class JcrResourceResolver2Test extends RepositoryTestBase {
             res.adaptTo(ValueMap.class).get("sling:target", String.class));
     }
 
+    public void testResolveVanityPath() throws Exception {
+        HttpServletRequest request = new ResourceResolverTestRequest(null,
+            null, -1, rootPath);
+        Node page = rootNode.addNode("vanitypage", "nt:unstructured");
+        page.addMixin("sling:VanityPath");
+        page.setProperty("sling:vanityPath", new String[] { "/vanity" });
+        session.save();
+
+        Resource res = waitForResolution(request, "/vanity.print.html", true);
+        assertEquals(page.getPath(), res.getPath());
+        assertEquals(".print.html",
+            res.getResourceMetadata().getResolutionPathInfo());
+
+        // changing the vanity path only replaces the entries of this node
+        page.setProperty("sling:vanityPath", new String[] { "/other" });
+        session.save();
+
+        res = waitForResolution(request, "/other.html", true);
+        assertEquals(page.getPath(), res.getPath());
+        res = resResolver.resolve(request, "/vanity.html");
+        assertTrue(res instanceof NonExistingResource);
+
+        // removing the node removes the entries
+        page.remove();
+        session.save();
+
+        waitForResolution(request, "/other.html", false);
+    }
+
     public void testResolveResourceInternalRedirectUrl() throws Exception {
         HttpServletRequest request = new ResourceResolverTestRequest("https",
             null, -1, rootPath);
@@ -1206,6 +1235,27 @@ public class JcrResourceResolver2Test extends RepositoryTestBase {
 
     // ---------- internal
 
+    /**
+     * Resolves the path until it resolves to an existing resource or not as
+     * expected, failing after some time. Changes to the mappings are applied
+     * asynchronously after the changes have been saved.
+     */
+    private Resource waitForResolution(HttpServletRequest request,
+            String path, boolean exists) throws Exception {
+        long end = System.currentTimeMillis() + 10000L;
+        while (true) {
+            Resource res = resResolver.resolve(request, path);
+            if (!(res instanceof NonExistingResource) == exists) {
+                return res;
+            }
+            if (System.currentTimeMillis() > end) {
+                fail("Timed out waiting for " + path + " to "
+                    + (exists ? "" : "no longer ") + "resolve");
+            }
+            Thread.sleep(50L);
+        }
+    }
+
     private void testStarResourceHelper(final String path, final String method) {
         final Resource res = resResolver.resolve(
             new ResourceResolverTestRequest(path, method), path);
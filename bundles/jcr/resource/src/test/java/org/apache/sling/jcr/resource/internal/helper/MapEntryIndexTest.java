@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class MapEntryIndexTest extends TestCase {
+
+    private static final String ANY = "^[^/]+/[^/]+";
+
+    public void testLiteralPrefix() {
+        assertEquals("http/localhost",
+            MapEntryIndex.getLiteralPrefix("^http/localhost.80/"));
+        assertEquals("http/",
+            MapEntryIndex.getLiteralPrefix("^http/[^/]+\\.80/"));
+        assertEquals("", MapEntryIndex.getLiteralPrefix(ANY + "/content"));
+        assertEquals("http/virtual",
+            MapEntryIndex.getLiteralPrefix("^http/virtualx?/"));
+        assertEquals("", MapEntryIndex.getLiteralPrefix("^http/a|https/b"));
+    }
+
+    public void testIndexPath() {
+        assertEquals("/vanity",
+            MapEntryIndex.getIndexPath(ANY + "/vanity$"));
+        assertEquals("/vanity",
+            MapEntryIndex.getIndexPath(ANY + "/vanity(\\..*)"));
+        assertNull(MapEntryIndex.getIndexPath(ANY + "/vanity"));
+        assertNull(MapEntryIndex.getIndexPath(ANY + "/van.ity$"));
+        assertNull(MapEntryIndex.getIndexPath(ANY + "vanity$"));
+        assertNull(MapEntryIndex.getIndexPath("^http/localhost.80/vanity$"));
+    }
+
+    public void testVanityCandidates() {
+        MapEntryIndex index = new MapEntryIndex(createVanityEntries(100));
+
+        List<MapEntry> candidates = index.getCandidates("http/localhost.80/vanity42");
+        assertEquals(2, candidates.size());
+        assertEquals(ANY + "/vanity42$", candidates.get(0).getPattern());
+
+        candidates = index.getCandidates("http/localhost.80/vanity42.print.html");
+        assertEquals(2, candidates.size());
+        assertEquals(ANY + "/vanity42(\\..*)", candidates.get(1).getPattern());
+        assertNull(candidates.get(0).replace("http/localhost.80/vanity42.print.html"));
+
+        assertEquals(0,
+            index.getCandidates("http/localhost.80/content/page.html").size());
+    }
+
+    public void testCandidatesIndependentOfSize() {
+        String path = "http/localhost.80/vanity7.html";
+        int small = new MapEntryIndex(createVanityEntries(10)).getCandidates(
+            path).size();
+        int large = new MapEntryIndex(createVanityEntries(20000)).getCandidates(
+            path).size();
+        assertEquals(small, large);
+    }
+
+    public void testOrderAndResultMatchLinearScan() {
+        List<MapEntry> entries = new ArrayList<MapEntry>();
+        entries.add(new MapEntry("^http/localhost.80/", -1, false, "/content/"));
+        entries.addAll(createVanityEntries(50));
+        entries.add(new MapEntry("^http/virtual.host.com.80/", -1, false,
+            "/content/virtual/"));
+        entries.add(new MapEntry(ANY + "/playground.html$", -1, false,
+            "/content/playground.html"));
+        entries.add(new MapEntry("^https/[^/]+\\.443/", 302, false,
+            "http://localhost/"));
+
+        MapEntryIndex index = new MapEntryIndex(entries);
+        String[] paths = { "http/localhost.80/vanity3.html",
+            "http/virtual.host.com.80/vanity3.html",
+            "http/virtual.host.com.80/playground.html",
+            "http/other.80/playground.html", "https/secure.443/vanity3",
+            "http/other.80/nothing" };
+
+        for (String path : paths) {
+            assertEquals(path, firstMatch(entries, path), firstMatch(
+                index.getCandidates(path), path));
+        }
+    }
+
+    private List<MapEntry> createVanityEntries(int count) {
+        List<MapEntry> entries = new ArrayList<MapEntry>();
+        for (int i = 0; i < count; i++) {
+            String url = ANY + "/vanity" + i;
+            entries.add(new MapEntry(url + "$", -1, false, "/content/page" + i
+                + ".html"));
+            entries.add(new MapEntry(url + "(\\..*)", -1, false, "/content/page"
+                + i + "$1"));
+        }
+        return entries;
+    }
+
+    private String firstMatch(List<MapEntry> entries, String path) {
+        for (MapEntry entry : entries) {
+            String[] result = entry.replace(path);
+            if (result != null) {
+                return Arrays.asList(result).toString();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal.helper;
+
+import java.lang.reflect.Field;
+
+import javax.jcr.NamespaceRegistry;
+import javax.jcr.Node;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.testing.jcr.RepositoryTestBase;
+import org.apache.sling.jcr.resource.JcrResourceConstants;
+import org.apache.sling.jcr.resource.JcrResourceUtil;
+import org.apache.sling.jcr.resource.internal.JcrResourceResolverFactoryImpl;
+
+public class ResourceSuperTypeCacheTest extends RepositoryTestBase {
+
+    private String rootPath;
+
+    private Node rootNode;
+
+    private Node apps;
+
+    private Node libs;
+
+    private JcrResourceResolverFactoryImpl resFac;
+
+    private ResourceSuperTypeCache cache;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        try {
+            NamespaceRegistry nsr = getSession().getWorkspace().getNamespaceRegistry();
+            nsr.registerNamespace(SlingConstants.NAMESPACE_PREFIX,
+                JcrResourceConstants.SLING_NAMESPACE_URI);
+        } catch (Exception e) {
+            // don't care for now
+        }
+
+        rootPath = "/test" + System.currentTimeMillis();
+        rootNode = getSession().getRootNode().addNode(rootPath.substring(1),
+            "nt:unstructured");
+        apps = rootNode.addNode("apps", "nt:unstructured");
+        libs = rootNode.addNode("libs", "nt:unstructured");
+        getSession().save();
+
+        resFac = new JcrResourceResolverFactoryImpl();
+        setField("repository", getRepository());
+        setField("searchPath", new String[] { rootPath + "/apps/",
+            rootPath + "/libs/" });
+    }
+
+    protected void tearDown() throws Exception {
+        if (cache != null) {
+            cache.dispose();
+        }
+        if (rootNode != null) {
+            rootNode.remove();
+            getSession().save();
+        }
+        super.tearDown();
+    }
+
+    public void testGetResourceSuperType() throws Exception {
+        addType(libs, "a/b", "c/d");
+        addType(apps, "c/d", null);
+        cache = new ResourceSuperTypeCache(resFac, getRepository(), 10);
+
+        assertEquals("c/d", cache.getResourceSuperType("a/b"));
+        assertEquals("c/d", cache.getResourceSuperType("a:b"));
+        assertNull(cache.getResourceSuperType("c/d"));
+        assertNull(cache.getResourceSuperType("c/d"));
+        assertNull(cache.getResourceSuperType("x/y"));
+
+        assertEquals(3, cache.getSize());
+        assertEquals(3, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    public void testChangedSuperType() throws Exception {
+        Node type = addType(libs, "a/b", "c/d");
+        cache = new ResourceSuperTypeCache(resFac, getRepository(), 10);
+        assertEquals("c/d", cache.getResourceSuperType("a/b"));
+
+        // unrelated changes keep the cache
+        rootNode.addNode("content", "nt:unstructured");
+        getSession().save();
+        Thread.sleep(500);
+        assertEquals(1, cache.getSize());
+
+        type.setProperty(
+            JcrResourceConstants.SLING_RESOURCE_SUPER_TYPE_PROPERTY, "e/f");
+        getSession().save();
+        waitForClear();
+        assertEquals("e/f", cache.getResourceSuperType("a/b"));
+
+        // a type node in an earlier search path entry hides the later one
+        addType(apps, "a/b", "g/h");
+        waitForClear();
+        assertEquals("g/h", cache.getResourceSuperType("a/b"));
+    }
+
+    public void testRemovedAbsoluteType() throws Exception {
+        Node content = rootNode.addNode("content", "nt:unstructured");
+        addType(content, "types/t", "c/d");
+        cache = new ResourceSuperTypeCache(resFac, getRepository(), 10);
+
+        String type = rootPath + "/content/types/t";
+        assertEquals("c/d", cache.getResourceSuperType(type));
+
+        content.getNode("types").remove();
+        getSession().save();
+        waitForClear();
+        assertNull(cache.getResourceSuperType(type));
+    }
+
+    public void testMaxSize() throws Exception {
+        cache = new ResourceSuperTypeCache(resFac, getRepository(), 2);
+        cache.getResourceSuperType("t/1");
+        cache.getResourceSuperType("t/2");
+        assertEquals(2, cache.getSize());
+
+        // t/2 is used least recently and removed
+        cache.getResourceSuperType("t/1");
+        cache.getResourceSuperType("t/3");
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getHits());
+
+        cache.getResourceSuperType("t/1");
+        assertEquals(2, cache.getHits());
+        cache.getResourceSuperType("t/2");
+        assertEquals(2, cache.getHits());
+    }
+
+    public void testRemovedAbsoluteTypeAfterEviction() throws Exception {
+        Node content = rootNode.addNode("content", "nt:unstructured");
+        addType(content, "types/t", "c/d");
+        addType(content, "other/t", "e/f");
+        cache = new ResourceSuperTypeCache(resFac, getRepository(), 1);
+
+        // the first type is evicted by the second
+        cache.getResourceSuperType(rootPath + "/content/types/t");
+        cache.getResourceSuperType(rootPath + "/content/other/t");
+        assertEquals(1, cache.getSize());
+
+        // removing the evicted type keeps the cache
+        content.getNode("types").remove();
+        getSession().save();
+        Thread.sleep(500);
+        assertEquals(1, cache.getSize());
+
+        content.getNode("other").remove();
+        getSession().save();
+        waitForClear();
+    }
+
+    public void testJcrResourceUtil() throws Exception {
+        addType(libs, "a/b", "c/d");
+        cache = new ResourceSuperTypeCache(resFac, getRepository(), 10);
+        setField("resourceSuperTypeCache", cache);
+
+        ResourceResolver resolver = resFac.getResourceResolver(getSession());
+        assertEquals("c/d", JcrResourceUtil.getResourceSuperType(resolver,
+            "a/b"));
+        assertEquals("c/d", JcrResourceUtil.getResourceSuperType(resolver,
+            "a/b"));
+        assertEquals(1, cache.getHits());
+    }
+
+    private Node addType(Node parent, String typePath, String superType)
+            throws Exception {
+        Node node = parent;
+        for (String name : typePath.split("/")) {
+            node = node.hasNode(name) ? node.getNode(name) : node.addNode(
+                name, "nt:unstructured");
+        }
+        if (superType != null) {
+            node.setProperty(
+                JcrResourceConstants.SLING_RESOURCE_SUPER_TYPE_PROPERTY,
+                superType);
+        }
+        getSession().save();
+        return node;
+    }
+
+    private void waitForClear() throws InterruptedException {
+        // observation events are delivered asynchronously
+        for (int i = 0; i < 50 && cache.getSize() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("Cache must be cleared", 0, cache.getSize());
+    }
+
+    private void setField(String name, Object value) throws Exception {
+        Field field = resFac.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(resFac, value);
+    }
+}
@@ -40,6 +40,13 @@ public class ScriptEngineConsolePlugin extends AbstractWebConsolePlugin {
 
     private static final String LABEL = "scriptengines";
 
+    /**
+     * The name of the optional script engine factory parameter describing
+     * the state of the compiled script cache of the factory (value is
+     * "org.apache.sling.scripting.cache.statistics").
+     */
+    private static final String PARAM_CACHE_STATISTICS = "org.apache.sling.scripting.cache.statistics";
+
     // --------- setup and shutdown
 
     private static ScriptEngineConsolePlugin INSTANCE;
@@ -139,6 +146,17 @@ public class ScriptEngineConsolePlugin extends AbstractWebConsolePlugin {
             pw.println("</td>");
             pw.println("</tr>");
 
+            Object cacheStatistics = factory.getParameter(PARAM_CACHE_STATISTICS);
+            if (cacheStatistics != null) {
+                pw.println("<tr class='content'>");
+                pw.println("<td class='content'>&nbsp;</td>");
+                pw.println("<td class='content'>Script Cache</td>");
+                pw.println("<td class='content'>");
+                pw.println(cacheStatistics);
+                pw.println("</td>");
+                pw.println("</tr>");
+            }
+
         }
 
         pw.println("</table>");
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.javascript.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.sling.scripting.javascript.io.EspReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>EspTranslationCache</code> keeps the ECMA script translations of
+ * ESP scripts in files in a directory, typically located in the bundle data
+ * area. Translations are keyed by the script path and a digest of the script
+ * source, the version of the translator and the class file of the
+ * {@link EspReader}, so the cache survives restarts of the framework and is
+ * never used for modified scripts or after a change of the ESP translation,
+ * even if the version has not been changed as with snapshot builds.
+ * <p>
+ * Each translation is stored in a file named
+ * <code>{path digest}-{source digest}.js</code>. When a new translation is
+ * stored for a script, older translations of the same script are removed.
+ * Translations which have not been used for {@link #MAX_UNUSED_AGE}, such as
+ * the translations of deleted scripts, are removed when the cache is
+ * created.
+ */
+public class EspTranslationCache {
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String SUFFIX = ".js";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The time after which unused translations are removed (value is 30
+     * days).
+     */
+    static final long MAX_UNUSED_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * The interval in which the modification time of a used translation file
+     * is updated to record the use (value is one day).
+     */
+    private static final long TOUCH_INTERVAL = 24L * 60 * 60 * 1000;
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+
+    private final String translatorVersion;
+
+    private long hits;
+
+    private long misses;
+
+    public EspTranslationCache(File directory, String translatorVersion) {
+        this.directory = directory;
+        this.translatorVersion = translatorVersion + "/"
+            + getTranslatorDigest();
+        directory.mkdirs();
+        removeUnused(System.currentTimeMillis() - MAX_UNUSED_AGE);
+    }
+
+    /**
+     * Returns the ECMA script translation of the ESP script source read from
+     * the given path. If a translation of the same source has already been
+     * stored it is returned, otherwise the source is translated with the
+     * {@link EspReader} and the translation is stored for later use.
+     */
+    public String getTranslation(String path, String source)
+            throws IOException {
+        String pathDigest = digest(path);
+        File file = new File(directory, pathDigest + "-"
+            + digest(translatorVersion + "\n" + source) + SUFFIX);
+
+        if (file.isFile()) {
+            try {
+                Reader in = new InputStreamReader(new FileInputStream(file),
+                    ENCODING);
+                try {
+                    String translation = read(in);
+                    countHit();
+
+                    // record the use for the removal of unused translations
+                    long now = System.currentTimeMillis();
+                    if (now - file.lastModified() > TOUCH_INTERVAL) {
+                        file.setLastModified(now);
+                    }
+                    return translation;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ioe) {
+                log.warn("getTranslation: Cannot read cached translation of "
+                    + path + ", translating again", ioe);
+            }
+        }
+
+        countMiss();
+        Reader esp = new EspReader(new StringReader(source));
+        String translation;
+        try {
+            translation = read(esp);
+        } finally {
+            esp.close();
+        }
+        store(pathDigest, file, translation);
+        return translation;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses();
+    }
+
+    // ---------- internal
+
+    private synchronized void countHit() {
+        hits++;
+    }
+
+    private synchronized void countMiss() {
+        misses++;
+    }
+
+    private void store(String pathDigest, File file, String translation) {
+        // write to a temporary file first to never expose partial files
+        File tmp = new File(directory, file.getName() + ".tmp"
+            + Thread.currentThread().getId());
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(tmp),
+                ENCODING);
+            try {
+                out.write(translation);
+            } finally {
+                out.close();
+            }
+
+            // remove outdated translations of the same script
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File old : files) {
+                    if (old.getName().startsWith(pathDigest + "-")
+                        && old.getName().endsWith(SUFFIX)) {
+                        old.delete();
+                    }
+                }
+            }
+
+            if (!tmp.renameTo(file)) {
+                log.debug("store: Cannot rename {} to {}", tmp, file);
+            }
+        } catch (IOException ioe) {
+            log.warn("store: Cannot store translation in " + file, ioe);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Removes the translations and left over temporary files last modified
+     * before the given time.
+     */
+    void removeUnused(long before) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && file.lastModified() < before) {
+                    log.debug("removeUnused: Removing {}", file);
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a digest of the class file of the {@link EspReader}, which
+     * implements the translation, or an empty string if the class file
+     * cannot be read.
+     */
+    static String getTranslatorDigest() {
+        InputStream in = EspReader.class.getResourceAsStream("EspReader.class");
+        if (in == null) {
+            return "";
+        }
+        try {
+            try {
+                MessageDigest md = getMessageDigest();
+                byte[] buf = new byte[4096];
+                int rd;
+                while ((rd = in.read(buf)) >= 0) {
+                    md.update(buf, 0, rd);
+                }
+                return toHex(md.digest());
+            } finally {
+                in.close();
+            }
+        } catch (IOException ioe) {
+            return "";
+        }
+    }
+
+    /**
+     * Reads the reader to the end and returns the characters read. The reader
+     * is not closed by this method.
+     */
+    static String read(Reader reader) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        char[] chars = new char[2048];
+        int rd;
+        while ((rd = reader.read(chars)) >= 0) {
+            buf.append(chars, 0, rd);
+        }
+        return buf.toString();
+    }
+
+    static String digest(String value) {
+        try {
+            return toHex(getMessageDigest().digest(value.getBytes(ENCODING)));
+        } catch (UnsupportedEncodingException uee) {
+            // UTF-8 is required to be supported by all platforms
+            throw new IllegalStateException(uee.toString());
+        }
+    }
+
+    private static MessageDigest getMessageDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException nsae) {
+            // MD5 is required to be supported by all platforms
+            throw new IllegalStateException(nsae.toString());
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX[digest[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+}
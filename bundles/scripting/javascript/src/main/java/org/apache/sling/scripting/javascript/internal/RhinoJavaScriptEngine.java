@@ -17,6 +17,7 @@
 package org.apache.sling.scripting.javascript.internal;
 
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -26,6 +27,7 @@ import javax.script.ScriptContext;
 import javax.script.ScriptEngineFactory;
 import javax.script.ScriptException;
 
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.scripting.SlingBindings;
 import org.apache.sling.api.scripting.SlingScriptHelper;
 import org.apache.sling.scripting.api.AbstractSlingScriptEngine;
@@ -33,6 +35,7 @@ import org.apache.sling.scripting.javascript.io.EspReader;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ImporterTopLevel;
 import org.mozilla.javascript.JavaScriptException;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.ScriptRuntime;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
@@ -58,17 +61,19 @@ public class RhinoJavaScriptEngine extends AbstractSlingScriptEngine {
             throws ScriptException {
         Bindings bindings = scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
         String scriptName = "NO_SCRIPT_NAME";
+        long modificationTime = -1;
+        boolean cacheable = false;
         {
             SlingScriptHelper helper = (SlingScriptHelper) bindings.get(SlingBindings.SLING);
             if (helper != null) {
-                scriptName = helper.getScript().getScriptResource().getPath();
+                Resource scriptResource = helper.getScript().getScriptResource();
+                scriptName = scriptResource.getPath();
+                modificationTime = scriptResource.getResourceMetadata().getModificationTime();
+                cacheable = true;
             }
         }
 
-        // wrap the reader in an EspReader for ESP scripts
-        if (scriptName.endsWith(RhinoJavaScriptEngineFactory.ESP_SCRIPT_EXTENSION)) {
-            scriptReader = new EspReader(scriptReader);
-        }
+        final ScriptCache scriptCache = ((RhinoJavaScriptEngineFactory) getFactory()).getScriptCache();
 
         // container for replaced properties
         Map<String, Object> replacedProperties = null;
@@ -106,11 +111,39 @@ public class RhinoJavaScriptEngine extends AbstractSlingScriptEngine {
             // add initial properties to the scope
             replacedProperties = setBoundProperties(scope, bindings);
 
-            final int lineNumber = 1;
-            final Object securityDomain = null;
+            // use the compiled script from the cache if still valid
+            Script script = null;
+            if (cacheable && scriptCache != null) {
+                script = scriptCache.get(scriptName, modificationTime);
+            }
+
+            if (script == null) {
+
+                // translate ESP scripts, using the persistent translation
+                // cache if available
+                if (scriptName.endsWith(RhinoJavaScriptEngineFactory.ESP_SCRIPT_EXTENSION)) {
+                    final EspTranslationCache translationCache = ((RhinoJavaScriptEngineFactory) getFactory()).getEspTranslationCache();
+                    if (cacheable && translationCache != null) {
+                        final String source = EspTranslationCache.read(scriptReader);
+                        scriptReader = new StringReader(
+                            translationCache.getTranslation(scriptName, source));
+                    } else {
+                        scriptReader = new EspReader(scriptReader);
+                    }
+                }
+
+                final int lineNumber = 1;
+                final Object securityDomain = null;
+
+                script = rhinoContext.compileReader(scriptReader, scriptName,
+                    lineNumber, securityDomain);
+
+                if (cacheable && scriptCache != null) {
+                    scriptCache.put(scriptName, modificationTime, script);
+                }
+            }
 
-            return rhinoContext.evaluateReader(scope, scriptReader, scriptName,
-                lineNumber, securityDomain);
+            return script.exec(rhinoContext, scope);
 
         } catch (JavaScriptException t) {
 
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.scripting.javascript.internal;
 
+import java.io.File;
 import java.util.Dictionary;
 import java.util.HashSet;
 import java.util.Set;
@@ -67,6 +68,36 @@ public class RhinoJavaScriptEngineFactory extends AbstractScriptEngineFactory
 
     public final static String ESP_SCRIPT_EXTENSION = "esp";
 
+    /**
+     * The name of the configuration property defining the maximum number of
+     * compiled scripts kept in the script cache. A value of zero or less
+     * disables the cache (value is
+     * "org.apache.sling.scripting.javascript.cache.size").
+     */
+    public static final String PROP_CACHE_SIZE = "org.apache.sling.scripting.javascript.cache.size";
+
+    /** The default size of the script cache (value is 500) */
+    public static final int DEFAULT_CACHE_SIZE = 500;
+
+    /**
+     * The name of the configuration property defining whether ESP script
+     * translations are kept in the bundle data area to be reused after a
+     * restart (value is "org.apache.sling.scripting.javascript.esp.cache").
+     * The default is <code>true</code>.
+     */
+    public static final String PROP_ESP_CACHE = "org.apache.sling.scripting.javascript.esp.cache";
+
+    /** The name of the bundle data area folder for ESP translations */
+    private static final String ESP_CACHE_DIR = "esp";
+
+    /**
+     * The name of the script engine factory parameter returning a description
+     * of the state of the script cache of the factory, if the factory has
+     * one. This parameter is rendered by the Script Engines web console
+     * plugin (value is "org.apache.sling.scripting.cache.statistics").
+     */
+    public static final String PARAM_CACHE_STATISTICS = "org.apache.sling.scripting.cache.statistics";
+
     private static final Class<?>[] HOSTOBJECT_CLASSES = {
         ScriptableResource.class, ScriptableNode.class,
         ScriptableProperty.class, ScriptableItemMap.class,
@@ -79,6 +110,10 @@ public class RhinoJavaScriptEngineFactory extends AbstractScriptEngineFactory
     private String languageVersion;
 
     private SlingWrapFactory wrapFactory;
+
+    private ScriptCache scriptCache;
+
+    private EspTranslationCache espTranslationCache;
     
     private Scriptable rootScope;
 
@@ -103,6 +138,29 @@ public class RhinoJavaScriptEngineFactory extends AbstractScriptEngineFactory
     SlingWrapFactory getWrapFactory() {
         return wrapFactory;
     }
+
+    ScriptCache getScriptCache() {
+        return scriptCache;
+    }
+
+    EspTranslationCache getEspTranslationCache() {
+        return espTranslationCache;
+    }
+
+    @Override
+    public Object getParameter(String name) {
+        if (PARAM_CACHE_STATISTICS.equals(name)) {
+            ScriptCache cache = scriptCache;
+            if (cache == null) {
+                return null;
+            }
+
+            EspTranslationCache translations = espTranslationCache;
+            return (translations != null) ? cache + "; ESP translations: "
+                + translations : cache.toString();
+        }
+        return super.getParameter(name);
+    }
     
     @SuppressWarnings("unchecked")
     private Scriptable getRootScope() {
@@ -162,8 +220,27 @@ public class RhinoJavaScriptEngineFactory extends AbstractScriptEngineFactory
             "org.apache.sling.scripting.javascript.debug", props,
             context.getBundleContext(), false);
 
+        int cacheSize = getProperty(PROP_CACHE_SIZE, props,
+            context.getBundleContext(), DEFAULT_CACHE_SIZE);
+
         // setup the wrap factory
         wrapFactory = new SlingWrapFactory();
+
+        // setup the compiled script cache
+        scriptCache = new ScriptCache(cacheSize);
+
+        // setup the persistent ESP translation cache if possible
+        boolean espCache = getProperty(PROP_ESP_CACHE, props,
+            context.getBundleContext(), true);
+        File espCacheDir = espCache
+                ? context.getBundleContext().getDataFile(ESP_CACHE_DIR)
+                : null;
+        if (espCacheDir != null) {
+            espTranslationCache = new EspTranslationCache(espCacheDir,
+                getEngineVersion());
+        } else {
+            log.info("activate: ESP translations are not cached");
+        }
         
         // initialize the Rhino Context Factory
         SlingContextFactory.setup(this);
@@ -195,6 +272,8 @@ public class RhinoJavaScriptEngineFactory extends AbstractScriptEngineFactory
         
         // remove references
         wrapFactory = null;
+        scriptCache = null;
+        espTranslationCache = null;
         hostObjectProvider.clear();
     }
 
@@ -285,4 +364,25 @@ public class RhinoJavaScriptEngineFactory extends AbstractScriptEngineFactory
                 ? Boolean.parseBoolean(String.valueOf(value))
                 : defaultValue;
     }
+
+    private int getProperty(String name, Dictionary<?, ?> props,
+            BundleContext bundleContext, int defaultValue) {
+        Object value = props.get(name);
+        if (value == null) {
+            value = bundleContext.getProperty(name);
+        }
+
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value != null) {
+            try {
+                return Integer.parseInt(String.valueOf(value));
+            } catch (NumberFormatException nfe) {
+                log.warn("getProperty: Ignoring invalid value {} for {}",
+                    value, name);
+            }
+        }
+
+        return defaultValue;
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.javascript.internal;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.Script;
+
+/**
+ * The <code>ScriptCache</code> is a size limited cache of compiled Rhino
+ * {@link Script} instances indexed by the path of the script resource. Each
+ * entry records the modification time of the script resource at the time of
+ * compilation and is only returned if the script resource has not been
+ * modified since. Scripts without a modification time are never cached,
+ * since modifications of such scripts cannot be detected.
+ * <p>
+ * Lookups do not lock: the entries are kept in a concurrent map and each
+ * entry records when it has last been used. If the cache is full, the least
+ * recently used entry is removed when a new entry is added, which only
+ * happens after a script has been compiled.
+ * <p>
+ * A cache size of zero or less disables caching.
+ */
+public class ScriptCache {
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, CachedScript> scripts = new ConcurrentHashMap<String, CachedScript>();
+
+    /** The source of the last use stamps of the entries */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public ScriptCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the compiled script for the given script path if it has been
+     * compiled from the script resource with the given modification time.
+     * Otherwise <code>null</code> is returned.
+     */
+    public Script get(String path, long modificationTime) {
+        if (modificationTime > 0) {
+            CachedScript cached = scripts.get(path);
+            if (cached != null) {
+                if (cached.modificationTime == modificationTime) {
+                    cached.lastUsed = clock.incrementAndGet();
+                    hits.incrementAndGet();
+                    return cached.script;
+                }
+
+                // drop a stale entry
+                scripts.remove(path, cached);
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds the script compiled from the script resource with the given path
+     * and modification time to the cache. Scripts without a modification
+     * time, that is with a modification time of zero or less, are not added.
+     */
+    public void put(String path, long modificationTime, Script script) {
+        if (maxSize > 0 && modificationTime > 0) {
+            CachedScript cached = new CachedScript(script, modificationTime);
+            cached.lastUsed = clock.incrementAndGet();
+            scripts.put(path, cached);
+            while (scripts.size() > maxSize) {
+                removeLeastRecentlyUsed();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        scripts.clear();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSize() {
+        return scripts.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + getSize() + ", maxSize=" + getMaxSize() + ", hits="
+            + getHits() + ", misses=" + getMisses();
+    }
+
+    private void removeLeastRecentlyUsed() {
+        Map.Entry<String, CachedScript> eldest = null;
+        for (Iterator<Map.Entry<String, CachedScript>> ei = scripts.entrySet().iterator(); ei.hasNext();) {
+            Map.Entry<String, CachedScript> entry = ei.next();
+            if (eldest == null
+                || entry.getValue().lastUsed < eldest.getValue().lastUsed) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            scripts.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private static class CachedScript {
+
+        final Script script;
+
+        final long modificationTime;
+
+        volatile long lastUsed;
+
+        CachedScript(Script script, long modificationTime) {
+            this.script = script;
+            this.modificationTime = modificationTime;
+        }
+    }
+}
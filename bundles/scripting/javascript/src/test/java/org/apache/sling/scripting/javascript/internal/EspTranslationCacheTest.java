@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.javascript.internal;
+
+import java.io.File;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.scripting.javascript.io.EspReader;
+
+public class EspTranslationCacheTest extends TestCase {
+
+    private static final String PATH = "/apps/test/html.esp";
+
+    private static final String SOURCE = "<p><%= currentNode.title %></p>";
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = new File("target/esp-cache-" + System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    public void testTranslation() throws Exception {
+        EspTranslationCache cache = new EspTranslationCache(directory, "1");
+        String expected = EspTranslationCache.read(new EspReader(
+            new StringReader(SOURCE)));
+
+        assertEquals(expected, cache.getTranslation(PATH, SOURCE));
+        assertEquals(expected, cache.getTranslation(PATH, SOURCE));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    public void testPersistent() throws Exception {
+        new EspTranslationCache(directory, "1").getTranslation(PATH, SOURCE);
+
+        // a new instance, e.g. after restart, finds the stored translation
+        EspTranslationCache cache = new EspTranslationCache(directory, "1");
+        cache.getTranslation(PATH, SOURCE);
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    public void testModifiedSource() throws Exception {
+        EspTranslationCache cache = new EspTranslationCache(directory, "1");
+        cache.getTranslation(PATH, SOURCE);
+        cache.getTranslation(PATH, SOURCE + "\n");
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    public void testTranslatorVersion() throws Exception {
+        new EspTranslationCache(directory, "1").getTranslation(PATH, SOURCE);
+
+        EspTranslationCache cache = new EspTranslationCache(directory, "2");
+        cache.getTranslation(PATH, SOURCE);
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testTranslatorDigest() {
+        // the translator class is part of the key
+        assertEquals(32, EspTranslationCache.getTranslatorDigest().length());
+    }
+
+    public void testRemoveUnused() throws Exception {
+        new EspTranslationCache(directory, "1").getTranslation(PATH, SOURCE);
+        File file = directory.listFiles()[0];
+        file.setLastModified(System.currentTimeMillis()
+            - EspTranslationCache.MAX_UNUSED_AGE - 60000L);
+
+        // a new instance removes the unused translation
+        EspTranslationCache cache = new EspTranslationCache(directory, "1");
+        assertFalse(file.exists());
+        cache.getTranslation(PATH, SOURCE);
+        assertEquals(1, cache.getMisses());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.javascript.internal;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+public class ScriptCacheTest extends TestCase {
+
+    public void testHitAndMiss() {
+        ScriptCache cache = new ScriptCache(10);
+        Script script = new TestScript();
+
+        assertNull(cache.get("/apps/a.esp", 1L));
+        cache.put("/apps/a.esp", 1L, script);
+        assertSame(script, cache.get("/apps/a.esp", 1L));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testModifiedScript() {
+        ScriptCache cache = new ScriptCache(10);
+        cache.put("/apps/a.esp", 1L, new TestScript());
+
+        assertNull(cache.get("/apps/a.esp", 2L));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testSizeLimit() {
+        ScriptCache cache = new ScriptCache(2);
+        cache.put("/apps/a.esp", 1L, new TestScript());
+        cache.put("/apps/b.esp", 1L, new TestScript());
+
+        // access a to make b the least recently used entry
+        assertNotNull(cache.get("/apps/a.esp", 1L));
+        cache.put("/apps/c.esp", 1L, new TestScript());
+
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.get("/apps/a.esp", 1L));
+        assertNull(cache.get("/apps/b.esp", 1L));
+        assertNotNull(cache.get("/apps/c.esp", 1L));
+    }
+
+    public void testNoModificationTime() {
+        ScriptCache cache = new ScriptCache(10);
+        cache.put("/apps/a.esp", -1L, new TestScript());
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get("/apps/a.esp", -1L));
+    }
+
+    public void testDisabled() {
+        ScriptCache cache = new ScriptCache(0);
+        cache.put("/apps/a.esp", 1L, new TestScript());
+        assertNull(cache.get("/apps/a.esp", 1L));
+    }
+
+    private static class TestScript implements Script {
+        public Object exec(Context cx, Scriptable scope) {
+            return null;
+        }
+    }
+}
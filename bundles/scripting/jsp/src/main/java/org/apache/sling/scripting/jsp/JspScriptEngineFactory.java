@@ -18,7 +18,9 @@ package org.apache.sling.scripting.jsp;
 
 import static org.apache.sling.api.scripting.SlingBindings.SLING;
 
+import java.io.File;
 import java.io.Reader;
+import java.util.Arrays;
 
 import javax.jcr.RepositoryException;
 import javax.script.Bindings;
@@ -32,6 +34,7 @@ import javax.servlet.ServletException;
 import org.apache.sling.api.SlingException;
 import org.apache.sling.api.SlingIOException;
 import org.apache.sling.api.SlingServletException;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.scripting.SlingBindings;
 import org.apache.sling.api.scripting.SlingScript;
 import org.apache.sling.api.scripting.SlingScriptHelper;
@@ -41,9 +44,15 @@ import org.apache.sling.scripting.api.AbstractScriptEngineFactory;
 import org.apache.sling.scripting.api.AbstractSlingScriptEngine;
 import org.apache.sling.scripting.jsp.jasper.JasperException;
 import org.apache.sling.scripting.jsp.jasper.Options;
+import org.apache.sling.scripting.jsp.jasper.compiler.JspCompilationCache;
 import org.apache.sling.scripting.jsp.jasper.compiler.JspRuntimeContext;
 import org.apache.sling.scripting.jsp.jasper.runtime.JspApplicationContextImpl;
 import org.apache.sling.scripting.jsp.util.TagUtil;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +78,8 @@ import org.slf4j.LoggerFactory;
  * @scr.property name="jasper.trimSpaces" value="false" type="Boolean"
  * @scr.property name="jasper.displaySourceFragments" value="true"
  *               type="Boolean"
+ * @scr.property name="jasper.compilationCacheDir" value=""
+ * @scr.property name="jasper.compilationCacheMaxSize" value="100" type="Integer"
  * @scr.service
  */
 public class JspScriptEngineFactory extends AbstractScriptEngineFactory {
@@ -104,10 +115,31 @@ public class JspScriptEngineFactory extends AbstractScriptEngineFactory {
 
     private RepositoryClassLoaderProvider repoCLProvider;
 
+    private CompilationClassPathTracker compilationClassPathTracker;
+
     public static final String[] SCRIPT_TYPE = { "jsp", "jspf", "jspx" };
 
     private static final String CLASSLOADER_NAME = "admin";
 
+    /**
+     * The name of the configuration property defining the directory of the
+     * {@link JspCompilationCache} (value is "jasper.compilationCacheDir").
+     * Relative paths are resolved against <code>sling.home</code>. If the
+     * property is empty, which is the default, compiled pages are not
+     * cached.
+     */
+    public static final String PROP_COMPILATION_CACHE_DIR = "jasper.compilationCacheDir";
+
+    /**
+     * The name of the configuration property defining the maximum size of
+     * the {@link JspCompilationCache} in megabytes (value is
+     * "jasper.compilationCacheMaxSize"). If zero or negative, the size is not
+     * limited. The default is 100 megabytes.
+     */
+    public static final String PROP_COMPILATION_CACHE_MAX_SIZE = "jasper.compilationCacheMaxSize";
+
+    private static final int DEFAULT_COMPILATION_CACHE_MAX_SIZE = 100;
+
     public JspScriptEngineFactory() {
         setExtensions(SCRIPT_TYPE);
     }
@@ -131,7 +163,7 @@ public class JspScriptEngineFactory extends AbstractScriptEngineFactory {
      */
     private void callJsp(Bindings bindings, SlingScriptHelper scriptHelper) {
 
-        ioProvider.setRequestResourceResolver(scriptHelper.getRequest().getResourceResolver());
+        ResourceResolver previous = ioProvider.setRequestResourceResolver(scriptHelper.getRequest().getResourceResolver());
         try {
             JspServletWrapperAdapter jsp = getJspWrapperAdapter(scriptHelper);
             // create a SlingBindings object
@@ -139,7 +171,7 @@ public class JspScriptEngineFactory extends AbstractScriptEngineFactory {
             slingBindings.putAll(bindings);
             jsp.service(slingBindings);
         } finally {
-            ioProvider.resetRequestResourceResolver();
+            ioProvider.resetRequestResourceResolver(previous);
         }
     }
 
@@ -207,6 +239,20 @@ public class JspScriptEngineFactory extends AbstractScriptEngineFactory {
             // by default access the repository
             jspRuntimeContext.setIOProvider(ioProvider);
 
+            // setup the compilation cache if configured
+            File cacheDir = getCompilationCacheDir(componentContext);
+            if (cacheDir != null) {
+                Object version = componentContext.getBundleContext().getBundle()
+                    .getHeaders().get(Constants.BUNDLE_VERSION);
+                JspCompilationCache cache = new JspCompilationCache(cacheDir,
+                    options, String.valueOf(version),
+                    getCompilationCacheMaxSize(componentContext));
+                compilationClassPathTracker = new CompilationClassPathTracker(
+                    cache, componentContext.getBundleContext());
+                jspRuntimeContext.setCompilationCache(cache);
+                log.info("activate: Caching compiled JSPs in {}", cacheDir);
+            }
+
             jspServletContext = new JspServletContext(ioProvider,
                 slingServletContext, tldLocationsCache);
 
@@ -232,7 +278,16 @@ public class JspScriptEngineFactory extends AbstractScriptEngineFactory {
             log.debug("JspScriptEngine.deactivate()");
         }
 
+        if (compilationClassPathTracker != null) {
+            compilationClassPathTracker.shutdown();
+            compilationClassPathTracker = null;
+        }
+
         if (jspRuntimeContext != null) {
+            if (jspRuntimeContext.getCompilationCache() != null) {
+                log.info("deactivate: {}",
+                    jspRuntimeContext.getCompilationCache());
+            }
             try {
                 jspRuntimeContext.destroy();
             } catch (NullPointerException npe) {
@@ -328,8 +383,110 @@ public class JspScriptEngineFactory extends AbstractScriptEngineFactory {
         }
     }
 
+    /**
+     * Returns the directory of the compilation cache resolved against
+     * <code>sling.home</code> or <code>null</code> if compiled pages are not
+     * to be cached.
+     */
+    private File getCompilationCacheDir(ComponentContext componentContext) {
+        Object dirName = componentContext.getProperties().get(
+            PROP_COMPILATION_CACHE_DIR);
+        if (dirName == null || dirName.toString().trim().length() == 0) {
+            return null;
+        }
+
+        File dir = new File(dirName.toString().trim());
+        if (!dir.isAbsolute()) {
+            BundleContext bundleContext = componentContext.getBundleContext();
+            String home = bundleContext.getProperty("sling.home");
+            if (home != null && home.length() > 0) {
+                dir = new File(home, dir.getPath());
+            }
+        }
+        return dir.getAbsoluteFile();
+    }
+
+    /**
+     * Returns the maximum size of the compilation cache in bytes.
+     */
+    private long getCompilationCacheMaxSize(ComponentContext componentContext) {
+        Object maxSize = componentContext.getProperties().get(
+            PROP_COMPILATION_CACHE_MAX_SIZE);
+        long megabytes = DEFAULT_COMPILATION_CACHE_MAX_SIZE;
+        if (maxSize instanceof Number) {
+            megabytes = ((Number) maxSize).longValue();
+        } else if (maxSize != null) {
+            try {
+                megabytes = Long.parseLong(maxSize.toString().trim());
+            } catch (NumberFormatException nfe) {
+                log.warn("activate: Ignoring invalid {}: {}",
+                    PROP_COMPILATION_CACHE_MAX_SIZE, maxSize);
+            }
+        }
+        return megabytes * 1024 * 1024;
+    }
+
     // ---------- Internal -----------------------------------------------------
 
+    /**
+     * The <code>CompilationClassPathTracker</code> sets the resolved bundles
+     * as the class path of the compilation cache, since the pages are
+     * compiled against the packages exported by the bundles. Bundles are
+     * identified by their symbolic name, version and build time, which are
+     * the same for all instances sharing the cache.
+     */
+    private static class CompilationClassPathTracker implements BundleListener {
+
+        private static final String BND_LAST_MODIFIED = "Bnd-LastModified";
+
+        private final JspCompilationCache cache;
+
+        private final BundleContext bundleContext;
+
+        CompilationClassPathTracker(JspCompilationCache cache,
+                BundleContext bundleContext) {
+            this.cache = cache;
+            this.bundleContext = bundleContext;
+
+            bundleContext.addBundleListener(this);
+            update();
+        }
+
+        void shutdown() {
+            bundleContext.removeBundleListener(this);
+        }
+
+        public void bundleChanged(BundleEvent event) {
+            switch (event.getType()) {
+                case BundleEvent.RESOLVED:
+                case BundleEvent.UNRESOLVED:
+                case BundleEvent.UPDATED:
+                    update();
+            }
+        }
+
+        private synchronized void update() {
+            Bundle[] bundles = bundleContext.getBundles();
+            String[] ids = new String[bundles.length];
+            int count = 0;
+            for (Bundle bundle : bundles) {
+                if ((bundle.getState() & (Bundle.INSTALLED | Bundle.UNINSTALLED)) == 0) {
+                    ids[count++] = bundle.getSymbolicName() + ":"
+                        + bundle.getHeaders().get(Constants.BUNDLE_VERSION)
+                        + ":" + bundle.getHeaders().get(BND_LAST_MODIFIED);
+                }
+            }
+
+            // sort to not depend on the installation order
+            Arrays.sort(ids, 0, count);
+            StringBuilder classPath = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                classPath.append(ids[i]).append(';');
+            }
+            cache.setClassPath(classPath.toString());
+        }
+    }
+
     private class JspScriptEngine extends AbstractSlingScriptEngine {
 
         JspScriptEngine() {
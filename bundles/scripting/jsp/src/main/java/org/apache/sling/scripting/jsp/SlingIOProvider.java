@@ -53,35 +53,62 @@ class SlingIOProvider implements IOProvider {
 
     private final SlingRepository repository;
 
-    private final ThreadLocal<ResourceResolver> requestResourceResolver;
+    // the resource resolver and private session of the current request
+    private final ThreadLocal<RequestState> requestState;
 
-    // private session for write access
-    private final ThreadLocal<Session> privateSession;
-    
     // used to find out about the mime type for created files
     private final ServletContext servletContext;
 
     SlingIOProvider(SlingRepository repository, ServletContext servletContext) {
         this.repository = repository;
-        this.requestResourceResolver = new ThreadLocal<ResourceResolver>();
-        this.privateSession = new ThreadLocal<Session>();
+        this.requestState = new ThreadLocal<RequestState>();
         this.servletContext = servletContext;
     }
 
-    void setRequestResourceResolver(ResourceResolver resolver) {
-        requestResourceResolver.set(resolver);
+    /**
+     * Sets the resource resolver to use for reading JSP files during the
+     * evaluation of a JSP. This method may be called multiple times during a
+     * request for included JSPs. It returns the previously set resource
+     * resolver which must be passed to
+     * {@link #resetRequestResourceResolver(ResourceResolver)} after the JSP
+     * has been evaluated.
+     */
+    ResourceResolver setRequestResourceResolver(ResourceResolver resolver) {
+        RequestState state = requestState.get();
+        if (state == null) {
+            state = new RequestState();
+            requestState.set(state);
+        }
+
+        ResourceResolver previous = state.resolver;
+        state.resolver = resolver;
+        state.depth++;
+        return previous;
     }
 
-    void resetRequestResourceResolver() {
-        requestResourceResolver.remove();
+    /**
+     * Restores the resource resolver in use before the corresponding call to
+     * {@link #setRequestResourceResolver(ResourceResolver)}. When the
+     * outermost JSP of the request has been evaluated, the private session
+     * used to write compiled JSPs - which is kept for the whole request
+     * instead of being acquired for each included JSP - is logged out.
+     */
+    void resetRequestResourceResolver(ResourceResolver previous) {
+        RequestState state = requestState.get();
+        if (state == null) {
+            return;
+        }
 
-        // at the same time logout this thread's session
-        Session session = privateSession.get();
-        if (session != null) {
-            if (session.isLive()) {
+        state.resolver = previous;
+        state.depth--;
+        if (state.depth <= 0) {
+            requestState.remove();
+
+            // at the same time logout this thread's session
+            Session session = state.session;
+            if (session != null && session.isLive()) {
                 session.logout();
             }
-            privateSession.remove();
         }
     }
 
@@ -254,7 +281,7 @@ class SlingIOProvider implements IOProvider {
     /* package */Set<String> getResourcePaths(String path) {
         Set<String> paths = new HashSet<String>();
 
-        ResourceResolver resolver = requestResourceResolver.get();
+        ResourceResolver resolver = getRequestResourceResolver();
         if (resolver != null) {
             try {
                 Resource resource = resolver.getResource(cleanPath(path));
@@ -274,7 +301,7 @@ class SlingIOProvider implements IOProvider {
     }
 
     private Resource getResourceInternal(String path) throws SlingException {
-        ResourceResolver resolver = requestResourceResolver.get();
+        ResourceResolver resolver = getRequestResourceResolver();
         if (resolver != null) {
             return resolver.getResource(cleanPath(path));
         }
@@ -284,14 +311,23 @@ class SlingIOProvider implements IOProvider {
 
     // ---------- internal -----------------------------------------------------
 
+    private ResourceResolver getRequestResourceResolver() {
+        RequestState state = requestState.get();
+        return (state != null) ? state.resolver : null;
+    }
+
     private Session getPrivateSession() throws RepositoryException {
-        Session session = privateSession.get();
-        if (session == null) {
-            session = repository.loginAdministrative(null);
-            privateSession.set(session);
+        RequestState state = requestState.get();
+        if (state == null) {
+            state = new RequestState();
+            requestState.set(state);
+        }
+
+        if (state.session == null || !state.session.isLive()) {
+            state.session = repository.loginAdministrative(null);
         }
 
-        return session;
+        return state.session;
     }
 
     private static void checkNode(Node node, String path) {
@@ -408,4 +444,20 @@ class SlingIOProvider implements IOProvider {
             }
         }
     }
+
+    /**
+     * The <code>RequestState</code> holds the resource resolver and the
+     * private session of the request currently processed by a thread.
+     */
+    private static class RequestState {
+
+        // the resource resolver to read JSP files
+        ResourceResolver resolver;
+
+        // private session for write access, acquired on demand
+        Session session;
+
+        // the number of nested JSP evaluations
+        int depth;
+    }
 }
@@ -24,6 +24,7 @@ import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -63,6 +64,12 @@ public abstract class Compiler {
 
     protected Node.Nodes pageNodes;
 
+    /**
+     * The names of the class files generated while compiling with a
+     * compilation cache
+     */
+    private List<String> generatedClasses;
+
     // ------------------------------------------------------------ Constructor
 
     public void init(JspCompilationContext ctxt, JspServletWrapper jsw) {
@@ -266,6 +273,16 @@ public abstract class Compiler {
     protected abstract void generateClass(String[] smap)
             throws FileNotFoundException, JasperException, Exception;
 
+    /**
+     * Called by {@link #generateClass(String[])} for each class file written,
+     * such that the class files can be kept in the compilation cache.
+     */
+    protected void classGenerated(String fileName) {
+        if (generatedClasses != null) {
+            generatedClasses.add(fileName);
+        }
+    }
+
     /**
      * Compile the jsp file from the current engine context
      */
@@ -303,10 +320,28 @@ public abstract class Compiler {
             this.errDispatcher = new ErrorDispatcher(jspcMode);
         }
 
+        // the compilation cache only keeps complete class files and is not
+        // used for prototypes of circularly dependant tag files
+        JspCompilationCache cache = null;
+        if (compileClass && !jspcMode && !ctxt.isPrototypeMode()) {
+            cache = ctxt.getRuntimeContext().getCompilationCache();
+        }
+
         try {
+            if (cache != null) {
+                if (cache.restore(ctxt)) {
+                    return;
+                }
+                generatedClasses = new ArrayList<String>();
+            }
+
             String[] smap = generateJava();
             if (compileClass) {
                 generateClass(smap);
+                if (cache != null && !generatedClasses.isEmpty()) {
+                    cache.store(ctxt, pageInfo.getDependants(),
+                        generatedClasses);
+                }
             }
         } finally {
             if (tfp != null) {
@@ -319,6 +354,7 @@ public abstract class Compiler {
             tfp = null;
             errDispatcher = null;
             pageInfo = null;
+            generatedClasses = null;
 
             // Only get rid of the pageNodes if in production.
             // In development mode, they are used for detailed
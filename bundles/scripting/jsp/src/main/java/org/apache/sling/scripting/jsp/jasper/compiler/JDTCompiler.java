@@ -387,6 +387,7 @@ public class JDTCompiler extends org.apache.sling.scripting.jsp.jasper.compiler.
                                     new BufferedOutputStream(out);
                                 bos.write(bytes);
                                 bos.close();
+                                classGenerated(outFile);
                             }
                         }
                     } catch (IOException exc) {
@@ -0,0 +1,650 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.scripting.jsp.jasper.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.sling.scripting.jsp.jasper.JspCompilationContext;
+import org.apache.sling.scripting.jsp.jasper.Options;
+
+/**
+ * The <code>JspCompilationCache</code> keeps the class files generated for
+ * JSP pages and tag files in a directory, from where they are restored
+ * instead of compiling the page again. If the directory is shared between
+ * instances, for example on a network file system, a page has only to be
+ * compiled once by one of the instances.
+ * <p>
+ * Entries are keyed by a digest of the path and the content of the page or
+ * tag file, the compiler relevant options, the version of the JSP engine and
+ * the class path the page is compiled against. Each entry also lists the
+ * digests of the content of all files the page depends on, such as included
+ * files, tag files and TLDs, and is only used if none of these has been
+ * modified. For the tag files a page depends on, their own entries are
+ * restored along with the entry of the page.
+ * <p>
+ * If the entries in the directory exceed the maximum size, the least
+ * recently used entries are removed after storing a new entry. Since the
+ * last modification time of an entry is updated when it is used, this also
+ * applies to entries used by other instances sharing the directory. The
+ * directory may also be cleared at any time to reclaim space.
+ */
+public class JspCompilationCache {
+
+    /** The version of the entry file format */
+    private static final int FORMAT = 1;
+
+    private static final String SUFFIX = ".jspc";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * The age after which temporary files are assumed to be left over by a
+     * failed instance and removed (one hour)
+     */
+    private static final long TMP_FILE_AGE = 60 * 60 * 1000L;
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String TAG_FILE_SUFFIX = ".tag";
+
+    private static final String TAGX_FILE_SUFFIX = ".tagx";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Log log = LogFactory.getLog(JspCompilationCache.class);
+
+    private final File directory;
+
+    /** The options and engine version, which are part of every key */
+    private final String fingerprint;
+
+    /** The maximum size of the entries in bytes, not limited if zero */
+    private final long maxSize;
+
+    /**
+     * The class path the pages are compiled against in addition to the
+     * class path of the compilation context.
+     *
+     * @see #setClassPath(String)
+     */
+    private volatile String classPath = "";
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Creates a cache keeping its entries in the given directory.
+     *
+     * @param directory The directory of the entries, created if missing.
+     * @param options The options of the JSP engine.
+     * @param version The version of the JSP engine, such that generated
+     *      code is not reused after an update of the engine.
+     * @param maxSize The maximum size of the entries in the directory in
+     *      bytes. If zero or negative, the size is not limited.
+     */
+    public JspCompilationCache(File directory, Options options,
+            String version, long maxSize) {
+        this.directory = directory;
+        this.maxSize = Math.max(0, maxSize);
+        this.fingerprint = FORMAT + "|" + version + "|"
+            + options.getCompilerSourceVM()
+            + "|" + options.getCompilerTargetVM() + "|"
+            + options.getJavaEncoding() + "|" + options.getClassDebugInfo()
+            + "|" + options.isSmapSuppressed() + "|" + options.isSmapDumped()
+            + "|" + options.getMappedFile() + "|" + options.getTrimSpaces()
+            + "|" + options.isPoolingEnabled() + "|"
+            + options.genStringAsCharArray() + "|"
+            + options.getErrorOnUseBeanInvalidClassAttribute() + "|"
+            + options.isXpoweredBy() + "|" + options.getIeClassId();
+        directory.mkdirs();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Sets the class path the pages are compiled against in addition to the
+     * class path of the compilation context, for example a description of
+     * the bundles exporting the classes available to the pages. Entries
+     * stored with a different class path are not used any more.
+     */
+    public void setClassPath(String classPath) {
+        this.classPath = (classPath == null) ? "" : classPath;
+    }
+
+    @Override
+    public String toString() {
+        return "JspCompilationCache: directory=" + directory + ", hits="
+            + getHits() + ", misses=" + getMisses() + ", evictions="
+            + getEvictions();
+    }
+
+    /**
+     * Restores the class files of the page or tag file of the compilation
+     * context and of the tag files it depends on from the cache.
+     *
+     * @return <code>true</code> if the class files have been written through
+     *      the compilation context, <code>false</code> if there is no
+     *      matching entry and the page has to be compiled.
+     */
+    public boolean restore(JspCompilationContext ctxt) {
+        Map<String, String> digests = new HashMap<String, String>();
+        Entry entry = read(ctxt, ctxt.getJspFile(), digests);
+        if (entry == null) {
+            countMiss();
+            return false;
+        }
+
+        // the entries of the tag files must be available as well, since
+        // the page does not compile the tag files when it is restored
+        Map<String, Entry> tagEntries = new LinkedHashMap<String, Entry>();
+        for (String dependant : entry.dependants.keySet()) {
+            if (isTagFile(dependant)) {
+                Entry tagEntry = read(ctxt, dependant, digests);
+                if (tagEntry == null) {
+                    countMiss();
+                    return false;
+                }
+                tagEntries.put(dependant, tagEntry);
+            }
+        }
+
+        try {
+            for (Entry tagEntry : tagEntries.values()) {
+                tagEntry.writeClasses(ctxt);
+            }
+            entry.writeClasses(ctxt);
+        } catch (IOException ioe) {
+            log.warn("Cannot restore the classes of " + ctxt.getJspFile()
+                + ", compiling again", ioe);
+            countMiss();
+            return false;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Restored " + ctxt.getJspFile() + " from the cache");
+        }
+        countHit();
+        return true;
+    }
+
+    /**
+     * Stores the class files generated for the page or tag file of the
+     * compilation context.
+     *
+     * @param dependants The paths of the files the page depends on.
+     * @param classFiles The names of the generated class files, which must
+     *      be located in the scratch directory. The class files are read
+     *      through the compilation context, since they may have been
+     *      modified after they have been generated, for example to add the
+     *      SMAP.
+     */
+    public void store(JspCompilationContext ctxt, List<?> dependants,
+            List<String> classFiles) {
+        String path = ctxt.getJspFile();
+        Map<String, String> digests = new HashMap<String, String>();
+        String key = getKey(ctxt, path, digests);
+        if (key == null) {
+            return;
+        }
+
+        Entry entry = new Entry();
+        if (dependants != null) {
+            for (Iterator<?> di = dependants.iterator(); di.hasNext();) {
+                String dependant = (String) di.next();
+                String digest = getContentDigest(ctxt, dependant, digests);
+                if (digest == null) {
+                    // cannot check the dependant later, so do not cache
+                    log.debug("Not caching " + path
+                        + ", cannot read dependant " + dependant);
+                    return;
+                }
+                entry.dependants.put(dependant, digest);
+            }
+        }
+
+        // keep the class file names relative to the scratch directory
+        String scratchDir = ctxt.getOptions().getScratchDir() + "/";
+        for (String classFile : classFiles) {
+            String name = classFile.startsWith(scratchDir)
+                    ? classFile.substring(scratchDir.length())
+                    : null;
+            if (name == null || !isClassFileName(name)) {
+                log.debug("Not caching " + path + ", class file " + classFile
+                    + " is not a class file in " + scratchDir);
+                return;
+            }
+            try {
+                entry.classes.put(name, readClass(ctxt, classFile));
+            } catch (IOException ioe) {
+                log.warn("Cannot read class file " + classFile + " of "
+                    + path + ", not caching", ioe);
+                return;
+            }
+        }
+
+        // write to a temporary file first to never expose partial files to
+        // other instances sharing the directory
+        File file = new File(directory, key + SUFFIX);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(key, TMP_SUFFIX, directory);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                entry.write(out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file) && !file.isFile()) {
+                // the entry is missing, not just stored by another instance
+                log.warn("Cannot rename " + tmp + " to " + file
+                    + ", not caching " + path);
+            }
+        } catch (IOException ioe) {
+            log.warn("Cannot store the classes of " + path + " in " + file,
+                ioe);
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+
+        evict();
+    }
+
+    // ---------- internal
+
+    private synchronized void countHit() {
+        hits++;
+    }
+
+    private synchronized void countMiss() {
+        misses++;
+    }
+
+    private synchronized void countEviction() {
+        evictions++;
+    }
+
+    /**
+     * Removes the least recently used entries until the size of the entries
+     * does not exceed the maximum size any more. Temporary files left over
+     * by failed instances are removed as well.
+     */
+    private void evict() {
+        if (maxSize == 0) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long size = 0;
+        List<StoredEntry> entries = new ArrayList<StoredEntry>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                StoredEntry entry = new StoredEntry(file);
+                entries.add(entry);
+                size += entry.length;
+            } else if (name.endsWith(TMP_SUFFIX)
+                && file.lastModified() < now - TMP_FILE_AGE) {
+                file.delete();
+            }
+        }
+
+        if (size <= maxSize) {
+            return;
+        }
+
+        Collections.sort(entries);
+        for (StoredEntry entry : entries) {
+            if (size <= maxSize) {
+                break;
+            }
+            // the entry may have been removed by another instance already
+            if (entry.file.delete() || !entry.file.exists()) {
+                size -= entry.length;
+                countEviction();
+                if (log.isDebugEnabled()) {
+                    log.debug("Evicted cache entry " + entry.file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the entry of the given page or tag file if it exists and none
+     * of the files it depends on has been modified.
+     */
+    private Entry read(JspCompilationContext ctxt, String path,
+            Map<String, String> digests) {
+        String key = getKey(ctxt, path, digests);
+        if (key == null) {
+            return null;
+        }
+
+        File file = new File(directory, key + SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        Entry entry = new Entry();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                entry.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException fnfe) {
+            // evicted in the meantime
+            return null;
+        } catch (IOException ioe) {
+            log.warn("Cannot read cache entry " + file + " of " + path, ioe);
+            return null;
+        }
+
+        for (Map.Entry<String, String> dependant : entry.dependants.entrySet()) {
+            String digest = getContentDigest(ctxt, dependant.getKey(), digests);
+            if (!dependant.getValue().equals(digest)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Cache entry of " + path + " is outdated, "
+                        + dependant.getKey() + " has been modified");
+                }
+                return null;
+            }
+        }
+
+        // mark the entry as recently used for the eviction
+        file.setLastModified(System.currentTimeMillis());
+
+        return entry;
+    }
+
+    private String getKey(JspCompilationContext ctxt, String path,
+            Map<String, String> digests) {
+        String content = getContentDigest(ctxt, path, digests);
+        if (content == null) {
+            return null;
+        }
+        try {
+            return digest(fingerprint.getBytes(ENCODING),
+                getClassPathDigest(ctxt).getBytes(ENCODING),
+                path.getBytes(ENCODING), content.getBytes(ENCODING));
+        } catch (UnsupportedEncodingException uee) {
+            // UTF-8 is required to be supported by all platforms
+            throw new IllegalStateException(uee.toString());
+        }
+    }
+
+    /**
+     * Returns the digest of the class path the page of the compilation
+     * context is compiled against, which is the class path of the context
+     * together with the class path set on this cache.
+     */
+    private String getClassPathDigest(JspCompilationContext ctxt)
+            throws UnsupportedEncodingException {
+        String ctxtClassPath = ctxt.getClassPath();
+        return digest(classPath.getBytes(ENCODING),
+            String.valueOf(ctxtClassPath).getBytes(ENCODING));
+    }
+
+    /**
+     * Returns the digest of the content of the given file or
+     * <code>null</code> if the file cannot be read. The digests are kept in
+     * the given map, since the same files are checked for a page and the
+     * tag files it uses.
+     */
+    private String getContentDigest(JspCompilationContext ctxt, String path,
+            Map<String, String> digests) {
+        String digest = digests.get(path);
+        if (digest == null && !digests.containsKey(path)) {
+            InputStream in = ctxt.getResourceAsStream(path);
+            if (in != null) {
+                try {
+                    MessageDigest md = getMessageDigest();
+                    byte[] buf = new byte[4096];
+                    int rd;
+                    while ((rd = in.read(buf)) >= 0) {
+                        md.update(buf, 0, rd);
+                    }
+                    digest = toHex(md.digest());
+                } catch (IOException ioe) {
+                    log.debug("Cannot read " + path, ioe);
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+            digests.put(path, digest);
+        }
+        return digest;
+    }
+
+    private static byte[] readClass(JspCompilationContext ctxt,
+            String classFile) throws IOException {
+        InputStream in = ctxt.getInputStream(classFile);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int rd;
+            while ((rd = in.read(buf)) >= 0) {
+                out.write(buf, 0, rd);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean isTagFile(String path) {
+        return path.endsWith(TAG_FILE_SUFFIX) || path.endsWith(TAGX_FILE_SUFFIX);
+    }
+
+    /**
+     * Returns <code>true</code> if the given name is the path of a class
+     * file relative to the scratch directory, that is the package names and
+     * the class name separated by slashes followed by <code>.class</code>.
+     * Any other name, such as one containing <code>..</code> segments or
+     * backslashes, is rejected to never write outside of the scratch
+     * directory.
+     */
+    static boolean isClassFileName(String name) {
+        if (!name.endsWith(CLASS_FILE_SUFFIX)) {
+            return false;
+        }
+
+        String[] segments = name.substring(0,
+            name.length() - CLASS_FILE_SUFFIX.length()).split("/", -1);
+        for (String segment : segments) {
+            if (segment.length() == 0
+                || !Character.isJavaIdentifierStart(segment.charAt(0))) {
+                return false;
+            }
+            for (int i = 1; i < segment.length(); i++) {
+                if (!Character.isJavaIdentifierPart(segment.charAt(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String digest(byte[]... parts) {
+        MessageDigest md = getMessageDigest();
+        for (byte[] part : parts) {
+            md.update(part);
+            md.update((byte) 0);
+        }
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest getMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException nsae) {
+            // SHA-1 is required to be supported by all platforms
+            throw new IllegalStateException(nsae.toString());
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX[digest[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * The contents of an entry: the content digests of the dependants and
+     * the generated class files indexed by their path in the scratch
+     * directory.
+     */
+    private static class Entry {
+
+        final Map<String, String> dependants = new LinkedHashMap<String, String>();
+
+        final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+
+        void writeClasses(JspCompilationContext ctxt) throws IOException {
+            String scratchDir = ctxt.getOptions().getScratchDir() + "/";
+            for (Map.Entry<String, byte[]> classFile : classes.entrySet()) {
+                OutputStream out = ctxt.getOutputStream(scratchDir
+                    + classFile.getKey());
+                try {
+                    out.write(classFile.getValue());
+                } finally {
+                    out.close();
+                }
+            }
+        }
+
+        void write(OutputStream stream) throws IOException {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream));
+            out.writeInt(FORMAT);
+            out.writeInt(dependants.size());
+            for (Map.Entry<String, String> dependant : dependants.entrySet()) {
+                out.writeUTF(dependant.getKey());
+                out.writeUTF(dependant.getValue());
+            }
+            out.writeInt(classes.size());
+            for (Map.Entry<String, byte[]> classFile : classes.entrySet()) {
+                out.writeUTF(classFile.getKey());
+                out.writeInt(classFile.getValue().length);
+                out.write(classFile.getValue());
+            }
+            out.flush();
+        }
+
+        void read(InputStream stream) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                stream));
+            if (in.readInt() != FORMAT) {
+                throw new IOException("Unsupported cache entry format");
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                dependants.put(in.readUTF(), in.readUTF());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                if (!isClassFileName(name)) {
+                    throw new IOException("Invalid class file name " + name);
+                }
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+        }
+    }
+
+    /**
+     * An entry file in the directory with its size and the time it has last
+     * been used, which are read once such that entries may be sorted while
+     * other instances use them.
+     */
+    private static class StoredEntry implements Comparable<StoredEntry> {
+
+        final File file;
+
+        final long length;
+
+        final long lastModified;
+
+        StoredEntry(File file) {
+            this.file = file;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        public int compareTo(StoredEntry other) {
+            if (lastModified < other.lastModified) {
+                return -1;
+            }
+            return (lastModified == other.lastModified) ? 0 : 1;
+        }
+    }
+}
@@ -69,6 +69,9 @@ public final class JspRuntimeContext {
     /** The {@link IOProvider} used to get access to output */
     private IOProvider ioProvider = IOProvider.DEFAULT;
 
+    /** The optional cache of compiled JSP pages and tag files */
+    private JspCompilationCache compilationCache;
+
     /**
      * Preload classes required at runtime by a JSP servlet so that
      * we don't get a defineClassInPackage security exception.
@@ -338,6 +341,24 @@ public final class JspRuntimeContext {
                 : ioProvider;
     }
 
+    /**
+     * Returns the {@link JspCompilationCache} of this context or
+     * <code>null</code> if compiled pages are not cached.
+     */
+    public JspCompilationCache getCompilationCache() {
+        return compilationCache;
+    }
+
+    /**
+     * Sets the {@link JspCompilationCache} to use in this context.
+     *
+     * @param compilationCache The cache to use or <code>null</code> to
+     *      always compile pages.
+     */
+    public void setCompilationCache(JspCompilationCache compilationCache) {
+        this.compilationCache = compilationCache;
+    }
+
     // -------------------------------------------------------- Private Methods
 
 
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.scripting.jsp.jasper.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.scripting.jsp.jasper.JspCompilationContext;
+import org.apache.sling.scripting.jsp.jasper.Options;
+
+public class JspCompilationCacheTest extends TestCase {
+
+    private static final String SCRATCH_DIR = "/var/classes";
+
+    private static final String PAGE = "/apps/test/html.jsp";
+
+    private static final String INCLUDE = "/apps/test/include.jsp";
+
+    private static final String CLASS_FILE = SCRATCH_DIR
+        + "/org/apache/jsp/apps/test/html_jsp.class";
+
+    private static final byte[] CLASS_BYTES = new byte[] { (byte) 0xca,
+        (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 1, 2, 3 };
+
+    private File directory;
+
+    private Options options;
+
+    /** The pages and the class files of the test compilation contexts */
+    private Map<String, byte[]> files;
+
+    private String compilerClassPath;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = new File("target/jsp-cache-" + System.currentTimeMillis());
+        options = createOptions();
+        files = new HashMap<String, byte[]>();
+        compilerClassPath = "/libs/a.jar";
+
+        files.put(PAGE, "<%@include file=\"include.jsp\" %>".getBytes("UTF-8"));
+        files.put(INCLUDE, "<p>included</p>".getBytes("UTF-8"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] entries = directory.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                entry.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    public void testHit() throws Exception {
+        JspCompilationCache cache = createCache(0);
+        store(cache, PAGE);
+
+        assertTrue(cache.restore(new TestContext(PAGE)));
+        assertTrue(Arrays.equals(CLASS_BYTES, files.get(CLASS_FILE)));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    public void testMissAfterContentChange() throws Exception {
+        JspCompilationCache cache = createCache(0);
+        store(cache, PAGE);
+
+        files.put(PAGE, "<p>modified</p>".getBytes("UTF-8"));
+        assertFalse(cache.restore(new TestContext(PAGE)));
+        assertNull(files.get(CLASS_FILE));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testMissAfterDependencyChange() throws Exception {
+        JspCompilationCache cache = createCache(0);
+        store(cache, PAGE);
+
+        files.put(INCLUDE, "<p>modified</p>".getBytes("UTF-8"));
+        assertFalse(cache.restore(new TestContext(PAGE)));
+        assertNull(files.get(CLASS_FILE));
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testMissAfterClassPathChange() throws Exception {
+        JspCompilationCache cache = createCache(0);
+        store(cache, PAGE);
+
+        compilerClassPath = "/libs/b.jar";
+        assertFalse(cache.restore(new TestContext(PAGE)));
+
+        compilerClassPath = "/libs/a.jar";
+        cache.setClassPath("org.example.bundle:1.0.0");
+        assertFalse(cache.restore(new TestContext(PAGE)));
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testSharedDirectory() throws Exception {
+        store(createCache(0), PAGE);
+
+        JspCompilationCache other = createCache(0);
+        assertTrue(other.restore(new TestContext(PAGE)));
+        assertTrue(Arrays.equals(CLASS_BYTES, files.get(CLASS_FILE)));
+    }
+
+    public void testInvalidClassFileName() throws Exception {
+        JspCompilationCache cache = createCache(0);
+        String classFile = SCRATCH_DIR + "/../etc/passwd.class";
+        files.put(classFile, CLASS_BYTES);
+        new TestContext(PAGE).store(cache, classFile);
+
+        assertEquals(0, countEntries());
+        assertFalse(cache.restore(new TestContext(PAGE)));
+    }
+
+    public void testIsClassFileName() {
+        assertTrue(JspCompilationCache.isClassFileName("org/apache/jsp/html_jsp.class"));
+        assertTrue(JspCompilationCache.isClassFileName("org/apache/jsp/tag/web/a$Helper.class"));
+        assertTrue(JspCompilationCache.isClassFileName("html_jsp.class"));
+
+        assertFalse(JspCompilationCache.isClassFileName("org/apache/jsp/html_jsp.java"));
+        assertFalse(JspCompilationCache.isClassFileName("../html_jsp.class"));
+        assertFalse(JspCompilationCache.isClassFileName("org/../../html_jsp.class"));
+        assertFalse(JspCompilationCache.isClassFileName("/org/html_jsp.class"));
+        assertFalse(JspCompilationCache.isClassFileName("org//html_jsp.class"));
+        assertFalse(JspCompilationCache.isClassFileName("org\\..\\html_jsp.class"));
+        assertFalse(JspCompilationCache.isClassFileName("C:/html_jsp.class"));
+        assertFalse(JspCompilationCache.isClassFileName(".class"));
+    }
+
+    public void testEviction() throws Exception {
+        String other = "/apps/test/other.jsp";
+        files.put(other, "<p>other</p>".getBytes("UTF-8"));
+
+        // the size of a single entry, such that the second entry evicts
+        // the first one
+        store(createCache(0), PAGE);
+        long entrySize = directory.listFiles()[0].length();
+        tearDown();
+
+        JspCompilationCache cache = createCache(entrySize);
+        store(cache, PAGE);
+        File[] entries = directory.listFiles();
+        assertEquals(1, entries.length);
+        entries[0].setLastModified(System.currentTimeMillis() - 10000);
+
+        store(cache, other);
+        assertEquals(1, countEntries());
+        assertEquals(1, cache.getEvictions());
+        assertFalse(cache.restore(new TestContext(PAGE)));
+        assertTrue(cache.restore(new TestContext(other)));
+    }
+
+    public void testUnlimitedSize() throws Exception {
+        String other = "/apps/test/other.jsp";
+        files.put(other, "<p>other</p>".getBytes("UTF-8"));
+
+        JspCompilationCache cache = createCache(0);
+        store(cache, PAGE);
+        store(cache, other);
+        assertEquals(2, countEntries());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    private JspCompilationCache createCache(long maxSize) {
+        return new JspCompilationCache(directory, options, "1", maxSize);
+    }
+
+    private void store(JspCompilationCache cache, String page) {
+        files.put(CLASS_FILE, CLASS_BYTES);
+        new TestContext(page).store(cache, CLASS_FILE);
+        files.remove(CLASS_FILE);
+    }
+
+    private int countEntries() {
+        File[] entries = directory.listFiles();
+        return (entries == null) ? 0 : entries.length;
+    }
+
+    private static Options createOptions() {
+        return (Options) Proxy.newProxyInstance(
+            Options.class.getClassLoader(), new Class<?>[] { Options.class },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    if ("getScratchDir".equals(method.getName())) {
+                        return SCRATCH_DIR;
+                    } else if (method.getReturnType() == Boolean.TYPE) {
+                        return Boolean.FALSE;
+                    } else if (method.getReturnType() == Integer.TYPE) {
+                        return Integer.valueOf(0);
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * A compilation context reading the pages from and writing the class
+     * files to the {@link JspCompilationCacheTest#files} map.
+     */
+    private class TestContext extends JspCompilationContext {
+
+        TestContext(String page) {
+            super(page, false, JspCompilationCacheTest.this.options, null,
+                null, null);
+        }
+
+        void store(JspCompilationCache cache, String classFile) {
+            List<String> dependants = Collections.singletonList(INCLUDE);
+            cache.store(this, dependants, Collections.singletonList(classFile));
+        }
+
+        @Override
+        public String getClassPath() {
+            return compilerClassPath;
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String res) {
+            byte[] content = files.get(res);
+            return (content == null) ? null : new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public InputStream getInputStream(String fileName)
+                throws FileNotFoundException {
+            byte[] content = files.get(fileName);
+            if (content == null) {
+                throw new FileNotFoundException(fileName);
+            }
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public OutputStream getOutputStream(final String fileName) {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    files.put(fileName, toByteArray());
+                }
+            };
+        }
+    }
+}
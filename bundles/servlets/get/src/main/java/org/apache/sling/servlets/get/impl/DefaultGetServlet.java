@@ -99,6 +99,12 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
     /** @scr.property valueRef="DEFAULT_RENDERER_PROPERTY" type="Boolean" */
     private static final String XML_RENDERER_PROPERTY = "enable.xml";
 
+    /** @scr.property valueRef="DEFAULT_JSON_MAX_RESOURCES" */
+    private static final String JSON_MAX_RESOURCES_PROPERTY = "json.maximumresults";
+
+    /** Default maximum number of resources rendered in JSON (value is -1, unlimited). */
+    private static final int DEFAULT_JSON_MAX_RESOURCES = -1;
+
     /** Additional aliases. */
     private String[] aliases;
 
@@ -116,6 +122,8 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
 
     private boolean enableXml;
 
+    private int jsonMaxResources;
+
     protected void activate(ComponentContext ctx) {
         Dictionary<?, ?> props = ctx.getProperties();
         this.aliases = OsgiUtil.toStringArray(props.get(ALIAS_PROPERTY));
@@ -132,6 +140,8 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
             DEFAULT_RENDERER_PROPERTY);
         this.enableXml = OsgiUtil.toBoolean(props.get(XML_RENDERER_PROPERTY),
             DEFAULT_RENDERER_PROPERTY);
+        this.jsonMaxResources = OsgiUtil.toInteger(
+            props.get(JSON_MAX_RESOURCES_PROPERTY), DEFAULT_JSON_MAX_RESOURCES);
     }
 
     protected void deactivate(ComponentContext ctx) {
@@ -160,7 +170,7 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
 
         if (enableJson) {
             setupServlet(rendererMap, JsonRendererServlet.EXT_JSON,
-                new JsonRendererServlet());
+                new JsonRendererServlet(jsonMaxResources));
         }
 
         if (enableXml) {
@@ -21,6 +21,7 @@ package org.apache.sling.servlets.get.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,7 @@ import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.commons.json.util.EcmaDateFormat;
 import org.apache.sling.jcr.resource.JcrResourceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -225,6 +227,8 @@ public class JsonQueryServlet extends SlingSafeMethodsServlet {
                 ((InputStream) value).close();
             } catch (IOException ignore) {
             }
+        } else if (value instanceof Calendar) {
+            strValue = EcmaDateFormat.getInstance().format((Calendar) value);
         } else if (value != null) {
             strValue = value.toString();
         } else {
@@ -51,7 +51,18 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
     public static final String TIDY = "tidy";
 
     public JsonRendererServlet() {
-        itemWriter = new JsonResourceWriter(null);
+        this(-1);
+    }
+
+    /**
+     * @param maxResources The maximum number of resources rendered for a
+     *            single request. Requests which would render more resources
+     *            are rejected with status 400 if the response has not been
+     *            committed yet and aborted otherwise. If this is zero or
+     *            negative, the number of resources is not limited.
+     */
+    public JsonRendererServlet(int maxResources) {
+        itemWriter = new JsonResourceWriter(null, maxResources);
     }
 
     @Override
@@ -90,6 +101,16 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
         // do the dump
         try {
             itemWriter.dump(r, resp.getWriter(), maxRecursionLevels, isTidy(req));
+        } catch (JsonResourceWriter.TooManyResourcesException tmre) {
+            // the resources are counted while writing, so the response
+            // can only be replaced if nothing has been sent yet
+            if (resp.isCommitted()) {
+                reportException(tmre);
+            } else {
+                resp.reset();
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "Too many resources to render, request fewer recursion levels");
+            }
         } catch (JSONException je) {
             reportException(je);
         }
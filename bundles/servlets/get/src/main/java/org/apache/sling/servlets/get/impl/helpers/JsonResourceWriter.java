@@ -19,8 +19,6 @@ package org.apache.sling.servlets.get.impl.helpers;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Iterator;
 import java.util.Locale;
@@ -31,22 +29,26 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.commons.json.JSONException;
-import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.commons.json.util.EcmaDateFormat;
 
 /**
  * Dumps JCR Items as JSON data. The dump methods are threadsafe.
+ * <p>
+ * The JSON text is streamed to the writer with a {@link JsonStreamWriter}.
+ * The number of resources written by a single dump may be limited to
+ * prevent huge trees from being rendered.
  */
 public class JsonResourceWriter {
 
-    private static DateFormat calendarFormat;
-
     private final Set<String> propertyNamesToIgnore;
 
+    private final int maxResources;
+
     /** Used to format date values */
-    public static final String ECMA_DATE_FORMAT = "EEE MMM dd yyyy HH:mm:ss 'GMT'Z";
+    public static final String ECMA_DATE_FORMAT = EcmaDateFormat.PATTERN;
 
     /** Used to format date values */
-    public static final Locale DATE_FORMAT_LOCALE = Locale.US;
+    public static final Locale DATE_FORMAT_LOCALE = EcmaDateFormat.LOCALE;
 
 
     /**
@@ -58,7 +60,22 @@ public class JsonResourceWriter {
      *            to dump more flexible.
      */
     public JsonResourceWriter(Set<String> propertyNamesToIgnore) {
+        this(propertyNamesToIgnore, -1);
+    }
+
+    /**
+     * Create a JsonItemWriter
+     *
+     * @param propertyNamesToIgnore if not null, a property having a name from
+     *            this set of values is ignored.
+     * @param maxResources The maximum number of resources to write in a
+     *            single dump. If this is zero or negative, the number of
+     *            resources is not limited.
+     */
+    public JsonResourceWriter(Set<String> propertyNamesToIgnore,
+            int maxResources) {
         this.propertyNamesToIgnore = propertyNamesToIgnore;
+        this.maxResources = maxResources;
     }
 
     /** Dump given resource in JSON, optionally recursing into its object */
@@ -73,15 +90,25 @@ public class JsonResourceWriter {
      */
     public void dump(Resource resource, Writer w, int maxRecursionLevels, boolean tidy)
             throws JSONException {
-        JSONWriter jw = new JSONWriter(w);
+        JsonStreamWriter jw = new JsonStreamWriter(w);
         jw.setTidy(tidy);
-        dump(resource, jw, 0, maxRecursionLevels);
+        try {
+            dump(resource, jw, 0, maxRecursionLevels, new int[1]);
+            jw.flush();
+        } catch (IOException ioe) {
+            throw new JSONException(ioe);
+        }
     }
 
     /** Dump given resource in JSON, optionally recursing into its objects */
-    protected void dump(Resource resource, JSONWriter w,
-            int currentRecursionLevel, int maxRecursionLevels)
-            throws JSONException {
+    protected void dump(Resource resource, JsonStreamWriter w,
+            int currentRecursionLevel, int maxRecursionLevels, int[] count)
+            throws JSONException, IOException {
+
+        count[0]++;
+        if (maxResources > 0 && count[0] > maxResources) {
+            throw new TooManyResourcesException(maxResources);
+        }
 
         final ValueMap valueMap = resource.adaptTo(ValueMap.class);
 
@@ -127,7 +154,7 @@ public class JsonResourceWriter {
             while (children.hasNext()) {
                 final Resource n = children.next();
                 dumpSingleResource(n, w, currentRecursionLevel,
-                    maxRecursionLevels);
+                    maxRecursionLevels, count);
             }
         }
 
@@ -135,15 +162,16 @@ public class JsonResourceWriter {
     }
     
     /** Dump a single node */
-    protected void dumpSingleResource(Resource n, JSONWriter w,
-            int currentRecursionLevel, int maxRecursionLevels)
-            throws JSONException {
+    protected void dumpSingleResource(Resource n, JsonStreamWriter w,
+            int currentRecursionLevel, int maxRecursionLevels, int[] count)
+            throws JSONException, IOException {
         if (recursionLevelActive(currentRecursionLevel, maxRecursionLevels)) {
             w.key(ResourceUtil.getName(n));
-            dump(n, w, currentRecursionLevel + 1, maxRecursionLevels);
+            dump(n, w, currentRecursionLevel + 1, maxRecursionLevels, count);
         }
     }
 
+
     /** true if the current recursion level is active */
     protected boolean recursionLevelActive(int currentRecursionLevel,
             int maxRecursionLevels) {
@@ -154,11 +182,11 @@ public class JsonResourceWriter {
     /**
      * Write a single property
      */
-    protected void writeProperty(JSONWriter w,
+    protected void writeProperty(JsonStreamWriter w,
                                  ValueMap valueMap,
                                  String key,
                                  Object value)
-    throws JSONException {
+    throws JSONException, IOException {
         Object[] values = null;
         if (value.getClass().isArray()) {
             values = (Object[])value;
@@ -203,12 +231,12 @@ public class JsonResourceWriter {
         }
     }
 
-    private void writeLength(JSONWriter w,
+    private void writeLength(JsonStreamWriter w,
                              ValueMap   valueMap,
                              int        index,
                              String     key,
                              InputStream stream)
-    throws JSONException {
+    throws JSONException, IOException {
         try {
             stream.close();
         } catch (IOException ignore) {}
@@ -226,8 +254,8 @@ public class JsonResourceWriter {
         w.value(length);
     }
 
-    protected void dumpValue(JSONWriter w, Object value)
-    throws JSONException {
+    protected void dumpValue(JsonStreamWriter w, Object value)
+    throws JSONException, IOException {
         if ( value instanceof InputStream ) {
             // input stream is already handled
             w.value(0);
@@ -246,10 +274,25 @@ public class JsonResourceWriter {
         }
     }
 
-    public static synchronized String format(Calendar date) {
-        if (calendarFormat == null) {
-            calendarFormat = new SimpleDateFormat(ECMA_DATE_FORMAT, DATE_FORMAT_LOCALE);
+    /**
+     * Formats the date in the {@link #ECMA_DATE_FORMAT} format using the
+     * shared {@link EcmaDateFormat}, which requires no synchronization.
+     */
+    public static String format(Calendar date) {
+        return EcmaDateFormat.getInstance().format(date);
+    }
+
+    /**
+     * Thrown by the dump methods if more than the maximum number of resources
+     * would be written. The resources are counted while they are written, so
+     * part of the JSON text may already have been written.
+     */
+    public static class TooManyResourcesException extends JSONException {
+
+        private static final long serialVersionUID = 1L;
+
+        public TooManyResourcesException(int maxResources) {
+            super("More than " + maxResources + " resources to dump");
         }
-        return calendarFormat.format(date.getTime());
     }
 }
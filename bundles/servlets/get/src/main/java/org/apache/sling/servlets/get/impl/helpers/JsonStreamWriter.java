@@ -0,0 +1,375 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.sling.commons.json.JSONException;
+
+/**
+ * The <code>JsonStreamWriter</code> writes JSON text directly to a
+ * <code>Writer</code>. It produces the same output as the
+ * <code>org.apache.sling.commons.json.io.JSONWriter</code>, including the
+ * tidy format, but quotes strings and formats numbers straight into an
+ * internal character buffer instead of creating intermediate strings, and
+ * does not limit the nesting depth.
+ * <p>
+ * The buffer is written to the underlying writer when it is full and by
+ * {@link #flush()}, which must be called after the JSON text is complete.
+ * Instances of this class are not thread safe.
+ */
+public class JsonStreamWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final char[] MIN_LONG = Long.toString(Long.MIN_VALUE).toCharArray();
+
+    private static final char MODE_INIT = 'i';
+
+    private static final char MODE_DONE = 'd';
+
+    private static final char MODE_OBJECT = 'o';
+
+    private static final char MODE_KEY = 'k';
+
+    private static final char MODE_ARRAY = 'a';
+
+    private final Writer writer;
+
+    private final char[] buf = new char[BUFFER_SIZE];
+
+    private int pos;
+
+    private boolean tidy;
+
+    private boolean comma;
+
+    private char mode = MODE_INIT;
+
+    private char[] stack = new char[32];
+
+    private int top;
+
+    public JsonStreamWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public boolean isTidy() {
+        return tidy;
+    }
+
+    public void setTidy(boolean tidy) {
+        this.tidy = tidy;
+    }
+
+    public JsonStreamWriter object() throws JSONException, IOException {
+        if (mode == MODE_INIT) {
+            mode = MODE_OBJECT;
+        }
+        if (mode == MODE_OBJECT || mode == MODE_ARRAY) {
+            beginValue(false);
+            write('{');
+            push(MODE_KEY);
+            comma = false;
+            return this;
+        }
+        throw new JSONException("Misplaced object.");
+    }
+
+    public JsonStreamWriter endObject() throws JSONException, IOException {
+        return end(MODE_KEY, '}');
+    }
+
+    public JsonStreamWriter array() throws JSONException, IOException {
+        if (mode == MODE_INIT || mode == MODE_OBJECT || mode == MODE_ARRAY) {
+            push(MODE_ARRAY);
+            beginValue(false);
+            write('[');
+            comma = false;
+            return this;
+        }
+        throw new JSONException("Misplaced array.");
+    }
+
+    public JsonStreamWriter endArray() throws JSONException, IOException {
+        return end(MODE_ARRAY, ']');
+    }
+
+    public JsonStreamWriter key(String key) throws JSONException, IOException {
+        if (key == null) {
+            throw new JSONException("Null key.");
+        }
+        if (mode == MODE_KEY) {
+            if (comma) {
+                write(',');
+            }
+            if (tidy) {
+                newLine();
+            }
+            writeQuoted(key);
+            write(':');
+            if (tidy) {
+                write(' ');
+            }
+            comma = false;
+            mode = MODE_OBJECT;
+            return this;
+        }
+        throw new JSONException("Misplaced key.");
+    }
+
+    public JsonStreamWriter value(String value) throws JSONException,
+            IOException {
+        if (value == null) {
+            throw new JSONException("Null pointer");
+        }
+        beginValue(true);
+        writeQuoted(value);
+        return endValue();
+    }
+
+    public JsonStreamWriter value(boolean value) throws JSONException,
+            IOException {
+        beginValue(true);
+        write(value ? "true" : "false");
+        return endValue();
+    }
+
+    public JsonStreamWriter value(long value) throws JSONException,
+            IOException {
+        beginValue(true);
+        writeLong(value);
+        return endValue();
+    }
+
+    public JsonStreamWriter value(double value) throws JSONException,
+            IOException {
+        if (Double.isInfinite(value) || Double.isNaN(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers");
+        }
+        beginValue(true);
+
+        // shave off trailing zeros like JSONObject.numberToString does
+        String s = Double.toString(value);
+        int end = s.length();
+        if (s.indexOf('.') > 0 && s.indexOf('E') < 0) {
+            while (s.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (s.charAt(end - 1) == '.') {
+                end--;
+            }
+        }
+        for (int i = 0; i < end; i++) {
+            write(s.charAt(i));
+        }
+        return endValue();
+    }
+
+    /**
+     * Writes the buffered characters to the underlying writer and flushes
+     * it.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        writer.flush();
+    }
+
+    // ---------- internal
+
+    /**
+     * Writes the separator and, for values in arrays in tidy mode, the line
+     * break and indentation preceding a value.
+     */
+    private void beginValue(boolean scalar) throws JSONException, IOException {
+        if (mode != MODE_OBJECT && mode != MODE_ARRAY) {
+            throw new JSONException("Value out of sequence.");
+        }
+        if (comma && mode == MODE_ARRAY) {
+            write(',');
+        }
+        if (tidy && mode == MODE_ARRAY && scalar) {
+            newLine();
+        }
+    }
+
+    private JsonStreamWriter endValue() {
+        if (mode == MODE_OBJECT) {
+            mode = MODE_KEY;
+        }
+        comma = true;
+        return this;
+    }
+
+    private JsonStreamWriter end(char m, char c) throws JSONException,
+            IOException {
+        if (mode != m) {
+            throw new JSONException(m == MODE_KEY
+                    ? "Misplaced endObject."
+                    : "Misplaced endArray.");
+        }
+        pop(m);
+        if (tidy) {
+            newLine();
+        }
+        write(c);
+        comma = true;
+        return this;
+    }
+
+    private void push(char c) {
+        if (top == stack.length) {
+            char[] newStack = new char[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, stack.length);
+            stack = newStack;
+        }
+        stack[top++] = c;
+        mode = c;
+    }
+
+    private void pop(char c) throws JSONException {
+        if (top <= 0 || stack[top - 1] != c) {
+            throw new JSONException("Nesting error.");
+        }
+        top--;
+        mode = (top == 0) ? MODE_DONE : stack[top - 1];
+
+        // a value closing an object in an array completes that value
+        if (mode == MODE_OBJECT) {
+            mode = MODE_KEY;
+        }
+    }
+
+    private void newLine() throws IOException {
+        write('\n');
+        for (int i = 0; i < top; i++) {
+            write(' ');
+            write(' ');
+        }
+    }
+
+    private void writeQuoted(String s) throws IOException {
+        write('"');
+        char b;
+        char c = 0;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            b = c;
+            c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    write('\\');
+                    write(c);
+                    break;
+                case '/':
+                    if (b == '<') {
+                        write('\\');
+                    }
+                    write(c);
+                    break;
+                case '\b':
+                    write('\\');
+                    write('b');
+                    break;
+                case '\t':
+                    write('\\');
+                    write('t');
+                    break;
+                case '\n':
+                    write('\\');
+                    write('n');
+                    break;
+                case '\f':
+                    write('\\');
+                    write('f');
+                    break;
+                case '\r':
+                    write('\\');
+                    write('r');
+                    break;
+                default:
+                    if (c < ' ') {
+                        write('\\');
+                        write('u');
+                        write('0');
+                        write('0');
+                        write(HEX[(c >> 4) & 0xf]);
+                        write(HEX[c & 0xf]);
+                    } else {
+                        write(c);
+                    }
+            }
+        }
+        write('"');
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            for (char c : MIN_LONG) {
+                write(c);
+            }
+            return;
+        }
+
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+
+        // make sure the digits fit into the buffer
+        if (pos + 20 > buf.length) {
+            flushBuffer();
+        }
+
+        int start = pos;
+        do {
+            buf[pos++] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+
+        // digits have been written in reverse order
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            char tmp = buf[i];
+            buf[i] = buf[j];
+            buf[j] = tmp;
+        }
+    }
+
+    private void write(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            write(s.charAt(i));
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if (pos == buf.length) {
+            flushBuffer();
+        }
+        buf[pos++] = c;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            writer.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
@@ -17,15 +17,24 @@
 package org.apache.sling.servlets.get.impl.helpers;
 
 import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static javax.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
+import static javax.servlet.http.HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+import static org.apache.sling.api.servlets.HttpConstants.HEADER_ETAG;
 import static org.apache.sling.api.servlets.HttpConstants.HEADER_IF_MODIFIED_SINCE;
 import static org.apache.sling.api.servlets.HttpConstants.HEADER_LAST_MODIFIED;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
@@ -48,6 +57,14 @@ import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
  * {@link org.apache.sling.servlets.get.impl.DefaultGetServlet}. If the current
  * resource cannot be streamed it is rendered using the
  * {@link PlainTextRendererServlet}.
+ * <p>
+ * Resources with a known modification time are sent with an
+ * <code>ETag</code> header and conditional requests with
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code> headers are
+ * answered with <code>304/NOT MODIFIED</code> if applicable. Resources with a
+ * known length may be requested partially using the <code>Range</code> and
+ * <code>If-Range</code> headers, in which case one or more byte ranges are
+ * sent with a <code>206/PARTIAL CONTENT</code> response.
  */
 public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
@@ -55,6 +72,30 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
     private static final long serialVersionUID = -1L;
 
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private static final String HEADER_RANGE = "Range";
+
+    private static final String HEADER_IF_RANGE = "If-Range";
+
+    private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+    private static final String BYTES_UNIT = "bytes";
+
+    /** The boundary separating the parts of multiple range responses */
+    private static final String BOUNDARY = "sling_byteranges_boundary";
+
+    /**
+     * The maximum number of ranges accepted in a Range header. Requests for
+     * more ranges are answered with the complete resource.
+     */
+    private static final int MAX_RANGES = 16;
+
+    /** The size of the buffer used to copy resource streams */
+    private static final int BUFFER_SIZE = 32 * 1024;
+
     private boolean index;
 
     private String[] indexFiles;
@@ -88,10 +129,19 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             return;
         }
 
-        // check the last modification time and If-Modified-Since header
+        // check the entity tag and If-None-Match header or the last
+        // modification time and If-Modified-Since header
         ResourceMetadata meta = resource.getResourceMetadata();
         long modifTime = meta.getModificationTime();
-        if (unmodified(request, modifTime)) {
+        String etag = getETag(resource.getPath(), modifTime,
+            meta.getContentLength());
+        String ifNoneMatch = request.getHeader(HEADER_IF_NONE_MATCH);
+        if ((ifNoneMatch != null)
+                ? matches(ifNoneMatch, etag)
+                : unmodified(request, modifTime)) {
+            if (etag != null) {
+                response.setHeader(HEADER_ETAG, etag);
+            }
             response.setStatus(SC_NOT_MODIFIED);
             return;
         }
@@ -100,7 +150,7 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         InputStream stream = resource.adaptTo(InputStream.class);
         if (stream != null) {
             
-            streamResource(resource, stream, response);
+            streamResource(request, resource, stream, etag, response);
             
         } else {
             
@@ -144,7 +194,144 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         return false;
     }
 
-    private void streamResource(Resource resource, InputStream stream,
+    /**
+     * Returns the entity tag of the resource calculated from the path, the
+     * last modification time and the length of the resource or
+     * <code>null</code> if the last modification time is not known.
+     */
+    static String getETag(String path, long modifTime, long length) {
+        if (modifTime <= 0) {
+            return null;
+        }
+
+        return "\"" + Long.toHexString(modifTime) + "-"
+            + Long.toHexString(Math.max(length, 0)) + "-"
+            + Integer.toHexString(path.hashCode()) + "\"";
+    }
+
+    /**
+     * Returns <code>true</code> if the value of an <code>If-None-Match</code>
+     * header matches the entity tag of the resource. Weak entity tags in the
+     * header are compared with the weak comparison function.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (etag == null) {
+            return false;
+        }
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if a <code>Range</code> header is to be
+     * respected according to the <code>If-Range</code> header of the
+     * request: Either there is no such header or the header contains the
+     * (strong) entity tag or the last modification time of the resource.
+     */
+    private boolean isRangeApplicable(HttpServletRequest request, String etag,
+            long modifTime) {
+        String ifRange = request.getHeader(HEADER_IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+
+        try {
+            long date = request.getDateHeader(HEADER_IF_RANGE);
+            return modifTime > 0 && date / 1000 == modifTime / 1000;
+        } catch (IllegalArgumentException iae) {
+            // not a date, assume the resource has been modified
+            return false;
+        }
+    }
+
+    /**
+     * Parses the value of a <code>Range</code> header for a resource of the
+     * given length. Each range is returned as an array of the first and the
+     * last byte position (inclusive).
+     *
+     * @return The list of satisfiable ranges, which is empty if none of the
+     *         ranges is satisfiable, or <code>null</code> if the header is
+     *         missing, invalid or requests too many ranges and is therefore
+     *         to be ignored.
+     */
+    static List<long[]> parseRanges(String range, long length) {
+        if (range == null) {
+            return null;
+        }
+
+        range = range.trim();
+        if (!range.regionMatches(true, 0, BYTES_UNIT + "=", 0,
+            BYTES_UNIT.length() + 1)) {
+            return null;
+        }
+
+        String[] specs = range.substring(BYTES_UNIT.length() + 1).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<long[]>(specs.length);
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int dash = spec.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+
+                long start;
+                long end;
+                if (dash == 0) {
+                    // suffix range: the last n bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    if (dash == spec.length() - 1) {
+                        end = length - 1;
+                    } else {
+                        end = Long.parseLong(spec.substring(dash + 1));
+                        if (end < start) {
+                            return null;
+                        }
+                        end = Math.min(end, length - 1);
+                    }
+                }
+
+                if (start < 0) {
+                    return null;
+                } else if (start < length) {
+                    ranges.add(new long[] { start, end });
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+
+        return ranges;
+    }
+
+    private void streamResource(SlingHttpServletRequest request,
+            Resource resource, InputStream stream, String etag,
             SlingHttpServletResponse response) throws IOException {
         // finally stream the resource
         try {
@@ -155,6 +342,9 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             if (modifTime > 0) {
                 response.setDateHeader(HEADER_LAST_MODIFIED, modifTime);
             }
+            if (etag != null) {
+                response.setHeader(HEADER_ETAG, etag);
+            }
 
             final String defaultContentType = "application/octet-stream";
             String contentType = meta.getContentType();
@@ -169,26 +359,94 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
                     contentType = ct;
                 }
             }
-            if (contentType != null) {
-                response.setContentType(contentType);
+
+            // ranges can only be served for resources of known length
+            long length = meta.getContentLength();
+            List<long[]> ranges = null;
+            if (length > 0) {
+                response.setHeader(HEADER_ACCEPT_RANGES, BYTES_UNIT);
+                if (isRangeApplicable(request, etag, modifTime)) {
+                    ranges = parseRanges(request.getHeader(HEADER_RANGE),
+                        length);
+                }
             }
 
-            String encoding = meta.getCharacterEncoding();
-            if (encoding != null) {
-                response.setCharacterEncoding(encoding);
+            if (ranges != null && ranges.isEmpty()) {
+                response.setHeader(HEADER_CONTENT_RANGE, BYTES_UNIT + " */"
+                    + length);
+                response.sendError(SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
             }
 
-            long length = meta.getContentLength();
-            if (length > 0 && length < Integer.MAX_VALUE) {
-                response.setContentLength((int) length);
+            if (ranges == null || ranges.size() == 1) {
+                if (contentType != null) {
+                    response.setContentType(contentType);
+                }
+
+                String encoding = meta.getCharacterEncoding();
+                if (encoding != null) {
+                    response.setCharacterEncoding(encoding);
+                }
             }
 
-            OutputStream out = response.getOutputStream();
+            OutputStream out;
+            if (ranges == null) {
+
+                // the complete resource
+                setContentLength(response, length);
+                out = response.getOutputStream();
+                copy(stream, out, -1);
+
+            } else if (ranges.size() == 1) {
+
+                // a single range
+                long[] range = ranges.get(0);
+                response.setStatus(SC_PARTIAL_CONTENT);
+                response.setHeader(HEADER_CONTENT_RANGE, getContentRange(
+                    range, length));
+                setContentLength(response, range[1] - range[0] + 1);
+                out = response.getOutputStream();
+                skip(stream, range[0]);
+                copy(stream, out, range[1] - range[0] + 1);
 
-            byte[] buf = new byte[1024];
-            int rd;
-            while ((rd = stream.read(buf)) >= 0) {
-                out.write(buf, 0, rd);
+            } else {
+
+                // multiple ranges
+                response.setStatus(SC_PARTIAL_CONTENT);
+                response.setContentType("multipart/byteranges; boundary="
+                    + BOUNDARY);
+                out = response.getOutputStream();
+
+                long position = 0;
+                for (long[] range : ranges) {
+                    StringBuilder header = new StringBuilder();
+                    header.append("\r\n--").append(BOUNDARY).append("\r\n");
+                    if (contentType != null) {
+                        header.append("Content-Type: ").append(contentType).append(
+                            "\r\n");
+                    }
+                    header.append(HEADER_CONTENT_RANGE).append(": ").append(
+                        getContentRange(range, length)).append("\r\n\r\n");
+                    out.write(header.toString().getBytes("ISO-8859-1"));
+
+                    // reopen the stream for ranges before the current position
+                    if (range[0] < position) {
+                        InputStream newStream = resource.adaptTo(InputStream.class);
+                        if (newStream == null) {
+                            throw new IOException("Cannot reopen stream of "
+                                + resource.getPath());
+                        }
+                        stream.close();
+                        stream = newStream;
+                        position = 0;
+                    }
+
+                    skip(stream, range[0] - position);
+                    copy(stream, out, range[1] - range[0] + 1);
+                    position = range[1] + 1;
+                }
+
+                out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes("ISO-8859-1"));
             }
 
         } finally {
@@ -199,6 +457,83 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
             }
         }
     }
+
+    private String getContentRange(long[] range, long length) {
+        return BYTES_UNIT + " " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    private void setContentLength(HttpServletResponse response, long length) {
+        if (length > 0 && length < Integer.MAX_VALUE) {
+            response.setContentLength((int) length);
+        } else if (length > 0) {
+            response.setHeader("Content-Length", String.valueOf(length));
+        }
+    }
+
+    /**
+     * Skips the given number of bytes of the stream. For streams backed by
+     * files, the file position is just moved.
+     */
+    private void skip(InputStream stream, long count) throws IOException {
+        if (stream instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) stream).getChannel();
+            channel.position(channel.position() + count);
+            return;
+        }
+
+        while (count > 0) {
+            long skipped = stream.skip(count);
+            if (skipped <= 0) {
+                // skip may not be supported, read instead
+                if (stream.read() < 0) {
+                    throw new IOException("Unexpected end of stream");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Copies the given number of bytes or the rest of the stream if
+     * <code>count</code> is negative to the output stream. Streams backed by
+     * files are transferred by their file channel, saving the intermediate
+     * buffer in the Java heap where the platform supports it.
+     */
+    private void copy(InputStream stream, OutputStream out, long count)
+            throws IOException {
+        if (stream instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) stream).getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = channel.position();
+            long end = (count < 0) ? channel.size() : position + count;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position,
+                    target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            channel.position(position);
+            return;
+        }
+
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (count != 0) {
+            int len = (count < 0 || count > buf.length)
+                    ? buf.length
+                    : (int) count;
+            int rd = stream.read(buf, 0, len);
+            if (rd < 0) {
+                break;
+            }
+            out.write(buf, 0, rd);
+            if (count > 0) {
+                count -= rd;
+            }
+        }
+    }
     
     private void renderDirectory(SlingHttpServletRequest request,
             SlingHttpServletResponse response) throws ServletException,
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+
+public class JsonStreamWriterTest extends TestCase {
+
+    public void testSameOutputAsJSONWriter() throws Exception {
+        assertSameOutput(false);
+    }
+
+    public void testSameTidyOutputAsJSONWriter() throws Exception {
+        assertSameOutput(true);
+    }
+
+    public void testDeepNesting() throws Exception {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter w = new JsonStreamWriter(out);
+        w.object();
+        for (int i = 0; i < 100; i++) {
+            w.key("c").object();
+        }
+        for (int i = 0; i < 100; i++) {
+            w.endObject();
+        }
+        w.endObject();
+        w.flush();
+
+        StringBuilder expected = new StringBuilder("{");
+        for (int i = 0; i < 100; i++) {
+            expected.append("\"c\":{");
+        }
+        for (int i = 0; i < 100; i++) {
+            expected.append('}');
+        }
+        expected.append('}');
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    public void testLargeOutput() throws Exception {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter w = new JsonStreamWriter(out);
+        w.array();
+        for (int i = 0; i < 10000; i++) {
+            w.value(Long.MIN_VALUE + i);
+        }
+        w.endArray();
+        w.flush();
+        assertTrue(out.toString().endsWith((Long.MIN_VALUE + 9999) + "]"));
+    }
+
+    public void testMisplacedKey() throws Exception {
+        JsonStreamWriter w = new JsonStreamWriter(new StringWriter());
+        w.array();
+        try {
+            w.key("a");
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            // expected
+        }
+    }
+
+    private void assertSameOutput(boolean tidy) throws Exception {
+        StringWriter expected = new StringWriter();
+        JSONWriter jw = new JSONWriter(expected);
+        jw.setTidy(tidy);
+        jw.object();
+        jw.key("string").value("a \"quoted\" </script>\n\t\u0001 string");
+        jw.key("long").value(-1234567890123L);
+        jw.key("double").value(1.50);
+        jw.key("bigDouble").value(1.0E20);
+        jw.key("boolean").value(true);
+        jw.key("empty").array().endArray();
+        jw.key("array").array().value("a").value(2L).array().value(false).endArray().object().key(
+            "x").value("y").endObject().endArray();
+        jw.key("child").object().key("grandchild").object().key("p").value(
+            "v").endObject().endObject();
+        jw.endObject();
+
+        StringWriter actual = new StringWriter();
+        JsonStreamWriter w = new JsonStreamWriter(actual);
+        w.setTidy(tidy);
+        w.object();
+        w.key("string").value("a \"quoted\" </script>\n\t\u0001 string");
+        w.key("long").value(-1234567890123L);
+        w.key("double").value(1.50);
+        w.key("bigDouble").value(1.0E20);
+        w.key("boolean").value(true);
+        w.key("empty").array().endArray();
+        w.key("array").array().value("a").value(2L).array().value(false).endArray().object().key(
+            "x").value("y").endObject().endArray();
+        w.key("child").object().key("grandchild").object().key("p").value(
+            "v").endObject().endObject();
+        w.endObject();
+        w.flush();
+
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
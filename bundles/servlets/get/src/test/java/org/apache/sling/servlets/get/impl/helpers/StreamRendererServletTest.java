@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class StreamRendererServletTest extends TestCase {
+
+    public void testSingleRange() {
+        assertRanges(StreamRendererServlet.parseRanges("bytes=0-99", 1000),
+            0, 99);
+        assertRanges(StreamRendererServlet.parseRanges("bytes=900-", 1000),
+            900, 999);
+        assertRanges(StreamRendererServlet.parseRanges("bytes=-100", 1000),
+            900, 999);
+        assertRanges(StreamRendererServlet.parseRanges("bytes=500-2000", 1000),
+            500, 999);
+        assertRanges(StreamRendererServlet.parseRanges("bytes=-2000", 1000),
+            0, 999);
+    }
+
+    public void testMultipleRanges() {
+        assertRanges(StreamRendererServlet.parseRanges(
+            "bytes=0-0, 10-19,-5", 1000), 0, 0, 10, 19, 995, 999);
+    }
+
+    public void testUnsatisfiableRange() {
+        List<long[]> ranges = StreamRendererServlet.parseRanges(
+            "bytes=1000-", 1000);
+        assertNotNull(ranges);
+        assertTrue(ranges.isEmpty());
+
+        // satisfiable ranges are kept
+        assertRanges(StreamRendererServlet.parseRanges("bytes=2000-,0-9",
+            1000), 0, 9);
+    }
+
+    public void testIgnoredRange() {
+        assertNull(StreamRendererServlet.parseRanges(null, 1000));
+        assertNull(StreamRendererServlet.parseRanges("items=0-9", 1000));
+        assertNull(StreamRendererServlet.parseRanges("bytes=9-0", 1000));
+        assertNull(StreamRendererServlet.parseRanges("bytes=a-b", 1000));
+        assertNull(StreamRendererServlet.parseRanges("bytes=10", 1000));
+
+        StringBuilder many = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < 100; i++) {
+            many.append(',').append(i).append('-').append(i);
+        }
+        assertNull(StreamRendererServlet.parseRanges(many.toString(), 1000));
+    }
+
+    public void testETag() {
+        assertNull(StreamRendererServlet.getETag("/a", 0, 10));
+
+        String etag = StreamRendererServlet.getETag("/a", 1000, 10);
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        assertEquals(etag, StreamRendererServlet.getETag("/a", 1000, 10));
+        assertFalse(etag.equals(StreamRendererServlet.getETag("/a", 2000, 10)));
+        assertFalse(etag.equals(StreamRendererServlet.getETag("/a", 1000, 11)));
+        assertFalse(etag.equals(StreamRendererServlet.getETag("/b", 1000, 10)));
+    }
+
+    public void testIfNoneMatch() {
+        String etag = StreamRendererServlet.getETag("/a", 1000, 10);
+        assertTrue(StreamRendererServlet.matches(etag, etag));
+        assertTrue(StreamRendererServlet.matches("W/" + etag, etag));
+        assertTrue(StreamRendererServlet.matches("\"x\", " + etag, etag));
+        assertTrue(StreamRendererServlet.matches("*", etag));
+        assertFalse(StreamRendererServlet.matches("\"x\"", etag));
+        assertFalse(StreamRendererServlet.matches("*", null));
+    }
+
+    private void assertRanges(List<long[]> ranges, long... expected) {
+        assertNotNull(ranges);
+        assertEquals(expected.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals(expected[2 * i], ranges.get(i)[0]);
+            assertEquals(expected[2 * i + 1], ranges.get(i)[1]);
+        }
+    }
+}
@@ -108,6 +108,35 @@ public interface SlingPostConstants {
      * to indicate how to send the actual response status.
      */
     public static final String OPERATION_NOP = "nop";
+
+    /**
+     * Name of the predefined import operation (value is "import").
+     * <p>
+     * The import operation reads JSON content from the request body and
+     * creates the described nodes and properties below the request resource
+     * while reading. The session is saved each time a number of nodes and
+     * properties has been created, modified or removed, which may be set
+     * with the {@link #RP_BATCH_SIZE} parameter. If the request content type is
+     * {@link #IMPORT_CONTENT_TYPE_NDJSON} the body is read as a sequence of
+     * JSON objects, usually one per line, each of which is applied to the
+     * request resource.
+     */
+    public static final String OPERATION_IMPORT = "import";
+
+    /**
+     * Optional request parameter for the {@link #OPERATION_IMPORT} operation
+     * indicating the number of nodes and properties to create, modify or
+     * remove before saving the session (value is ":batchSize"). If the parameter is missing or not a positive
+     * integer, the batch size configured for the POST servlet is used.
+     */
+    public static final String RP_BATCH_SIZE = RP_PREFIX + "batchSize";
+
+    /**
+     * The request content type indicating newline delimited JSON content for
+     * the {@link #OPERATION_IMPORT} operation (value is
+     * "application/x-ndjson").
+     */
+    public static final String IMPORT_CONTENT_TYPE_NDJSON = "application/x-ndjson";
     
     /**
      * Name of the request parameter used to indicate the resource to apply the
@@ -279,6 +308,29 @@ public interface SlingPostConstants {
      */
     public static final int NOPSTATUS_VALUE_DEFAULT = 200;
     
+    /**
+     * Optional request parameter indicating how the parts of a multipart
+     * request are processed (value is ":uploadmode"). This parameter must be
+     * part of the request query to be recognized.
+     *
+     * @see #UPLOAD_MODE_STREAM
+     */
+    public static final String RP_UPLOAD_MODE = RP_PREFIX + "uploadmode";
+
+    /**
+     * The value of the {@link #RP_UPLOAD_MODE} parameter requesting uploaded
+     * files to be streamed into the repository (value is "stream"). In this
+     * mode the Sling engine does not parse the request body into request
+     * parameters and the default create/modify operation reads the request
+     * parts in order: form fields are collected and each file is written to
+     * the repository while it is read, without being stored in a temporary
+     * file. Form fields related to a file, such as its type hint, must
+     * therefore precede the file in the request. Other operations must be
+     * given in the request query and do not see the form fields of the
+     * request body.
+     */
+    public static final String UPLOAD_MODE_STREAM = "stream";
+
     /**
      * Optional request parameter: if provided, added at the end of the computed
      * (or supplied) redirect URL
@@ -334,4 +386,47 @@ public interface SlingPostConstants {
      * parameter.
      */
     public static final String SUFFIX_COPY_FROM = "@CopyFrom";
+
+    /**
+     * Suffix indicating that the named file is uploaded in chunks and giving
+     * the byte offset of the chunk in the file (value is "@Offset").
+     * <p>
+     * Chunks are stored in a node named after the file with the
+     * {@link #CHUNKS_NODE_SUFFIX} next to the file until the upload is
+     * complete. A chunk sent again for the same offset replaces the chunk
+     * stored before, so failed chunks can simply be resent and chunks may be
+     * sent in any order and in parallel. The upload is complete if the
+     * {@link #SUFFIX_COMPLETED} parameter is set or if all bytes up to the
+     * length given by the {@link #SUFFIX_LENGTH} parameter have been
+     * received. The chunks are then assembled into the file and removed.
+     */
+    public static final String SUFFIX_OFFSET = "@Offset";
+
+    /**
+     * Suffix indicating the total length in bytes of a file uploaded in
+     * chunks (value is "@Length").
+     *
+     * @see #SUFFIX_OFFSET
+     */
+    public static final String SUFFIX_LENGTH = "@Length";
+
+    /**
+     * Suffix indicating that the chunk sent with the request is the last
+     * chunk of a file uploaded in chunks (value is "@Completed"). The
+     * parameter value must be <code>true</code>.
+     *
+     * @see #SUFFIX_OFFSET
+     */
+    public static final String SUFFIX_COMPLETED = "@Completed";
+
+    /**
+     * The suffix appended to the name of a file uploaded in chunks to name
+     * the node storing the chunks until the upload is complete (value is
+     * ".chunks"). This node has an <code>offset</code> property for the
+     * number of contiguous bytes received from the start of the file, at
+     * which an interrupted upload may be resumed.
+     *
+     * @see #SUFFIX_OFFSET
+     */
+    public static final String CHUNKS_NODE_SUFFIX = ".chunks";
 }
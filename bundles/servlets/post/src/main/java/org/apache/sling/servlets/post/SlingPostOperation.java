@@ -35,8 +35,9 @@ import org.apache.sling.api.servlets.HtmlResponse;
  * parameter.
  * <p>
  * The Sling default POST servlet defines the <code>copy</code>,
- * <code>move</code> and <code>delete</code> operation names. These names
- * should not be used by <code>SlingPostOperation</code> service providers.
+ * <code>move</code>, <code>delete</code> and <code>import</code> operation
+ * names. These names should not be used by <code>SlingPostOperation</code>
+ * service providers.
  */
 public interface SlingPostOperation {
 
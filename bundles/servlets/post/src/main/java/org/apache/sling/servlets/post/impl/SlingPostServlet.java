@@ -40,6 +40,7 @@ import org.apache.sling.servlets.post.impl.helper.DateParser;
 import org.apache.sling.servlets.post.impl.helper.NodeNameGenerator;
 import org.apache.sling.servlets.post.impl.operations.CopyOperation;
 import org.apache.sling.servlets.post.impl.operations.DeleteOperation;
+import org.apache.sling.servlets.post.impl.operations.ImportOperation;
 import org.apache.sling.servlets.post.impl.operations.ModifyOperation;
 import org.apache.sling.servlets.post.impl.operations.MoveOperation;
 import org.apache.sling.servlets.post.impl.operations.NopOperation;
@@ -101,6 +102,13 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
      */
     private static final String PROP_NODE_NAME_MAX_LENGTH = "servlet.post.nodeNameMaxLength";
 
+    /**
+     * @scr.property value="1000" type="Integer"
+     */
+    private static final String PROP_IMPORT_BATCH_SIZE = "servlet.post.importBatchSize";
+
+    private static final int DEFAULT_IMPORT_BATCH_SIZE = 1000;
+
     /**
      * utility class for generating node names
      */
@@ -111,6 +119,11 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
      */
     private DateParser dateParser;
 
+    /**
+     * number of nodes created by the import operation before saving
+     */
+    private int importBatchSize;
+
     private SlingPostOperation modifyOperation;
 
     private final List<ServiceReference> delayedPostOperations = new ArrayList<ServiceReference>();
@@ -139,6 +152,8 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
         postOperations.put(SlingPostConstants.OPERATION_DELETE,
             new DeleteOperation());
         postOperations.put(SlingPostConstants.OPERATION_NOP, new NopOperation());
+        postOperations.put(SlingPostConstants.OPERATION_IMPORT,
+            new ImportOperation(importBatchSize));
     }
 
     @Override
@@ -309,6 +324,9 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
         for (String dateFormat : dateFormats) {
             dateParser.register(dateFormat);
         }
+
+        importBatchSize = (int) OsgiUtil.toLong(
+            props.get(PROP_IMPORT_BATCH_SIZE), DEFAULT_IMPORT_BATCH_SIZE);
     }
 
     protected void deactivate(ComponentContext context) {
@@ -0,0 +1,433 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.JSONTokener;
+import org.apache.sling.commons.json.io.JSONParser;
+import org.apache.sling.commons.json.io.JSONParser.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>JsonContentImporter</code> reads JSON content from a
+ * <code>Reader</code> with a {@link JSONParser} and creates the described
+ * nodes and properties below a root node while reading. Neither the request
+ * body nor a tree of JSON objects is held in memory: a node is created as
+ * soon as its primary type is known, that is when its first child node
+ * starts or its object ends, and the session is saved once the configured
+ * number of items has been created, modified or removed. The session is only
+ * saved when the object of a node ends, such that nodes are not saved before
+ * their mandatory child nodes and properties have been created.
+ * <p>
+ * The content uses the format of the JSON initial content: object members
+ * are properties, object members whose value is an object are child nodes
+ * and the <code>jcr:primaryType</code> and <code>jcr:mixinTypes</code>
+ * members define the node types of new nodes. Existing nodes are updated and
+ * a <code>null</code> value removes a property. Objects may be nested at
+ * most {@link #MAX_DEPTH} levels deep and numbers must be finite.
+ * <p>
+ * In the NDJSON format the content is a sequence of such objects, usually
+ * one per line, each of which is applied to the root node in turn.
+ * <p>
+ * Instances of this class are not thread safe.
+ */
+public class JsonContentImporter {
+
+    /**
+     * The maximum nesting level of objects in the imported content, counting
+     * the outermost object.
+     */
+    public static final int MAX_DEPTH = 256;
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final String PRIMARY_TYPE = "jcr:primaryType";
+
+    private static final String MIXIN_TYPES = "jcr:mixinTypes";
+
+    /** Protected properties which cannot be imported */
+    private static final Set<String> ignoredNames = new HashSet<String>();
+    static {
+        ignoredNames.add("jcr:uuid");
+        ignoredNames.add("jcr:baseVersion");
+        ignoredNames.add("jcr:predecessors");
+        ignoredNames.add("jcr:successors");
+        ignoredNames.add("jcr:checkedOut");
+        ignoredNames.add("jcr:created");
+    }
+
+    private final Node root;
+
+    private final Session session;
+
+    private final int batchSize;
+
+    private JSONTokener tokener;
+
+    private long nodeCount;
+
+    private long propertyCount;
+
+    private long batchCount;
+
+    private int unsavedChanges;
+
+    /**
+     * Creates an importer adding content below the given root node.
+     *
+     * @param root The node to which the imported content is applied
+     * @param batchSize The number of created, modified or removed items
+     *            after which the session is saved at the end of the next
+     *            object. If this is zero or
+     *            negative the session is never saved by this importer.
+     */
+    public JsonContentImporter(Node root, int batchSize)
+            throws RepositoryException {
+        this.root = root;
+        this.session = root.getSession();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports a single JSON object, which must be the only content of the
+     * reader.
+     */
+    public void importJson(Reader reader) throws IOException, JSONException,
+            RepositoryException {
+        JSONParser parser = createParser(reader);
+        if (!parser.hasNext()) {
+            throw tokener.syntaxError("A JSON object must begin with '{'");
+        }
+        importObject(parser);
+        if (parser.hasNext()) {
+            throw tokener.syntaxError("Unexpected content after the JSON object");
+        }
+    }
+
+    /**
+     * Imports a sequence of JSON objects until the end of the reader is
+     * reached.
+     */
+    public void importNdJson(Reader reader) throws IOException,
+            JSONException, RepositoryException {
+        JSONParser parser = createParser(reader);
+        while (parser.hasNext()) {
+            importObject(parser);
+        }
+    }
+
+    /** Returns the number of nodes created so far */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /** Returns the number of properties set or removed so far */
+    public long getPropertyCount() {
+        return propertyCount;
+    }
+
+    /** Returns the number of times the session has been saved so far */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    // ---------- content creation
+
+    private JSONParser createParser(Reader reader) {
+        tokener = new JSONTokener(reader);
+        return new JSONParser(tokener);
+    }
+
+    /**
+     * Applies the next object of the parser to the root node. The nodes
+     * being read are kept on a stack instead of being handled recursively,
+     * so the nesting of the content does not use up the call stack.
+     */
+    private void importObject(JSONParser parser) throws JSONException,
+            RepositoryException {
+        if (parser.next() != Event.START_OBJECT) {
+            throw tokener.syntaxError("A JSON object must begin with '{'");
+        }
+
+        List<PendingNode> parents = new ArrayList<PendingNode>();
+        PendingNode current = new PendingNode(root);
+        for (;;) {
+            if (parser.next() == Event.END_OBJECT) {
+                current.create();
+                saveBatch();
+                if (parents.isEmpty()) {
+                    return;
+                }
+                current = parents.remove(parents.size() - 1);
+                continue;
+            }
+
+            // the parser only reports keys inside of objects
+            String name = parser.getKey();
+            switch (parser.next()) {
+                case START_OBJECT:
+                    // the new object is nested one level below the current
+                    if (parents.size() + 2 > MAX_DEPTH) {
+                        throw tokener.syntaxError("Objects nested more than "
+                            + MAX_DEPTH + " levels deep");
+                    }
+                    parents.add(current);
+                    current = new PendingNode(current.create(), name);
+                    break;
+                case START_ARRAY:
+                    current.setProperty(name, readArray(parser));
+                    break;
+                default:
+                    current.setProperty(name, toValue(parser.getValue()));
+            }
+        }
+    }
+
+    private void onNodeCreated() throws RepositoryException {
+        nodeCount++;
+        onChange();
+    }
+
+    private void onPropertyChanged() throws RepositoryException {
+        propertyCount++;
+        onChange();
+    }
+
+    /** Counts a created, modified or removed item */
+    private void onChange() {
+        unsavedChanges++;
+    }
+
+    /**
+     * Saves the session if the batch is complete. This is only called once a
+     * node has been completed at the end of its object.
+     */
+    private void saveBatch() throws RepositoryException {
+        if (batchSize > 0 && unsavedChanges >= batchSize) {
+            session.save();
+            batchCount++;
+            unsavedChanges = 0;
+            log.debug("Saved batch {}, {} nodes and {} properties imported below {}",
+                new Object[] { batchCount, nodeCount, propertyCount,
+                    root.getPath() });
+        }
+    }
+
+    private void setProperty(Node node, String name, Object value)
+            throws RepositoryException {
+        if (value == null) {
+            if (node.hasProperty(name)) {
+                node.getProperty(name).remove();
+                onPropertyChanged();
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            int type = list.isEmpty() ? PropertyType.STRING : getType(list.get(0));
+            ValueFactory factory = session.getValueFactory();
+            Value[] values = new Value[list.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = factory.createValue(String.valueOf(list.get(i)),
+                    type);
+            }
+            node.setProperty(name, values);
+            onPropertyChanged();
+        } else if (value instanceof Boolean) {
+            node.setProperty(name, ((Boolean) value).booleanValue());
+            onPropertyChanged();
+        } else if (value instanceof Long) {
+            node.setProperty(name, ((Long) value).longValue());
+            onPropertyChanged();
+        } else if (value instanceof Double) {
+            node.setProperty(name, ((Double) value).doubleValue());
+            onPropertyChanged();
+        } else {
+            node.setProperty(name, value.toString());
+            onPropertyChanged();
+        }
+    }
+
+    private int getType(Object value) {
+        if (value instanceof Boolean) {
+            return PropertyType.BOOLEAN;
+        } else if (value instanceof Long) {
+            return PropertyType.LONG;
+        } else if (value instanceof Double) {
+            return PropertyType.DOUBLE;
+        }
+        return PropertyType.STRING;
+    }
+
+    /**
+     * A node described by a JSON object which is being read. Property values
+     * are kept until the node is created.
+     */
+    private class PendingNode {
+
+        private final Node parent;
+
+        private final String name;
+
+        private Node node;
+
+        private String primaryType;
+
+        private List<?> mixinTypes;
+
+        private Map<String, Object> properties;
+
+        PendingNode(Node node) {
+            this.parent = null;
+            this.name = null;
+            this.node = node;
+        }
+
+        PendingNode(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        void setProperty(String name, Object value) throws RepositoryException {
+            if (PRIMARY_TYPE.equals(name)) {
+                if (value instanceof String) {
+                    primaryType = (String) value;
+                }
+            } else if (MIXIN_TYPES.equals(name)) {
+                if (value instanceof List) {
+                    mixinTypes = (List<?>) value;
+                } else if (value instanceof String) {
+                    List<Object> list = new ArrayList<Object>();
+                    list.add(value);
+                    mixinTypes = list;
+                }
+            } else if (ignoredNames.contains(name)) {
+                // protected properties cannot be set
+            } else if (node != null) {
+                JsonContentImporter.this.setProperty(node, name, value);
+            } else {
+                if (properties == null) {
+                    properties = new LinkedHashMap<String, Object>();
+                }
+                properties.put(name, value);
+            }
+        }
+
+        /**
+         * Creates the node unless it already exists and sets the collected
+         * node types and properties.
+         */
+        Node create() throws RepositoryException {
+            if (node != null) {
+                if (mixinTypes != null) {
+                    addMixinTypes();
+                }
+                return node;
+            }
+
+            if (parent.hasNode(name)) {
+                node = parent.getNode(name);
+            } else {
+                if (primaryType != null) {
+                    node = parent.addNode(name, primaryType);
+                } else {
+                    node = parent.addNode(name);
+                }
+                onNodeCreated();
+            }
+
+            if (mixinTypes != null) {
+                addMixinTypes();
+            }
+            if (properties != null) {
+                for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                    JsonContentImporter.this.setProperty(node, entry.getKey(),
+                        entry.getValue());
+                }
+                properties = null;
+            }
+            return node;
+        }
+
+        private void addMixinTypes() throws RepositoryException {
+            for (Object mixin : mixinTypes) {
+                String mixinName = String.valueOf(mixin);
+                if (!node.isNodeType(mixinName)) {
+                    node.addMixin(mixinName);
+                    onChange();
+                }
+            }
+            mixinTypes = null;
+        }
+    }
+
+    // ---------- values
+
+    /**
+     * Reads the values of an array just started.
+     */
+    private List<Object> readArray(JSONParser parser) throws JSONException {
+        List<Object> values = new ArrayList<Object>();
+        for (Event event = parser.next(); event != Event.END_ARRAY; event = parser.next()) {
+            if (event != Event.VALUE) {
+                throw tokener.syntaxError("Arrays may only contain simple values");
+            }
+            Object value = toValue(parser.getValue());
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Converts a simple value reported by the parser to the value of a
+     * property: integral numbers are converted to <code>Long</code>, the
+     * <code>null</code> value to <code>null</code> and numbers which are not
+     * finite are rejected.
+     */
+    private Object toValue(Object value) throws JSONException {
+        if (value == JSONObject.NULL) {
+            return null;
+        } else if (value instanceof Integer) {
+            return new Long(((Integer) value).longValue());
+        } else if (value instanceof Double) {
+            Double d = (Double) value;
+            if (d.isNaN() || d.isInfinite()) {
+                throw tokener.syntaxError("Invalid number " + d);
+            }
+        }
+        return value;
+    }
+}
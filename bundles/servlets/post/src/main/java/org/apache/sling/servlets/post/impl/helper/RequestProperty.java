@@ -56,6 +56,12 @@ public class RequestProperty {
 
     private boolean isRepositoryResourceMove;
 
+    private long chunkOffset = -1;
+
+    private long chunkLength = -1;
+
+    private boolean isChunkCompleted;
+
     public RequestProperty(String path) {
         assert path.startsWith("/");
         this.path = ResourceUtil.normalize(path);
@@ -252,4 +258,58 @@ public class RequestProperty {
     public String getRepositorySource() {
         return repositoryResourcePath;
     }
+
+    /**
+     * Sets the offset of the chunk of a file uploaded in chunks.
+     */
+    public void setChunkOffset(long chunkOffset) {
+        this.chunkOffset = chunkOffset;
+    }
+
+    /**
+     * Returns the offset of the chunk of a file uploaded in chunks or -1 if
+     * the file is not uploaded in chunks.
+     */
+    public long getChunkOffset() {
+        return chunkOffset;
+    }
+
+    /**
+     * Returns <code>true</code> if the value of this property is a chunk of
+     * a file uploaded in chunks.
+     */
+    public boolean isChunkUpload() {
+        return chunkOffset >= 0;
+    }
+
+    /**
+     * Sets the total length of a file uploaded in chunks.
+     */
+    public void setChunkLength(long chunkLength) {
+        this.chunkLength = chunkLength;
+    }
+
+    /**
+     * Returns the total length of a file uploaded in chunks or -1 if the
+     * length is not known.
+     */
+    public long getChunkLength() {
+        return chunkLength;
+    }
+
+    /**
+     * Specifies whether the chunk of a file uploaded in chunks is the last
+     * chunk of the file.
+     */
+    public void setChunkCompleted(boolean isChunkCompleted) {
+        this.isChunkCompleted = isChunkCompleted;
+    }
+
+    /**
+     * Returns <code>true</code> if the chunk of a file uploaded in chunks is
+     * the last chunk of the file.
+     */
+    public boolean isChunkCompleted() {
+        return isChunkCompleted;
+    }
 }
\ No newline at end of file
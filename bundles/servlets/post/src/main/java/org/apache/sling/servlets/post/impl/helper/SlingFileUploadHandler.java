@@ -16,12 +16,26 @@
  */
 package org.apache.sling.servlets.post.impl.helper;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.Vector;
 
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.LoginException;
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import javax.jcr.lock.LockException;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.NodeTypeManager;
 import javax.servlet.ServletContext;
@@ -29,6 +43,9 @@ import javax.servlet.ServletContext;
 import org.apache.jackrabbit.util.Text;
 import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Handles file uploads.
@@ -67,14 +84,45 @@ import org.apache.sling.servlets.post.Modification;
  * this will create a new node with the type my:file below admin. if the hinted
  * type extends from nt:file an intermediate file node is created otherwise
  * directly a resource node.
+ * <p/>
+ *
+ * Chunked upload example:
+ * <xmp>
+ *   <form action="/home/admin" method="POST" enctype="multipart/form-data">
+ *     <input type="hidden" name="./portrait.jpg@Offset" value="1048576" />
+ *     <input type="hidden" name="./portrait.jpg@Length" value="3000000" />
+ *     <input type="file" name="./portrait.jpg" />
+ *   </form>
+ * </xmp>
+ *
+ * this stores the uploaded chunk as the nt:file "chunk_1048576" below the
+ * nt:folder "portrait.jpg.chunks" next to the file. Once all chunks up to the
+ * length have been received, or a chunk is sent with
+ * "./portrait.jpg@Completed" set to true, the chunks are assembled into the
+ * file and the chunks folder is removed.
+ * <p/>
+ *
+ * Chunks may be uploaded by concurrent requests. Each chunk is therefore
+ * saved as soon as it has been received, so that the request storing the
+ * last missing chunk finds all others, and the lockable chunks folder is
+ * locked by the request assembling the file. A chunks folder created
+ * concurrently by another request is reused. The chunks are saved with a
+ * separate session of the same user, such that other changes of the request
+ * are still only saved at the end of the request. If the parent node is new
+ * or no separate session can be acquired, the chunk is saved together with
+ * the other changes of the request.
  */
 public class SlingFileUploadHandler {
 
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
     // nodetype name string constants
     public static final String NT_FOLDER = "nt:folder";
     public static final String NT_FILE = "nt:file";
     public static final String NT_RESOURCE = "nt:resource";
     public static final String NT_UNSTRUCTURED = "nt:unstructured";
+    public static final String MIX_LOCKABLE = "mix:lockable";
 
     // item name string constants
     public static final String JCR_CONTENT = "jcr:content";
@@ -83,6 +131,9 @@ public class SlingFileUploadHandler {
     public static final String JCR_ENCODING = "jcr:encoding";
     public static final String JCR_DATA = "jcr:data";
 
+    /** name prefix of the nodes storing the chunks of a chunked upload */
+    public static final String CHUNK_PREFIX = "chunk_";
+
     /**
      * The servlet context.
      */
@@ -112,8 +163,11 @@ public class SlingFileUploadHandler {
     	for (RequestParameter requestParameter : values) {
         	RequestParameter value = requestParameter;
 
-        	// ignore if a plain form field or empty
-            if (value.isFormField() || value.getSize() <= 0) {
+        	// ignore if a plain form field or empty, streamed files have
+        	// an unknown size of -1. An empty chunk may complete a chunked
+        	// upload, though.
+            if (value.isFormField()
+                || (value.getSize() == 0 && !prop.isChunkUpload())) {
                 continue;
             }
 
@@ -127,6 +181,17 @@ public class SlingFileUploadHandler {
             }
             name = Text.escapeIllegalJcrChars(name);
 
+            // store a chunk and continue with the assembled file once all
+            // chunks have been received
+            Node chunks = null;
+            if (prop.isChunkUpload()) {
+                chunks = storeChunk(parent, name, prop, value, changes);
+                value = getAssembledFile(chunks, prop, value);
+                if (value == null) {
+                    continue;
+                }
+            }
+
             // check type hint. if the type is ok and extends from nt:file,
             // create an nt:file with that type. if it's invalid, drop it and let
             // the parent node type decide.
@@ -206,6 +271,362 @@ public class SlingFileUploadHandler {
             } catch (IOException e) {
                 throw new RepositoryException("Error while retrieving inputstream from parameter value.", e);
             }
+
+            // the chunks are not needed anymore
+            if (chunks != null) {
+                String chunksPath = chunks.getPath();
+                chunks.remove();
+                changes.add(Modification.onDeleted(chunksPath));
+            }
 		}
     }
+
+    /**
+     * Stores a chunk of a file uploaded in chunks in the chunks folder next
+     * to the file, replacing a chunk stored before for the same offset. The
+     * chunk is saved immediately with a separate session if possible, such
+     * that requests storing other chunks of the file concurrently see it.
+     *
+     * @return the chunks folder
+     */
+    private Node storeChunk(Node parent, String name, RequestProperty prop,
+            RequestParameter value, List<Modification> changes)
+            throws RepositoryException {
+        String chunksName = name + SlingPostConstants.CHUNKS_NODE_SUFFIX;
+
+        Session chunkSession = getChunkSession(parent);
+        if (chunkSession == null) {
+            // saved together with the other changes of the request
+            Node chunks;
+            if (parent.hasNode(chunksName)) {
+                chunks = parent.getNode(chunksName);
+            } else {
+                chunks = createChunksFolder(parent, chunksName);
+                changes.add(Modification.onCreated(chunks.getPath()));
+            }
+            addChunk(chunks, prop, value, changes);
+            return chunks;
+        }
+
+        try {
+            Node chunkParent = (Node) chunkSession.getItem(parent.getPath());
+            Node chunks = getChunksFolder(chunkParent, chunksName, changes);
+            if (addChunk(chunks, prop, value, changes)) {
+                chunkSession.save();
+            }
+        } finally {
+            chunkSession.logout();
+        }
+
+        // the saved chunks folder as seen by the request
+        return parent.getNode(chunksName);
+    }
+
+    /**
+     * Adds the chunk to the chunks folder unless it is empty.
+     *
+     * @return <code>true</code> if the chunk has been added
+     */
+    private boolean addChunk(Node chunks, RequestProperty prop,
+            RequestParameter value, List<Modification> changes)
+            throws RepositoryException {
+        if (value.getSize() == 0) {
+            return false;
+        }
+
+        String chunkName = CHUNK_PREFIX + prop.getChunkOffset();
+        if (chunks.hasNode(chunkName)) {
+            chunks.getNode(chunkName).remove();
+        }
+        Node chunk = chunks.addNode(chunkName, NT_FILE);
+        Node res = chunk.addNode(JCR_CONTENT, NT_RESOURCE);
+        res.setProperty(JCR_LASTMODIFIED, Calendar.getInstance());
+        res.setProperty(JCR_MIMETYPE, "application/octet-stream");
+        try {
+            res.setProperty(JCR_DATA, value.getInputStream());
+        } catch (IOException e) {
+            throw new RepositoryException("Error while retrieving inputstream from parameter value.", e);
+        }
+        changes.add(Modification.onCreated(chunk.getPath()));
+        return true;
+    }
+
+    /**
+     * Returns a new session of the user of the request to save the chunks
+     * with or <code>null</code> if the parent node is new or the user
+     * cannot impersonate itself.
+     */
+    private Session getChunkSession(Node parent) throws RepositoryException {
+        if (parent.isNew()) {
+            return null;
+        }
+
+        Session session = parent.getSession();
+        try {
+            return session.impersonate(new SimpleCredentials(
+                session.getUserID(), new char[0]));
+        } catch (LoginException le) {
+            log.debug("Cannot acquire a session to save the chunks of {},"
+                + " saving with the request", parent.getPath());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the chunks folder of the separate chunk session, creating and
+     * saving it if it does not exist yet. If another request has created
+     * the folder concurrently, either saving fails or, where the parent
+     * allows same name siblings, the folder is saved as a sibling. In both
+     * cases the folder created by the other request is used.
+     */
+    private Node getChunksFolder(Node parent, String chunksName,
+            List<Modification> changes) throws RepositoryException {
+        if (parent.hasNode(chunksName)) {
+            return parent.getNode(chunksName);
+        }
+
+        Session session = parent.getSession();
+        Node chunks = createChunksFolder(parent, chunksName);
+        try {
+            session.save();
+        } catch (RepositoryException re) {
+            // drop our folder and use the one saved by another request
+            session.refresh(false);
+            if (!parent.hasNode(chunksName)) {
+                throw re;
+            }
+            return parent.getNode(chunksName);
+        }
+
+        if (chunks.getIndex() > 1) {
+            Node first = parent.getNode(chunksName);
+            chunks.remove();
+            session.save();
+            return first;
+        }
+
+        changes.add(Modification.onCreated(chunks.getPath()));
+        return chunks;
+    }
+
+    private Node createChunksFolder(Node parent, String chunksName)
+            throws RepositoryException {
+        Node chunks = parent.addNode(chunksName, NT_FOLDER);
+        chunks.addMixin(MIX_LOCKABLE);
+        return chunks;
+    }
+
+    /**
+     * Returns the file assembled from the chunks if the upload is complete
+     * or <code>null</code> if more chunks are expected or another request
+     * is assembling the file.
+     *
+     * @throws RepositoryException if the upload is marked completed but
+     *             chunks are missing
+     */
+    private RequestParameter getAssembledFile(Node chunks,
+            RequestProperty prop, RequestParameter value)
+            throws RepositoryException {
+
+        SortedMap<Long, Property> data;
+        try {
+            data = getChunks(chunks);
+        } catch (InvalidItemStateException iise) {
+            // the file has been assembled by another request meanwhile
+            return null;
+        }
+        long end = getContiguousLength(data);
+
+        // without the length the upload can only be completed explicitly
+        long length = prop.getChunkLength();
+        boolean complete;
+        if (length >= 0) {
+            complete = end >= length;
+        } else {
+            complete = end > 0 && data.lastKey() <= end;
+        }
+
+        if (complete && (length >= 0 || prop.isChunkCompleted())) {
+            if (!lockChunks(chunks)) {
+                return null;
+            }
+
+            // include chunks saved by other requests before the lock
+            data = getChunks(chunks);
+            return new ChunkedFileParameter(value, data,
+                getContiguousLength(data));
+        } else if (prop.isChunkCompleted()) {
+            throw new RepositoryException("Missing chunk at offset " + end
+                + " of " + prop.getPath());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the chunk data properties of the chunks folder sorted by the
+     * chunk offsets.
+     */
+    private SortedMap<Long, Property> getChunks(Node chunks)
+            throws RepositoryException {
+        SortedMap<Long, Property> data = new TreeMap<Long, Property>();
+        for (NodeIterator ni = chunks.getNodes(); ni.hasNext();) {
+            Node chunk = ni.nextNode();
+            if (chunk.getName().startsWith(CHUNK_PREFIX)) {
+                try {
+                    long offset = Long.parseLong(chunk.getName().substring(
+                        CHUNK_PREFIX.length()));
+                    data.put(offset, chunk.getProperty(JCR_CONTENT + "/"
+                        + JCR_DATA));
+                } catch (NumberFormatException nfe) {
+                    // not a chunk
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Returns the number of contiguous bytes from the start of the file.
+     */
+    private long getContiguousLength(SortedMap<Long, Property> data)
+            throws RepositoryException {
+        long end = 0;
+        for (Map.Entry<Long, Property> entry : data.entrySet()) {
+            if (entry.getKey() > end) {
+                break;
+            }
+            end = Math.max(end, entry.getKey() + entry.getValue().getLength());
+        }
+        return end;
+    }
+
+    /**
+     * Locks the chunks folder for assembling the file. The lock is scoped to
+     * the session and removed together with the folder once the assembled
+     * file is saved. Folders not visible to other sessions are not locked.
+     *
+     * @return <code>false</code> if another request is assembling or has
+     *         assembled the file
+     */
+    private boolean lockChunks(Node chunks) throws RepositoryException {
+        if (chunks.isNew() || !chunks.isNodeType(MIX_LOCKABLE)) {
+            return true;
+        }
+        try {
+            chunks.lock(false, true);
+            return true;
+        } catch (LockException le) {
+            return false;
+        } catch (InvalidItemStateException iise) {
+            return false;
+        }
+    }
+
+    /**
+     * The <code>ChunkedFileParameter</code> provides the content of the
+     * chunks of a file uploaded in chunks as a single file parameter.
+     */
+    static class ChunkedFileParameter implements RequestParameter {
+
+        private final RequestParameter lastChunk;
+
+        private final SortedMap<Long, Property> chunks;
+
+        private final long size;
+
+        ChunkedFileParameter(RequestParameter lastChunk,
+                SortedMap<Long, Property> chunks, long size) {
+            this.lastChunk = lastChunk;
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        public boolean isFormField() {
+            return false;
+        }
+
+        public String getContentType() {
+            return lastChunk.getContentType();
+        }
+
+        public String getFileName() {
+            return lastChunk.getFileName();
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the concatenated chunks, skipping the bytes of chunks
+         * overlapping their predecessors.
+         */
+        public InputStream getInputStream() throws IOException {
+            Vector<InputStream> streams = new Vector<InputStream>();
+            long end = 0;
+            try {
+                for (Map.Entry<Long, Property> entry : chunks.entrySet()) {
+                    long offset = entry.getKey();
+                    long chunkEnd = offset + entry.getValue().getLength();
+                    if (offset > end) {
+                        break;
+                    }
+                    if (chunkEnd > end) {
+                        InputStream in = entry.getValue().getStream();
+                        skipFully(in, end - offset);
+                        streams.add(in);
+                        end = chunkEnd;
+                    }
+                }
+            } catch (RepositoryException re) {
+                throw (IOException) new IOException(
+                    "Cannot read chunk: " + re.getMessage()).initCause(re);
+            }
+            return new SequenceInputStream(streams.elements());
+        }
+
+        /**
+         * Returns the concatenated chunks read into memory.
+         */
+        public byte[] get() {
+            InputStream in = null;
+            try {
+                in = getInputStream();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                int rd;
+                while ((rd = in.read(buf)) >= 0) {
+                    out.write(buf, 0, rd);
+                }
+                return out.toByteArray();
+            } catch (IOException ioe) {
+                return new byte[0];
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+        }
+
+        public String getString() {
+            return "File: " + getFileName() + " (" + getSize() + " bytes)";
+        }
+
+        public String getString(String encoding) {
+            return getString();
+        }
+
+        private void skipFully(InputStream in, long n) throws IOException {
+            while (n > 0) {
+                long skipped = in.skip(n);
+                if (skipped <= 0) {
+                    throw new IOException("Chunk shorter than expected");
+                }
+                n -= skipped;
+            }
+        }
+    }
 }
\ No newline at end of file
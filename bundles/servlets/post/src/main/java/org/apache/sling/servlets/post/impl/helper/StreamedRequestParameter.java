@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.sling.api.request.RequestParameter;
+
+/**
+ * The <code>StreamedRequestParameter</code> is a <code>RequestParameter</code>
+ * for a part of a multipart request read while streaming the request body.
+ * <p>
+ * The value of a form field is read into memory. The content of a file is
+ * not buffered: the input stream returned by {@link #getInputStream()} reads
+ * directly from the request body and is only valid until the next part of
+ * the request is read. The size of a file is unknown and reported as -1
+ * unless the file is empty, in which case it is reported as 0.
+ */
+public class StreamedRequestParameter implements RequestParameter {
+
+    private static final String ENCODING_DIRECT = "ISO-8859-1";
+
+    private final boolean isFormField;
+
+    private final String contentType;
+
+    private final String fileName;
+
+    private final String encoding;
+
+    private byte[] content;
+
+    private InputStream stream;
+
+    private long size;
+
+    private String cachedValue;
+
+    /**
+     * Creates a form field parameter with the given value decoded using the
+     * given encoding.
+     */
+    public StreamedRequestParameter(byte[] content, String encoding) {
+        this.isFormField = true;
+        this.contentType = null;
+        this.fileName = null;
+        this.encoding = (encoding != null) ? encoding : ENCODING_DIRECT;
+        this.content = content;
+        this.size = content.length;
+    }
+
+    /**
+     * Creates a file parameter reading the file content from the given
+     * stream.
+     */
+    public StreamedRequestParameter(InputStream stream, String contentType,
+            String fileName) throws IOException {
+        this.isFormField = false;
+        this.contentType = contentType;
+        this.fileName = fileName;
+        this.encoding = ENCODING_DIRECT;
+
+        // check whether there is any content at all
+        this.stream = new BufferedInputStream(stream);
+        this.stream.mark(1);
+        this.size = (this.stream.read() < 0) ? 0 : -1;
+        this.stream.reset();
+    }
+
+    public boolean isFormField() {
+        return isFormField;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the stream of the file content or the form field value. The
+     * stream of a file can only be read once.
+     */
+    public InputStream getInputStream() throws IOException {
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        return stream;
+    }
+
+    /**
+     * Returns the content. For a file this reads the remaining file content
+     * into memory.
+     */
+    public byte[] get() {
+        if (content == null) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                int rd;
+                while ((rd = stream.read(buf)) >= 0) {
+                    out.write(buf, 0, rd);
+                }
+                content = out.toByteArray();
+                size = content.length;
+            } catch (IOException ioe) {
+                content = new byte[0];
+            }
+        }
+        return content;
+    }
+
+    public String getString() {
+        if (cachedValue == null) {
+            try {
+                cachedValue = getString(encoding);
+            } catch (UnsupportedEncodingException uee) {
+                cachedValue = new String(get());
+            }
+        }
+        return cachedValue;
+    }
+
+    public String getString(String encoding)
+            throws UnsupportedEncodingException {
+        return new String(get(), encoding);
+    }
+
+    public String toString() {
+        if (isFormField()) {
+            return getString();
+        }
+        return "File: " + getFileName();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+
+import javax.jcr.Item;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingException;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.servlets.HtmlResponse;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.servlets.post.AbstractSlingPostOperation;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.impl.helper.JsonContentImporter;
+
+/**
+ * The <code>ImportOperation</code> class implements the
+ * {@link org.apache.sling.servlets.post.SlingPostConstants#OPERATION_IMPORT import}
+ * operation for the Sling default POST servlet. The JSON or NDJSON request
+ * body is streamed into the repository below the request resource, which is
+ * created if it does not exist yet, and the session is saved in batches.
+ * <p>
+ * Only the request resource is reported as modified to keep the response
+ * small for large imports. The number of imported nodes and properties is
+ * added to the change log as an <code>imported</code> entry and, together
+ * with the number of intermediate saves, set as the
+ * <code>importedNodes</code>, <code>importedProperties</code> and
+ * <code>importedBatches</code> response properties. If the import fails,
+ * the batches saved so far remain in the repository.
+ */
+public class ImportOperation extends AbstractSlingPostOperation {
+
+    /** The response property containing the number of created nodes */
+    public static final String PN_IMPORTED_NODES = "importedNodes";
+
+    /** The response property containing the number of set properties */
+    public static final String PN_IMPORTED_PROPERTIES = "importedProperties";
+
+    /** The response property containing the number of saved batches */
+    public static final String PN_IMPORTED_BATCHES = "importedBatches";
+
+    /** The default character encoding of JSON content */
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    private final int defaultBatchSize;
+
+    public ImportOperation(int defaultBatchSize) {
+        this.defaultBatchSize = defaultBatchSize;
+    }
+
+    @Override
+    protected void doRun(SlingHttpServletRequest request,
+            HtmlResponse response, List<Modification> changes)
+            throws RepositoryException {
+
+        Session session = request.getResourceResolver().adaptTo(Session.class);
+        String path = response.getPath();
+        Node root = deepGetOrCreateNode(session, path, response);
+
+        int batchSize = getBatchSize(request);
+        JsonContentImporter importer = new JsonContentImporter(root, batchSize);
+        try {
+            Reader reader = getReader(request);
+            if (isNdJson(request)) {
+                importer.importNdJson(reader);
+            } else {
+                importer.importJson(reader);
+            }
+            changes.add(Modification.onModified(path));
+
+        } catch (JSONException je) {
+            // drop the current batch, but report the batches already saved
+            session.refresh(false);
+            log.info("Invalid import content for {}: {}", path,
+                je.getMessage());
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST,
+                "Invalid import content: " + je.getMessage());
+            return;
+
+        } catch (IOException ioe) {
+            throw new SlingException("Failed to read the import content", ioe);
+
+        } finally {
+            response.setProperty(PN_IMPORTED_NODES, importer.getNodeCount());
+            response.setProperty(PN_IMPORTED_PROPERTIES,
+                importer.getPropertyCount());
+            response.setProperty(PN_IMPORTED_BATCHES, importer.getBatchCount());
+            log.debug("Imported {} nodes and {} properties below {}",
+                new Object[] { importer.getNodeCount(),
+                    importer.getPropertyCount(), path });
+        }
+
+        response.onChange("imported", path,
+            String.valueOf(importer.getNodeCount()),
+            String.valueOf(importer.getPropertyCount()));
+    }
+
+    /**
+     * Returns the batch size requested with the
+     * {@link SlingPostConstants#RP_BATCH_SIZE} parameter or the configured
+     * default batch size.
+     */
+    private int getBatchSize(SlingHttpServletRequest request) {
+        String value = request.getParameter(SlingPostConstants.RP_BATCH_SIZE);
+        if (value != null) {
+            try {
+                int batchSize = Integer.parseInt(value.trim());
+                if (batchSize > 0) {
+                    return batchSize;
+                }
+            } catch (NumberFormatException nfe) {
+                // ignore and use the default
+            }
+        }
+        return defaultBatchSize;
+    }
+
+    private boolean isNdJson(SlingHttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null
+            && contentType.startsWith(SlingPostConstants.IMPORT_CONTENT_TYPE_NDJSON);
+    }
+
+    /**
+     * Returns a reader on the request body. Unless the request declares a
+     * character encoding the body is read as UTF-8 instead of the servlet
+     * default ISO-8859-1.
+     */
+    private Reader getReader(SlingHttpServletRequest request)
+            throws IOException {
+        if (request.getCharacterEncoding() != null) {
+            return request.getReader();
+        }
+        return new InputStreamReader(request.getInputStream(),
+            DEFAULT_ENCODING);
+    }
+
+    /**
+     * Returns the node at the given path, creating it and any missing
+     * ancestors with the default node type.
+     */
+    private Node deepGetOrCreateNode(Session session, String path,
+            HtmlResponse response) throws RepositoryException {
+        if (session.itemExists(path)) {
+            Item item = session.getItem(path);
+            if (item.isNode()) {
+                return (Node) item;
+            }
+            throw new RepositoryException("Cannot import below property "
+                + path);
+        }
+
+        Node node = session.getRootNode();
+        for (String name : path.substring(1).split("/")) {
+            if (name.length() == 0) {
+                continue;
+            }
+            if (node.hasNode(name)) {
+                node = node.getNode(name);
+            } else {
+                node = node.addNode(name);
+            }
+        }
+        response.setCreateRequest(true);
+        return node;
+    }
+}
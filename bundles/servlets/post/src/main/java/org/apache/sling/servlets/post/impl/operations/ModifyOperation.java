@@ -18,9 +18,14 @@
  */
 package org.apache.sling.servlets.post.impl.operations;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +38,11 @@ import javax.jcr.Session;
 import javax.jcr.nodetype.NodeType;
 import javax.servlet.ServletContext;
 
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.sling.api.SlingException;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.request.RequestParameter;
@@ -48,6 +58,7 @@ import org.apache.sling.servlets.post.impl.helper.NodeNameGenerator;
 import org.apache.sling.servlets.post.impl.helper.RequestProperty;
 import org.apache.sling.servlets.post.impl.helper.SlingFileUploadHandler;
 import org.apache.sling.servlets.post.impl.helper.SlingPropertyValueHandler;
+import org.apache.sling.servlets.post.impl.helper.StreamedRequestParameter;
 
 /**
  * The <code>ModifyOperation</code> class implements the default operation
@@ -56,6 +67,15 @@ import org.apache.sling.servlets.post.impl.helper.SlingPropertyValueHandler;
  */
 public class ModifyOperation extends AbstractSlingPostOperation {
 
+    /** The name of the form encoding parameter */
+    private static final String PARAMETER_FORMENCODING = "_charset_";
+
+    /**
+     * The maximum size in bytes of a form field of a streamed upload, which
+     * is read into memory (1MB)
+     */
+    private static final int MAX_FORM_FIELD_SIZE = 1024 * 1024;
+
     /**
      * utility class for generating node names
      */
@@ -79,12 +99,19 @@ public class ModifyOperation extends AbstractSlingPostOperation {
     protected void doRun(SlingHttpServletRequest request, HtmlResponse response, List<Modification> changes)
             throws RepositoryException {
 
-        Map<String, RequestProperty> reqProperties = collectContent(request,
-                response);
-
         // do not change order unless you have a very good reason.
         Session session = request.getResourceResolver().adaptTo(Session.class);
 
+        Map<String, RequestProperty> reqProperties;
+        if (isStreamedUpload(request)) {
+            // file parts are written while reading the request body
+            reqProperties = processStreamedUpload(request, session, response,
+                changes);
+        } else {
+            reqProperties = collectContent(request.getRequestParameterMap(),
+                requireItemPathPrefix(request), response);
+        }
+
         // ensure root of new content
         processCreate(session, reqProperties, response, changes);
 
@@ -434,21 +461,165 @@ public class ModifyOperation extends AbstractSlingPostOperation {
         }
     }
 
+    /**
+     * Returns <code>true</code> if the request is a multipart request whose
+     * body has been left unparsed by the Sling engine to be streamed.
+     */
+    private boolean isStreamedUpload(SlingHttpServletRequest request) {
+        String uploadMode = request.getParameter(SlingPostConstants.RP_UPLOAD_MODE);
+        return SlingPostConstants.UPLOAD_MODE_STREAM.equals(uploadMode)
+            && ServletFileUpload.isMultipartContent(request);
+    }
+
+    /**
+     * Reads the parts of a multipart request in the order they are sent.
+     * Form fields are collected in memory while the content of each file is
+     * written to the repository as the file part is read. Only the form
+     * fields preceding a file part are considered for the file, for example
+     * for the type hint of the file or the node types of the nodes created
+     * for it.
+     *
+     * @return The request properties collected from the query and the form
+     *         fields of the request.
+     */
+    private Map<String, RequestProperty> processStreamedUpload(
+            SlingHttpServletRequest request, Session session,
+            HtmlResponse response, List<Modification> changes)
+            throws RepositoryException {
+
+        // start with the query parameters
+        Map<String, List<RequestParameter>> fields = new LinkedHashMap<String, List<RequestParameter>>();
+        for (Map.Entry<String, RequestParameter[]> e : request.getRequestParameterMap().entrySet()) {
+            fields.put(e.getKey(), new ArrayList<RequestParameter>(
+                Arrays.asList(e.getValue())));
+        }
+
+        boolean requireItemPrefix = requireItemPathPrefix(request);
+        String encoding = request.getParameter(PARAMETER_FORMENCODING);
+        Set<String> uploaded = new HashSet<String>();
+
+        try {
+            ServletFileUpload upload = new ServletFileUpload();
+            if (encoding != null) {
+                upload.setHeaderEncoding(encoding);
+            }
+
+            FileItemIterator parts = upload.getItemIterator(request);
+            while (parts.hasNext()) {
+                FileItemStream part = parts.next();
+                String name = part.getFieldName();
+
+                if (part.isFormField()) {
+                    RequestParameter value = new StreamedRequestParameter(
+                        readFormField(name, part.openStream()), encoding);
+                    if (PARAMETER_FORMENCODING.equals(name) && encoding == null) {
+                        encoding = value.getString();
+                    }
+                    if (name.startsWith(SlingPostConstants.ITEM_PREFIX_RELATIVE_CURRENT)) {
+                        requireItemPrefix = true;
+                    }
+                    List<RequestParameter> values = fields.get(name);
+                    if (values == null) {
+                        values = new ArrayList<RequestParameter>();
+                        fields.put(name, values);
+                    }
+                    values.add(value);
+                    continue;
+                }
+
+                if (name.startsWith(SlingPostConstants.RP_PREFIX)
+                    || (requireItemPrefix && !hasItemPathPrefix(name))) {
+                    continue;
+                }
+
+                // create the target with the form fields sent so far
+                Map<String, RequestProperty> reqProperties = collectContent(
+                    toParameterMap(fields), requireItemPrefix, response);
+                processCreate(session, reqProperties, response, changes);
+
+                String propPath = toPropertyPath(name, response);
+                RequestProperty prop = reqProperties.get(propPath);
+                if (prop == null) {
+                    prop = new RequestProperty(propPath);
+                }
+                prop.setValues(new RequestParameter[] { new StreamedRequestParameter(
+                    part.openStream(), part.getContentType(), part.getName()) });
+
+                Node parent = deepGetOrCreateNode(session,
+                    prop.getParentPath(), reqProperties, changes);
+                uploadHandler.setFile(parent, prop, changes);
+                uploaded.add(prop.getPath());
+            }
+        } catch (FileUploadException fue) {
+            throw new SlingException("Failed to read the request parts", fue);
+        } catch (IOException ioe) {
+            throw new SlingException("Failed to read the request parts", ioe);
+        }
+
+        Map<String, RequestProperty> reqProperties = collectContent(
+            toParameterMap(fields), requireItemPrefix, response);
+
+        // do not remove the files just written
+        for (String path : uploaded) {
+            RequestProperty prop = reqProperties.get(path);
+            if (prop != null) {
+                prop.setDelete(false);
+            }
+        }
+
+        return reqProperties;
+    }
+
+    private Map<String, RequestParameter[]> toParameterMap(
+            Map<String, List<RequestParameter>> fields) {
+        Map<String, RequestParameter[]> parameters = new LinkedHashMap<String, RequestParameter[]>();
+        for (Map.Entry<String, List<RequestParameter>> e : fields.entrySet()) {
+            parameters.put(e.getKey(),
+                e.getValue().toArray(new RequestParameter[e.getValue().size()]));
+        }
+        return parameters;
+    }
+
+    /**
+     * Reads the value of a form field into memory.
+     *
+     * @throws FileUploadException if the value is larger than
+     *             {@link #MAX_FORM_FIELD_SIZE}
+     */
+    private byte[] readFormField(String name, InputStream in)
+            throws IOException, FileUploadException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int rd;
+        while ((rd = in.read(buf)) >= 0) {
+            if (out.size() + rd > MAX_FORM_FIELD_SIZE) {
+                throw new FileUploadBase.SizeLimitExceededException(
+                    "Form field " + name + " exceeds the maximum size of "
+                        + MAX_FORM_FIELD_SIZE + " bytes",
+                    out.size() + rd, MAX_FORM_FIELD_SIZE);
+            }
+            out.write(buf, 0, rd);
+        }
+        return out.toByteArray();
+    }
+
     /**
      * Collects the properties that form the content to be written back to the
      * repository.
      *
+     * @param parameters The request parameters to collect the properties from
+     * @param requireItemPrefix Whether only parameters with an item path
+     *            prefix are considered as content
      * @throws RepositoryException if a repository error occurs
      * @throws ServletException if an internal error occurs
      */
     private Map<String, RequestProperty> collectContent(
-            SlingHttpServletRequest request, HtmlResponse response) {
-
-        boolean requireItemPrefix = requireItemPathPrefix(request);
+            Map<String, RequestParameter[]> parameters,
+            boolean requireItemPrefix, HtmlResponse response) {
 
         // walk the request parameters and collect the properties
         Map<String, RequestProperty> reqProperties = new HashMap<String, RequestProperty>();
-        for (Map.Entry<String, RequestParameter[]> e : request.getRequestParameterMap().entrySet()) {
+        for (Map.Entry<String, RequestParameter[]> e : parameters.entrySet()) {
             final String paramName = e.getKey();
 
             // do not store parameters with names starting with sling:post
@@ -456,7 +627,7 @@ public class ModifyOperation extends AbstractSlingPostOperation {
                 continue;
             }
             // SLING-298: skip form encoding parameter
-            if (paramName.equals("_charset_")) {
+            if (paramName.equals(PARAMETER_FORMENCODING)) {
                 continue;
             }
             // skip parameters that do not start with the save prefix
@@ -509,7 +680,7 @@ public class ModifyOperation extends AbstractSlingPostOperation {
                 // @ValueFrom params must have exactly one value, else ignored
                 if (e.getValue().length == 1) {
                     String refName = e.getValue()[0].getString();
-                    RequestParameter[] refValues = request.getRequestParameters(refName);
+                    RequestParameter[] refValues = parameters.get(refName);
                     if (refValues != null) {
                         prop.setValues(refValues);
                     }
@@ -531,6 +702,29 @@ public class ModifyOperation extends AbstractSlingPostOperation {
                 continue;
             }
 
+            // @Offset, @Length and @Completed describe a chunk of a file
+            // upload, see SlingFileUploadHandler
+            if (propPath.endsWith(SlingPostConstants.SUFFIX_OFFSET)) {
+                RequestProperty prop = getOrCreateRequestProperty(
+                    reqProperties, propPath, SlingPostConstants.SUFFIX_OFFSET);
+                prop.setChunkOffset(toLong(e.getValue()));
+                continue;
+            }
+            if (propPath.endsWith(SlingPostConstants.SUFFIX_LENGTH)) {
+                RequestProperty prop = getOrCreateRequestProperty(
+                    reqProperties, propPath, SlingPostConstants.SUFFIX_LENGTH);
+                prop.setChunkLength(toLong(e.getValue()));
+                continue;
+            }
+            if (propPath.endsWith(SlingPostConstants.SUFFIX_COMPLETED)) {
+                RequestProperty prop = getOrCreateRequestProperty(
+                    reqProperties, propPath,
+                    SlingPostConstants.SUFFIX_COMPLETED);
+                prop.setChunkCompleted(e.getValue().length == 1
+                    && "true".equals(e.getValue()[0].getString()));
+                continue;
+            }
+
             // SLING-455: @MoveFrom means moving content to another location
             // @MoveFrom example:
             // <input name="./Text@MoveFrom" type="hidden" value="/tmp/path" />
@@ -578,6 +772,21 @@ public class ModifyOperation extends AbstractSlingPostOperation {
         return reqProperties;
     }
 
+    /**
+     * Returns the single value of a parameter as a long or -1 if the
+     * parameter does not have a single non-negative number value.
+     */
+    private long toLong(RequestParameter[] values) {
+        if (values.length == 1) {
+            try {
+                return Math.max(-1, Long.parseLong(values[0].getString().trim()));
+            } catch (NumberFormatException nfe) {
+                // ignore
+            }
+        }
+        return -1;
+    }
+
     /**
      * Returns the <code>paramName</code> as an absolute (unnormalized)
      * property path by prepending the response path (<code>response.getPath</code>)
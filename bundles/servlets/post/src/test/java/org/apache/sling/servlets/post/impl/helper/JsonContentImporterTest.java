@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.StringReader;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.Value;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.testing.jcr.RepositoryTestBase;
+
+public class JsonContentImporterTest extends RepositoryTestBase {
+
+    public void testImportJson() throws Exception {
+        Node root = getTestRootNode();
+        JsonContentImporter importer = new JsonContentImporter(root, 0);
+        importer.importJson(new StringReader("{ \"title\": \"Root\","
+            + " \"a\": { \"text\": \"a \\\"quoted\\\" \\u0041\", \"count\": 42,"
+            + " \"ratio\": 1.5, \"flag\": true, \"tags\": [\"x\", \"y\"],"
+            + " \"b\": { \"jcr:primaryType\": \"nt:unstructured\" } } }"));
+
+        assertEquals("Root", root.getProperty("title").getString());
+        Node a = root.getNode("a");
+        assertEquals("a \"quoted\" A", a.getProperty("text").getString());
+        assertEquals(42, a.getProperty("count").getLong());
+        assertEquals(PropertyType.LONG, a.getProperty("count").getType());
+        assertEquals(1.5, a.getProperty("ratio").getDouble(), 0);
+        assertTrue(a.getProperty("flag").getBoolean());
+        Value[] tags = a.getProperty("tags").getValues();
+        assertEquals(2, tags.length);
+        assertEquals("y", tags[1].getString());
+        assertTrue(a.getNode("b").isNodeType("nt:unstructured"));
+
+        assertEquals(2, importer.getNodeCount());
+        assertEquals(6, importer.getPropertyCount());
+        assertEquals(0, importer.getBatchCount());
+    }
+
+    public void testPrimaryTypeAfterProperties() throws Exception {
+        Node root = getTestRootNode();
+        JsonContentImporter importer = new JsonContentImporter(root, 0);
+        importer.importJson(new StringReader("{\"f\":{\"jcr:mixinTypes\":"
+            + "[\"mix:referenceable\"],\"jcr:primaryType\":\"nt:folder\"}}"));
+        assertTrue(root.getNode("f").isNodeType("nt:folder"));
+        assertTrue(root.getNode("f").isNodeType("mix:referenceable"));
+    }
+
+    public void testImportNdJson() throws Exception {
+        Node root = getTestRootNode();
+        JsonContentImporter importer = new JsonContentImporter(root, 0);
+        importer.importNdJson(new StringReader("{\"a\":{\"p\":1}}\n"
+            + "{\"a\":{\"q\":2,\"c\":{}}}\n\n{\"a\":{\"p\":null}}\n"));
+
+        Node a = root.getNode("a");
+        assertFalse(a.hasProperty("p"));
+        assertEquals(2, a.getProperty("q").getLong());
+        assertTrue(a.hasNode("c"));
+        assertEquals(2, importer.getNodeCount());
+    }
+
+    public void testBatches() throws Exception {
+        Node root = getTestRootNode();
+        getSession().save();
+
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 25; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"n").append(i).append("\":{\"i\":").append(i).append('}');
+        }
+        json.append('}');
+
+        // each node and its property count as two changes
+        JsonContentImporter importer = new JsonContentImporter(root, 20);
+        importer.importJson(new StringReader(json.toString()));
+        assertEquals(25, importer.getNodeCount());
+        assertEquals(2, importer.getBatchCount());
+
+        // the first 20 nodes have been saved, the last 5 are pending
+        getSession().refresh(false);
+        assertTrue(root.hasNode("n19"));
+        assertFalse(root.hasNode("n20"));
+    }
+
+    public void testBatchesOfUpdates() throws Exception {
+        Node root = getTestRootNode();
+        for (int n = 0; n < 3; n++) {
+            root.addNode("existing" + n);
+        }
+        getSession().save();
+
+        StringBuilder json = new StringBuilder("{");
+        for (int n = 0; n < 3; n++) {
+            if (n > 0) {
+                json.append(',');
+            }
+            json.append("\"existing").append(n).append("\":{");
+            for (int i = 0; i < 5; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("\"p").append(i).append("\":").append(i);
+            }
+            json.append('}');
+        }
+        json.append('}');
+
+        // property updates of existing nodes are saved in batches, too,
+        // but only at the end of the object of a node
+        JsonContentImporter importer = new JsonContentImporter(root, 8);
+        importer.importJson(new StringReader(json.toString()));
+        assertEquals(0, importer.getNodeCount());
+        assertEquals(15, importer.getPropertyCount());
+        assertEquals(1, importer.getBatchCount());
+
+        getSession().refresh(false);
+        assertTrue(root.getNode("existing1").hasProperty("p4"));
+        assertFalse(root.getNode("existing2").hasProperty("p0"));
+    }
+
+    public void testBatchesOfFiles() throws Exception {
+        Node root = getTestRootNode();
+        getSession().save();
+
+        // saving after each item would save the file without its content
+        JsonContentImporter importer = new JsonContentImporter(root, 1);
+        importer.importJson(new StringReader("{\"f\":{\"jcr:primaryType\":"
+            + "\"nt:file\",\"jcr:content\":{\"jcr:primaryType\":"
+            + "\"nt:resource\",\"jcr:mimeType\":\"text/plain\","
+            + "\"jcr:lastModified\":\"2008-01-01T00:00:00.000Z\","
+            + "\"jcr:data\":\"content\"}}}"));
+
+        getSession().refresh(false);
+        assertEquals("content", root.getProperty("f/jcr:content/jcr:data").getString());
+        assertTrue(importer.getBatchCount() > 0);
+    }
+
+    public void testSyntaxError() throws Exception {
+        Node root = getTestRootNode();
+        JsonContentImporter importer = new JsonContentImporter(root, 0);
+        try {
+            importer.importJson(new StringReader("{\"a\":{\"p\":1}\n\"b\":2}"));
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            assertTrue(je.getMessage().endsWith("line 2"));
+        }
+    }
+
+    public void testArrayOfObjects() throws Exception {
+        Node root = getTestRootNode();
+        JsonContentImporter importer = new JsonContentImporter(root, 0);
+        try {
+            importer.importJson(new StringReader("{\"a\":[{}]}"));
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            // expected
+        }
+    }
+
+    public void testNotFinite() throws Exception {
+        Node root = getTestRootNode();
+        JsonContentImporter importer = new JsonContentImporter(root, 0);
+        try {
+            importer.importJson(new StringReader("{\"a\":-Infinity}"));
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            // expected
+        }
+        try {
+            importer.importJson(new StringReader("{\"a\":[1e400]}"));
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            // expected
+        }
+    }
+
+    public void testNestingTooDeep() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            json.append("{\"a\":");
+        }
+
+        Node root = getTestRootNode();
+        JsonContentImporter importer = new JsonContentImporter(root, 0);
+        try {
+            importer.importJson(new StringReader(json.toString()));
+            fail("Expected JSONException");
+        } catch (JSONException je) {
+            assertTrue(je.getMessage().startsWith("Objects nested more than"));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.commons.testing.jcr.RepositoryTestBase;
+import org.apache.sling.servlets.post.Modification;
+
+public class SlingFileUploadHandlerTest extends RepositoryTestBase {
+
+    private final SlingFileUploadHandler handler = new SlingFileUploadHandler(
+        null);
+
+    public void testChunksInAnyOrder() throws Exception {
+        Node parent = getTestRootNode();
+        uploadChunk(parent, 5, 10, false, "56789");
+        assertTrue(parent.hasNode("a.txt.chunks"));
+        assertFalse(parent.hasNode("a.txt"));
+
+        uploadChunk(parent, 0, 10, false, "01234");
+        assertEquals("0123456789", getData(parent));
+        assertFalse(parent.hasNode("a.txt.chunks"));
+    }
+
+    public void testResentChunk() throws Exception {
+        Node parent = getTestRootNode();
+        uploadChunk(parent, 0, -1, false, "xxx");
+        uploadChunk(parent, 0, -1, false, "012");
+        uploadChunk(parent, 3, -1, true, "345");
+        assertEquals("012345", getData(parent));
+    }
+
+    public void testOverlappingChunks() throws Exception {
+        Node parent = getTestRootNode();
+        uploadChunk(parent, 0, 8, false, "01234");
+        uploadChunk(parent, 3, 8, false, "34567");
+        assertEquals("01234567", getData(parent));
+    }
+
+    public void testMissingChunk() throws Exception {
+        Node parent = getTestRootNode();
+        uploadChunk(parent, 0, -1, false, "012");
+        try {
+            uploadChunk(parent, 6, -1, true, "678");
+            fail("Expected RepositoryException for missing chunk");
+        } catch (RepositoryException re) {
+            // expected
+        }
+    }
+
+    public void testEmptyCompletingChunk() throws Exception {
+        Node parent = getTestRootNode();
+        uploadChunk(parent, 0, -1, false, "012");
+        uploadChunk(parent, 3, -1, true, "");
+        assertEquals("012", getData(parent));
+    }
+
+    public void testChunkedFileParameterContent() throws Exception {
+        Node parent = getTestRootNode();
+        parent.setProperty("c0", "0123");
+        parent.setProperty("c1", "2345");
+
+        SortedMap<Long, Property> chunks = new TreeMap<Long, Property>();
+        chunks.put(0L, parent.getProperty("c0"));
+        chunks.put(2L, parent.getProperty("c1"));
+        RequestParameter value = new SlingFileUploadHandler.ChunkedFileParameter(
+            new StreamedRequestParameter(new ByteArrayInputStream(new byte[0]),
+                "text/plain", "a.txt"), chunks, 6);
+        assertEquals("012345", new String(value.get()));
+    }
+
+    public void testLastChunksInConcurrentRequests() throws Exception {
+        Node parent = getTestRootNode();
+        getSession().save();
+
+        Session other = getRepository().loginAdministrative(null);
+        try {
+            Node otherParent = (Node) other.getItem(parent.getPath());
+
+            // neither request has saved when the other stores its chunk
+            uploadChunk(parent, 0, 10, false, "01234");
+            uploadChunk(otherParent, 5, 10, false, "56789");
+            other.save();
+            getSession().save();
+
+            assertEquals("0123456789", getData(parent));
+            assertFalse(parent.hasNode("a.txt.chunks"));
+        } finally {
+            other.logout();
+        }
+    }
+
+    public void testChunkSavedWithoutOtherChanges() throws Exception {
+        Node parent = getTestRootNode();
+        getSession().save();
+
+        // a change of the request made before the chunk is uploaded
+        parent.setProperty("title", "pending");
+        uploadChunk(parent, 0, 10, false, "01234");
+
+        Session other = getRepository().loginAdministrative(null);
+        try {
+            Node otherParent = (Node) other.getItem(parent.getPath());
+            assertTrue(otherParent.hasNode("a.txt.chunks/chunk_0"));
+            assertFalse(otherParent.hasProperty("title"));
+        } finally {
+            other.logout();
+        }
+
+        assertTrue(getSession().hasPendingChanges());
+        assertEquals("pending", parent.getProperty("title").getString());
+    }
+
+    public void testConcurrentChunkRequests() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Node parent = getTestRootNode().addNode("p" + i);
+            getSession().save();
+
+            ChunkRequest first = new ChunkRequest(parent.getPath(), 0, "01234");
+            ChunkRequest second = new ChunkRequest(parent.getPath(), 5, "56789");
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            first.barrier = barrier;
+            second.barrier = barrier;
+            first.start();
+            second.start();
+            first.join();
+            second.join();
+
+            assertNull(first.error);
+            assertNull(second.error);
+
+            getSession().refresh(false);
+            assertEquals("0123456789", getData(parent));
+            assertFalse(parent.hasNode("a.txt.chunks"));
+        }
+    }
+
+    /**
+     * Uploads a chunk of the file with its own session, like a request
+     * handled in parallel to others.
+     */
+    private class ChunkRequest extends Thread {
+
+        private final String path;
+
+        private final long offset;
+
+        private final String content;
+
+        CyclicBarrier barrier;
+
+        Throwable error;
+
+        ChunkRequest(String path, long offset, String content) {
+            this.path = path;
+            this.offset = offset;
+            this.content = content;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Session session = getRepository().loginAdministrative(null);
+                try {
+                    Node parent = (Node) session.getItem(path);
+                    barrier.await();
+                    uploadChunk(parent, offset, 10, false, content);
+                    session.save();
+                } finally {
+                    session.logout();
+                }
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+    }
+
+    private void uploadChunk(Node parent, long offset, long length,
+            boolean completed, String content) throws Exception {
+        RequestProperty prop = new RequestProperty(parent.getPath() + "/a.txt");
+        prop.setChunkOffset(offset);
+        prop.setChunkLength(length);
+        prop.setChunkCompleted(completed);
+        prop.setValues(new RequestParameter[] { new StreamedRequestParameter(
+            new ByteArrayInputStream(content.getBytes()), "text/plain",
+            "a.txt") });
+        handler.setFile(parent, prop, new ArrayList<Modification>());
+    }
+
+    private String getData(Node parent) throws RepositoryException {
+        return parent.getProperty("a.txt/jcr:content/jcr:data").getString();
+    }
+}
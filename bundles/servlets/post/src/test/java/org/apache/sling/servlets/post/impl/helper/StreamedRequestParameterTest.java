@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.post.impl.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+public class StreamedRequestParameterTest extends TestCase {
+
+    public void testFormField() throws Exception {
+        StreamedRequestParameter p = new StreamedRequestParameter(
+            "gr\u00fc\u00df".getBytes("UTF-8"), "UTF-8");
+        assertTrue(p.isFormField());
+        assertEquals("gr\u00fc\u00df", p.getString());
+        assertEquals(6, p.getSize());
+    }
+
+    public void testFormFieldDefaultEncoding() throws Exception {
+        StreamedRequestParameter p = new StreamedRequestParameter(
+            new byte[] { 'a', (byte) 0xe4 }, null);
+        assertEquals("a\u00e4", p.getString());
+    }
+
+    public void testFile() throws Exception {
+        StreamedRequestParameter p = new StreamedRequestParameter(
+            new ByteArrayInputStream("content".getBytes()), "text/plain",
+            "a.txt");
+        assertFalse(p.isFormField());
+        assertEquals(-1, p.getSize());
+        assertEquals("text/plain", p.getContentType());
+        assertEquals("a.txt", p.getFileName());
+
+        // the first byte read to check the size is still available
+        InputStream in = p.getInputStream();
+        assertEquals('c', in.read());
+        assertEquals('o', in.read());
+    }
+
+    public void testEmptyFile() throws Exception {
+        StreamedRequestParameter p = new StreamedRequestParameter(
+            new ByteArrayInputStream(new byte[0]), "text/plain", "a.txt");
+        assertEquals(0, p.getSize());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.webconsole.AbstractWebConsolePlugin;
+import org.apache.felix.webconsole.WebConsoleConstants;
+import org.apache.sling.servlets.resolver.internal.helper.ResolutionCache;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * The <code>ServletResolverWebConsolePlugin</code> renders the statistics
+ * of the servlet resolution cache of the {@link SlingServletResolver}.
+ */
+public class ServletResolverWebConsolePlugin extends AbstractWebConsolePlugin {
+
+    private static final long serialVersionUID = 0;
+
+    private final transient SlingServletResolver servletResolver;
+
+    private transient ServiceRegistration service;
+
+    ServletResolverWebConsolePlugin(BundleContext context,
+            SlingServletResolver servletResolver) {
+        this.servletResolver = servletResolver;
+
+        activate(context);
+
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_DESCRIPTION,
+            "Sling Servlet Resolver Web Console Plugin");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        props.put(Constants.SERVICE_PID, getClass().getName());
+        props.put(WebConsoleConstants.PLUGIN_LABEL, getLabel());
+
+        service = context.registerService(Servlet.class.getName(), this, props);
+    }
+
+    void dispose() {
+        if (service != null) {
+            service.unregister();
+            deactivate();
+            service = null;
+        }
+    }
+
+    @Override
+    public String getLabel() {
+        return "servletresolver";
+    }
+
+    @Override
+    public String getTitle() {
+        return "Servlet Resolver";
+    }
+
+    @Override
+    protected void renderContent(HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        PrintWriter pw = response.getWriter();
+
+        pw.println("<table class='content' cellpadding='0' cellspacing='0' width='100%'>");
+
+        title(pw, "Servlet Resolution Cache",
+            "Statistics of the cache of servlets and scripts resolved per user, resource type, method, selectors and extension");
+
+        ResolutionCache cache = servletResolver.getResolutionCache();
+        if (cache == null) {
+            row(pw, "Status", "disabled");
+        } else {
+            long hits = cache.getHits();
+            long total = hits + cache.getMisses();
+            row(pw, "Size", String.valueOf(cache.getSize()));
+            row(pw, "Maximum Size", String.valueOf(cache.getMaxSize()));
+            row(pw, "Hits", String.valueOf(hits));
+            row(pw, "Misses", String.valueOf(cache.getMisses()));
+            row(pw, "Hit Rate", ((total == 0) ? 0 : (hits * 100 / total))
+                + "%");
+        }
+
+        pw.println("</table>");
+    }
+
+    private void title(PrintWriter pw, String title, String description) {
+        pw.println("<tr class='content'>");
+        pw.println("<th colspan='2'class='content container'>" + title
+            + "</th>");
+        pw.println("</tr>");
+
+        if (description != null) {
+            pw.println("<tr class='content'>");
+            pw.println("<td colspan='2'class='content'>" + description
+                + "</td>");
+            pw.println("</tr>");
+        }
+    }
+
+    private void row(PrintWriter pw, String name, String value) {
+        pw.println("<tr class='content'>");
+        pw.println("<td class='content'>" + name + "</td>");
+        pw.println("<td class='content'>" + value + "</td>");
+        pw.println("</tr>");
+    }
+}
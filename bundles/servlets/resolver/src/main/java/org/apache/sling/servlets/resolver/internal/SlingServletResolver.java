@@ -33,6 +33,10 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.ObservationManager;
 import javax.servlet.Servlet;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -52,12 +56,15 @@ import org.apache.sling.api.scripting.SlingScript;
 import org.apache.sling.api.scripting.SlingScriptResolver;
 import org.apache.sling.api.servlets.OptingServlet;
 import org.apache.sling.api.servlets.ServletResolver;
+import org.apache.sling.commons.osgi.OsgiUtil;
 import org.apache.sling.engine.RequestUtil;
 import org.apache.sling.engine.servlets.AbstractServiceReferenceConfig;
 import org.apache.sling.engine.servlets.ErrorHandler;
+import org.apache.sling.jcr.api.SlingRepository;
 import org.apache.sling.jcr.resource.JcrResourceResolverFactory;
 import org.apache.sling.servlets.resolver.internal.defaults.DefaultErrorHandlerServlet;
 import org.apache.sling.servlets.resolver.internal.defaults.DefaultServlet;
+import org.apache.sling.servlets.resolver.internal.helper.ResolutionCache;
 import org.apache.sling.servlets.resolver.internal.helper.ResourceCollector;
 import org.apache.sling.servlets.resolver.internal.helper.SlingServletConfig;
 import org.apache.sling.servlets.resolver.internal.resource.ServletResourceProvider;
@@ -96,6 +103,14 @@ public class SlingServletResolver implements ServletResolver,
     /** The default servlet root is the first search path (which is usally /apps) */
     public static final String DEFAULT_SERVLET_ROOT = "0";
 
+    /**
+     * @scr.property valueRef="DEFAULT_CACHE_SIZE"
+     */
+    public static final String PROP_CACHE_SIZE = "servletresolver.cacheSize";
+
+    /** The default number of servlet resolutions to cache */
+    public static final int DEFAULT_CACHE_SIZE = 200;
+
     private static final String REF_SERVLET = "Servlet";
 
     /** @scr.reference */
@@ -104,6 +119,9 @@ public class SlingServletResolver implements ServletResolver,
     /** @scr.reference */
     private JcrResourceResolverFactory resourceResolverFactory;
 
+    /** @scr.reference */
+    private SlingRepository repository;
+
     private Map<ServiceReference, ServiceRegistration> servletsByReference = new HashMap<ServiceReference, ServiceRegistration>();
 
     private List<ServiceReference> pendingServlets = new ArrayList<ServiceReference>();
@@ -120,6 +138,17 @@ public class SlingServletResolver implements ServletResolver,
     // a request. This field is set on demand by getDefaultErrorServlet()
     private Servlet defaultErrorServlet;
 
+    // the cache of servlet resolutions, null if caching is disabled
+    private volatile ResolutionCache resolutionCache;
+
+    // the session used to listen for changes below the search path to
+    // invalidate the resolution cache
+    private Session observationSession;
+
+    // the web console plugin publishing the resolution cache statistics,
+    // null if the web console is not available
+    private ServletResolverWebConsolePlugin plugin;
+
     // ---------- ServletResolver interface -----------------------------------
 
     public Servlet resolveServlet(SlingHttpServletRequest request) {
@@ -151,9 +180,29 @@ public class SlingServletResolver implements ServletResolver,
         }
 
         // the resource type is not absolute, so lets go for the deep search
+        // unless the servlet for this kind of request is known already
         if (servlet == null) {
-            ResourceCollector locationUtil = ResourceCollector.create(request);
-            servlet = getServlet(locationUtil, request, resource);
+            ResolutionCache cache = resolutionCache;
+            String cacheKey = null;
+            String cachedPath = null;
+            if (cache != null) {
+                cacheKey = ResolutionCache.getKey(request, resource);
+                cachedPath = cache.get(cacheKey);
+            }
+
+            if (cachedPath == null) {
+                ResourceCollector locationUtil = ResourceCollector.create(request);
+                servlet = getServlet(locationUtil, request, resource, cache,
+                    cacheKey);
+            } else if (!ResolutionCache.NO_SERVLET.equals(cachedPath)) {
+                servlet = getCachedServlet(request, cachedPath);
+                if (servlet == null) {
+                    // the cached servlet is not available (any more)
+                    ResourceCollector locationUtil = ResourceCollector.create(request);
+                    servlet = getServlet(locationUtil, request, resource,
+                        cache, cacheKey);
+                }
+            }
 
             if(log.isDebugEnabled()) {
             	log.debug("getServlet returns Servlet {}", RequestUtil.getServletName(servlet));
@@ -262,7 +311,8 @@ public class SlingServletResolver implements ServletResolver,
             ResourceCollector locationUtil = new ResourceCollector(
                 String.valueOf(status),
                 ServletResolverConstants.ERROR_HANDLER_PATH);
-            Servlet servlet = getServlet(locationUtil, request, resource);
+            Servlet servlet = getServlet(locationUtil, request, resource,
+                null, null);
 
             // fall back to default servlet if none
             if (servlet == null) {
@@ -323,7 +373,8 @@ public class SlingServletResolver implements ServletResolver,
                 ResourceCollector locationUtil = new ResourceCollector(
                     tClass.getSimpleName(),
                     ServletResolverConstants.ERROR_HANDLER_PATH);
-                servlet = getServlet(locationUtil, request, resource);
+                servlet = getServlet(locationUtil, request, resource, null,
+                    null);
 
                 // go to the base class
                 tClass = tClass.getSuperclass();
@@ -388,6 +439,9 @@ public class SlingServletResolver implements ServletResolver,
      *            for them to decide on whether they are willing to handle the
      *            request
      * @param resource The <code>Resource</code> for which to find a script.
+     * @param cache The <code>ResolutionCache</code> to store the result in or
+     *            <code>null</code> if the result is not to be cached.
+     * @param cacheKey The key of the request in the <code>cache</code>.
      *            This need not be the same as
      *            <code>request.getResource()</code> in case of error handling
      *            where the resource may not have been assigned to the request
@@ -396,9 +450,17 @@ public class SlingServletResolver implements ServletResolver,
      *         such servlet willing to handle the request could be found.
      */
     private Servlet getServlet(ResourceCollector locationUtil,
-            SlingHttpServletRequest request, Resource resource) {
+            SlingHttpServletRequest request, Resource resource,
+            ResolutionCache cache, String cacheKey) {
+        int generation = (cache != null) ? cache.getGeneration() : 0;
         Collection<Resource> candidates = locationUtil.getServlets(resource);
 
+        // the result may only be cached if it does not depend on the request
+        // (OptingServlet) or on services which may come and go (resources
+        // not adapting to a servlet, for example due to a missing script
+        // engine)
+        boolean cacheable = cache != null;
+
     	if(log.isDebugEnabled()) {
     		if(candidates.isEmpty()) {
         		log.debug("No Servlet candidates found");
@@ -420,12 +482,18 @@ public class SlingServletResolver implements ServletResolver,
                 boolean servletAcceptsRequest = !(candidate instanceof OptingServlet)
                     || ((OptingServlet) candidate).accepts(request);
                 if (servletAcceptsRequest) {
+                    if (cacheable && !(candidate instanceof OptingServlet)) {
+                        cache.put(cacheKey, candidateResource.getPath(),
+                            generation);
+                    }
                     return candidate;
                 }
+                cacheable = false;
             	if(log.isDebugEnabled()) {
             		log.debug("Candidate {} does not accept request, ignored", candidateResource.getPath());
             	}
             } else {
+                cacheable = false;
                 if(log.isDebugEnabled()) {
                 	log.debug("Candidate {} does not adapt to a Servlet, ignored", candidateResource.getPath());
                 }
@@ -433,9 +501,28 @@ public class SlingServletResolver implements ServletResolver,
         }
 
         // exhausted all candidates, we don't have a servlet
+        if (cacheable) {
+            cache.put(cacheKey, ResolutionCache.NO_SERVLET, generation);
+        }
         return null;
     }
 
+    /**
+     * Returns the servlet for the servlet or script resource at the given
+     * path found in the resolution cache or <code>null</code> if the resource
+     * is not accessible or does not adapt to a servlet.
+     */
+    private Servlet getCachedServlet(SlingHttpServletRequest request,
+            String path) {
+        Resource res = request.getResourceResolver().getResource(path);
+        Servlet servlet = (res != null) ? res.adaptTo(Servlet.class) : null;
+        if (servlet != null && log.isDebugEnabled()) {
+            log.debug("Servlet {} found in resolution cache",
+                RequestUtil.getServletName(servlet));
+        }
+        return servlet;
+    }
+
     /**
      * Returns the internal default servlet which is called in case no other
      * servlet applies for handling a request. This servlet should really only
@@ -531,6 +618,19 @@ public class SlingServletResolver implements ServletResolver,
         }
 
         createAllServlets(refs);
+
+        int cacheSize = OsgiUtil.toInteger(properties.get(PROP_CACHE_SIZE),
+            DEFAULT_CACHE_SIZE);
+        resolutionCache = createResolutionCache(cacheSize,
+            this.resourceResolverFactory.getResourceResolver(null).getSearchPath());
+
+        try {
+            plugin = new ServletResolverWebConsolePlugin(
+                context.getBundleContext(), this);
+        } catch (Throwable t) {
+            // the web console is optional
+            log.debug("activate: Cannot register the web console plugin", t);
+        }
     }
 
     protected void deactivate(ComponentContext context) {
@@ -541,6 +641,28 @@ public class SlingServletResolver implements ServletResolver,
             refs = new ArrayList<ServiceReference>(servletsByReference.keySet());
         }
 
+        if (plugin != null) {
+            plugin.dispose();
+            plugin = null;
+        }
+
+        // stop caching servlet resolutions
+        ResolutionCache cache = resolutionCache;
+        resolutionCache = null;
+        if (cache != null) {
+            log.info("Servlet resolution cache: {}", cache);
+        }
+        if (observationSession != null) {
+            try {
+                observationSession.getWorkspace().getObservationManager().removeEventListener(
+                    cache);
+            } catch (RepositoryException re) {
+                log.warn("deactivate: Cannot unregister resolution cache listener", re);
+            }
+            observationSession.logout();
+            observationSession = null;
+        }
+
         // destroy all servlets
         destroyAllServlets(refs);
         this.context = null;
@@ -552,12 +674,74 @@ public class SlingServletResolver implements ServletResolver,
             pendingServlets.add(reference);
         } else {
             createServlet(servletContext, reference);
+            clearResolutionCache();
         }
     }
 
     protected synchronized void unbindServlet(ServiceReference reference) {
         pendingServlets.remove(reference);
         destroyServlet(reference);
+        clearResolutionCache();
+    }
+
+    // ---------- Resolution Cache ---------------------------------------------
+
+    /**
+     * Creates the servlet resolution cache and registers it for changes below
+     * the search path. If the cache cannot be registered with the repository
+     * caching is disabled, since the cache could not be invalidated.
+     */
+    private ResolutionCache createResolutionCache(int cacheSize,
+            String[] searchPath) {
+        if (cacheSize <= 0) {
+            log.info("Servlet resolution cache is disabled");
+            return null;
+        }
+
+        if (repository == null) {
+            log.warn("No repository to observe script changes, servlet resolution cache is disabled");
+            return null;
+        }
+
+        ResolutionCache cache = new ResolutionCache(cacheSize);
+        try {
+            observationSession = repository.loginAdministrative(null);
+            ObservationManager om = observationSession.getWorkspace().getObservationManager();
+            int eventTypes = Event.NODE_ADDED | Event.NODE_REMOVED
+                | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED
+                | Event.PROPERTY_REMOVED;
+            if (searchPath == null || searchPath.length == 0) {
+                searchPath = new String[] { "/" };
+            }
+            for (String path : searchPath) {
+                om.addEventListener(cache, eventTypes, path, true, null, null,
+                    true);
+            }
+        } catch (RepositoryException re) {
+            log.warn("Cannot observe script changes, servlet resolution cache is disabled", re);
+            if (observationSession != null) {
+                observationSession.logout();
+                observationSession = null;
+            }
+            return null;
+        }
+
+        return cache;
+    }
+
+    /**
+     * Returns the servlet resolution cache or <code>null</code> if caching
+     * is disabled.
+     */
+    ResolutionCache getResolutionCache() {
+        return resolutionCache;
+    }
+
+    private void clearResolutionCache() {
+        ResolutionCache cache = resolutionCache;
+        if (cache != null) {
+            cache.clear();
+        }
     }
 
     // ---------- Servlet Management -------------------------------------------
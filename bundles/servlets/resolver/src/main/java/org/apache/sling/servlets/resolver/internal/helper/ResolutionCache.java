@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * The <code>ResolutionCache</code> remembers the path of the servlet or
+ * script resource selected to handle requests of a given user with a given
+ * resource type, resource super type, request method, selectors and
+ * extension. Since the scripts visible to a request depend on the access
+ * rights of the user, resolutions are never shared between users. Lookups do
+ * not lock, so concurrent requests never contend for the cache.
+ * <p>
+ * The cache is cleared completely whenever servlets are registered or
+ * unregistered and - being a JCR <code>EventListener</code> - whenever
+ * content below the search path is modified, as this may add, remove or
+ * change scripts and resource super types. To prevent resolutions which
+ * started before an invalidation from being stored after it, each cache
+ * entry is only stored if the cache has not been cleared in the meantime.
+ * <p>
+ * If the cache grows beyond its maximum size the least recently used entry
+ * is removed. A maximum size of zero or less disables caching.
+ */
+public class ResolutionCache implements EventListener {
+
+    /**
+     * The path value stored for requests for which no servlet or script has
+     * been found.
+     */
+    public static final String NO_SERVLET = "";
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, Entry> paths;
+
+    /** The clock providing the last use stamps of the entries */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public ResolutionCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.paths = new ConcurrentHashMap<String, Entry>();
+    }
+
+    /**
+     * Returns the cache key for resolving a servlet for the request and
+     * resource. The key contains the name of the authenticated user, as
+     * returned by <code>request.getRemoteUser()</code>, because the servlet
+     * resolved depends on the scripts the user has access to.
+     */
+    public static String getKey(SlingHttpServletRequest request,
+            Resource resource) {
+        RequestPathInfo pathInfo = request.getRequestPathInfo();
+        StringBuilder key = new StringBuilder();
+        key.append(request.getRemoteUser()).append('\n');
+        key.append(request.getMethod()).append('\n');
+        key.append(resource.getResourceType()).append('\n');
+        key.append(resource.getResourceSuperType()).append('\n');
+        key.append(pathInfo.getSelectorString()).append('\n');
+        key.append(pathInfo.getExtension());
+        return key.toString();
+    }
+
+    /**
+     * Returns the path of the servlet or script resource stored for the key,
+     * {@link #NO_SERVLET} if no servlet has been found for the key or
+     * <code>null</code> if the key is not in the cache.
+     */
+    public String get(String key) {
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        Entry entry = paths.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        entry.lastUsed = clock.incrementAndGet();
+        return entry.path;
+    }
+
+    /**
+     * Returns the current generation of the cache, which must be passed to
+     * {@link #put(String, String, int)} after the servlet has been resolved.
+     */
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Stores the path of the servlet or script resource resolved for the key
+     * unless the cache has been cleared since the given generation has been
+     * retrieved.
+     */
+    public void put(String key, String path, int generation) {
+        if (maxSize <= 0 || generation != this.generation.get()) {
+            return;
+        }
+
+        paths.put(key, new Entry(path, clock.incrementAndGet()));
+        if (paths.size() > maxSize) {
+            removeLeastRecentlyUsed();
+        }
+
+        // the cache may have been cleared while storing the entry
+        if (generation != this.generation.get()) {
+            paths.remove(key);
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        paths.clear();
+    }
+
+    /**
+     * Removes the entry which has not been used for the longest time. If the
+     * entry is used concurrently it is kept and removal is left to the next
+     * call.
+     */
+    private void removeLeastRecentlyUsed() {
+        String eldestKey = null;
+        Entry eldest = null;
+        for (Map.Entry<String, Entry> candidate : paths.entrySet()) {
+            Entry entry = candidate.getValue();
+            if (eldest == null || entry.lastUsed < eldest.lastUsed) {
+                eldestKey = candidate.getKey();
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            paths.remove(eldestKey, eldest);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSize() {
+        return paths.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        long rate = (total == 0) ? 0 : (hits * 100 / total);
+        return "size=" + getSize() + ", maxSize=" + getMaxSize() + ", hits="
+            + hits + ", misses=" + getMisses() + ", hitRate=" + rate + "%";
+    }
+
+    // ---------- EventListener interface --------------------------------------
+
+    public void onEvent(EventIterator events) {
+        clear();
+    }
+
+    private static class Entry {
+
+        final String path;
+
+        volatile long lastUsed;
+
+        Entry(String path, long lastUsed) {
+            this.path = path;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal.helper;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.commons.testing.sling.MockResource;
+import org.apache.sling.commons.testing.sling.MockResourceResolver;
+import org.apache.sling.commons.testing.sling.MockSlingHttpServletRequest;
+
+public class ResolutionCacheTest extends TestCase {
+
+    public void testHitAndMiss() {
+        ResolutionCache cache = new ResolutionCache(10);
+        assertNull(cache.get("key"));
+
+        cache.put("key", "/apps/a/html.esp", cache.getGeneration());
+        assertEquals("/apps/a/html.esp", cache.get("key"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testNoServlet() {
+        ResolutionCache cache = new ResolutionCache(10);
+        cache.put("key", ResolutionCache.NO_SERVLET, cache.getGeneration());
+        assertEquals(ResolutionCache.NO_SERVLET, cache.get("key"));
+    }
+
+    public void testInvalidation() {
+        ResolutionCache cache = new ResolutionCache(10);
+        cache.put("key", "/apps/a/html.esp", cache.getGeneration());
+
+        cache.onEvent(null);
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testStaleResolutionNotStored() {
+        ResolutionCache cache = new ResolutionCache(10);
+        int generation = cache.getGeneration();
+
+        // invalidated while resolving
+        cache.clear();
+        cache.put("key", "/apps/a/html.esp", generation);
+        assertNull(cache.get("key"));
+    }
+
+    public void testSizeLimit() {
+        ResolutionCache cache = new ResolutionCache(2);
+        cache.put("a", "/a", cache.getGeneration());
+        cache.put("b", "/b", cache.getGeneration());
+        cache.put("c", "/c", cache.getGeneration());
+        assertEquals(2, cache.getSize());
+    }
+
+    public void testLeastRecentlyUsedRemoved() {
+        ResolutionCache cache = new ResolutionCache(2);
+        cache.put("a", "/a", cache.getGeneration());
+        cache.put("b", "/b", cache.getGeneration());
+
+        // use a, so b is the least recently used entry
+        assertEquals("/a", cache.get("a"));
+
+        cache.put("c", "/c", cache.getGeneration());
+        assertEquals("/a", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("/c", cache.get("c"));
+    }
+
+    public void testDisabled() {
+        ResolutionCache cache = new ResolutionCache(0);
+        cache.put("key", "/apps/a/html.esp", cache.getGeneration());
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getMisses());
+    }
+
+    public void testKey() {
+        MockResourceResolver resolver = new MockResourceResolver();
+        MockResource resource = new MockResource(resolver, "/content/a",
+            "a/b");
+
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(
+            "/content/a", "print", "html", null, null);
+        String key = ResolutionCache.getKey(request, resource);
+        assertEquals(key, ResolutionCache.getKey(request, resource));
+
+        MockSlingHttpServletRequest other = new MockSlingHttpServletRequest(
+            "/content/a", "print", "txt", null, null);
+        assertFalse(key.equals(ResolutionCache.getKey(other, resource)));
+
+        MockResource otherType = new MockResource(resolver, "/content/a",
+            "a/c");
+        assertFalse(key.equals(ResolutionCache.getKey(request, otherType)));
+    }
+
+    public void testKeyPerUser() {
+        MockResourceResolver resolver = new MockResourceResolver();
+        MockResource resource = new MockResource(resolver, "/content/a",
+            "a/b");
+
+        String anonymous = ResolutionCache.getKey(new UserRequest("anonymous"),
+            resource);
+        String admin = ResolutionCache.getKey(new UserRequest("admin"),
+            resource);
+        assertFalse(anonymous.equals(admin));
+        assertEquals(admin, ResolutionCache.getKey(new UserRequest("admin"),
+            resource));
+    }
+
+    private static class UserRequest extends MockSlingHttpServletRequest {
+
+        private final String user;
+
+        UserRequest(String user) {
+            super("/content/a", "print", "html", null, null);
+            this.user = user;
+        }
+
+        @Override
+        public String getRemoteUser() {
+            return user;
+        }
+    }
+}
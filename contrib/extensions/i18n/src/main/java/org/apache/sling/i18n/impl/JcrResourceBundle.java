@@ -26,12 +26,21 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jcr.query.Query;
 
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
 
+/**
+ * The <code>JcrResourceBundle</code> provides the messages of a base name and
+ * locale stored in the repository. Messages are loaded on demand, unless the
+ * bundle has been fully loaded by the {@link #reload()} method, which
+ * replaces all messages at once. Thus a bundle can be updated while still
+ * being used, and bundles having this bundle as their parent see the updated
+ * messages.
+ */
 public class JcrResourceBundle extends ResourceBundle {
 
     private static final String JCR_PATH = "jcr:path";
@@ -52,9 +61,13 @@ public class JcrResourceBundle extends ResourceBundle {
 
     private final ResourceResolver resourceResolver;
 
-    private Map<String, Object> resources;
+    /**
+     * The loaded messages. This map is only modified while loading messages
+     * on demand and replaced as a whole when the bundle is fully loaded.
+     */
+    private volatile Map<String, Object> resources;
 
-    private boolean fullyLoaded;
+    private volatile boolean fullyLoaded;
 
     private final Locale locale;
 
@@ -67,10 +80,35 @@ public class JcrResourceBundle extends ResourceBundle {
         this.locale = locale;
         this.baseName = baseName;
         this.resourceResolver = resourceResolver;
-        this.resources = new HashMap<String, Object>();
+        this.resources = new ConcurrentHashMap<String, Object>();
         this.fullyLoaded = false;
     }
 
+    String getBaseName() {
+        return baseName;
+    }
+
+    /**
+     * Loads all messages of this bundle from the repository and replaces the
+     * messages loaded so far with them. Until this method returns the
+     * messages loaded before are used.
+     */
+    void reload() {
+        reload(resourceResolver);
+    }
+
+    /**
+     * Loads all messages of this bundle like {@link #reload()} but accesses
+     * the repository with the given resource resolver. This allows reloading
+     * the bundle in a background thread without sharing the session of the
+     * resource resolver used to load messages on demand.
+     */
+    void reload(ResourceResolver resolver) {
+        Map<String, Object> newResources = loadAll(resolver);
+        resources = newResources;
+        fullyLoaded = true;
+    }
+
     @Override
     protected void setParent(ResourceBundle parent) {
         super.setParent(parent);
@@ -94,11 +132,12 @@ public class JcrResourceBundle extends ResourceBundle {
 
     @Override
     protected Object handleGetObject(String key) {
-        Object value = resources.get(key);
+        Map<String, Object> current = resources;
+        Object value = current.get(key);
         if (value == null && !fullyLoaded) {
             value = loadResource(key);
             if (value != null) {
-                resources.put(key, value);
+                current.put(key, value);
             }
         }
 
@@ -107,46 +146,51 @@ public class JcrResourceBundle extends ResourceBundle {
 
     private void loadFully() {
         if (!fullyLoaded) {
+            reload();
+        }
+    }
 
-            Iterator<Map<String, Object>> bundles = resourceResolver.queryResources(
-                getFullLoadQuery(), Query.XPATH);
-
-            String[] path = getSearchPath();
+    private Map<String, Object> loadAll(ResourceResolver resolver) {
+        Iterator<Map<String, Object>> bundles = resolver.queryResources(
+            getFullLoadQuery(), Query.XPATH);
 
-            List<Map<String, Object>> res0 = new ArrayList<Map<String, Object>>();
-            for (int i = 0; i < path.length; i++) {
-                res0.add(new HashMap<String, Object>());
-            }
-            Map<String, Object> rest = new HashMap<String, Object>();
+        String[] path = getSearchPath();
 
-            while (bundles.hasNext()) {
-                Map<String, Object> row = bundles.next();
-                String jcrPath = (String) row.get(JCR_PATH);
-                String key = (String) row.get(PROP_KEY);
-
-                if (key == null) {
-                    key = ResourceUtil.getName(jcrPath);
-                }
+        List<Map<String, Object>> res0 = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < path.length; i++) {
+            res0.add(new HashMap<String, Object>());
+        }
+        Map<String, Object> rest = new HashMap<String, Object>();
 
-                Map<String, Object> dst = rest;
-                for (int i = 0; i < path.length; i++) {
-                    if (jcrPath.startsWith(path[i])) {
-                        dst = res0.get(i);
-                        break;
-                    }
-                }
+        while (bundles.hasNext()) {
+            Map<String, Object> row = bundles.next();
+            String jcrPath = (String) row.get(JCR_PATH);
+            String key = (String) row.get(PROP_KEY);
+            Object value = row.get(PROP_VALUE);
 
-                dst.put(key, row.get(PROP_VALUE));
+            if (value == null) {
+                continue;
+            }
+            if (key == null) {
+                key = ResourceUtil.getName(jcrPath);
             }
 
-            for (int i = path.length - 1; i >= 0; i--) {
-                rest.putAll(res0.get(i));
+            Map<String, Object> dst = rest;
+            for (int i = 0; i < path.length; i++) {
+                if (jcrPath.startsWith(path[i])) {
+                    dst = res0.get(i);
+                    break;
+                }
             }
 
-            resources.putAll(rest);
+            dst.put(key, value);
+        }
 
-            fullyLoaded = true;
+        for (int i = path.length - 1; i >= 0; i--) {
+            rest.putAll(res0.get(i));
         }
+
+        return new ConcurrentHashMap<String, Object>(rest);
     }
 
     private Object loadResource(String key) {
@@ -18,22 +18,37 @@
  */
 package org.apache.sling.i18n.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.jcr.Credentials;
+import javax.jcr.Item;
+import javax.jcr.Node;
+import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.SimpleCredentials;
+import javax.jcr.Value;
 import javax.jcr.observation.EventIterator;
 import javax.jcr.observation.EventListener;
 import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.Query;
 
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.i18n.ResourceBundleProvider;
 import org.apache.sling.jcr.api.SlingRepository;
 import org.apache.sling.jcr.resource.JcrResourceResolverFactory;
@@ -46,6 +61,12 @@ import org.slf4j.LoggerFactory;
  * <code>ResourceBundleProvider</code> interface creating
  * <code>ResourceBundle</code> instances from resources stored in the
  * repository.
+ * <p>
+ * Changes to messages are handled by reloading the cached resource bundles
+ * of the changed base names and locales in the background, while the
+ * bundles keep serving the messages loaded before. Resource bundles of
+ * configured locales may also be loaded in the background when the
+ * provider is activated.
  *
  * @scr.component immediate="true" label="%provider.name"
  *                description="%provider.description"
@@ -63,6 +84,21 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
     /** @scr.property value="en" */
     private static final String PROP_DEFAULT_LOCALE = "locale.default";
 
+    /** @scr.property cardinality="-2147483647" type="String" */
+    private static final String PROP_PRELOAD_LOCALES = "locale.preload";
+
+    /** The preload locale standing for all languages in the repository */
+    private static final String PRELOAD_ALL = "*";
+
+    private static final String NT_LANGUAGE = "mix:language";
+
+    private static final String PROP_LANGUAGE = "jcr:language";
+
+    private static final String PROP_BASENAME = "sling:basename";
+
+    private static final String QUERY_LANGUAGES = "//element(*,"
+        + NT_LANGUAGE + ")/@" + PROP_LANGUAGE;
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -93,12 +129,41 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
      */
     private ResourceResolver resourceResolver;
 
+    /**
+     * The resource resolver used by the {@link #loader} thread to reload and
+     * preload resource bundles. This has its own session, such that the
+     * session of the {@link #resourceResolver} used by request threads is not
+     * used concurrently by the loader thread.
+     */
+    private ResourceResolver loaderResourceResolver;
+
     /**
      * Matrix of cached resource bundles. The first key is the resource bundle
      * base name, the second key is the Locale.
      */
     private final Map<String, Map<Locale, ResourceBundle>> resourceBundleCache = new HashMap<String, Map<Locale, ResourceBundle>>();
 
+    /**
+     * The executor reloading changed resource bundles and preloading resource
+     * bundles in the background. This is <code>null</code> while the
+     * component is not active.
+     */
+    private ExecutorService loader;
+
+    /**
+     * The paths of the changed items whose resource bundles have not been
+     * reloaded yet. Changes reported while a reload is queued are merged
+     * into this set, such that a single reload covers all of them. Guarded
+     * by itself, like {@link #pendingReloadAll} and {@link #reloadQueued}.
+     */
+    private final Set<String> pendingPaths = new LinkedHashSet<String>();
+
+    /** Whether all cached resource bundles have to be reloaded */
+    private boolean pendingReloadAll;
+
+    /** Whether a reload is queued with the loader and has not started yet */
+    private boolean reloadQueued;
+
     // ---------- ResourceBundleProvider ---------------------------------------
 
     /**
@@ -137,20 +202,67 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
 
     /**
      * Called whenever something is changed inside of <code>jcr:language</code>
-     * or <code>sling:Message</code> nodes. We just removed all cached
-     * resource bundles in this case to force reloading them.
+     * or <code>sling:Message</code> nodes. The cached resource bundles of the
+     * base names and locales of the changed language nodes are reloaded in
+     * the background. If the changed language nodes cannot be determined, for
+     * example because a language node has been removed, all cached resource
+     * bundles are reloaded. Changes reported before a queued reload starts
+     * are reloaded together with that reload.
      * <p>
-     * This is much simpler than analyzing the events and trying to be clever
-     * about which exact resource bundles to remove from the cache and at the
-     * same time care for any resource bundle dependencies.
+     * Since bundles are reloaded in place, bundles having a reloaded bundle as
+     * their parent do not have to be reloaded.
      *
-     * @param events The actual JCR events are ignored by this implementation.
+     * @param events The events describing the changed items.
      */
     public void onEvent(EventIterator events) {
-        log.debug("onEvent: Resource changes, removing cached ResourceBundles");
-        synchronized (resourceBundleCache) {
-            resourceBundleCache.clear();
+        List<String> paths = new ArrayList<String>();
+        boolean all = false;
+        while (events.hasNext()) {
+            try {
+                paths.add(events.nextEvent().getPath());
+            } catch (RepositoryException re) {
+                all = true;
+            }
         }
+
+        ExecutorService loader = this.loader;
+        if (loader == null) {
+            log.debug("onEvent: Resource changes, removing cached ResourceBundles");
+            synchronized (resourceBundleCache) {
+                resourceBundleCache.clear();
+            }
+            return;
+        }
+
+        synchronized (pendingPaths) {
+            pendingReloadAll |= all;
+            if (pendingReloadAll) {
+                pendingPaths.clear();
+            } else {
+                pendingPaths.addAll(paths);
+            }
+            if (reloadQueued) {
+                log.debug("onEvent: Resource changes, merged with queued reload");
+                return;
+            }
+            reloadQueued = true;
+        }
+
+        log.debug("onEvent: Resource changes, reloading cached ResourceBundles");
+        loader.execute(new Runnable() {
+            public void run() {
+                List<String> paths;
+                boolean all;
+                synchronized (pendingPaths) {
+                    paths = new ArrayList<String>(pendingPaths);
+                    all = pendingReloadAll;
+                    pendingPaths.clear();
+                    pendingReloadAll = false;
+                    reloadQueued = false;
+                }
+                reloadResourceBundles(paths, all);
+            }
+        });
     }
 
     // ---------- SCR Integration ----------------------------------------------
@@ -173,6 +285,41 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
 
         String localeString = (String) props.get(PROP_DEFAULT_LOCALE);
         this.defaultLocale = toLocale(localeString);
+
+        loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Sling ResourceBundle Loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final String[] preload = toStringArray(props.get(PROP_PRELOAD_LOCALES));
+        if (preload.length > 0) {
+            loader.execute(new Runnable() {
+                public void run() {
+                    preloadResourceBundles(preload);
+                }
+            });
+        }
+    }
+
+    /**
+     * Deactivates this component stopping any background loading of
+     * resource bundles.
+     */
+    protected void deactivate(ComponentContext context) {
+        ExecutorService loader = this.loader;
+        this.loader = null;
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+        synchronized (pendingPaths) {
+            pendingPaths.clear();
+            pendingReloadAll = false;
+            reloadQueued = false;
+        }
+        releaseLoaderResourceResolver();
     }
 
     /**
@@ -298,6 +445,203 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
         return bundle;
     }
 
+    /**
+     * Reloads the cached resource bundles affected by changes to the items at
+     * the given paths.
+     *
+     * @param paths The paths of the changed items
+     * @param all Whether to reload all cached resource bundles regardless of
+     *            the paths
+     */
+    private void reloadResourceBundles(List<String> paths, boolean all) {
+        if (this.resourceResolver == null) {
+            // nothing cached, which could be reloaded
+            return;
+        }
+
+        ResourceResolver resolver = getLoaderResourceResolver();
+        Session session = (resolver != null)
+                ? resolver.adaptTo(Session.class)
+                : null;
+        if (session == null) {
+            log.info("reloadResourceBundles: Missing Resource Resolver, removing cached ResourceBundles");
+            synchronized (resourceBundleCache) {
+                resourceBundleCache.clear();
+            }
+            return;
+        }
+
+        // find the base names and languages of the changed language nodes
+        List<LanguageNode> changed = new ArrayList<LanguageNode>();
+        for (Iterator<String> pi = paths.iterator(); !all && pi.hasNext();) {
+            String path = pi.next();
+            LanguageNode languageNode = null;
+            if (!path.endsWith("/" + PROP_LANGUAGE)
+                && !path.endsWith("/" + PROP_BASENAME)) {
+                try {
+                    languageNode = getLanguageNode(session, path);
+                } catch (RepositoryException re) {
+                    log.debug("reloadResourceBundles: Cannot access " + path,
+                        re);
+                }
+            }
+
+            if (languageNode == null) {
+                all = true;
+            } else if (!changed.contains(languageNode)) {
+                changed.add(languageNode);
+            }
+        }
+
+        List<JcrResourceBundle> affected = new ArrayList<JcrResourceBundle>();
+        synchronized (resourceBundleCache) {
+            for (Map<Locale, ResourceBundle> appBundles : resourceBundleCache.values()) {
+                for (ResourceBundle bundle : appBundles.values()) {
+                    if (bundle instanceof JcrResourceBundle
+                        && (all || isAffected((JcrResourceBundle) bundle,
+                            changed))) {
+                        affected.add((JcrResourceBundle) bundle);
+                    }
+                }
+            }
+        }
+
+        for (JcrResourceBundle bundle : affected) {
+            log.debug("reloadResourceBundles: Reloading {} for {}",
+                bundle.getBaseName(), bundle.getLocale());
+            try {
+                bundle.reload(resolver);
+            } catch (RuntimeException re) {
+                // drop the bundle to have it created again when used
+                log.info("reloadResourceBundles: Cannot reload ResourceBundle "
+                    + bundle.getBaseName() + " for " + bundle.getLocale(), re);
+                synchronized (resourceBundleCache) {
+                    Map<Locale, ResourceBundle> appBundles = resourceBundleCache.get(bundle.getBaseName());
+                    if (appBundles != null
+                        && appBundles.get(bundle.getLocale()) == bundle) {
+                        appBundles.remove(bundle.getLocale());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the messages of the bundle are read from
+     * any of the given language nodes.
+     */
+    private boolean isAffected(JcrResourceBundle bundle,
+            List<LanguageNode> changed) {
+        String locale = bundle.getLocale().toString();
+        String baseName = bundle.getBaseName();
+        for (LanguageNode languageNode : changed) {
+            if (languageNode.language.equals(locale)
+                && languageNode.hasBaseName(baseName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the language node containing the item at the given path or
+     * <code>null</code> if the item is not contained in a language node. If
+     * the item does not exist any more, its nearest existing ancestor is
+     * checked.
+     */
+    private LanguageNode getLanguageNode(Session session, String path)
+            throws RepositoryException {
+        while (path != null && !session.itemExists(path)) {
+            path = ResourceUtil.getParent(path);
+        }
+        if (path == null) {
+            return null;
+        }
+
+        Item item = session.getItem(path);
+        Node node = item.isNode() ? (Node) item : item.getParent();
+        while (!node.isNodeType(NT_LANGUAGE)) {
+            if (node.getDepth() == 0) {
+                return null;
+            }
+            node = node.getParent();
+        }
+
+        if (!node.hasProperty(PROP_LANGUAGE)) {
+            return null;
+        }
+        String language = node.getProperty(PROP_LANGUAGE).getString();
+
+        String[] baseNames = null;
+        if (node.hasProperty(PROP_BASENAME)) {
+            Property prop = node.getProperty(PROP_BASENAME);
+            if (prop.getDefinition().isMultiple()) {
+                Value[] values = prop.getValues();
+                baseNames = new String[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    baseNames[i] = values[i].getString();
+                }
+            } else {
+                baseNames = new String[] { prop.getString() };
+            }
+        }
+
+        return new LanguageNode(language, baseNames);
+    }
+
+    /**
+     * Loads the resource bundles without base name of the given locales and
+     * their parent locales. The special locale <code>*</code> stands for all
+     * languages found in the repository.
+     */
+    private void preloadResourceBundles(String[] localeStrings) {
+        ResourceResolver resolver = getLoaderResourceResolver();
+        if (resolver == null) {
+            log.info("preloadResourceBundles: Missing Resource Resolver, cannot preload Resource Bundles");
+            return;
+        }
+
+        Set<Locale> locales = new LinkedHashSet<Locale>();
+        for (String localeString : localeStrings) {
+            if (PRELOAD_ALL.equals(localeString)) {
+                Iterator<Map<String, Object>> languages = resolver.queryResources(
+                    QUERY_LANGUAGES, Query.XPATH);
+                while (languages.hasNext()) {
+                    Object language = languages.next().get(PROP_LANGUAGE);
+                    if (language != null) {
+                        locales.add(toLocale(language.toString()));
+                    }
+                }
+            } else if (localeString.length() > 0) {
+                locales.add(toLocale(localeString));
+            }
+        }
+
+        // include the parent locales, which are used as fallback
+        for (Locale locale : new ArrayList<Locale>(locales)) {
+            for (Locale parent = getParentLocale(locale); parent != null; parent = getParentLocale(parent)) {
+                locales.add(parent);
+            }
+        }
+
+        for (Locale locale : locales) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            try {
+                ResourceBundle bundle = getResourceBundleInternal(null, locale);
+                if (bundle instanceof JcrResourceBundle) {
+                    ((JcrResourceBundle) bundle).reload(resolver);
+                }
+                log.debug("preloadResourceBundles: Loaded {}", locale);
+            } catch (RuntimeException re) {
+                log.info("preloadResourceBundles: Cannot load ResourceBundle for "
+                    + locale, re);
+            }
+        }
+    }
+
     /**
      * Returns the parent locale of the given locale. The parent locale is the
      * locale of a locale is defined as follows:
@@ -337,7 +681,7 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
      *         returned if no <code>ResourceResolverFactory</code> or no
      *         <code>Repository</code> is available.
      */
-    private ResourceResolver getResourceResolver() {
+    private synchronized ResourceResolver getResourceResolver() {
         if (resourceResolver == null) {
             SlingRepository repo = this.repository;
             JcrResourceResolverFactory fac = this.resourceResolverFactory;
@@ -352,11 +696,7 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
             } else {
                 Session s = null;
                 try {
-                    if (repoCredentials == null) {
-                        s = repo.loginAdministrative(null);
-                    } else {
-                        s = repo.login(repoCredentials);
-                    }
+                    s = login(repo);
 
                     ObservationManager om = s.getWorkspace().getObservationManager();
                     om.addEventListener(this, 255, "/", true, null,
@@ -383,6 +723,69 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
         return resourceResolver;
     }
 
+    /**
+     * Returns the resource resolver used by the loader thread. This method
+     * logs into the repository if not already done so. If unable to connect
+     * to the repository, <code>null</code> is returned.
+     */
+    private synchronized ResourceResolver getLoaderResourceResolver() {
+        if (loaderResourceResolver == null) {
+            SlingRepository repo = this.repository;
+            JcrResourceResolverFactory fac = this.resourceResolverFactory;
+            if (repo != null && fac != null) {
+                Session s = null;
+                try {
+                    s = login(repo);
+                    loaderResourceResolver = fac.getResourceResolver(s);
+                } catch (RepositoryException re) {
+                    log.error(
+                        "getLoaderResourceResolver: Problem setting up ResourceResolver with Session",
+                        re);
+                } finally {
+                    if (loaderResourceResolver == null && s != null) {
+                        s.logout();
+                    }
+                }
+            }
+        }
+
+        return loaderResourceResolver;
+    }
+
+    /**
+     * Logs into the repository with the configured credentials or as the
+     * administrative user if none are configured.
+     */
+    private Session login(SlingRepository repo) throws RepositoryException {
+        if (repoCredentials == null) {
+            return repo.loginAdministrative(null);
+        }
+        return repo.login(repoCredentials);
+    }
+
+    /**
+     * Logs out the session of the resource resolver used by the loader
+     * thread.
+     */
+    private void releaseLoaderResourceResolver() {
+        ResourceResolver resolver;
+        synchronized (this) {
+            resolver = this.loaderResourceResolver;
+            this.loaderResourceResolver = null;
+        }
+
+        Session s = (resolver != null) ? resolver.adaptTo(Session.class) : null;
+        if (s != null) {
+            try {
+                s.logout();
+            } catch (Throwable t) {
+                log.info(
+                    "releaseLoaderResourceResolver: Unexpected problem logging out from the repository",
+                    t);
+            }
+        }
+    }
+
     /**
      * Logs out from the repository and clears the resource bundle cache.
      */
@@ -395,6 +798,8 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
             this.resourceBundleCache.clear();
         }
 
+        releaseLoaderResourceResolver();
+
         if (resolver != null) {
 
             Session s = resolver.adaptTo(Session.class);
@@ -420,6 +825,18 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
         }
     }
 
+    /**
+     * Converts the given configuration value to an array of strings.
+     */
+    private String[] toStringArray(Object value) {
+        if (value instanceof String[]) {
+            return (String[]) value;
+        } else if (value != null) {
+            return new String[] { value.toString() };
+        }
+        return new String[0];
+    }
+
     /**
      * Converts the given <code>localeString</code> to valid
      * <code>java.util.Locale</code>. If the locale string is
@@ -482,4 +899,58 @@ public class JcrResourceBundleProvider implements ResourceBundleProvider,
         return new Locale(parts[0], parts[1], parts[2]);
     }
 
+    /**
+     * The language and base names of a language node.
+     */
+    private static class LanguageNode {
+
+        final String language;
+
+        /** The base names or <code>null</code> if there is none */
+        final String[] baseNames;
+
+        LanguageNode(String language, String[] baseNames) {
+            this.language = language;
+            this.baseNames = baseNames;
+        }
+
+        /**
+         * Returns <code>true</code> if the messages of this node are part of
+         * the resource bundles of the given base name. As with the queries
+         * of the {@link JcrResourceBundle} a <code>null</code> base name
+         * stands for all nodes and an empty base name for all nodes having
+         * any base name.
+         */
+        boolean hasBaseName(String baseName) {
+            if (baseName == null) {
+                return true;
+            } else if (baseNames == null) {
+                return false;
+            } else if (baseName.length() == 0) {
+                return true;
+            }
+
+            for (String name : baseNames) {
+                if (baseName.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LanguageNode)) {
+                return false;
+            }
+            LanguageNode other = (LanguageNode) obj;
+            return language.equals(other.language)
+                && Arrays.equals(baseNames, other.baseNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return language.hashCode();
+        }
+    }
 }